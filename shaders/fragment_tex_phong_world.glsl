@@ -3,12 +3,25 @@ out vec4 outputColor;
 
 uniform vec4 input_color;
 
-uniform mat4 view_matrix;
-
-// Light properties
-uniform vec3 lightPos;
-uniform vec3 lightIntensity;
-uniform vec3 ambientIntensity;
+// Camera, sun and torch for the frame, shared by every shader in the world.
+// See FrameConstants.
+layout (std140) uniform FrameConstants {
+    mat4 view_matrix;
+    mat4 proj_matrix;
+    vec3 lightPos;
+    float cutoff;
+    vec3 lightIntensity;
+    float attenuationExp;
+    vec3 ambientIntensity;
+    int torchEnabled;
+    vec3 cameraPos;
+    float constant;
+    vec3 torchLightDirection;
+    float linear;
+    vec3 torchDiffuseCoeff;
+    float quadratic;
+    vec3 torchSpecularCoeff;
+};
 
 // Material properties
 uniform vec3 ambientCoeff;
@@ -23,20 +36,6 @@ in vec3 m;
 
 in vec2 texCoordFrag;
 
-// torch properties
-uniform int torchEnabled;
-uniform float cutoff;
-uniform float attenuationExp;
-uniform vec3 cameraPos;
-uniform vec3 torchDiffuseCoeff;
-uniform vec3 torchSpecularCoeff;
-uniform vec3 torchLightDirection;
-
-// distance attenuation properties
-uniform float constant;
-uniform float linear;
-uniform float quadratic;
-
 void main()
 {
     // Compute the s, v and r vectors
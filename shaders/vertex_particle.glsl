@@ -0,0 +1,65 @@
+// A shader for drawing one small camera facing quad per particle with an
+// instanced draw call.
+//
+// Each quad is a streak stretched along the world's up direction as seen by
+// the camera, which suits falling rain.
+
+// Corner of the quad, x in [-0.5, 0.5] and y in [0, 1]
+in vec3 position;
+
+// Incoming texture coordinates
+in vec2 texCoord;
+
+// The position of this particle, one per instance
+in vec3 instancePosition;
+
+uniform mat4 model_matrix;
+
+// Camera, sun and torch for the frame, shared by every shader in the world.
+// See FrameConstants.
+layout (std140) uniform FrameConstants {
+    mat4 view_matrix;
+    mat4 proj_matrix;
+    vec3 lightPos;
+    float cutoff;
+    vec3 lightIntensity;
+    float attenuationExp;
+    vec3 ambientIntensity;
+    int torchEnabled;
+    vec3 cameraPos;
+    float constant;
+    vec3 torchLightDirection;
+    float linear;
+    vec3 torchDiffuseCoeff;
+    float quadratic;
+    vec3 torchSpecularCoeff;
+};
+
+// Size of each particle's quad
+uniform float particleWidth;
+uniform float particleHeight;
+
+// Interpolated tex coords for the fragment shader.
+out vec2 texCoordFrag;
+
+void main() {
+    mat4 modelView = view_matrix * model_matrix;
+
+    // The particle's position in camera coordinates
+    vec4 viewPosition = modelView * vec4(instancePosition, 1);
+
+    // Build the quad in camera coordinates so it always faces the camera
+    vec3 up = normalize((modelView * vec4(0, 1, 0, 0)).xyz);
+    vec3 side = cross(up, vec3(0, 0, 1));
+    if (length(side) < 0.0001)
+        side = vec3(1, 0, 0);
+    side = normalize(side);
+
+    viewPosition.xyz += side * position.x * particleWidth
+            + up * position.y * particleHeight;
+
+    // The position in CVV coordinates
+    gl_Position = proj_matrix * viewPosition;
+
+    texCoordFrag = texCoord;
+}
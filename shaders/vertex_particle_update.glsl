@@ -0,0 +1,65 @@
+// A shader that advances every particle by the time elapsed. It is run over
+// a buffer of particles with GL_POINTS and GL_RASTERIZER_DISCARD, and its
+// outputs are captured with transform feedback into a second buffer.
+
+// The particle's current state
+in vec3 position;
+in vec3 velocity;
+in float life;
+
+// The seconds to advance by
+uniform float elapsed;
+
+// Forces and lifetime, per second
+uniform float gravity;
+uniform float lifeDecay;
+
+// Particles fall in the box from spawnMin to spawnMin + spawnSize, which
+// follows the viewer. Dead particles are respawned somewhere in it, falling
+// at initialSpeed.
+uniform vec3 spawnMin;
+uniform vec3 spawnSize;
+uniform float initialSpeed;
+
+// Changes every step so that respawned particles land somewhere new
+uniform int seed;
+
+// The particle's next state
+out vec3 outPosition;
+out vec3 outVelocity;
+out float outLife;
+
+// An integer hash with good avalanche behaviour
+uint hash(uint x) {
+    x ^= x >> 16;
+    x *= 0x7feb352dU;
+    x ^= x >> 15;
+    x *= 0x846ca68bU;
+    x ^= x >> 16;
+    return x;
+}
+
+// A pseudo-random number in [0, 1)
+float random(uint x) {
+    return float(hash(x) & 0x00FFFFFFU) / 16777216.0;
+}
+
+void main() {
+    vec3 v = velocity + vec3(0, gravity * elapsed, 0);
+    vec3 p = position + v * elapsed;
+    float l = life - lifeDecay * elapsed;
+
+    // Leaving one side of the box comes back in through the other
+    p.xz = spawnMin.xz + mod(p.xz - spawnMin.xz, spawnSize.xz);
+
+    if (p.y <= spawnMin.y || l < 0.0) {
+        uint key = hash(uint(gl_VertexID) ^ hash(uint(seed)));
+        p = spawnMin + vec3(random(key), random(key + 1U), random(key + 2U)) * spawnSize;
+        v = vec3(0, -initialSpeed, 0);
+        l = 1.0;
+    }
+
+    outPosition = p;
+    outVelocity = v;
+    outLife = l;
+}
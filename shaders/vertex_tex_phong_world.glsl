@@ -15,9 +15,25 @@ in vec2 texCoord;
 
 uniform mat4 model_matrix;
 
-uniform mat4 view_matrix;
-
-uniform mat4 proj_matrix;
+// Camera, sun and torch for the frame, shared by every shader in the world.
+// See FrameConstants.
+layout (std140) uniform FrameConstants {
+    mat4 view_matrix;
+    mat4 proj_matrix;
+    vec3 lightPos;
+    float cutoff;
+    vec3 lightIntensity;
+    float attenuationExp;
+    vec3 ambientIntensity;
+    int torchEnabled;
+    vec3 cameraPos;
+    float constant;
+    vec3 torchLightDirection;
+    float linear;
+    vec3 torchDiffuseCoeff;
+    float quadratic;
+    vec3 torchSpecularCoeff;
+};
 
 out vec4 viewPosition;
 out vec3 m;
@@ -0,0 +1,70 @@
+// A shader that performs Phong shading by interpolating the normals and
+// coordinates of each vertex in camera coordinates.
+//
+// Note: This shader assumes there is no non-uniform scale in either the view
+// or the model transform.
+//
+// This is the version for meshes in the quantized vertex format. The
+// positions are decoded by the model matrix, but the normals are decoded
+// here.
+
+// Incoming vertex position
+in vec3 position;
+
+// Incoming normal, in the octahedral encoding
+in vec2 normal;
+
+// Incoming texture coordinate
+in vec2 texCoord;
+
+uniform mat4 model_matrix;
+
+// Camera, sun and torch for the frame, shared by every shader in the world.
+// See FrameConstants.
+layout (std140) uniform FrameConstants {
+    mat4 view_matrix;
+    mat4 proj_matrix;
+    vec3 lightPos;
+    float cutoff;
+    vec3 lightIntensity;
+    float attenuationExp;
+    vec3 ambientIntensity;
+    int torchEnabled;
+    vec3 cameraPos;
+    float constant;
+    vec3 torchLightDirection;
+    float linear;
+    vec3 torchDiffuseCoeff;
+    float quadratic;
+    vec3 torchSpecularCoeff;
+};
+
+out vec4 viewPosition;
+out vec3 m;
+
+out vec2 texCoordFrag;
+
+// Decode a normal stored in the octahedral encoding (see VertexQuantization)
+vec3 octahedralDecode(vec2 e) {
+    vec3 n = vec3(e, 1 - abs(e.x) - abs(e.y));
+    if (n.z < 0) {
+        n.xy = (1 - abs(n.yx)) * vec2(n.x >= 0 ? 1 : -1, n.y >= 0 ? 1 : -1);
+    }
+    return normalize(n);
+}
+
+void main() {
+	// The global position is in homogenous coordinates
+    vec4 globalPosition = model_matrix * vec4(position, 1);
+
+    // The position in camera coordinates
+    viewPosition = view_matrix * globalPosition;
+
+    // The position in CVV coordinates
+    gl_Position = proj_matrix * viewPosition;
+
+    // Compute the normal in view coordinates
+    m = normalize(view_matrix*model_matrix * vec4(octahedralDecode(normal), 0)).xyz;
+
+    texCoordFrag = texCoord;
+}
@@ -124,6 +124,7 @@ public abstract class Application implements GLEventListener {
     public void dispose(GLAutoDrawable drawable) {
         GL3 gl = drawable.getGL().getGL3();
         destroy(gl);
+        StreamBuffer.destroy(gl);
     }
 
     /**
@@ -137,9 +138,13 @@ public abstract class Application implements GLEventListener {
     @Override
     public void init(GLAutoDrawable drawable) {
         GL3 gl = drawable.getGL().getGL3();
+
+        // A new context starts with OpenGL's default state
+        GLState.reset();
+        StreamBuffer.reset();
         
-        gl.glEnable(GL.GL_BLEND);
-        gl.glBlendFunc(GL.GL_SRC_ALPHA, GL.GL_ONE_MINUS_SRC_ALPHA);
+        GLState.enable(gl, GL.GL_BLEND);
+        GLState.blendFunc(gl, GL.GL_SRC_ALPHA, GL.GL_ONE_MINUS_SRC_ALPHA);
         
         init(gl);
     }
@@ -80,10 +80,10 @@ public abstract class Application3D extends Application {
         gl.glPointSize(10);
         
         // Turn on the depth buffer
-        gl.glEnable(GL.GL_DEPTH_TEST);
+        GLState.enable(gl, GL.GL_DEPTH_TEST);
         
         // Cull back faces
-        gl.glEnable(GL.GL_CULL_FACE);
+        GLState.enable(gl, GL.GL_CULL_FACE);
     }
     
     @Override
@@ -0,0 +1,177 @@
+package unsw.graphics;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+import com.jogamp.opengl.GL3;
+
+/**
+ * Loads assets in the background, so the first frame can be drawn before
+ * everything is loaded.
+ *
+ * Each asset is loaded in two steps. The first, such as reading an image or
+ * parsing a mesh, needs no OpenGL and runs on a pool of daemon threads. The
+ * second, such as copying the result into a texture or buffer, must run on
+ * the GL thread, so it is queued until upload() is called. Calling upload()
+ * once a frame with a small time budget spreads the uploads over several
+ * frames, so no frame takes much longer than the rest.
+ *
+ * Until an asset is uploaded, whatever uses it should draw a placeholder
+ * instead. An asset that fails to load stays that way.
+ */
+public class AssetLoader {
+
+    /**
+     * An asset that is loading or loaded.
+     *
+     * @param <T>
+     */
+    public static class Asset<T> {
+        private volatile T value;
+
+        /**
+         * Whether the asset has been uploaded.
+         */
+        public boolean isReady() {
+            return value != null;
+        }
+
+        /**
+         * The asset, or null if it is not ready.
+         */
+        public T get() {
+            return value;
+        }
+
+        /**
+         * The asset, or the given placeholder if it is not ready.
+         *
+         * @param placeholder
+         * @return
+         */
+        public T getOr(T placeholder) {
+            return value != null ? value : placeholder;
+        }
+    }
+
+    private final ExecutorService pool;
+
+    /**
+     * The uploads of the assets that have finished their first step.
+     */
+    private final ConcurrentLinkedQueue<Consumer<GL3>> uploads =
+            new ConcurrentLinkedQueue<Consumer<GL3>>();
+
+    /**
+     * The number of assets that are neither uploaded nor failed.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * Create a loader with one thread for each processor.
+     */
+    public AssetLoader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a loader with the given number of threads.
+     *
+     * @param threads
+     */
+    public AssetLoader(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "Asset loader " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start loading an asset.
+     *
+     * @param decode The first step, run on one of the loader's threads
+     * @param upload The second step, given the result of the first and run
+     * on the GL thread during upload()
+     * @return The asset, which is ready once the upload has run
+     */
+    public <D, T> Asset<T> load(Callable<D> decode, BiFunction<GL3, D, T> upload) {
+        Asset<T> asset = new Asset<T>();
+        pending.incrementAndGet();
+        pool.execute(() -> {
+            D data;
+            try {
+                data = decode.call();
+            } catch (Exception e) {
+                e.printStackTrace();
+                pending.decrementAndGet();
+                return;
+            }
+            uploads.add(gl -> {
+                try {
+                    asset.value = upload.apply(gl, data);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                } finally {
+                    pending.decrementAndGet();
+                }
+            });
+        });
+        return asset;
+    }
+
+    /**
+     * Start loading a texture from an image file.
+     *
+     * @param fileName
+     * @param mipmaps
+     * @return
+     */
+    public Asset<Texture> loadTexture(String fileName, boolean mipmaps) {
+        return load(() -> new Texture.Image(fileName),
+                (gl, image) -> new Texture(gl, image, mipmaps));
+    }
+
+    /**
+     * Run queued uploads until the given time has passed. At least one upload
+     * is run if any are queued, however long it takes.
+     *
+     * This must be called on the GL thread.
+     *
+     * @param gl
+     * @param nanos The time to spend, in nanoseconds
+     * @return The number of uploads run
+     */
+    public int upload(GL3 gl, long nanos) {
+        long start = System.nanoTime();
+        int count = 0;
+        Consumer<GL3> upload;
+        while ((count == 0 || System.nanoTime() - start < nanos)
+                && (upload = uploads.poll()) != null) {
+            upload.accept(gl);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * The number of assets still loading or waiting to be uploaded.
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Stop the loader's threads. Assets still loading are abandoned.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+        uploads.clear();
+    }
+}
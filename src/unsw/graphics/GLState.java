@@ -0,0 +1,322 @@
+package unsw.graphics;
+
+import java.util.Arrays;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL2ES3;
+import com.jogamp.opengl.GL3;
+
+/**
+ * Remembers the OpenGL state set through it and skips calls that would not
+ * change anything.
+ *
+ * Covers the bound program, buffers, vertex array and textures, the active
+ * texture unit, a few enable flags, the blend function and the polygon
+ * offset. Anything set through this class must always be set through it, or
+ * the remembered state will be wrong. Call reset() after code that sets it
+ * directly, and whenever a new context is created. Objects whose names were
+ * bound through this class should be deleted through it too, as the names
+ * may be reused.
+ *
+ * Like Shader.use(), this assumes a single OpenGL context, used from one
+ * thread.
+ */
+public class GLState {
+
+    // Value for state that is not known, so the next call is always made
+    private static final int UNKNOWN = -1;
+
+    private static final int TEXTURE_UNITS = 32;
+
+    // The buffer targets that are tracked
+    private static final int[] BUFFER_TARGETS = { GL.GL_ARRAY_BUFFER,
+            GL.GL_ELEMENT_ARRAY_BUFFER, GL2ES3.GL_UNIFORM_BUFFER };
+    private static final int ELEMENT_ARRAY_BUFFER = 1;
+
+    // The texture targets that are tracked
+    private static final int[] TEXTURE_TARGETS = { GL.GL_TEXTURE_2D,
+            GL.GL_TEXTURE_CUBE_MAP };
+
+    // The capabilities that are tracked
+    private static final int[] CAPABILITIES = { GL.GL_BLEND, GL.GL_DEPTH_TEST,
+            GL.GL_CULL_FACE, GL.GL_POLYGON_OFFSET_FILL, GL3.GL_RASTERIZER_DISCARD };
+
+    private static int program;
+    private static int vertexArray;
+    private static final int[] buffers = new int[BUFFER_TARGETS.length];
+    private static int activeTexture;
+    private static final int[][] textures = new int[TEXTURE_TARGETS.length][TEXTURE_UNITS];
+
+    // 1 for enabled, 0 for disabled
+    private static final int[] enabled = new int[CAPABILITIES.length];
+
+    private static int blendSource, blendDestination;
+    private static float offsetFactor, offsetUnits;
+    private static boolean offsetKnown;
+
+    private static long issued;
+    private static long avoided;
+
+    static {
+        reset();
+    }
+
+    /**
+     * Forget all remembered state, so the next call for each piece of state
+     * is made.
+     */
+    public static void reset() {
+        program = UNKNOWN;
+        vertexArray = UNKNOWN;
+        Arrays.fill(buffers, UNKNOWN);
+        activeTexture = UNKNOWN;
+        for (int[] unit : textures)
+            Arrays.fill(unit, UNKNOWN);
+        Arrays.fill(enabled, UNKNOWN);
+        blendSource = UNKNOWN;
+        blendDestination = UNKNOWN;
+        offsetKnown = false;
+    }
+
+    /**
+     * The number of calls made to OpenGL through this class.
+     *
+     * @return
+     */
+    public static long getIssuedCalls() {
+        return issued;
+    }
+
+    /**
+     * The number of calls this class skipped because they would not have
+     * changed anything.
+     *
+     * @return
+     */
+    public static long getAvoidedCalls() {
+        return avoided;
+    }
+
+    /**
+     * Set the issued and avoided call counts back to 0.
+     */
+    public static void resetCounts() {
+        issued = 0;
+        avoided = 0;
+    }
+
+    public static void useProgram(GL3 gl, int program) {
+        if (GLState.program == program) {
+            avoided++;
+            return;
+        }
+        gl.glUseProgram(program);
+        GLState.program = program;
+        issued++;
+    }
+
+    public static void deleteProgram(GL3 gl, int program) {
+        gl.glDeleteProgram(program);
+        // A deleted program stays in use until another is used, so a new
+        // program given the same name must still be used
+        if (GLState.program == program)
+            GLState.program = UNKNOWN;
+    }
+
+    /**
+     * Bind a vertex array. The element array buffer binding belongs to the
+     * vertex array, so it is forgotten.
+     *
+     * @param gl
+     * @param vertexArray
+     */
+    public static void bindVertexArray(GL3 gl, int vertexArray) {
+        if (GLState.vertexArray == vertexArray) {
+            avoided++;
+            return;
+        }
+        gl.glBindVertexArray(vertexArray);
+        GLState.vertexArray = vertexArray;
+        buffers[ELEMENT_ARRAY_BUFFER] = UNKNOWN;
+        issued++;
+    }
+
+    /**
+     * Bind the vertex array that JOGL creates for core profile contexts, which
+     * is what is bound when no object has a vertex array of its own. Code that
+     * sets attribute pointers or binds an element array buffer without owning
+     * a vertex array must call this first, so it does not change the vertex
+     * array of whatever mesh was drawn last.
+     *
+     * @param gl
+     */
+    public static void bindDefaultVertexArray(GL3 gl) {
+        bindVertexArray(gl, gl.getContext() == null ? 0 : gl.getContext().getDefaultVAO());
+    }
+
+    public static void deleteVertexArrays(GL3 gl, int n, int[] names, int offset) {
+        gl.glDeleteVertexArrays(n, names, offset);
+        for (int i = 0; i < n; i++) {
+            if (vertexArray == names[offset + i]) {
+                vertexArray = 0;
+                buffers[ELEMENT_ARRAY_BUFFER] = UNKNOWN;
+            }
+        }
+    }
+
+    public static void bindBuffer(GL3 gl, int target, int buffer) {
+        int t = indexOf(BUFFER_TARGETS, target);
+        if (t < 0) {
+            gl.glBindBuffer(target, buffer);
+            issued++;
+            return;
+        }
+        if (buffers[t] == buffer) {
+            avoided++;
+            return;
+        }
+        gl.glBindBuffer(target, buffer);
+        buffers[t] = buffer;
+        issued++;
+    }
+
+    /**
+     * Delete buffers. Deleting a bound buffer unbinds it.
+     *
+     * @param gl
+     * @param n
+     * @param names
+     * @param offset
+     */
+    public static void deleteBuffers(GL3 gl, int n, int[] names, int offset) {
+        gl.glDeleteBuffers(n, names, offset);
+        for (int i = 0; i < n; i++) {
+            for (int t = 0; t < buffers.length; t++) {
+                if (buffers[t] == names[offset + i])
+                    buffers[t] = 0;
+            }
+        }
+    }
+
+    /**
+     * Make the given texture unit active.
+     *
+     * @param gl
+     * @param texture The unit, from GL_TEXTURE0
+     */
+    public static void activeTexture(GL3 gl, int texture) {
+        if (activeTexture == texture) {
+            avoided++;
+            return;
+        }
+        gl.glActiveTexture(texture);
+        activeTexture = texture;
+        issued++;
+    }
+
+    /**
+     * Bind a texture to the active texture unit.
+     *
+     * @param gl
+     * @param target
+     * @param texture
+     */
+    public static void bindTexture(GL3 gl, int target, int texture) {
+        int t = indexOf(TEXTURE_TARGETS, target);
+        int unit = activeTexture - GL.GL_TEXTURE0;
+        if (t < 0 || activeTexture == UNKNOWN || unit < 0 || unit >= TEXTURE_UNITS) {
+            gl.glBindTexture(target, texture);
+            issued++;
+            return;
+        }
+        if (textures[t][unit] == texture) {
+            avoided++;
+            return;
+        }
+        gl.glBindTexture(target, texture);
+        textures[t][unit] = texture;
+        issued++;
+    }
+
+    /**
+     * Delete textures. Deleting a bound texture unbinds it from every unit.
+     *
+     * @param gl
+     * @param n
+     * @param names
+     * @param offset
+     */
+    public static void deleteTextures(GL3 gl, int n, int[] names, int offset) {
+        gl.glDeleteTextures(n, names, offset);
+        for (int i = 0; i < n; i++) {
+            for (int[] units : textures) {
+                for (int unit = 0; unit < units.length; unit++) {
+                    if (units[unit] == names[offset + i])
+                        units[unit] = 0;
+                }
+            }
+        }
+    }
+
+    public static void enable(GL3 gl, int capability) {
+        setEnabled(gl, capability, true);
+    }
+
+    public static void disable(GL3 gl, int capability) {
+        setEnabled(gl, capability, false);
+    }
+
+    /**
+     * Enable or disable a capability.
+     *
+     * @param gl
+     * @param capability
+     * @param enable
+     */
+    public static void setEnabled(GL3 gl, int capability, boolean enable) {
+        int c = indexOf(CAPABILITIES, capability);
+        int value = enable ? 1 : 0;
+        if (c >= 0 && enabled[c] == value) {
+            avoided++;
+            return;
+        }
+        if (enable)
+            gl.glEnable(capability);
+        else
+            gl.glDisable(capability);
+        if (c >= 0)
+            enabled[c] = value;
+        issued++;
+    }
+
+    public static void blendFunc(GL3 gl, int source, int destination) {
+        if (blendSource == source && blendDestination == destination) {
+            avoided++;
+            return;
+        }
+        gl.glBlendFunc(source, destination);
+        blendSource = source;
+        blendDestination = destination;
+        issued++;
+    }
+
+    public static void polygonOffset(GL3 gl, float factor, float units) {
+        if (offsetKnown && offsetFactor == factor && offsetUnits == units) {
+            avoided++;
+            return;
+        }
+        gl.glPolygonOffset(factor, units);
+        offsetFactor = factor;
+        offsetUnits = units;
+        offsetKnown = true;
+        issued++;
+    }
+
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value)
+                return i;
+        }
+        return -1;
+    }
+}
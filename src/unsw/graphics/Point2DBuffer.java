@@ -35,6 +35,17 @@ public class Point2DBuffer {
         floatBuffer = GLBuffers.newDirectFloatBuffer(capacity * 2);
     }
 
+    /**
+     * Wrap an existing buffer of floats, two per point. The buffer must be
+     * direct for the points to be passed to OpenGL.
+     * 
+     * @param buffer
+     */
+    public Point2DBuffer(FloatBuffer buffer) {
+        this.capacity = buffer.capacity() / 2;
+        floatBuffer = buffer;
+    }
+
     public Point2DBuffer(List<Point2D> points) {
         this(points.size());
         for (int i = 0; i < capacity; i++) {
@@ -35,6 +35,17 @@ public class Point3DBuffer {
         floatBuffer = GLBuffers.newDirectFloatBuffer(capacity * 3);
     }
 
+    /**
+     * Wrap an existing buffer of floats, three per point. The buffer must be
+     * direct for the points to be passed to OpenGL.
+     * 
+     * @param buffer
+     */
+    public Point3DBuffer(FloatBuffer buffer) {
+        this.capacity = buffer.capacity() / 3;
+        floatBuffer = buffer;
+    }
+
     public Point3DBuffer(List<Point3D> points) {
         this(points.size());
         for (int i = 0; i < capacity; i++) {
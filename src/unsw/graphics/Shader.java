@@ -4,6 +4,8 @@
 package unsw.graphics;
 
 import java.awt.Color;
+import java.util.HashMap;
+import java.util.Map;
 
 import com.jogamp.opengl.GL3;
 import com.jogamp.opengl.util.glsl.ShaderCode;
@@ -26,6 +28,11 @@ import unsw.graphics.geometry.Point3D;
  *   - "uniform mat4 view_matrix"
  *   - "uniform mat4 proj_matrix"
  * 
+ * The static setters set uniforms of the shader most recently made current
+ * with use(). Each shader looks up the locations of its uniforms once, when
+ * it is linked, so setting a uniform is a single GL call. Programs must be
+ * switched with use() rather than glUseProgram() for this to work.
+ * 
  * @author Robert Clifton-Everest
  *
  */
@@ -48,8 +55,54 @@ public class Shader {
      */
     public static final int TEX_COORD = 2;
 
+    /**
+     * The per-instance position attribute for use with glAttribPointer and
+     * glVertexAttribDivisor. Unlike the other attributes it is not enabled
+     * by default, as it is only used by instanced draws.
+     */
+    public static final int INSTANCE_POSITION = 3;
+
+    /**
+     * The particle velocity attribute, used by shaders that simulate particles
+     * with transform feedback. It is not enabled by default.
+     */
+    public static final int VELOCITY = 4;
+
+    /**
+     * The particle life attribute, used by shaders that simulate particles
+     * with transform feedback. It is not enabled by default.
+     */
+    public static final int LIFE = 5;
+
+    // The name of each attribute, by location
+    private static final String[] ATTRIBUTES = { "position", "normal",
+            "texCoord", "instancePosition", "velocity", "life" };
+
+    // Uniform block binding points
+
+    /**
+     * The binding point of the "FrameConstants" uniform block, for use with
+     * glBindBufferBase. Shaders that declare the block have it bound here
+     * when they are linked.
+     */
+    public static final int FRAME_CONSTANTS = 0;
+
+    /**
+     * The shader last made current with use(), or null if there is none.
+     */
+    private static Shader current;
+
+    /**
+     * The cache new shaders are loaded from and saved to, or null for none.
+     */
+    private static ShaderCache cache;
+
     private int id;
 
+    // Uniform locations by name, including the names of uniforms that are
+    // not in the program, which have location -1
+    private final Map<String, Integer> uniforms = new HashMap<String, Integer>();
+
     /**
      * Construct a shader in the given OpenGL context.
      * 
@@ -58,49 +111,183 @@ public class Shader {
      * @param fragment The file containing the fragment shader code.
      */
     public Shader(GL3 gl, String vertex, String fragment) {
+        this(gl, vertex, fragment, null);
+    }
+
+    /**
+     * Construct a shader whose vertex shader outputs are captured with
+     * transform feedback. The named outputs are written, interleaved, to the
+     * buffer bound to GL_TRANSFORM_FEEDBACK_BUFFER index 0.
+     * 
+     * The fragment shader may be null, for programs that are only run with
+     * GL_RASTERIZER_DISCARD enabled.
+     * 
+     * @param gl
+     * @param vertex The file containing the vertex shader code.
+     * @param fragment The file containing the fragment shader code, or null.
+     * @param feedbackVaryings The vertex shader outputs to capture, or null.
+     */
+    public Shader(GL3 gl, String vertex, String fragment, String[] feedbackVaryings) {
 
         ShaderCode vertShader = ShaderCode.create(gl, GL3.GL_VERTEX_SHADER, 1,
                 this.getClass(), new String[] { vertex }, true);
-        ShaderCode fragShader = ShaderCode.create(gl, GL3.GL_FRAGMENT_SHADER, 1,
-                this.getClass(), new String[] { fragment }, true);
 
         // We unfortunately have to do this for this library to be compatible
         // with the older lab machines and the newer Macs
         vertShader.addGLSLVersion(gl);
-        fragShader.addGLSLVersion(gl);
 
-        ShaderProgram shaderProgram = new ShaderProgram();
-        shaderProgram.add(vertShader);
-        shaderProgram.add(fragShader);
+        ShaderCode fragShader = null;
+        if (fragment != null) {
+            fragShader = ShaderCode.create(gl, GL3.GL_FRAGMENT_SHADER, 1,
+                    this.getClass(), new String[] { fragment }, true);
+            fragShader.addGLSLVersion(gl);
+        }
 
-        if (!shaderProgram.init(gl))
-            throw new RuntimeException("Invalid shader program");
+        // The attribute locations and captured outputs are part of the
+        // linked program, so they are part of the key as well as the source
+        ShaderCache cache = Shader.cache;
+        String key = null;
+        if (cache != null) {
+            key = cache.key(gl, source(vertShader), source(fragShader),
+                    String.join(",", ATTRIBUTES),
+                    feedbackVaryings == null ? "" : String.join(",", feedbackVaryings));
+            id = cache.load(gl, key);
+        }
 
-        id = shaderProgram.program();
-        
-        gl.glBindAttribLocation(id, POSITION, "position");
-        gl.glBindAttribLocation(id, NORMAL, "normal");
-        gl.glBindAttribLocation(id, TEX_COORD, "texCoord");
-        
-        shaderProgram.link(gl, System.err);
+        if (id == 0) {
+            ShaderProgram shaderProgram = new ShaderProgram();
+            shaderProgram.add(vertShader);
+            if (fragShader != null)
+                shaderProgram.add(fragShader);
+
+            if (!shaderProgram.init(gl))
+                throw new RuntimeException("Invalid shader program");
+
+            id = shaderProgram.program();
+
+            for (int i = 0; i < ATTRIBUTES.length; i++)
+                gl.glBindAttribLocation(id, i, ATTRIBUTES[i]);
+
+            if (feedbackVaryings != null)
+                gl.glTransformFeedbackVaryings(id, feedbackVaryings.length,
+                        feedbackVaryings, GL3.GL_INTERLEAVED_ATTRIBS);
+
+            if (cache != null)
+                cache.prepare(gl, id);
+
+            if (shaderProgram.link(gl, System.err) && cache != null)
+                cache.save(gl, id, key);
+        }
         
         gl.glEnableVertexAttribArray(POSITION);
         if (gl.glGetAttribLocation(id, "normal") != -1)
             gl.glEnableVertexAttribArray(NORMAL);
         if (gl.glGetAttribLocation(id, "texCoord") != -1)
             gl.glEnableVertexAttribArray(TEX_COORD);
-        
+
+        loadUniforms(gl);
+    }
+
+    /**
+     * Wrap a program that has already been linked, for example one loaded
+     * with glProgramBinary(). The attribute locations must already be bound
+     * as they are by the other constructors.
+     * 
+     * @param gl
+     * @param id The linked program
+     */
+    public Shader(GL3 gl, int id) {
+        this.id = id;
+        loadUniforms(gl);
+    }
+
+    /**
+     * Use the given cache for shaders created from now on. Shaders whose
+     * source and driver match a cached program are loaded from the cache
+     * instead of compiled, and compiled shaders are saved to it.
+     * 
+     * @param cache The cache, or null to always compile from source
+     */
+    public static void setCache(ShaderCache cache) {
+        Shader.cache = cache;
+    }
+
+    /**
+     * All of a shader's source as one string, or an empty string for none.
+     */
+    private static String source(ShaderCode code) {
+        StringBuilder source = new StringBuilder();
+        if (code != null) {
+            for (CharSequence[] lines : code.shaderSource())
+                for (CharSequence line : lines)
+                    source.append(line);
+        }
+        return source.toString();
+    }
+
+    /**
+     * Look up the location of every active uniform in the program, and bind
+     * its uniform blocks to their binding points.
+     * 
+     * @param gl
+     */
+    private void loadUniforms(GL3 gl) {
+        int block = gl.glGetUniformBlockIndex(id, "FrameConstants");
+        if (block != GL3.GL_INVALID_INDEX)
+            gl.glUniformBlockBinding(id, block, FRAME_CONSTANTS);
+
+        int[] params = new int[2];
+        gl.glGetProgramiv(id, GL3.GL_ACTIVE_UNIFORMS, params, 0);
+        gl.glGetProgramiv(id, GL3.GL_ACTIVE_UNIFORM_MAX_LENGTH, params, 1);
+        int count = params[0];
+        byte[] name = new byte[Math.max(params[1], 1)];
+        int[] length = new int[1];
+        int[] size = new int[1];
+        int[] type = new int[1];
+        for (int i = 0; i < count; i++) {
+            gl.glGetActiveUniform(id, i, name.length, length, 0, size, 0,
+                    type, 0, name, 0);
+            String uniform = new String(name, 0, length[0]);
+            int loc = gl.glGetUniformLocation(id, uniform);
+            uniforms.put(uniform, loc);
+            // Arrays are reported as "name[0]" but may be set as "name"
+            if (uniform.endsWith("[0]"))
+                uniforms.put(uniform.substring(0, uniform.length() - 3), loc);
+        }
+    }
+
+    /**
+     * Get the location of the named uniform in this shader, or -1 if the
+     * shader has no such uniform.
+     * 
+     * Locations are looked up when the shader is linked. Names that were not
+     * found then, such as later elements of arrays, are looked up the first
+     * time they are asked for.
+     * 
+     * @param gl
+     * @param name
+     * @return
+     */
+    public int getUniformLocation(GL3 gl, String name) {
+        Integer loc = uniforms.get(name);
+        if (loc == null) {
+            loc = gl.glGetUniformLocation(id, name);
+            uniforms.put(name, loc);
+        }
+        return loc;
     }
 
     /**
      * "Use" this shader in the given context.
      * 
-     * This just calls glUseProgram() with this shader.
+     * This calls glUseProgram() with this shader and makes it the shader the
+     * static setters apply to.
      * 
      * @param gl
      */
     public void use(GL3 gl) {
-        gl.glUseProgram(id);
+        GLState.useProgram(gl, id);
+        current = this;
     }
 
     /**
@@ -111,7 +298,18 @@ public class Shader {
      * @param gl
      */
     public void destroy(GL3 gl) {
-        gl.glDeleteProgram(id);
+        GLState.deleteProgram(gl, id);
+        if (current == this)
+            current = null;
+    }
+
+    /**
+     * Get the shader last made current with use().
+     * 
+     * @return The current shader, or null if there is none
+     */
+    public static Shader getCurrent() {
+        return current;
     }
 
     /**
@@ -130,9 +328,7 @@ public class Shader {
      * @param mat
      */
     public static void setModelMatrix(GL3 gl, Matrix3 mat) {
-        int ids[] = new int[1];
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int modelLoc = gl.glGetUniformLocation(ids[0], "model_matrix");
+        int modelLoc = location(gl, "model_matrix");
         gl.glUniformMatrix3fv(modelLoc, 1, false, mat.getValues(), 0);
     }
 
@@ -143,9 +339,7 @@ public class Shader {
      * @param mat
      */
     public static void setModelMatrix(GL3 gl, Matrix4 mat) {
-        int ids[] = new int[1];
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int modelLoc = gl.glGetUniformLocation(ids[0], "model_matrix");
+        int modelLoc = location(gl, "model_matrix");
         gl.glUniformMatrix4fv(modelLoc, 1, false, mat.getValues(), 0);
     }
 
@@ -156,9 +350,7 @@ public class Shader {
      * @param mat
      */
     public static void setViewMatrix(GL3 gl, Matrix3 mat) {
-        int ids[] = new int[1];
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int viewLoc = gl.glGetUniformLocation(ids[0], "view_matrix");
+        int viewLoc = location(gl, "view_matrix");
         gl.glUniformMatrix3fv(viewLoc, 1, false, mat.getValues(), 0);
     }
 
@@ -169,9 +361,7 @@ public class Shader {
      * @param mat
      */
     public static void setViewMatrix(GL3 gl, Matrix4 mat) {
-        int ids[] = new int[1];
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int viewLoc = gl.glGetUniformLocation(ids[0], "view_matrix");
+        int viewLoc = location(gl, "view_matrix");
         gl.glUniformMatrix4fv(viewLoc, 1, false, mat.getValues(), 0);
     }
 
@@ -182,9 +372,7 @@ public class Shader {
      * @param mat
      */
     public static void setProjMatrix(GL3 gl, Matrix4 mat) {
-        int ids[] = new int[1];
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int viewLoc = gl.glGetUniformLocation(ids[0], "proj_matrix");
+        int viewLoc = location(gl, "proj_matrix");
         gl.glUniformMatrix4fv(viewLoc, 1, false, mat.getValues(), 0);
     }
 
@@ -206,9 +394,7 @@ public class Shader {
      * @param point3d
      */
     public static void setPoint3D(GL3 gl, String var, Point3D point3d) {
-        int ids[] = new int[1];
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int loc = gl.glGetUniformLocation(ids[0], var);
+        int loc = location(gl, var);
         gl.glUniform3f(loc, point3d.getX(), point3d.getY(), point3d.getZ());
     }
     
@@ -220,9 +406,7 @@ public class Shader {
      * @param color
      */
     public static void setColor(GL3 gl, String var, Color color) {
-        int ids[] = new int[1];
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int loc = gl.glGetUniformLocation(ids[0], var);
+        int loc = location(gl, var);
         gl.glUniform3f(loc, color.getRed() / 255f, color.getGreen() / 255f,
                 color.getBlue() / 255f);
     }
@@ -235,9 +419,7 @@ public class Shader {
      * @param color
      */
     public static void setColorWithAlpha(GL3 gl, String var, Color color) {
-        int ids[] = new int[1];
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int loc = gl.glGetUniformLocation(ids[0], var);
+        int loc = location(gl, var);
         gl.glUniform4f(loc, color.getRed() / 255f, color.getGreen() / 255f,
                 color.getBlue() / 255f, color.getAlpha() / 255f);
     }
@@ -250,16 +432,26 @@ public class Shader {
      * @param f
      */
     public static void setFloat(GL3 gl, String var, float f) {
-        int ids[] = new int[1];
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int loc = gl.glGetUniformLocation(ids[0], var);
+        int loc = location(gl, var);
         gl.glUniform1f(loc, f);
     }
 
     public static void setInt(GL3 gl, String var, int i) {
+        int loc = location(gl, var);
+        gl.glUniform1i(loc, i);
+    }
+
+    /**
+     * Get the location of the named uniform in the current shader.
+     * 
+     * If no shader has been made current with use(), the program is asked for
+     * it.
+     */
+    private static int location(GL3 gl, String name) {
+        if (current != null)
+            return current.getUniformLocation(gl, name);
         int ids[] = new int[1];
         gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int loc = gl.glGetUniformLocation(ids[0], var);
-        gl.glUniform1i(loc, i);
+        return gl.glGetUniformLocation(ids[0], name);
     }
 }
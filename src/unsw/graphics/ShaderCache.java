@@ -0,0 +1,209 @@
+package unsw.graphics;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL2ES2;
+import com.jogamp.opengl.GL3;
+
+/**
+ * A cache of linked shader programs on disk.
+ *
+ * After a program is compiled and linked from source, its binary is saved
+ * with glGetProgramBinary(). The next time the same source is loaded on the
+ * same driver, the binary is loaded with glProgramBinary() instead, which
+ * skips the compiler. Each binary is stored under a hash of the shader
+ * source and the driver's vendor, renderer and version strings, so editing
+ * a shader or updating the driver just misses the cache. A binary the
+ * driver rejects anyway is deleted, and the program is compiled from source
+ * again.
+ *
+ * Use Shader.setCache() to have every shader use a cache.
+ */
+public class ShaderCache {
+
+    private final File directory;
+
+    // Whether the driver can save program binaries, or null if not known yet
+    private Boolean supported;
+
+    /**
+     * Create a cache that keeps program binaries in the given directory. The
+     * directory is created when the first binary is saved.
+     *
+     * @param directory
+     */
+    public ShaderCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * A cache in the system's temporary directory.
+     *
+     * @return
+     */
+    public static ShaderCache inTempDirectory() {
+        return new ShaderCache(new File(System.getProperty("java.io.tmpdir"),
+                "unswgraph-shaders"));
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Whether the current driver can save and load program binaries.
+     *
+     * @param gl
+     * @return
+     */
+    public boolean isSupported(GL3 gl) {
+        if (supported == null) {
+            int[] formats = new int[1];
+            if (gl.isFunctionAvailable("glProgramBinary"))
+                gl.glGetIntegerv(GL2ES2.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+            supported = formats[0] > 0;
+        }
+        return supported;
+    }
+
+    /**
+     * Get the key a program with the given source is cached under on the
+     * current driver.
+     *
+     * @param gl
+     * @param sources The source of each shader in the program, in order
+     * @return
+     */
+    public String key(GL3 gl, CharSequence... sources) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        update(digest, gl.glGetString(GL.GL_VENDOR));
+        update(digest, gl.glGetString(GL.GL_RENDERER));
+        update(digest, gl.glGetString(GL.GL_VERSION));
+        for (CharSequence source : sources)
+            update(digest, source);
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest())
+            key.append(String.format("%02x", b));
+        return key.toString();
+    }
+
+    /**
+     * Load the program cached under the given key.
+     *
+     * @param gl
+     * @param key
+     * @return The linked program, or 0 if it is not in the cache or the driver
+     * rejected it
+     */
+    public int load(GL3 gl, String key) {
+        if (!isSupported(gl))
+            return 0;
+        File file = file(key);
+        if (!file.isFile())
+            return 0;
+
+        int format;
+        byte[] binary;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            format = in.readInt();
+            binary = new byte[in.readInt()];
+            in.readFully(binary);
+        } catch (IOException e) {
+            System.err.println("Could not read cached shader " + file + ": " + e);
+            file.delete();
+            return 0;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(binary.length);
+        buffer.put(binary).flip();
+        int program = gl.glCreateProgram();
+        gl.glProgramBinary(program, format, buffer, binary.length);
+
+        int[] status = new int[1];
+        gl.glGetProgramiv(program, GL2ES2.GL_LINK_STATUS, status, 0);
+        if (status[0] != GL.GL_TRUE) {
+            gl.glDeleteProgram(program);
+            file.delete();
+            return 0;
+        }
+        return program;
+    }
+
+    /**
+     * Ask the driver to keep the binary of a program when it is linked. Call
+     * this before linking a program that will be saved.
+     *
+     * @param gl
+     * @param program
+     */
+    public void prepare(GL3 gl, int program) {
+        if (isSupported(gl))
+            gl.glProgramParameteri(program, GL3.GL_PROGRAM_BINARY_RETRIEVABLE_HINT,
+                    GL.GL_TRUE);
+    }
+
+    /**
+     * Save the binary of a linked program under the given key.
+     *
+     * @param gl
+     * @param program
+     * @param key
+     */
+    public void save(GL3 gl, int program, String key) {
+        if (!isSupported(gl))
+            return;
+        int[] params = new int[2];
+        gl.glGetProgramiv(program, GL2ES2.GL_PROGRAM_BINARY_LENGTH, params, 0);
+        if (params[0] <= 0)
+            return;
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(params[0]);
+        gl.glGetProgramBinary(program, params[0], params, 0, params, 1, buffer);
+        byte[] binary = new byte[params[0]];
+        buffer.get(binary);
+
+        // Write to a temporary file first so a reader never sees half a binary
+        File file = file(key);
+        File temp = new File(directory, key + ".tmp");
+        directory.mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+            out.writeInt(params[1]);
+            out.writeInt(binary.length);
+            out.write(binary);
+        } catch (IOException e) {
+            System.err.println("Could not cache shader " + file + ": " + e);
+            temp.delete();
+            return;
+        }
+        file.delete();
+        if (!temp.renameTo(file))
+            temp.delete();
+    }
+
+    private File file(String key) {
+        return new File(directory, key + ".bin");
+    }
+
+    private static void update(MessageDigest digest, CharSequence str) {
+        byte[] bytes = String.valueOf(str).getBytes(StandardCharsets.UTF_8);
+        // Prefix the length so adjacent strings cannot run into each other
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+}
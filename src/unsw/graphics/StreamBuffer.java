@@ -0,0 +1,164 @@
+package unsw.graphics;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+
+/**
+ * A vertex buffer for data that is written once and drawn once, such as the
+ * vertices of a shape drawn with its draw() method.
+ *
+ * Rather than creating a buffer for each draw and deleting it afterwards,
+ * map() hands out the next unused range of one buffer, mapped without
+ * synchronisation, as nothing already drawn reads from it. When the buffer
+ * is full it is orphaned: glBufferData() gives it new storage, so the draws
+ * still reading the old storage carry on while the range starts again from
+ * the front. A draw larger than the buffer grows it.
+ *
+ * Calls to map() and unmap() come in pairs. Between them the buffer is bound
+ * to GL_ARRAY_BUFFER, and it is still bound after unmap(), so the range it
+ * returns can be given to glVertexAttribPointer() straight away:
+ *
+ * <pre>
+ * FloatBuffer vertices = StreamBuffer.map(gl, 3 * count);
+ * ... put the vertices ...
+ * int offset = StreamBuffer.unmap(gl);
+ * GLState.bindDefaultVertexArray(gl);
+ * gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, offset);
+ * </pre>
+ *
+ * Like GLState, this assumes a single OpenGL context, used from one thread.
+ * Call reset() whenever a new context is created, and destroy() before it is
+ * destroyed.
+ */
+public class StreamBuffer {
+
+    /**
+     * The size the buffer starts at, in bytes.
+     */
+    public static final int INITIAL_CAPACITY = 1 << 20;
+
+    private static final int ACCESS = GL.GL_MAP_WRITE_BIT
+            | GL.GL_MAP_INVALIDATE_RANGE_BIT | GL.GL_MAP_UNSYNCHRONIZED_BIT;
+
+    private static int name;
+    private static int capacity;
+
+    // The byte offset of the next free range, and of the mapped range
+    private static int head;
+    private static int start;
+
+    // Where the mapped range is written when the buffer could not be mapped
+    private static ByteBuffer scratch;
+    private static ByteBuffer mapped;
+
+    private static long orphans;
+
+    /**
+     * Forget the buffer, for a new context.
+     */
+    public static void reset() {
+        name = 0;
+        capacity = 0;
+        head = 0;
+        mapped = null;
+    }
+
+    /**
+     * Map the next range of the buffer for writing.
+     *
+     * @param gl
+     * @param floats The number of floats to write
+     * @return The range, to be written from position 0 and then given back
+     * with unmap()
+     */
+    public static FloatBuffer map(GL3 gl, int floats) {
+        int bytes = floats * Float.BYTES;
+        if (name == 0) {
+            int[] names = new int[1];
+            gl.glGenBuffers(1, names, 0);
+            name = names[0];
+            allocate(gl, Math.max(INITIAL_CAPACITY, bytes));
+        } else if (bytes > capacity) {
+            allocate(gl, Math.max(capacity * 2, bytes));
+        } else if (head + bytes > capacity) {
+            allocate(gl, capacity);
+        } else {
+            GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, name);
+        }
+
+        start = head;
+        head += bytes;
+        ByteBuffer range = bytes == 0 ? null
+                : gl.glMapBufferRange(GL.GL_ARRAY_BUFFER, start, bytes, ACCESS);
+        if (range == null) {
+            // Unmappable, or nothing to map: write to memory and copy it in
+            if (scratch == null || scratch.capacity() < bytes)
+                scratch = ByteBuffer.allocateDirect(Math.max(bytes, 1024))
+                        .order(ByteOrder.nativeOrder());
+            scratch.clear().limit(bytes);
+            mapped = scratch;
+            return scratch.asFloatBuffer();
+        }
+        mapped = range;
+        return range.order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /**
+     * Finish writing the range returned by map(), leaving the buffer bound to
+     * GL_ARRAY_BUFFER.
+     *
+     * @param gl
+     * @return The byte offset of the range in the buffer
+     */
+    public static int unmap(GL3 gl) {
+        if (mapped == scratch) {
+            if (scratch.limit() > 0)
+                gl.glBufferSubData(GL.GL_ARRAY_BUFFER, start, scratch.limit(), scratch);
+        } else {
+            gl.glUnmapBuffer(GL.GL_ARRAY_BUFFER);
+        }
+        mapped = null;
+        return start;
+    }
+
+    /**
+     * The number of times the buffer has been orphaned or grown since the
+     * counts were last reset.
+     *
+     * @return
+     */
+    public static long getOrphans() {
+        return orphans;
+    }
+
+    public static void resetCounts() {
+        orphans = 0;
+    }
+
+    /**
+     * Delete the buffer.
+     *
+     * @param gl
+     */
+    public static void destroy(GL3 gl) {
+        if (name != 0)
+            GLState.deleteBuffers(gl, 1, new int[] { name }, 0);
+        reset();
+    }
+
+    /**
+     * Give the buffer new storage of the given size, starting from the front.
+     */
+    private static void allocate(GL3 gl, int bytes) {
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, name);
+        gl.glBufferData(GL.GL_ARRAY_BUFFER, bytes, null, GL3.GL_STREAM_DRAW);
+        if (capacity != 0)
+            orphans++;
+        capacity = bytes;
+        head = 0;
+    }
+}
@@ -9,12 +9,54 @@ import javax.imageio.ImageIO;
 
 import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.util.GLBuffers;
 import com.jogamp.opengl.util.awt.ImageUtil;
 import com.jogamp.opengl.util.texture.TextureData;
 import com.jogamp.opengl.util.texture.awt.AWTTextureIO;
 
 public class Texture {
 
+    /**
+     * An image read from a file into RGBA bytes, bottom row first, ready to
+     * be made into a texture. Reading it needs no OpenGL, so it can be done
+     * on any thread.
+     */
+    public static class Image {
+        private final ByteBuffer pixels;
+        private final int width;
+        private final int height;
+
+        public Image(String fileName) throws IOException {
+            BufferedImage img = ImageIO.read(new File(fileName));
+            if (img == null)
+                throw new IOException("Unknown image format: " + fileName);
+            width = img.getWidth();
+            height = img.getHeight();
+            int[] argb = img.getRGB(0, 0, width, height, null, 0, width);
+            pixels = GLBuffers.newDirectByteBuffer(width * height * 4);
+            for (int y = height - 1; y >= 0; y--) {
+                for (int x = 0; x < width; x++) {
+                    int c = argb[y * width + x];
+                    pixels.put((byte) (c >> 16)).put((byte) (c >> 8)).put((byte) c)
+                            .put((byte) (c >> 24));
+                }
+            }
+            pixels.rewind();
+        }
+
+        public ByteBuffer getPixels() {
+            return pixels;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+    }
+
     private boolean mipMapEnabled;
 
     private int id;
@@ -51,7 +93,7 @@ public class Texture {
 
         id = ids[0];
 
-        gl.glBindTexture(GL.GL_TEXTURE_2D, id);
+        GLState.bindTexture(gl, GL.GL_TEXTURE_2D, id);
 
         // Build texture initialised with image data.
         gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, data.getInternalFormat(),
@@ -101,7 +143,7 @@ public class Texture {
         
         id = ids[0];
         
-        gl.glBindTexture(GL.GL_TEXTURE_2D, id);
+        GLState.bindTexture(gl, GL.GL_TEXTURE_2D, id);
 
         // Specify image data for currently active texture object.
         gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_RGBA, size, size, 0,
@@ -111,6 +153,28 @@ public class Texture {
 
     }
     
+    /**
+     * Create a texture from an image that has already been read.
+     * @param gl
+     * @param image
+     * @param mipmaps
+     */
+    public Texture(GL3 gl, Image image, boolean mipmaps) {
+        mipMapEnabled = mipmaps;
+        int[] ids = new int[1];
+        gl.glGenTextures(1, ids, 0);
+
+        id = ids[0];
+
+        GLState.bindTexture(gl, GL.GL_TEXTURE_2D, id);
+
+        gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_RGBA, image.getWidth(),
+                image.getHeight(), 0, GL.GL_RGBA, GL.GL_UNSIGNED_BYTE, image.getPixels());
+
+        setFilters(gl);
+
+    }
+
     /**
      * Create a texture with NO associated buffer.
      * @param gl
@@ -124,7 +188,7 @@ public class Texture {
         
         id = ids[0];
         
-        gl.glBindTexture(GL.GL_TEXTURE_2D, id);
+        GLState.bindTexture(gl, GL.GL_TEXTURE_2D, id);
 
         setFilters(gl);
 
@@ -145,7 +209,7 @@ public class Texture {
         gl.glGenTextures(1, ids, 0);
         id = ids[0];
 
-        gl.glBindTexture(GL.GL_TEXTURE_CUBE_MAP, id);
+        GLState.bindTexture(gl, GL.GL_TEXTURE_CUBE_MAP, id);
         
         String[] filenames = {left, right, bottom, top, front, back};
         int[] faces = {GL.GL_TEXTURE_CUBE_MAP_NEGATIVE_X, 
@@ -189,6 +253,6 @@ public class Texture {
     }
 
     public void destroy(GL3 gl) {
-        gl.glDeleteTextures(1, new int[] {id}, 0);
+        GLState.deleteTextures(gl, 1, new int[] {id}, 0);
     }
 }
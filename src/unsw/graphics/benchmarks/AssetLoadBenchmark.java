@@ -0,0 +1,123 @@
+package unsw.graphics.benchmarks;
+
+import java.io.IOException;
+import java.util.Random;
+
+import com.jogamp.opengl.GL3;
+
+import unsw.graphics.AssetLoader;
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Matrix4;
+import unsw.graphics.Shader;
+import unsw.graphics.Texture;
+import unsw.graphics.Vector3;
+import unsw.graphics.geometry.TriangleMesh;
+import unsw.graphics.geometry.ViewFrustum;
+import unsw.graphics.world.Avatar;
+import unsw.graphics.world.Terrain;
+
+/**
+ * Compares loading the world's textures, terrain, trees and avatar before the
+ * first frame with loading them through an AssetLoader, against a counting
+ * context.
+ *
+ * Loading everything first, the time to the first frame is the whole load.
+ * With the loader, frames are drawn every 1/60 s from the start, with
+ * placeholders, and each frame uploads what is ready within the same budget
+ * as the world. This reports the time to the first frame, the worst frame
+ * while assets were streaming in, and how long until everything was loaded.
+ * Frame times are CPU times, as the counting context draws nothing.
+ *
+ * Usage: AssetLoadBenchmark [number of trees]
+ */
+public class AssetLoadBenchmark {
+
+    private static final String[] TEXTURES = { "res/textures/grass.jpg",
+            "res/textures/tree.bmp", "res/textures/bunny.jpg", "res/textures/road.jpg" };
+
+    private static final long FRAME = 1000000000 / 60;
+    private static final long UPLOAD_BUDGET = 2000000;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int treeCount = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+
+        GLCallCounter counter = new GLCallCounter();
+        GL3 gl = counter.getGL();
+        new Shader(gl, gl.glCreateProgram()).use(gl);
+        ViewFrustum.setCamera(CoordFrame3D.identity().translate(-50, -3, -50).getMatrix(),
+                Matrix4.perspective(60, 4 / 3f, 0.01f, 100));
+
+        // Once to fill the mesh cache and warm up, then measured
+        loadFirst(gl, treeCount);
+        long start = System.nanoTime();
+        loadFirst(gl, treeCount);
+        double first = (System.nanoTime() - start) / 1e6;
+        System.out.printf("Loading first: first frame after %.1f ms%n", first);
+
+        start = System.nanoTime();
+        AssetLoader loader = new AssetLoader();
+        TriangleMesh placeholder = new TriangleMesh("res/models/cube.ply", true, false);
+        placeholder.init(gl);
+        Terrain terrain = terrain(treeCount);
+        terrain.makeTerrain(loader, placeholder);
+        Avatar avatar = new Avatar();
+        avatar.init(loader, placeholder);
+        for (String texture : TEXTURES)
+            loader.loadTexture(texture, true);
+
+        double firstFrame = -1, worst = 0;
+        int frames = 0;
+        long next = System.nanoTime();
+        while (true) {
+            long frameStart = System.nanoTime();
+            loader.upload(gl, UPLOAD_BUDGET);
+            drawFrame(gl, terrain, avatar);
+            long end = System.nanoTime();
+            frames++;
+            if (firstFrame < 0)
+                firstFrame = (end - start) / 1e6;
+            worst = Math.max(worst, (end - frameStart) / 1e6);
+            if (loader.getPending() == 0)
+                break;
+
+            next += FRAME;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0)
+                Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+        }
+        double loaded = (System.nanoTime() - start) / 1e6;
+        loader.shutdown();
+        System.out.printf("Streaming:     first frame after %.1f ms, worst frame %.1f ms, "
+                + "all loaded after %.1f ms (%d frames)%n", firstFrame, worst, loaded, frames);
+    }
+
+    /**
+     * Load everything, as the world did, then draw a frame.
+     */
+    private static void loadFirst(GL3 gl, int treeCount) throws IOException {
+        for (String texture : TEXTURES)
+            new Texture(gl, new Texture.Image(texture), true);
+        Terrain terrain = terrain(treeCount);
+        terrain.makeTerrain(gl);
+        Avatar avatar = new Avatar();
+        avatar.init(gl);
+        drawFrame(gl, terrain, avatar);
+    }
+
+    private static Terrain terrain(int treeCount) {
+        int size = 100;
+        Terrain terrain = new Terrain(size, size, new Vector3(0, 1, 0));
+        Random rand = new Random(42);
+        for (int i = 0; i < treeCount; i++)
+            terrain.addTree(rand.nextFloat() * (size - 1), rand.nextFloat() * (size - 1));
+        return terrain;
+    }
+
+    private static void drawFrame(GL3 gl, Terrain terrain, Avatar avatar) {
+        CoordFrame3D frame = CoordFrame3D.identity();
+        terrain.drawTerrain(gl, frame);
+        terrain.drawTrees(gl, frame);
+        avatar.draw(gl, frame);
+        terrain.drawRoads(gl, frame);
+    }
+}
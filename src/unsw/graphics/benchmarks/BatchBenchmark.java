@@ -0,0 +1,96 @@
+package unsw.graphics.benchmarks;
+
+import java.util.Random;
+
+import com.jogamp.opengl.GL3;
+
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Matrix4;
+import unsw.graphics.Shader;
+import unsw.graphics.Vector3;
+import unsw.graphics.geometry.StaticBatch;
+import unsw.graphics.geometry.ViewFrustum;
+import unsw.graphics.world.Terrain;
+import unsw.graphics.world.Tree;
+
+/**
+ * Draws a terrain's trees as the camera turns on the spot in its middle,
+ * against a counting context. Compares drawing each tree's own meshes with
+ * drawing the visible trees from one StaticBatch, as Terrain does, by the
+ * draw calls and GL calls sent and the CPU time per frame. Both cull the
+ * trees out of view and pick each tree's level of detail the same way.
+ *
+ * The counting context draws nothing, so this does not measure what the
+ * driver saves on each draw call it is not sent.
+ *
+ * Usage: BatchBenchmark [trees] [frames]
+ */
+public class BatchBenchmark {
+
+    private static final int SIZE = 100;
+
+    public static void main(String[] args) {
+        int treeCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 36;
+
+        GLCallCounter counter = new GLCallCounter();
+        GL3 gl = counter.getGL();
+        new Shader(gl, gl.glCreateProgram()).use(gl);
+
+        // The same trees twice, one set left with their own meshes
+        Terrain separate = terrain(treeCount);
+        for (Tree tree : separate.trees())
+            tree.init(gl);
+        Terrain batched = terrain(treeCount);
+        batched.makeTerrain(gl);
+
+        // Time merging the trees, apart from generating them
+        long start = System.nanoTime();
+        StaticBatch.Builder builder = new StaticBatch.Builder();
+        for (Tree tree : separate.trees())
+            tree.addTo(builder);
+        StaticBatch batch = builder.build();
+        System.out.printf("%d trees, %d vertices and %d indices, batched in %.1f ms%n",
+                treeCount, batch.getVertexCount(), batch.getIndexCount(),
+                (System.nanoTime() - start) / 1e6);
+
+        Matrix4 proj = Matrix4.perspective(60, 16 / 9f, 0.01f, 100);
+        CoordFrame3D frame = CoordFrame3D.identity();
+        for (int run = 0; run < 2; run++) {
+            for (boolean batching : new boolean[] { false, true }) {
+                counter.reset();
+                ViewFrustum.resetCounts();
+                start = System.nanoTime();
+                for (int i = 0; i < frames; i++) {
+                    ViewFrustum.setCamera(CoordFrame3D.identity().translate(0, -2, 0)
+                            .rotateY(i * 360f / frames).translate(-SIZE / 2, 0, -SIZE / 2)
+                            .getMatrix(), proj);
+                    if (batching) {
+                        batched.drawTrees(gl, frame);
+                    } else {
+                        for (Tree tree : separate.trees())
+                            tree.draw(gl, frame);
+                    }
+                }
+                double ms = (System.nanoTime() - start) / 1e6 / frames;
+                // The last run is measured, the first warms up
+                if (run == 1)
+                    System.out.printf("%s: %.1f trees drawn, %.1f draw calls, "
+                            + "%.1f GL calls, %.3f ms per frame%n",
+                            batching ? "Batched" : "Separate",
+                            ViewFrustum.getDrawnMeshes() / (double) frames,
+                            counter.drawCalls() / (double) frames,
+                            counter.total() / (double) frames, ms);
+            }
+        }
+        ViewFrustum.clearCamera();
+    }
+
+    private static Terrain terrain(int treeCount) {
+        Terrain terrain = new Terrain(SIZE, SIZE, new Vector3(0, 1, 0));
+        Random rand = new Random(42);
+        for (int i = 0; i < treeCount; i++)
+            terrain.addTree(rand.nextFloat() * (SIZE - 1), rand.nextFloat() * (SIZE - 1));
+        return terrain;
+    }
+}
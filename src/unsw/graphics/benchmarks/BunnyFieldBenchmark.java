@@ -0,0 +1,134 @@
+package unsw.graphics.benchmarks;
+
+import java.awt.Color;
+import java.io.IOException;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.GLAutoDrawable;
+import com.jogamp.opengl.GLCapabilities;
+import com.jogamp.opengl.GLDrawableFactory;
+import com.jogamp.opengl.GLEventListener;
+import com.jogamp.opengl.GLOffscreenAutoDrawable;
+import com.jogamp.opengl.GLProfile;
+
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GLState;
+import unsw.graphics.Matrix4;
+import unsw.graphics.Shader;
+import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Measures the frame time of a field of bunnies, with the triangles in the
+ * order bunny.ply lists them and optimized for the vertex cache.
+ *
+ * The bunnies are Gouraud shaded, so most of the work is in the vertex
+ * shader. Like ShaderCacheBenchmark this needs a real OpenGL 3 driver, which
+ * it uses through an offscreen drawable.
+ *
+ * Usage: BunnyFieldBenchmark [bunnies per side] [frames]
+ */
+public class BunnyFieldBenchmark implements GLEventListener {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    private final int side;
+    private final int frames;
+
+    public BunnyFieldBenchmark(int side, int frames) {
+        this.side = side;
+        this.frames = frames;
+    }
+
+    public static void main(String[] args) {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        GLProfile profile = GLProfile.get(GLProfile.GL3);
+        GLOffscreenAutoDrawable drawable = GLDrawableFactory.getFactory(profile)
+                .createOffscreenAutoDrawable(null, new GLCapabilities(profile), null, WIDTH,
+                        HEIGHT);
+        drawable.addGLEventListener(new BunnyFieldBenchmark(side, frames));
+        drawable.display();
+        drawable.destroy();
+    }
+
+    @Override
+    public void init(GLAutoDrawable drawable) {
+        GL3 gl = drawable.getGL().getGL3();
+        System.out.println(gl.glGetString(GL3.GL_RENDERER) + ", "
+                + gl.glGetString(GL3.GL_VERSION));
+        GLState.reset();
+
+        Shader shader = new Shader(gl, "shaders/vertex_gouraud.glsl",
+                "shaders/fragment_gouraud.glsl");
+        shader.use(gl);
+        Shader.setProjMatrix(gl, Matrix4.perspective(60, WIDTH / (float) HEIGHT, 0.1f, 100));
+        Shader.setViewMatrix(gl, Matrix4.translation(0, -0.1f, -0.15f * side)
+                .multiply(Matrix4.rotationX(30)));
+        Shader.setPoint3D(gl, "lightPos", new Point3D(0, 0, 5));
+        Shader.setColor(gl, "lightIntensity", Color.WHITE);
+        Shader.setColor(gl, "ambientIntensity", new Color(0.2f, 0.2f, 0.2f));
+        Shader.setColor(gl, "ambientCoeff", Color.WHITE);
+        Shader.setColor(gl, "diffuseCoeff", new Color(0.5f, 0.5f, 0.5f));
+        Shader.setColor(gl, "specularCoeff", new Color(0.8f, 0.8f, 0.8f));
+        Shader.setFloat(gl, "phongExp", 16f);
+        Shader.setPenColor(gl, Color.WHITE);
+        GLState.enable(gl, GL.GL_DEPTH_TEST);
+
+        // Parse the file each time rather than use a cached mesh
+        TriangleMesh.setCache(null);
+        try {
+            for (boolean optimize : new boolean[] { false, true }) {
+                TriangleMesh bunny = new TriangleMesh("res/models/bunny.ply", true, false,
+                        optimize);
+                bunny.init(gl);
+                System.out.printf("%-12s %.2f ms per frame%n",
+                        optimize ? "Optimized:" : "File order:", time(gl, bunny));
+                bunny.destroy(gl);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        shader.destroy(gl);
+    }
+
+    /**
+     * Draw the field for the given number of frames.
+     *
+     * @return The best frame time in milliseconds
+     */
+    private double time(GL3 gl, TriangleMesh bunny) {
+        double best = Double.MAX_VALUE;
+        for (int frame = -1; frame < frames; frame++) {
+            long start = System.nanoTime();
+            gl.glClear(GL.GL_COLOR_BUFFER_BIT | GL.GL_DEPTH_BUFFER_BIT);
+            for (int x = 0; x < side; x++) {
+                for (int z = 0; z < side; z++) {
+                    CoordFrame3D at = CoordFrame3D.identity()
+                            .translate(0.15f * (x - side / 2f), 0, -0.15f * z);
+                    bunny.draw(gl, at);
+                }
+            }
+            gl.glFinish();
+            // The first frame warms up the driver
+            if (frame >= 0)
+                best = Math.min(best, (System.nanoTime() - start) / 1e6);
+        }
+        return best;
+    }
+
+    @Override
+    public void dispose(GLAutoDrawable drawable) {
+    }
+
+    @Override
+    public void display(GLAutoDrawable drawable) {
+    }
+
+    @Override
+    public void reshape(GLAutoDrawable drawable, int x, int y, int width, int height) {
+    }
+}
@@ -0,0 +1,66 @@
+package unsw.graphics.benchmarks;
+
+import java.io.IOException;
+
+import com.jogamp.opengl.GL3;
+
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Matrix4;
+import unsw.graphics.Shader;
+import unsw.graphics.geometry.TriangleMesh;
+import unsw.graphics.geometry.ViewFrustum;
+
+/**
+ * Draws a forest of trees around the camera, with the world's field of view,
+ * as the camera turns on the spot. Compares drawing every tree with drawing
+ * only those in view, by the meshes drawn and culled, the triangles and GL
+ * calls sent, and the CPU time per frame.
+ *
+ * Usage: CullingBenchmark [trees per side] [frames]
+ */
+public class CullingBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 36;
+
+        GLCallCounter counter = new GLCallCounter();
+        GL3 gl = counter.getGL();
+        new Shader(gl, gl.glCreateProgram()).use(gl);
+
+        TriangleMesh tree = new TriangleMesh("res/models/tree.ply", true, true, true);
+        tree.init(gl);
+        Matrix4 proj = Matrix4.perspective(60, 16 / 9f, 0.01f, 100);
+
+        for (boolean cull : new boolean[] { false, true }) {
+            counter.reset();
+            ViewFrustum.resetCounts();
+            long triangles = 0;
+            long start = System.nanoTime();
+            for (int frame = 0; frame < frames; frame++) {
+                ViewFrustum.setCamera(CoordFrame3D.identity().translate(0, -1, 0)
+                        .rotateY(frame * 360f / frames).getMatrix(), proj);
+                for (int x = 0; x < side; x++) {
+                    for (int z = 0; z < side; z++) {
+                        CoordFrame3D at = CoordFrame3D.identity()
+                                .translate(2 * x - side + 1, 0, 2 * z - side + 1)
+                                .scale(0.2f, 0.2f, 0.2f);
+                        if (!cull) {
+                            tree.draw(gl, at);
+                            triangles += tree.getTriangleCount();
+                        } else if (tree.drawIfVisible(gl, at)) {
+                            triangles += tree.getTriangleCount();
+                        }
+                    }
+                }
+            }
+            double ms = (System.nanoTime() - start) / 1e6 / frames;
+            System.out.printf("%s: %.1f drawn, %.1f culled, %d triangles, "
+                    + "%.1f GL calls, %.3f ms per frame%n", cull ? "Culled" : "All",
+                    (cull ? ViewFrustum.getDrawnMeshes() : side * side * frames) / (double) frames,
+                    ViewFrustum.getCulledMeshes() / (double) frames, triangles / frames,
+                    counter.total() / (double) frames, ms);
+        }
+        ViewFrustum.clearCamera();
+    }
+}
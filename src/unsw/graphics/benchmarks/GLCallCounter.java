@@ -0,0 +1,149 @@
+package unsw.graphics.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.jogamp.opengl.GL3;
+
+/**
+ * A fake OpenGL context that counts the calls made to it.
+ *
+ * This allows the GL traffic of the library's drawing code to be measured
+ * without a window or a graphics card. Every call does nothing and returns a
+ * zero value, except that glGen* calls hand out increasing names so that
+ * buffers and textures can be told apart.
+ *
+ * The counter is not thread safe and is only meant for benchmarks.
+ */
+public class GLCallCounter implements InvocationHandler {
+
+    private final Map<String, Integer> counts = new TreeMap<String, Integer>();
+
+    private int nextName = 1;
+
+    private ByteBuffer mapped = ByteBuffer.allocateDirect(0);
+
+    private final GL3 gl;
+
+    public GLCallCounter() {
+        gl = (GL3) Proxy.newProxyInstance(GL3.class.getClassLoader(),
+                new Class<?>[] { GL3.class }, this);
+    }
+
+    /**
+     * Get the counting GL3 context.
+     *
+     * @return
+     */
+    public GL3 getGL() {
+        return gl;
+    }
+
+    /**
+     * The total number of GL calls made since the last reset.
+     *
+     * @return
+     */
+    public int total() {
+        int total = 0;
+        for (int count : counts.values())
+            total += count;
+        return total;
+    }
+
+    /**
+     * The number of calls to the given GL function since the last reset.
+     *
+     * @param function
+     * @return
+     */
+    public int count(String function) {
+        Integer count = counts.get(function);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * The number of draw calls (glDraw* and glMultiDraw*) since the last reset.
+     *
+     * @return
+     */
+    public int drawCalls() {
+        int total = 0;
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            if (e.getKey().startsWith("glDraw") || e.getKey().startsWith("glMultiDraw"))
+                total += e.getValue();
+        }
+        return total;
+    }
+
+    /**
+     * Forget all counts.
+     */
+    public void reset() {
+        counts.clear();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        for (Map.Entry<String, Integer> e : counts.entrySet())
+            str.append(String.format("  %-32s %d%n", e.getKey(), e.getValue()));
+        str.append(String.format("  %-32s %d%n", "total", total()));
+        return str.toString();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (method.getDeclaringClass() == Object.class) {
+            if (name.equals("equals"))
+                return proxy == args[0];
+            if (name.equals("hashCode"))
+                return System.identityHashCode(proxy);
+            return "GLCallCounter";
+        }
+
+        Integer count = counts.get(name);
+        counts.put(name, count == null ? 1 : count + 1);
+
+        // Hand out fresh names from glGenBuffers, glGenTextures, etc.
+        if (name.startsWith("glGen") && args != null && args.length == 3
+                && args[1] instanceof int[]) {
+            int n = (Integer) args[0];
+            int[] names = (int[]) args[1];
+            int offset = (Integer) args[2];
+            for (int i = 0; i < n; i++)
+                names[offset + i] = nextName++;
+            return null;
+        }
+        if (name.equals("glCreateProgram") || name.equals("glCreateShader"))
+            return nextName++;
+        if (name.equals("glMapBufferRange") || name.equals("glMapBuffer")) {
+            // Nothing reads what is written, so one buffer is reused for
+            // every mapping rather than allocating each time
+            int length = args.length == 4 ? (int) (long) (Long) args[2] : 0;
+            if (mapped.capacity() < length)
+                mapped = ByteBuffer.allocateDirect(length);
+            ByteBuffer range = mapped.duplicate();
+            range.limit(length);
+            return range.slice();
+        }
+
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class)
+            return false;
+        if (type == int.class)
+            return 0;
+        if (type == long.class)
+            return 0L;
+        if (type == float.class)
+            return 0f;
+        if (type == double.class)
+            return 0d;
+        return null;
+    }
+}
@@ -0,0 +1,64 @@
+package unsw.graphics.benchmarks;
+
+import java.io.IOException;
+
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Matrix4;
+import unsw.graphics.geometry.LODGroup;
+import unsw.graphics.geometry.TriangleMesh;
+import unsw.graphics.geometry.ViewFrustum;
+
+/**
+ * Counts the triangles in a field of bunnies and a field of trees seen from
+ * the world's camera, drawn with the full meshes and with the levels of
+ * detail Avatar and Tree use, and times building the trees' levels.
+ *
+ * Each row of the field is one unit further from the camera than the last.
+ * The counts do not need a GL context, so they can be compared anywhere, but
+ * how much time they save depends on the GPU.
+ *
+ * Usage: LODBenchmark [rows]
+ */
+public class LODBenchmark {
+
+    private static final int COLUMNS = 20;
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        ViewFrustum.setCamera(Matrix4.translation(0, -0.75f, -5),
+                Matrix4.perspective(60, 16 / 9f, 0.01f, 100));
+
+        LODGroup bunnies = new LODGroup(new String[] { "res/models/bunny.ply",
+                "res/models/bunny_res2.ply", "res/models/bunny_res3.ply",
+                "res/models/bunny_res4.ply" }, new float[] { 0.5f, 0.25f, 0.125f }, true, true,
+                true);
+        count("bunny", bunnies, 4.5f, rows);
+
+        TriangleMesh tree = new TriangleMesh("res/models/tree.ply", true, true, true);
+        long start = System.nanoTime();
+        LODGroup trees = new LODGroup(tree, new float[] { 0.3f, 0.15f, 0.075f });
+        System.out.printf("Simplifying tree.ply: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+        count("tree", trees, 0.2f, rows);
+    }
+
+    private static void count(String name, LODGroup group, float scale, int rows) {
+        long full = 0, lod = 0;
+        int[] levels = new int[group.getLevelCount()];
+        for (int z = 0; z < rows; z++) {
+            for (int x = 0; x < COLUMNS; x++) {
+                CoordFrame3D frame = CoordFrame3D.identity()
+                        .translate(x - COLUMNS / 2f, 0, -z)
+                        .scale(scale, scale, scale);
+                int level = group.select(group.screenSize(frame), 0);
+                levels[level]++;
+                full += group.getMesh(0).getTriangleCount();
+                lod += group.getMesh(level).getTriangleCount();
+            }
+        }
+        System.out.printf("%s: %d triangles in full, %d with LOD (%.1f%%)%n", name, full, lod,
+                100.0 * lod / full);
+        for (int i = 0; i < levels.length; i++)
+            System.out.printf("  level %d (%d triangles): %d drawn%n", i,
+                    group.getMesh(i).getTriangleCount(), levels[i]);
+    }
+}
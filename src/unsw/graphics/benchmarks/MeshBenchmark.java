@@ -0,0 +1,66 @@
+package unsw.graphics.benchmarks;
+
+import java.io.IOException;
+
+import com.jogamp.opengl.GL3;
+
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GLState;
+import unsw.graphics.Shader;
+import unsw.graphics.Vector3;
+import unsw.graphics.geometry.TriangleMesh;
+import unsw.graphics.world.Terrain;
+
+/**
+ * Counts the GL calls needed to draw the bunny model and a terrain, each
+ * drawn many times in a row as they would be over several frames, with
+ * another mesh drawn in between.
+ *
+ * Usage: MeshBenchmark [draws]
+ */
+public class MeshBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int draws = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+
+        GLCallCounter counter = new GLCallCounter();
+        GL3 gl = counter.getGL();
+
+        // The counting context has no compiler, so wrap an empty program
+        new Shader(gl, gl.glCreateProgram()).use(gl);
+
+        TriangleMesh bunny = new TriangleMesh("res/models/bunny.ply", true, true);
+        bunny.init(gl);
+
+        Terrain terrain = new Terrain(100, 100, new Vector3(0, 1, 0));
+        terrain.makeTerrain(gl);
+
+        // Look the model matrix up before counting
+        bunny.draw(gl, CoordFrame3D.identity());
+
+        TriangleMesh[] meshes = { bunny, null };
+        String[] names = { "bunny.ply", "terrain" };
+        for (int m = 0; m < meshes.length; m++) {
+            counter.reset();
+            GLState.resetCounts();
+            for (int i = 0; i < draws; i++) {
+                if (meshes[m] != null)
+                    meshes[m].draw(gl, CoordFrame3D.identity());
+                else
+                    terrain.drawTerrain(gl, CoordFrame3D.identity());
+            }
+            System.out.printf("%s, %d draws: %.1f GL calls per draw%n", names[m],
+                    draws, counter.total() / (double) draws);
+            System.out.print(counter);
+        }
+
+        // Alternate between the meshes, so nothing stays bound
+        counter.reset();
+        for (int i = 0; i < draws; i++) {
+            bunny.draw(gl, CoordFrame3D.identity());
+            terrain.drawTerrain(gl, CoordFrame3D.identity());
+        }
+        System.out.printf("Alternating, %d draws: %.1f GL calls per draw%n",
+                2 * draws, counter.total() / (2.0 * draws));
+    }
+}
@@ -0,0 +1,76 @@
+package unsw.graphics.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import com.jogamp.opengl.GL3;
+
+import unsw.graphics.geometry.MeshCache;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Measures how long each model in res/models takes to load with vertex normals
+ * and texture coordinates, parsing the PLY file and from the mesh cache.
+ *
+ * The cache files are kept in a temporary directory rather than next to the
+ * models. Each time is the best of several loads, and includes initialising
+ * the mesh against a counting context, which reads every vertex once. A
+ * cached mesh is only read from disk when it is first used, so this is the
+ * fair comparison.
+ *
+ * Usage: MeshLoadBenchmark [runs]
+ */
+public class MeshLoadBenchmark {
+
+    private static final GL3 gl = new GLCallCounter().getGL();
+
+    public static void main(String[] args) throws IOException {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+        File directory = Files.createTempDirectory("unswgraph-meshes").toFile();
+        MeshCache cache = new MeshCache(directory);
+
+        File[] models = new File("res/models").listFiles((dir, name) -> name.endsWith(".ply"));
+        Arrays.sort(models);
+
+        System.out.printf("%-20s %10s %10s %10s%n", "model", "parse ms", "save ms", "cached ms");
+        for (File model : models) {
+            String path = model.getPath();
+
+            TriangleMesh.setCache(null);
+            double parse = best(path, runs);
+
+            // The first load with the cache also writes the cache file
+            TriangleMesh.setCache(cache);
+            cache.file(model, true, true, false).delete();
+            long start = System.nanoTime();
+            load(path);
+            double save = (System.nanoTime() - start) / 1e6;
+
+            double cached = best(path, runs);
+            System.out.printf("%-20s %10.2f %10.2f %10.2f%n", model.getName(), parse, save, cached);
+        }
+        TriangleMesh.setCache(new MeshCache());
+
+        for (File file : directory.listFiles())
+            file.delete();
+        directory.delete();
+    }
+
+    private static double best(String path, int runs) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            load(path);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+
+    private static void load(String path) throws IOException {
+        TriangleMesh mesh = new TriangleMesh(path, true, true);
+        mesh.init(gl);
+    }
+}
@@ -0,0 +1,114 @@
+package unsw.graphics.benchmarks;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import com.jogamp.opengl.util.GLBuffers;
+
+import unsw.graphics.Point3DBuffer;
+import unsw.graphics.Vector3;
+import unsw.graphics.geometry.PlyParser;
+import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.VertexNormals;
+
+/**
+ * Measures computing the vertex normals of the bunny and of a large terrain
+ * grid, with points and vectors the way TriangleMesh used to, with
+ * VertexNormals on one thread and with VertexNormals on as many threads as
+ * there are processors. Each time is the best of several runs, and is shown
+ * with the bytes allocated on the calling thread by one run.
+ *
+ * The parallel version uses the common fork/join pool, whose threads'
+ * allocations are not counted.
+ *
+ * Usage: NormalsBenchmark [runs] [terrain size] [threads]
+ */
+public class NormalsBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+
+        PlyParser bunny = new PlyParser("res/models/bunny.ply");
+        run("bunny.ply", (FloatBuffer) bunny.getVertices().getBuffer(), bunny.getIndices(), runs,
+                threads);
+
+        FloatBuffer positions = GLBuffers.newDirectFloatBuffer(size * size * 3);
+        for (int z = 0; z < size; z++)
+            for (int x = 0; x < size; x++)
+                positions.put(x).put((float) (Math.sin(x * 0.1) * Math.cos(z * 0.1))).put(z);
+        positions.rewind();
+        IntBuffer indices = GLBuffers.newDirectIntBuffer((size - 1) * (size - 1) * 6);
+        for (int z = 0; z < size - 1; z++) {
+            for (int x = 0; x < size - 1; x++) {
+                int v = z * size + x;
+                indices.put(v).put(v + size).put(v + 1);
+                indices.put(v + 1).put(v + size).put(v + size + 1);
+            }
+        }
+        indices.rewind();
+        run("terrain " + size + "x" + size, positions, indices, runs, threads);
+    }
+
+    private static void run(String name, FloatBuffer positions, IntBuffer indices, int runs,
+            int threads) {
+        System.out.printf("%s, %d triangles:%n", name, indices.capacity() / 3);
+        FloatBuffer normals = GLBuffers.newDirectFloatBuffer(positions.capacity());
+        Point3DBuffer vertices = new Point3DBuffer(positions);
+        Point3DBuffer vectorNormals = new Point3DBuffer(positions.capacity() / 3);
+
+        String[] names = { "vectors", "primitive", "parallel (" + threads + " threads)" };
+        double[] best = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+        long[] allocated = new long[names.length];
+        // Take turns, so each is compiled as much as the others
+        for (int i = 0; i < runs; i++) {
+            for (int m = 0; m < names.length; m++) {
+                long before = allocatedBytes();
+                long start = System.nanoTime();
+                if (m == 0)
+                    withVectors(vertices, indices, vectorNormals);
+                else if (m == 1)
+                    VertexNormals.compute(positions, indices, normals);
+                else
+                    VertexNormals.compute(positions, indices, normals, threads);
+                best[m] = Math.min(best[m], (System.nanoTime() - start) / 1e6);
+                allocated[m] = allocatedBytes() - before;
+            }
+        }
+        for (int m = 0; m < names.length; m++)
+            System.out.printf("  %-24s %10.2f ms %14d bytes%n", names[m], best[m], allocated[m]);
+    }
+
+    /**
+     * The old TriangleMesh.computeVertexNormals().
+     */
+    private static void withVectors(Point3DBuffer vertices, IntBuffer indices,
+            Point3DBuffer normals) {
+        for (int i = 0; i < normals.capacity(); i++)
+            normals.put(i, 0, 0, 0);
+        for (int i = 0; i < indices.capacity() / 3; i++) {
+            int index1 = indices.get(i * 3);
+            int index2 = indices.get(i * 3 + 1);
+            int index3 = indices.get(i * 3 + 2);
+
+            Point3D p1 = vertices.get(index1);
+            Point3D p2 = vertices.get(index2);
+            Point3D p3 = vertices.get(index3);
+
+            Vector3 normal = p2.minus(p1).cross(p3.minus(p1)).normalize();
+
+            normals.put(index1, normals.get(index1).translate(normal));
+            normals.put(index2, normals.get(index2).translate(normal));
+            normals.put(index3, normals.get(index3).translate(normal));
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
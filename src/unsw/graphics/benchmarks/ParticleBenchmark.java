@@ -0,0 +1,86 @@
+package unsw.graphics.benchmarks;
+
+import unsw.graphics.Vector3;
+import unsw.graphics.world.Emitter;
+import unsw.graphics.world.ParticleEffects;
+import unsw.graphics.world.ParticleSystem;
+import unsw.graphics.world.Terrain;
+
+/**
+ * Measures the CPU cost of simulating rain around the viewer, including
+ * collisions with a hilly terrain and splashes, and of interpolating the
+ * positions for drawing, for a range of particle counts. Then shows how the
+ * budget is shared when rain and a higher priority cannon ask for more than
+ * it allows.
+ *
+ * Usage: ParticleBenchmark [frames]
+ */
+public class ParticleBenchmark {
+
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int[] counts = { 200, 10000, 100000, 500000 };
+
+        Terrain terrain = new Terrain(100, 100, new Vector3(1, 1, 1));
+        for (int x = 0; x < 100; x++)
+            for (int z = 0; z < 100; z++)
+                terrain.setGridAltitude(x, z,
+                        (float) (2 + Math.sin(x * 0.2) + Math.cos(z * 0.3)));
+
+        for (int count : counts) {
+            for (boolean splashes : new boolean[] { false, true }) {
+                ParticleSystem particles = new ParticleSystem(terrain,
+                        Math.min(ParticleSystem.MAX_PARTICLES, count * 2));
+                particles.setViewer(50, 4, 50);
+                Emitter rain = ParticleEffects.rain(count, 10, 10);
+                particles.addEmitter(rain);
+                if (splashes) {
+                    Emitter splash = ParticleEffects.splash();
+                    rain.setImpact(splash, 3);
+                    particles.addEmitter(splash);
+                }
+
+                // Warm up, and let the rain fill the sky
+                for (int i = 0; i < Math.max(frames, 120); i++) {
+                    particles.step(ParticleSystem.STEP);
+                    particles.interpolate(System.nanoTime());
+                }
+
+                long start = System.nanoTime();
+                for (int i = 0; i < frames; i++)
+                    particles.step(ParticleSystem.STEP);
+                double perStep = (System.nanoTime() - start) / 1e6 / frames;
+
+                start = System.nanoTime();
+                for (int i = 0; i < frames; i++)
+                    particles.interpolate(System.nanoTime());
+                double perFrame = (System.nanoTime() - start) / 1e6 / frames;
+
+                System.out.printf("%8d drops, splashes %-5s: %8d live, simulation %8.3f ms/step, interpolation %8.3f ms/frame%n",
+                        count, splashes, particles.getLiveCount(), perStep, perFrame);
+            }
+        }
+
+        // Rain that wants 100000 drops, in a budget of 50000, with cannon
+        // shots that must not be starved
+        ParticleSystem particles = new ParticleSystem(terrain, 100000);
+        particles.setBudget(50000);
+        particles.setViewer(50, 4, 50);
+        Emitter rain = ParticleEffects.rain(100000, 10, 10);
+        Emitter cannon = ParticleEffects.cannon();
+        cannon.setPosition(50, 5, 50);
+        cannon.setVelocity(3, 4, 0, 0.5f);
+        particles.addEmitter(rain);
+        particles.addEmitter(cannon);
+        for (int i = 0; i < frames; i++) {
+            if (i % 30 == 0)
+                cannon.burst(5000);
+            particles.step(ParticleSystem.STEP);
+        }
+        System.out.printf("Budget %d: %d live, rain %d live %d dropped, cannon %d live %d dropped, last step %.3f ms%n",
+                particles.getBudget(), particles.getLiveCount(),
+                rain.getLiveCount(), rain.getDroppedSpawns(),
+                cannon.getLiveCount(), cannon.getDroppedSpawns(),
+                particles.getUpdateNanos() / 1e6);
+    }
+}
@@ -0,0 +1,91 @@
+package unsw.graphics.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.smurn.jply.Element;
+import org.smurn.jply.ElementReader;
+import org.smurn.jply.PlyReaderFile;
+import org.smurn.jply.util.NormalMode;
+import org.smurn.jply.util.NormalizingPlyReader;
+import org.smurn.jply.util.TesselationMode;
+import org.smurn.jply.util.TextureMode;
+
+import unsw.graphics.geometry.PlyParser;
+
+/**
+ * Measures how fast each model in res/models is read with jply, the way
+ * TriangleMesh used to read them, and with PlyParser, both generating texture
+ * coordinates. Each time is the best of several reads.
+ *
+ * PlyParser uses the common fork/join pool. Run with
+ * -Djava.util.concurrent.ForkJoinPool.common.parallelism=1 to see it on a
+ * single thread.
+ *
+ * Usage: PlyParserBenchmark [runs]
+ */
+public class PlyParserBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+
+        File[] models = new File("res/models").listFiles((dir, name) -> name.endsWith(".ply"));
+        Arrays.sort(models);
+
+        System.out.printf("%-20s %10s %10s %10s %10s%n", "model", "jply ms", "MB/s",
+                "parser ms", "MB/s");
+        long bytes = 0;
+        double jplyTotal = 0, parserTotal = 0;
+        for (File model : models) {
+            double jply = Double.MAX_VALUE, parser = Double.MAX_VALUE;
+            for (int i = 0; i < runs; i++) {
+                long start = System.nanoTime();
+                readWithJply(model.getPath());
+                jply = Math.min(jply, (System.nanoTime() - start) / 1e6);
+
+                start = System.nanoTime();
+                PlyParser ply = new PlyParser(model.getPath());
+                ply.getVertices();
+                ply.getPlanarTexCoords();
+                parser = Math.min(parser, (System.nanoTime() - start) / 1e6);
+            }
+            double megabytes = model.length() / 1e6;
+            System.out.printf("%-20s %10.2f %10.1f %10.2f %10.1f%n", model.getName(), jply,
+                    megabytes / jply * 1000, parser, megabytes / parser * 1000);
+            bytes += model.length();
+            jplyTotal += jply;
+            parserTotal += parser;
+        }
+        System.out.printf("%-20s %10.2f %10.1f %10.2f %10.1f%n", "all", jplyTotal,
+                bytes / 1e6 / jplyTotal * 1000, parserTotal, bytes / 1e6 / parserTotal * 1000);
+    }
+
+    private static void readWithJply(String file) throws IOException {
+        NormalizingPlyReader reader = new NormalizingPlyReader(new PlyReaderFile(file),
+                TesselationMode.TRIANGLES, NormalMode.PASS_THROUGH, TextureMode.XY);
+        float[] vertices = new float[reader.getElementCount("vertex") * 5];
+        int[] indices = new int[reader.getElementCount("face") * 3];
+        ElementReader elReader = reader.nextElementReader();
+        while (elReader != null) {
+            boolean vertex = elReader.getElementType().getName().equals("vertex");
+            int i = 0;
+            Element element = elReader.readElement();
+            while (element != null) {
+                if (vertex) {
+                    vertices[i * 5] = (float) element.getDouble("x");
+                    vertices[i * 5 + 1] = (float) element.getDouble("y");
+                    vertices[i * 5 + 2] = (float) element.getDouble("z");
+                    vertices[i * 5 + 3] = (float) element.getDouble("u");
+                    vertices[i * 5 + 4] = (float) element.getDouble("v");
+                } else {
+                    System.arraycopy(element.getIntList("vertex_index"), 0, indices, i * 3, 3);
+                }
+                i++;
+                element = elReader.readElement();
+            }
+            elReader = reader.nextElementReader();
+        }
+        reader.close();
+    }
+}
@@ -0,0 +1,119 @@
+package unsw.graphics.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import unsw.graphics.Vector3;
+import unsw.graphics.geometry.PlyParser;
+import unsw.graphics.geometry.VertexQuantization;
+
+/**
+ * Reports how much smaller the vertex buffer of each model in res/models is
+ * in the quantized format, with vertex normals and texture coordinates, and
+ * the largest error in each attribute once it is decoded.
+ *
+ * Position errors are given as a fraction of the largest side of the model's
+ * bounds, normal errors as angles and texture coordinate errors as is. The
+ * normals are computed the same way TriangleMesh computes them.
+ *
+ * Usage: QuantizationBenchmark
+ */
+public class QuantizationBenchmark {
+
+    // Bytes per vertex with positions, normals and texture coordinates
+    private static final int FLOAT_STRIDE = 8 * Float.BYTES;
+    private static final int QUANTIZED_STRIDE = 8 * Short.BYTES;
+
+    public static void main(String[] args) throws IOException {
+        File[] models = new File("res/models").listFiles((dir, name) -> name.endsWith(".ply"));
+        Arrays.sort(models);
+
+        System.out.printf("%-18s %10s %10s %12s %12s %12s%n", "model", "float KB",
+                "quant KB", "position", "normal deg", "tex coord");
+        long floatTotal = 0, quantizedTotal = 0;
+        for (File model : models) {
+            PlyParser ply = new PlyParser(model.getPath());
+            int count = ply.getVertexCount();
+            FloatBuffer positions = (FloatBuffer) ply.getVertices().getBuffer();
+            FloatBuffer texCoords = (FloatBuffer) ply.getPlanarTexCoords().getBuffer();
+            float[] normals = normals(positions, ply.getIndices(), count);
+
+            float[] min = new float[3];
+            float extent = 0;
+            for (int j = 0; j < 3; j++) {
+                float lowest = Float.MAX_VALUE, highest = -Float.MAX_VALUE;
+                for (int i = 0; i < count; i++) {
+                    lowest = Math.min(lowest, positions.get(i * 3 + j));
+                    highest = Math.max(highest, positions.get(i * 3 + j));
+                }
+                min[j] = lowest;
+                extent = Math.max(extent, highest - lowest);
+            }
+
+            double positionError = 0, normalError = 0, texCoordError = 0;
+            short[] octahedral = new short[2];
+            for (int i = 0; i < count; i++) {
+                for (int j = 0; j < 3; j++) {
+                    float position = positions.get(i * 3 + j);
+                    float decoded = min[j] + extent * VertexQuantization.fromUnorm16(
+                            VertexQuantization.toUnorm16((position - min[j]) / extent));
+                    positionError = Math.max(positionError,
+                            Math.abs(decoded - position) / extent);
+                }
+
+                Vector3 normal = new Vector3(normals[i * 3], normals[i * 3 + 1],
+                        normals[i * 3 + 2]);
+                if (normal.dotp(normal) > 0) {
+                    normal = normal.normalize();
+                    VertexQuantization.toOctahedral(normal.getX(), normal.getY(),
+                            normal.getZ(), octahedral);
+                    Vector3 decoded = VertexQuantization.fromOctahedral(octahedral[0],
+                            octahedral[1]);
+                    Vector3 cross = normal.cross(decoded);
+                    normalError = Math.max(normalError,
+                            Math.toDegrees(Math.asin(Math.min(1, Math.sqrt(cross.dotp(cross))))));
+                }
+
+                for (int j = 0; j < 2; j++) {
+                    float texCoord = texCoords.get(i * 2 + j);
+                    texCoordError = Math.max(texCoordError, Math.abs(texCoord
+                            - VertexQuantization.fromHalf(VertexQuantization.toHalf(texCoord))));
+                }
+            }
+
+            floatTotal += (long) count * FLOAT_STRIDE;
+            quantizedTotal += (long) count * QUANTIZED_STRIDE;
+            System.out.printf("%-18s %10.1f %10.1f %12.2e %12.4f %12.2e%n", model.getName(),
+                    count * FLOAT_STRIDE / 1024.0, count * QUANTIZED_STRIDE / 1024.0,
+                    positionError, normalError, texCoordError);
+        }
+        System.out.printf("%-18s %10.1f %10.1f%n", "total", floatTotal / 1024.0,
+                quantizedTotal / 1024.0);
+    }
+
+    /**
+     * Sum the unit normals of the triangles around each vertex.
+     */
+    private static float[] normals(FloatBuffer positions, IntBuffer indices, int count) {
+        float[] normals = new float[count * 3];
+        for (int t = 0; t < indices.capacity() / 3; t++) {
+            int[] v = { indices.get(t * 3), indices.get(t * 3 + 1), indices.get(t * 3 + 2) };
+            Vector3 a = new Vector3(positions.get(v[1] * 3) - positions.get(v[0] * 3),
+                    positions.get(v[1] * 3 + 1) - positions.get(v[0] * 3 + 1),
+                    positions.get(v[1] * 3 + 2) - positions.get(v[0] * 3 + 2));
+            Vector3 b = new Vector3(positions.get(v[2] * 3) - positions.get(v[0] * 3),
+                    positions.get(v[2] * 3 + 1) - positions.get(v[0] * 3 + 1),
+                    positions.get(v[2] * 3 + 2) - positions.get(v[0] * 3 + 2));
+            Vector3 n = a.cross(b).normalize();
+            for (int i : v) {
+                normals[i * 3] += n.getX();
+                normals[i * 3 + 1] += n.getY();
+                normals[i * 3 + 2] += n.getZ();
+            }
+        }
+        return normals;
+    }
+}
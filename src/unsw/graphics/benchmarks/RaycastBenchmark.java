@@ -0,0 +1,139 @@
+package unsw.graphics.benchmarks;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Vector3;
+import unsw.graphics.geometry.Bounds;
+import unsw.graphics.geometry.MeshBVH;
+import unsw.graphics.geometry.PlyParser;
+import unsw.graphics.geometry.Point3D;
+
+/**
+ * Measures how long the bounding volume hierarchy of bunny.ply takes to
+ * build, and how many rays per second it finds the nearest hit for, on one
+ * thread and on all of them. For comparison, some of the rays are also tested
+ * against every triangle.
+ *
+ * The rays start on a sphere around the bunny and point at random places in
+ * its bounding box, so most of them hit it. Each time is the best of several
+ * runs.
+ *
+ * Usage: RaycastBenchmark [rays] [runs]
+ */
+public class RaycastBenchmark {
+
+    private static final CoordFrame3D FRAME = CoordFrame3D.identity();
+
+    public static void main(String[] args) throws IOException {
+        int rays = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        PlyParser ply = new PlyParser("res/models/bunny.ply");
+        FloatBuffer positions = (FloatBuffer) ply.getVertices().getBuffer();
+        IntBuffer indices = ply.getIndices();
+
+        long build = Long.MAX_VALUE;
+        MeshBVH bvh = null;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            bvh = new MeshBVH(positions, indices);
+            build = Math.min(build, System.nanoTime() - start);
+        }
+        System.out.printf("%d triangles, %d nodes, depth %d, built in %.1f ms%n",
+                indices.capacity() / 3, bvh.getNodeCount(), bvh.getDepth(), build / 1e6);
+
+        Point3D[] origins = new Point3D[rays];
+        Vector3[] directions = new Vector3[rays];
+        Bounds bounds = new Bounds(positions);
+        Random random = new Random(1);
+        for (int i = 0; i < rays; i++) {
+            Vector3 out = new Vector3(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f,
+                    random.nextFloat() - 0.5f).normalize().scale(bounds.getRadius() * 2);
+            origins[i] = bounds.getCentre().translate(out);
+            Point3D target = new Point3D(
+                    lerp(bounds.getMin().getX(), bounds.getMax().getX(), random.nextFloat()),
+                    lerp(bounds.getMin().getY(), bounds.getMax().getY(), random.nextFloat()),
+                    lerp(bounds.getMin().getZ(), bounds.getMax().getZ(), random.nextFloat()));
+            directions[i] = target.minus(origins[i]);
+        }
+
+        MeshBVH tree = bvh;
+        int hits = 0;
+        for (int i = 0; i < rays; i++)
+            if (tree.raycast(origins[i], directions[i], FRAME) != null)
+                hits++;
+        System.out.printf("%d of %d rays hit%n", hits, rays);
+
+        long single = Long.MAX_VALUE, parallel = Long.MAX_VALUE;
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < rays; i++)
+                tree.raycast(origins[i], directions[i], FRAME);
+            single = Math.min(single, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            IntStream.range(0, rays).parallel()
+                    .forEach(i -> tree.raycast(origins[i], directions[i], FRAME));
+            parallel = Math.min(parallel, System.nanoTime() - start);
+        }
+
+        // Every triangle for each ray is slow, so only try a few
+        int few = Math.min(rays, 200);
+        long start = System.nanoTime();
+        for (int i = 0; i < few; i++)
+            everyTriangle(positions, indices, origins[i], directions[i]);
+        long brute = System.nanoTime() - start;
+
+        System.out.printf("BVH, 1 thread:   %12.0f rays/s%n", rays / (single / 1e9));
+        System.out.printf("BVH, %d threads: %12.0f rays/s%n",
+                Runtime.getRuntime().availableProcessors(), rays / (parallel / 1e9));
+        System.out.printf("Every triangle:  %12.0f rays/s%n", few / (brute / 1e9));
+    }
+
+    private static float lerp(float a, float b, float t) {
+        return a + (b - a) * t;
+    }
+
+    /**
+     * The distance to the nearest triangle along a ray, testing each one.
+     */
+    private static float everyTriangle(FloatBuffer positions, IntBuffer indices, Point3D origin,
+            Vector3 direction) {
+        float best = Float.POSITIVE_INFINITY;
+        float ox = origin.getX(), oy = origin.getY(), oz = origin.getZ();
+        float dx = direction.getX(), dy = direction.getY(), dz = direction.getZ();
+        for (int t = 0; t < indices.capacity() / 3; t++) {
+            int p0 = indices.get(t * 3) * 3;
+            int p1 = indices.get(t * 3 + 1) * 3;
+            int p2 = indices.get(t * 3 + 2) * 3;
+            float x0 = positions.get(p0), y0 = positions.get(p0 + 1), z0 = positions.get(p0 + 2);
+            float ax = positions.get(p1) - x0, ay = positions.get(p1 + 1) - y0,
+                    az = positions.get(p1 + 2) - z0;
+            float bx = positions.get(p2) - x0, by = positions.get(p2 + 1) - y0,
+                    bz = positions.get(p2 + 2) - z0;
+
+            float px = dy * bz - dz * by, py = dz * bx - dx * bz, pz = dx * by - dy * bx;
+            float det = ax * px + ay * py + az * pz;
+            if (det == 0)
+                continue;
+            float inv = 1 / det;
+            float sx = ox - x0, sy = oy - y0, sz = oz - z0;
+            float u = (sx * px + sy * py + sz * pz) * inv;
+            if (u < 0 || u > 1)
+                continue;
+            float qx = sy * az - sz * ay, qy = sz * ax - sx * az, qz = sx * ay - sy * ax;
+            float v = (dx * qx + dy * qy + dz * qz) * inv;
+            if (v < 0 || u + v > 1)
+                continue;
+            float distance = (bx * qx + by * qy + bz * qz) * inv;
+            if (distance >= 0 && distance < best)
+                best = distance;
+        }
+        return best;
+    }
+}
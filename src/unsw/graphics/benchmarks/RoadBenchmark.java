@@ -0,0 +1,52 @@
+package unsw.graphics.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.jogamp.opengl.GL3;
+
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Vector3;
+import unsw.graphics.geometry.Point2D;
+import unsw.graphics.world.Terrain;
+
+/**
+ * Counts the GL calls needed to draw a randomly generated map with many
+ * roads.
+ *
+ * Usage: RoadBenchmark [number of roads]
+ */
+public class RoadBenchmark {
+
+    public static void main(String[] args) {
+        int roadCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int size = 100;
+
+        Terrain terrain = new Terrain(size, size, new Vector3(0, 1, 0));
+        Random rand = new Random(42);
+        for (int r = 0; r < roadCount; r++) {
+            List<Point2D> spine = new ArrayList<Point2D>();
+            // Two bezier segments per road
+            for (int i = 0; i < 7; i++)
+                spine.add(new Point2D(rand.nextFloat() * (size - 1), rand.nextFloat() * (size - 1)));
+            terrain.addRoad(0.5f + rand.nextFloat(), spine);
+        }
+
+        GLCallCounter counter = new GLCallCounter();
+        GL3 gl = counter.getGL();
+
+        long start = System.nanoTime();
+        terrain.makeTerrain(gl);
+        long initTime = System.nanoTime() - start;
+
+        counter.reset();
+        terrain.drawRoads(gl, CoordFrame3D.identity());
+
+        System.out.println("Roads: " + roadCount);
+        System.out.printf("Terrain and roads built in %.1f ms%n", initTime / 1e6);
+        System.out.println("Draw calls per frame: " + counter.drawCalls());
+        System.out.println("GL calls per frame:");
+        System.out.print(counter);
+    }
+}
@@ -0,0 +1,110 @@
+package unsw.graphics.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import unsw.graphics.Vector3;
+import unsw.graphics.geometry.Point2D;
+import unsw.graphics.world.Road;
+import unsw.graphics.world.RoadIndex;
+import unsw.graphics.world.Terrain;
+
+/**
+ * Measures nearest road queries against the road index, on one thread and on
+ * every available core, and compares them to a brute force search over the
+ * road polylines.
+ *
+ * Usage: RoadIndexBenchmark [number of roads] [number of queries]
+ */
+public class RoadIndexBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int roadCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        int size = 100;
+
+        Terrain terrain = new Terrain(size, size, new Vector3(0, 1, 0));
+        Random rand = new Random(42);
+        for (int r = 0; r < roadCount; r++) {
+            List<Point2D> spine = new ArrayList<Point2D>();
+            for (int i = 0; i < 7; i++)
+                spine.add(new Point2D(rand.nextFloat() * (size - 1), rand.nextFloat() * (size - 1)));
+            terrain.addRoad(0.5f + rand.nextFloat(), spine);
+        }
+
+        long start = System.nanoTime();
+        final RoadIndex index = terrain.getRoadIndex();
+        System.out.printf("Indexed %d segments of %d roads in %.1f ms%n", index.size(),
+                roadCount, (System.nanoTime() - start) / 1e6);
+
+        final float[] points = new float[queries * 2];
+        for (int i = 0; i < points.length; i++)
+            points[i] = rand.nextFloat() * size;
+
+        // Warm up
+        run(index, points, 0, Math.min(queries, 100000));
+
+        start = System.nanoTime();
+        double sum = run(index, points, 0, queries);
+        double single = (System.nanoTime() - start) / 1e9;
+        System.out.printf("1 thread: %.0f queries/s (checksum %.3f)%n", queries / single, sum);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Double>> results = new ArrayList<Future<Double>>();
+        start = System.nanoTime();
+        int chunk = (queries + threads - 1) / threads;
+        for (int t = 0; t < threads; t++) {
+            final int from = t * chunk;
+            final int to = Math.min(queries, from + chunk);
+            results.add(pool.submit(() -> run(index, points, from, to)));
+        }
+        sum = 0;
+        for (Future<Double> result : results)
+            sum += result.get();
+        double parallel = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+        System.out.printf("%d thread(s): %.0f queries/s (checksum %.3f)%n", threads,
+                queries / parallel, sum);
+
+        // Brute force over every segment of every road, on a small sample
+        List<float[]> polylines = new ArrayList<float[]>();
+        for (Road road : terrain.roads())
+            polylines.add(road.polyline());
+        int bruteQueries = Math.min(queries, 2000);
+        start = System.nanoTime();
+        sum = 0;
+        for (int i = 0; i < bruteQueries; i++)
+            sum += bruteForce(polylines, points[i * 2], points[i * 2 + 1]);
+        double brute = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Brute force: %.0f queries/s (checksum %.3f on %d queries)%n",
+                bruteQueries / brute, sum, bruteQueries);
+    }
+
+    private static double run(RoadIndex index, float[] points, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++)
+            sum += index.distance(points[i * 2], points[i * 2 + 1]);
+        return sum;
+    }
+
+    private static float bruteForce(List<float[]> polylines, float x, float z) {
+        float best = Float.POSITIVE_INFINITY;
+        for (float[] line : polylines) {
+            for (int i = 0; i + 3 < line.length; i += 2) {
+                float dx = line[i + 2] - line[i], dz = line[i + 3] - line[i + 1];
+                float lengthSquared = dx * dx + dz * dz;
+                float t = lengthSquared == 0 ? 0
+                        : ((x - line[i]) * dx + (z - line[i + 1]) * dz) / lengthSquared;
+                t = Math.max(0, Math.min(1, t));
+                float px = line[i] + t * dx - x, pz = line[i + 1] + t * dz - z;
+                best = Math.min(best, px * px + pz * pz);
+            }
+        }
+        return (float) Math.sqrt(best);
+    }
+}
@@ -0,0 +1,100 @@
+package unsw.graphics.benchmarks;
+
+import java.io.File;
+
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.GLAutoDrawable;
+import com.jogamp.opengl.GLCapabilities;
+import com.jogamp.opengl.GLDrawableFactory;
+import com.jogamp.opengl.GLEventListener;
+import com.jogamp.opengl.GLOffscreenAutoDrawable;
+import com.jogamp.opengl.GLProfile;
+
+import unsw.graphics.Shader;
+import unsw.graphics.ShaderCache;
+
+/**
+ * Measures how long the world's shaders take to create without a program
+ * binary cache, with an empty cache and with a full one.
+ *
+ * Unlike the other benchmarks this needs a real OpenGL 3 driver, which it
+ * uses through an offscreen drawable. Note that some drivers keep a cache of
+ * their own, which makes the uncached and cold times shorter on later runs.
+ *
+ * Usage: ShaderCacheBenchmark [cache directory]
+ */
+public class ShaderCacheBenchmark implements GLEventListener {
+
+    private final ShaderCache cache;
+
+    public ShaderCacheBenchmark(ShaderCache cache) {
+        this.cache = cache;
+    }
+
+    public static void main(String[] args) {
+        File directory = args.length > 0 ? new File(args[0])
+                : new File(System.getProperty("java.io.tmpdir"), "unswgraph-shader-benchmark");
+
+        GLProfile profile = GLProfile.get(GLProfile.GL3);
+        GLOffscreenAutoDrawable drawable = GLDrawableFactory.getFactory(profile)
+                .createOffscreenAutoDrawable(null, new GLCapabilities(profile), null, 1, 1);
+        drawable.addGLEventListener(new ShaderCacheBenchmark(new ShaderCache(directory)));
+        drawable.display();
+        drawable.destroy();
+    }
+
+    @Override
+    public void init(GLAutoDrawable drawable) {
+        GL3 gl = drawable.getGL().getGL3();
+        System.out.println(gl.glGetString(GL3.GL_RENDERER) + ", "
+                + gl.glGetString(GL3.GL_VERSION));
+        System.out.println("Program binaries supported: " + cache.isSupported(gl));
+
+        Shader.setCache(null);
+        System.out.printf("No cache:   %.1f ms%n", createShaders(gl) / 1e6);
+
+        File[] files = cache.getDirectory().listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+
+        Shader.setCache(cache);
+        System.out.printf("Cold cache: %.1f ms%n", createShaders(gl) / 1e6);
+        System.out.printf("Warm cache: %.1f ms%n", createShaders(gl) / 1e6);
+        Shader.setCache(null);
+    }
+
+    /**
+     * Create and destroy every shader the world uses.
+     *
+     * @return The time taken in nanoseconds
+     */
+    private static long createShaders(GL3 gl) {
+        long start = System.nanoTime();
+        Shader[] shaders = {
+                new Shader(gl, "shaders/vertex_3d.glsl", "shaders/fragment_3d.glsl"),
+                new Shader(gl, "shaders/vertex_tex_phong_world.glsl",
+                        "shaders/fragment_tex_phong_world.glsl"),
+                new Shader(gl, "shaders/vertex_particle.glsl", "shaders/fragment_tex_3d.glsl"),
+                new Shader(gl, "shaders/vertex_particle_update.glsl", null,
+                        new String[] { "outPosition", "outVelocity", "outLife" }) };
+        // Wait for drivers that link in the background
+        gl.glFinish();
+        long time = System.nanoTime() - start;
+        for (Shader shader : shaders)
+            shader.destroy(gl);
+        return time;
+    }
+
+    @Override
+    public void dispose(GLAutoDrawable drawable) {
+    }
+
+    @Override
+    public void display(GLAutoDrawable drawable) {
+    }
+
+    @Override
+    public void reshape(GLAutoDrawable drawable, int x, int y, int width, int height) {
+    }
+}
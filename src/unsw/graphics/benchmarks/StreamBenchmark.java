@@ -0,0 +1,152 @@
+package unsw.graphics.benchmarks;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.util.GLBuffers;
+
+import unsw.graphics.CoordFrame2D;
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GLState;
+import unsw.graphics.Shader;
+import unsw.graphics.StreamBuffer;
+import unsw.graphics.geometry.LineStrip2D;
+import unsw.graphics.geometry.Point2D;
+import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.Polygon2D;
+import unsw.graphics.geometry.TriangleFan3D;
+
+/**
+ * Draws a scene of points, polygons, line strips and triangle fans with
+ * their draw() methods, against a counting context. Compares creating a
+ * buffer for each draw and deleting it afterwards, as the primitives used
+ * to, with writing the vertices into the StreamBuffer, by the GL calls and
+ * CPU time per frame.
+ *
+ * The counting context draws nothing, so this measures the calls and the
+ * CPU side only, not the driver's work or any stalls on the GPU.
+ *
+ * Usage: StreamBenchmark [primitives] [frames]
+ */
+public class StreamBenchmark {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        GLCallCounter counter = new GLCallCounter();
+        GL3 gl = counter.getGL();
+        new Shader(gl, gl.glCreateProgram()).use(gl);
+        GLState.reset();
+        StreamBuffer.reset();
+
+        // Each primitive, drawn with its draw() method and the old way
+        List<Consumer<GL3>> streamed = new ArrayList<Consumer<GL3>>();
+        List<Consumer<GL3>> perDraw = new ArrayList<Consumer<GL3>>();
+        Random random = new Random(1);
+        for (int i = 0; i < count; i++) {
+            CoordFrame2D frame2D = CoordFrame2D.identity().translate(random.nextFloat(),
+                    random.nextFloat());
+            CoordFrame3D frame3D = CoordFrame3D.identity().translate(random.nextFloat(),
+                    random.nextFloat(), random.nextFloat());
+            Consumer<GL3> model2D = g -> Shader.setModelMatrix(g, frame2D.getMatrix());
+            Consumer<GL3> model3D = g -> Shader.setModelMatrix(g, frame3D.getMatrix());
+            switch (i % 4) {
+            case 0: {
+                Point3D point = new Point3D(random.nextFloat(), random.nextFloat(),
+                        random.nextFloat());
+                float[] values = { point.getX(), point.getY(), point.getZ() };
+                streamed.add(g -> point.draw(g, frame3D));
+                perDraw.add(g -> drawPerDraw(g, values, 3, GL.GL_POINTS, model3D));
+                break;
+            }
+            case 1: {
+                float[] values = shape(random, 2, 6);
+                Polygon2D polygon = new Polygon2D(values);
+                streamed.add(g -> polygon.draw(g, frame2D));
+                perDraw.add(g -> drawPerDraw(g, values, 2, GL.GL_TRIANGLE_FAN,
+                        model2D));
+                break;
+            }
+            case 2: {
+                float[] values = shape(random, 2, 16);
+                LineStrip2D strip = new LineStrip2D();
+                for (int v = 0; v < values.length; v += 2)
+                    strip.add(new Point2D(values[v], values[v + 1]));
+                streamed.add(g -> strip.draw(g, frame2D));
+                perDraw.add(g -> drawPerDraw(g, values, 2, GL.GL_LINE_STRIP,
+                        model2D));
+                break;
+            }
+            default: {
+                float[] values = shape(random, 3, 8);
+                TriangleFan3D fan = new TriangleFan3D(values);
+                streamed.add(g -> fan.draw(g, frame3D));
+                perDraw.add(g -> drawPerDraw(g, values, 3, GL.GL_TRIANGLE_FAN,
+                        model3D));
+                break;
+            }
+            }
+        }
+
+        // Once to warm up, then measured
+        for (int run = 0; run < 2; run++) {
+            System.out.printf("%d primitives, %d frames%n", count, frames);
+            run(counter, "Buffer per draw", perDraw, frames);
+            run(counter, "Stream buffer", streamed, frames);
+        }
+        System.out.printf("Stream buffer orphaned %d times%n", StreamBuffer.getOrphans());
+    }
+
+    private static void run(GLCallCounter counter, String name, List<Consumer<GL3>> scene,
+            int frames) {
+        GL3 gl = counter.getGL();
+        counter.reset();
+        StreamBuffer.resetCounts();
+        long start = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            for (Consumer<GL3> primitive : scene)
+                primitive.accept(gl);
+        }
+        double ms = (System.nanoTime() - start) / 1e6 / frames;
+        System.out.printf("  %-16s %9.1f GL calls, %5.1f buffers created, "
+                + "%6.3f ms per frame%n", name, counter.total() / (double) frames,
+                counter.count("glGenBuffers") / (double) frames, ms);
+    }
+
+    /**
+     * Random coordinates for the given number of vertices.
+     */
+    private static float[] shape(Random random, int dimensions, int vertices) {
+        float[] values = new float[dimensions * vertices];
+        for (int i = 0; i < values.length; i++)
+            values[i] = random.nextFloat();
+        return values;
+    }
+
+    /**
+     * Draw as the primitives did before the StreamBuffer, with a new buffer
+     * for each draw.
+     */
+    private static void drawPerDraw(GL3 gl, float[] values, int dimensions, int mode,
+            Consumer<GL3> setModelMatrix) {
+        FloatBuffer buffer = GLBuffers.newDirectFloatBuffer(values);
+        int[] names = new int[1];
+        gl.glGenBuffers(1, names, 0);
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, names[0]);
+        gl.glBufferData(GL.GL_ARRAY_BUFFER, values.length * Float.BYTES, buffer,
+                GL.GL_STATIC_DRAW);
+
+        GLState.bindDefaultVertexArray(gl);
+        gl.glVertexAttribPointer(Shader.POSITION, dimensions, GL.GL_FLOAT, false, 0, 0);
+        setModelMatrix.accept(gl);
+        gl.glDrawArrays(mode, 0, values.length / dimensions);
+
+        GLState.deleteBuffers(gl, 1, names, 0);
+    }
+}
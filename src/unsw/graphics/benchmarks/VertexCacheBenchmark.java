@@ -0,0 +1,53 @@
+package unsw.graphics.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import unsw.graphics.geometry.MeshOptimizer;
+import unsw.graphics.geometry.PlyParser;
+
+/**
+ * Reports the average cache miss ratio (ACMR) of each model in res/models,
+ * in the order its PLY file lists the faces and after optimizing it, for
+ * caches of 16 and 32 vertices, and how long optimizing takes.
+ *
+ * Usage: VertexCacheBenchmark
+ */
+public class VertexCacheBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        File[] models = new File("res/models").listFiles((dir, name) -> name.endsWith(".ply"));
+        Arrays.sort(models);
+
+        System.out.printf("%-20s %10s %10s %10s %10s %10s%n", "model", "triangles",
+                "ACMR 16", "after", "ACMR 32", "after");
+        for (File model : models) {
+            PlyParser ply = new PlyParser(model.getPath());
+            int[] indices = new int[ply.getIndexCount()];
+            ply.getIndices().get(indices);
+
+            int[] optimized = MeshOptimizer.optimizeVertexCache(indices, ply.getVertexCount());
+            MeshOptimizer.optimizeVertexFetch(optimized, ply.getVertexCount());
+
+            System.out.printf("%-20s %10d %10.3f %10.3f %10.3f %10.3f%n", model.getName(),
+                    indices.length / 3, MeshOptimizer.acmr(indices, 16),
+                    MeshOptimizer.acmr(optimized, 16), MeshOptimizer.acmr(indices, 32),
+                    MeshOptimizer.acmr(optimized, 32));
+        }
+
+        // Time the largest model once the code is warm
+        PlyParser ply = new PlyParser("res/models/bunny.ply");
+        int[] indices = new int[ply.getIndexCount()];
+        ply.getIndices().get(indices);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            long start = System.nanoTime();
+            MeshOptimizer.optimizeVertexFetch(
+                    MeshOptimizer.optimizeVertexCache(indices, ply.getVertexCount()),
+                    ply.getVertexCount());
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("Optimizing bunny.ply takes %.1f ms%n", best / 1e6);
+    }
+}
@@ -11,6 +11,7 @@ import com.jogamp.opengl.util.GLBuffers;
 
 import unsw.graphics.Application3D;
 import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GLState;
 import unsw.graphics.Matrix4;
 import unsw.graphics.Point3DBuffer;
 import unsw.graphics.Shader;
@@ -70,10 +71,11 @@ public class IndexedCube extends Application3D {
      * @param frame
      */
     private void drawCube(GL3 gl, CoordFrame3D frame) {
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, verticesName);
+        GLState.bindDefaultVertexArray(gl);
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, verticesName);
         gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, 0);
         
-        gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
+        GLState.bindBuffer(gl, GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
         
         Shader.setModelMatrix(gl, frame.getMatrix());
         gl.glDrawElements(GL.GL_TRIANGLES, indicesBuffer.capacity(), 
@@ -114,11 +116,12 @@ public class IndexedCube extends Application3D {
         verticesName = names[0];
         indicesName = names[1];
         
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, verticesName);
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, verticesName);
         gl.glBufferData(GL.GL_ARRAY_BUFFER, vertexBuffer.capacity() * 3 * Float.BYTES,
                 vertexBuffer.getBuffer(), GL.GL_STATIC_DRAW);
        
-        gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
+        GLState.bindDefaultVertexArray(gl);
+        GLState.bindBuffer(gl, GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
         gl.glBufferData(GL.GL_ELEMENT_ARRAY_BUFFER, indicesBuffer.capacity() * Integer.BYTES,
                 indicesBuffer, GL.GL_STATIC_DRAW);
         
@@ -133,7 +136,7 @@ public class IndexedCube extends Application3D {
     @Override
     public void destroy(GL3 gl) {
         super.destroy(gl);
-        gl.glDeleteBuffers(2, new int[] { indicesName, verticesName }, 0);
+        GLState.deleteBuffers(gl, 2, new int[] { indicesName, verticesName }, 0);
         cube.destroy(gl);
     }
 }
\ No newline at end of file
@@ -14,6 +14,7 @@ import com.jogamp.opengl.GL3;
 
 import unsw.graphics.Application3D;
 import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GLState;
 import unsw.graphics.Matrix4;
 import unsw.graphics.Shader;
 import unsw.graphics.Texture;
@@ -141,16 +142,16 @@ public class MinificationExample extends Application3D implements KeyListener {
         Shader.setPenColor(gl, Color.WHITE);
         
         Shader.setInt(gl, "tex", 0);
-        gl.glActiveTexture(GL.GL_TEXTURE0);
+        GLState.activeTexture(gl, GL.GL_TEXTURE0);
 
         CoordFrame3D viewFrame = CoordFrame3D.identity()
                 .translate(0, -10, -15 - d);
         Shader.setViewMatrix(gl, viewFrame.getMatrix());
 
-        gl.glBindTexture(GL.GL_TEXTURE_2D, textureGrass.getId());
+        GLState.bindTexture(gl, GL.GL_TEXTURE_2D, textureGrass.getId());
         grass.draw(gl);
         
-        gl.glBindTexture(GL.GL_TEXTURE_2D, textureSky.getId());
+        GLState.bindTexture(gl, GL.GL_TEXTURE_2D, textureSky.getId());
         sky.draw(gl);
     }
 
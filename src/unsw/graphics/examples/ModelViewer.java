@@ -8,6 +8,7 @@ import com.jogamp.opengl.GL3;
 
 import unsw.graphics.Application3D;
 import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GLState;
 import unsw.graphics.Matrix4;
 import unsw.graphics.Shader;
 import unsw.graphics.Texture;
@@ -105,15 +106,15 @@ public class ModelViewer extends Application3D {
         if (USE_CUBEMAP) {
             Shader.setInt(gl, "tex", 0);
             
-            gl.glActiveTexture(GL.GL_TEXTURE0);
-            gl.glBindTexture(GL.GL_TEXTURE_CUBE_MAP, texture.getId());
+            GLState.activeTexture(gl, GL.GL_TEXTURE0);
+            GLState.bindTexture(gl, GL.GL_TEXTURE_CUBE_MAP, texture.getId());
             
             Shader.setPenColor(gl, Color.WHITE);
         } else if (USE_TEXTURE) {
             Shader.setInt(gl, "tex", 0);
             
-            gl.glActiveTexture(GL.GL_TEXTURE0);
-            gl.glBindTexture(GL.GL_TEXTURE_2D, texture.getId());
+            GLState.activeTexture(gl, GL.GL_TEXTURE0);
+            GLState.bindTexture(gl, GL.GL_TEXTURE_2D, texture.getId());
             
             Shader.setPenColor(gl, Color.WHITE);
         } else {
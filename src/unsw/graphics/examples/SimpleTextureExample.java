@@ -10,6 +10,7 @@ import com.jogamp.opengl.GL3;
 import com.jogamp.opengl.util.GLBuffers;
 
 import unsw.graphics.Application3D;
+import unsw.graphics.GLState;
 import unsw.graphics.Matrix4;
 import unsw.graphics.Point2DBuffer;
 import unsw.graphics.Point3DBuffer;
@@ -127,9 +128,9 @@ public class SimpleTextureExample extends Application3D implements KeyListener {
 
         Shader.setInt(gl, "tex", 0); // tex in the shader is the 0'th active texture
 
-        gl.glActiveTexture(GL.GL_TEXTURE0); // All future texture operations are 
+        GLState.activeTexture(gl, GL.GL_TEXTURE0); // All future texture operations are 
                                             // for the 0'th active texture
-        gl.glBindTexture(GL.GL_TEXTURE_2D,
+        GLState.bindTexture(gl, GL.GL_TEXTURE_2D,
                 myTextures[currIndex].getId()); // Bind the texture id of the 
                                                 // texture we want to the 0th 
                                                 // active texture
@@ -166,13 +167,14 @@ public class SimpleTextureExample extends Application3D implements KeyListener {
         quadTexCoords.put(3, 0f, 1f);
 
         // Copy across the buffer for the vertex positions
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, names[0]);
         gl.glBufferData(GL.GL_ARRAY_BUFFER, quad.capacity() * 3 * Float.BYTES,
                 quad.getBuffer(), GL.GL_STATIC_DRAW);
+        GLState.bindDefaultVertexArray(gl);
         gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, 0);
 
         // Copy across the buffer for the texture coordinates
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[1]);
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, names[1]);
         gl.glBufferData(GL.GL_ARRAY_BUFFER,
                 quadTexCoords.capacity() * 2 * Float.BYTES,
                 quadTexCoords.getBuffer(), GL.GL_STATIC_DRAW);
@@ -192,12 +194,12 @@ public class SimpleTextureExample extends Application3D implements KeyListener {
         triTexCoords.put(1, 1, 0);
         triTexCoords.put(2, 0.5f, 1);
 
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[2]);
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, names[2]);
         gl.glBufferData(GL.GL_ARRAY_BUFFER, tri.capacity() * 3 * Float.BYTES,
                 tri.getBuffer(), GL.GL_STATIC_DRAW);
         gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, 0);
 
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[3]);
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, names[3]);
         gl.glBufferData(GL.GL_ARRAY_BUFFER,
                 triTexCoords.capacity() * 2 * Float.BYTES,
                 triTexCoords.getBuffer(), GL.GL_STATIC_DRAW);
@@ -205,7 +207,7 @@ public class SimpleTextureExample extends Application3D implements KeyListener {
 
         gl.glDrawArrays(GL3.GL_TRIANGLES, 0, tri.capacity());
 
-        gl.glDeleteBuffers(4, names, 0);
+        GLState.deleteBuffers(gl, 4, names, 0);
     }
 
     @Override
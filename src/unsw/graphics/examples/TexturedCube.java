@@ -10,6 +10,7 @@ import com.jogamp.opengl.util.GLBuffers;
 
 import unsw.graphics.Application3D;
 import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GLState;
 import unsw.graphics.Matrix4;
 import unsw.graphics.Point2DBuffer;
 import unsw.graphics.Point3DBuffer;
@@ -58,8 +59,8 @@ public class TexturedCube extends Application3D {
         
         Shader.setInt(gl, "tex", 0);
         
-        gl.glActiveTexture(GL.GL_TEXTURE0);
-        gl.glBindTexture(GL.GL_TEXTURE_2D, texture.getId());
+        GLState.activeTexture(gl, GL.GL_TEXTURE0);
+        GLState.bindTexture(gl, GL.GL_TEXTURE_2D, texture.getId());
         
         Shader.setPenColor(gl, Color.WHITE);
        
@@ -79,13 +80,14 @@ public class TexturedCube extends Application3D {
      * @param frame
      */
     private void drawCube(GL3 gl, CoordFrame3D frame) {
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, verticesName);
+        GLState.bindDefaultVertexArray(gl);
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, verticesName);
         gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, 0);
         
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, texCoordsName);
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, texCoordsName);
         gl.glVertexAttribPointer(Shader.TEX_COORD, 2, GL.GL_FLOAT, false, 0, 0);
         
-        gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
+        GLState.bindBuffer(gl, GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
         
         Shader.setModelMatrix(gl, frame.getMatrix());
         gl.glDrawElements(GL.GL_TRIANGLES, indicesBuffer.capacity(), 
@@ -137,15 +139,16 @@ public class TexturedCube extends Application3D {
         texCoordsName = names[1];
         indicesName = names[2];
         
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, verticesName);
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, verticesName);
         gl.glBufferData(GL.GL_ARRAY_BUFFER, vertexBuffer.capacity() * 3 * Float.BYTES,
                 vertexBuffer.getBuffer(), GL.GL_STATIC_DRAW);
         
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, texCoordsName);
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, texCoordsName);
         gl.glBufferData(GL.GL_ARRAY_BUFFER, texCoordBuffer.capacity() * 2 * Float.BYTES,
                 texCoordBuffer.getBuffer(), GL.GL_STATIC_DRAW);
        
-        gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
+        GLState.bindDefaultVertexArray(gl);
+        GLState.bindBuffer(gl, GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
         gl.glBufferData(GL.GL_ELEMENT_ARRAY_BUFFER, indicesBuffer.capacity() * Integer.BYTES,
                 indicesBuffer, GL.GL_STATIC_DRAW);
         
@@ -158,6 +161,6 @@ public class TexturedCube extends Application3D {
     @Override
     public void destroy(GL3 gl) {
         super.destroy(gl);
-        gl.glDeleteBuffers(3, new int[] { indicesName, verticesName, texCoordsName }, 0);
+        GLState.deleteBuffers(gl, 3, new int[] { indicesName, verticesName, texCoordsName }, 0);
     }
 }
\ No newline at end of file
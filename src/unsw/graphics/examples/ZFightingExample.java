@@ -8,6 +8,7 @@ import com.jogamp.opengl.GL3;
 
 import unsw.graphics.Application3D;
 import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GLState;
 import unsw.graphics.Matrix4;
 import unsw.graphics.Shader;
 import unsw.graphics.geometry.TriangleFan3D;
@@ -62,15 +63,15 @@ public class ZFightingExample extends Application3D implements MouseListener {
        
         Shader.setPenColor(gl, Color.BLUE);
         //enable polygon offset for filled polygons       
-        gl.glEnable(GL3.GL_POLYGON_OFFSET_FILL);
+        GLState.enable(gl, GL3.GL_POLYGON_OFFSET_FILL);
         //push this polygon to the front a little
-        gl.glPolygonOffset(-1,-1); 
+        GLState.polygonOffset(gl, -1,-1); 
         //push to the back a little
-        //gl.glPolygonOffset(1,1);
+        //GLState.polygonOffset(gl, 1,1);
         tri1.draw(gl, frame);
         
         //If you do not turn this off again it will not work!
-        gl.glDisable(GL3.GL_POLYGON_OFFSET_FILL);
+        GLState.disable(gl, GL3.GL_POLYGON_OFFSET_FILL);
         
         Shader.setPenColor(gl, Color.GREEN);
         tri2.draw(gl, frame);
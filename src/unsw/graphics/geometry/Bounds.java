@@ -0,0 +1,84 @@
+package unsw.graphics.geometry;
+
+import java.nio.FloatBuffer;
+
+/**
+ * The axis aligned bounding box of a set of points, and a sphere around it.
+ *
+ * The sphere is centred on the centre of the box, with the radius of the
+ * furthest point from there. It is not the smallest possible sphere, but is
+ * close for most meshes.
+ */
+public class Bounds {
+
+    private final Point3D min;
+    private final Point3D max;
+    private final Point3D centre;
+    private final float radius;
+
+    /**
+     * Compute the bounds of the given points. The bounds of no points are a
+     * single point at the origin.
+     *
+     * @param points Three floats for each point
+     */
+    public Bounds(FloatBuffer points) {
+        int count = points.capacity() / 3;
+        if (count == 0) {
+            min = max = centre = new Point3D(0, 0, 0);
+            radius = 0;
+            return;
+        }
+
+        float[] low = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE };
+        float[] high = { -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < 3; j++) {
+                low[j] = Math.min(low[j], points.get(i * 3 + j));
+                high[j] = Math.max(high[j], points.get(i * 3 + j));
+            }
+        }
+        min = new Point3D(low[0], low[1], low[2]);
+        max = new Point3D(high[0], high[1], high[2]);
+
+        float cx = (low[0] + high[0]) / 2, cy = (low[1] + high[1]) / 2,
+                cz = (low[2] + high[2]) / 2;
+        centre = new Point3D(cx, cy, cz);
+        float furthest = 0;
+        for (int i = 0; i < count; i++) {
+            float dx = points.get(i * 3) - cx;
+            float dy = points.get(i * 3 + 1) - cy;
+            float dz = points.get(i * 3 + 2) - cz;
+            furthest = Math.max(furthest, dx * dx + dy * dy + dz * dz);
+        }
+        radius = (float) Math.sqrt(furthest);
+    }
+
+    /**
+     * The corner of the box with the smallest coordinates.
+     */
+    public Point3D getMin() {
+        return min;
+    }
+
+    /**
+     * The corner of the box with the largest coordinates.
+     */
+    public Point3D getMax() {
+        return max;
+    }
+
+    /**
+     * The centre of the box and the sphere.
+     */
+    public Point3D getCentre() {
+        return centre;
+    }
+
+    /**
+     * The radius of the sphere.
+     */
+    public float getRadius() {
+        return radius;
+    }
+}
@@ -0,0 +1,238 @@
+package unsw.graphics.geometry;
+
+import java.io.IOException;
+
+import com.jogamp.opengl.GL3;
+
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Vector3;
+
+/**
+ * A mesh at several levels of detail, from the full mesh down to the
+ * simplest. Each time the group is drawn it picks the level to draw from how
+ * big the mesh will be on screen, so distant meshes are drawn with fewer
+ * triangles.
+ *
+ * The size on screen is the height of the mesh's bounding sphere, as a
+ * fraction of the height of the viewport. Level i is drawn while the size is
+ * at least screenSizes[i], and the last level below that. The level only
+ * changes once the size is a little past the size it switches at, so a mesh
+ * sitting right on it does not flicker between levels. The group holds no
+ * level of its own, so one group, with its buffers and BVHs, can be shared by
+ * any number of objects. Each object remembers the level it last drew with an
+ * Instance.
+ *
+ * The size is worked out with the camera set with ViewFrustum.setCamera(),
+ * which must be set each frame. The group must be initialised before use.
+ */
+public class LODGroup {
+
+    // How far the screen size must go past a switching size for the level to
+    // change, as a fraction of that size
+    private static final float HYSTERESIS = 0.1f;
+
+    private final TriangleMesh[] levels;
+    private final float[] screenSizes;
+
+    /**
+     * The bounds of the full mesh.
+     */
+    private final Bounds bounds;
+
+    /**
+     * One object drawn with a group, which remembers the level it was last
+     * drawn at.
+     */
+    public static class Instance {
+        private final LODGroup group;
+        private int level;
+
+        public Instance(LODGroup group) {
+            this.group = group;
+        }
+
+        /**
+         * Draw the level of detail for the mesh's size on screen in the given
+         * frame.
+         *
+         * @param gl
+         * @param frame
+         */
+        public void draw(GL3 gl, CoordFrame3D frame) {
+            group.levels[select(group.screenSize(frame))].draw(gl, frame);
+        }
+
+        /**
+         * Draw the level of detail for the mesh's size on screen in the given
+         * frame, unless the full mesh is outside the view (see
+         * TriangleMesh.drawIfVisible()).
+         *
+         * @param gl
+         * @param frame
+         * @return Whether the mesh was drawn
+         */
+        public boolean drawIfVisible(GL3 gl, CoordFrame3D frame) {
+            if (!ViewFrustum.isVisible(frame, group.bounds))
+                return false;
+            draw(gl, frame);
+            return true;
+        }
+
+        /**
+         * Choose the level of detail for the given screen size, starting from
+         * the level last chosen.
+         *
+         * @param screenSize
+         * @return The chosen level, 0 being the most detailed
+         */
+        public int select(float screenSize) {
+            return level = group.select(screenSize, level);
+        }
+
+        /**
+         * The level of detail last drawn, 0 being the most detailed.
+         */
+        public int getLevel() {
+            return level;
+        }
+
+        public LODGroup getGroup() {
+            return group;
+        }
+    }
+
+    /**
+     * Create a group from the given levels of detail, most detailed first.
+     *
+     * @param levels
+     * @param screenSizes The smallest screen size each level but the last is
+     * drawn at, largest first
+     */
+    public LODGroup(TriangleMesh[] levels, float[] screenSizes) {
+        if (screenSizes.length != levels.length - 1)
+            throw new IllegalArgumentException("Need a screen size for each level but the last");
+        this.levels = levels;
+        this.screenSizes = screenSizes;
+        bounds = levels[0].getBounds();
+    }
+
+    /**
+     * Create a group from PLY files of the same model, most detailed first.
+     * The remaining arguments are the same as for TriangleMesh.
+     *
+     * @param plyFiles
+     * @param screenSizes The smallest screen size each level but the last is
+     * drawn at, largest first
+     * @param vertexNormals
+     * @param texCoords
+     * @param optimize
+     * @throws IOException
+     */
+    public LODGroup(String[] plyFiles, float[] screenSizes, boolean vertexNormals,
+            boolean texCoords, boolean optimize) throws IOException {
+        this(load(plyFiles, vertexNormals, texCoords, optimize), screenSizes);
+    }
+
+    /**
+     * Create a group by simplifying the given mesh. Each level after the full
+     * mesh has a quarter of the triangles of the one before, which keeps
+     * about the same number of triangles per pixel if the screen sizes halve
+     * from one level to the next.
+     *
+     * @param mesh The most detailed level
+     * @param screenSizes The smallest screen size each level but the last is
+     * drawn at, largest first
+     */
+    public LODGroup(TriangleMesh mesh, float[] screenSizes) {
+        this(simplify(mesh, screenSizes.length + 1), screenSizes);
+    }
+
+    private static TriangleMesh[] load(String[] plyFiles, boolean vertexNormals,
+            boolean texCoords, boolean optimize) throws IOException {
+        TriangleMesh[] levels = new TriangleMesh[plyFiles.length];
+        for (int i = 0; i < plyFiles.length; i++)
+            levels[i] = new TriangleMesh(plyFiles[i], vertexNormals, texCoords, optimize);
+        return levels;
+    }
+
+    private static TriangleMesh[] simplify(TriangleMesh mesh, int count) {
+        TriangleMesh[] levels = new TriangleMesh[count];
+        levels[0] = mesh;
+        for (int i = 1; i < count; i++)
+            levels[i] = levels[i - 1].simplify(levels[i - 1].getTriangleCount() / 4);
+        return levels;
+    }
+
+    public void init(GL3 gl) {
+        for (TriangleMesh mesh : levels)
+            mesh.init(gl);
+    }
+
+    /**
+     * The height of the mesh's bounding sphere on screen in the given frame,
+     * as a fraction of the height of the viewport. It is infinite if the
+     * camera is inside the sphere.
+     *
+     * @param frame
+     */
+    public float screenSize(CoordFrame3D frame) {
+        CoordFrame3D eye = new CoordFrame3D(
+                ViewFrustum.getViewMatrix().multiply(frame.getMatrix()));
+        Point3D c = eye.transform(bounds.getCentre());
+        float distance = (float) Math.sqrt(c.getX() * c.getX() + c.getY() * c.getY()
+                + c.getZ() * c.getZ());
+
+        // The sphere grows by the largest scale in the frame
+        float scale = 0;
+        for (Vector3 axis : new Vector3[] { new Vector3(1, 0, 0), new Vector3(0, 1, 0),
+                new Vector3(0, 0, 1) }) {
+            Vector3 v = eye.transform(axis);
+            scale = Math.max(scale, v.dotp(v));
+        }
+        float r = bounds.getRadius() * (float) Math.sqrt(scale);
+        if (distance <= r)
+            return Float.POSITIVE_INFINITY;
+
+        // The projection maps a height of 1 at a distance of 1 to half the
+        // viewport
+        return r * ViewFrustum.getProjMatrix().getValues()[5] / distance;
+    }
+
+    /**
+     * Choose the level of detail for the given screen size, starting from the
+     * level an object was last drawn at.
+     *
+     * @param screenSize
+     * @param level The level last chosen
+     * @return The chosen level, 0 being the most detailed
+     */
+    public int select(float screenSize, int level) {
+        while (level > 0 && screenSize >= screenSizes[level - 1] * (1 + HYSTERESIS))
+            level--;
+        while (level < screenSizes.length && screenSize < screenSizes[level] * (1 - HYSTERESIS))
+            level++;
+        return level;
+    }
+
+    public Bounds getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Get a level of detail.
+     *
+     * @param level 0 for the most detailed
+     */
+    public TriangleMesh getMesh(int level) {
+        return levels[level];
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public void destroy(GL3 gl) {
+        for (TriangleMesh mesh : levels)
+            mesh.destroy(gl);
+    }
+}
@@ -7,8 +7,10 @@ import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
 import unsw.graphics.CoordFrame2D;
+import unsw.graphics.GLState;
 import unsw.graphics.Point2DBuffer;
 import unsw.graphics.Shader;
+import unsw.graphics.StreamBuffer;
 
 /**
  * A line in 2D space.
@@ -54,20 +56,15 @@ public class Line2D {
      * @param gl
      */
     public void draw(GL3 gl, CoordFrame2D frame) {
-        Point2DBuffer buffer = new Point2DBuffer(2);
+        Point2DBuffer buffer = new Point2DBuffer(StreamBuffer.map(gl, 4));
         buffer.put(0, start);
         buffer.put(1, end);
-        
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, 2*2*Float.BYTES, buffer.getBuffer(), GL.GL_STATIC_DRAW);
-        
-        gl.glVertexAttribPointer(Shader.POSITION, 2, GL.GL_FLOAT, false, 0, 0);
+        int offset = StreamBuffer.unmap(gl);
+
+        GLState.bindDefaultVertexArray(gl);
+        gl.glVertexAttribPointer(Shader.POSITION, 2, GL.GL_FLOAT, false, 0, offset);
         Shader.setModelMatrix(gl, frame.getMatrix());
         gl.glDrawArrays(GL.GL_LINES, 0, 2);
-        
-        gl.glDeleteBuffers(1, names, 0);
     }
     
     /**
@@ -7,8 +7,10 @@ import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
 import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GLState;
 import unsw.graphics.Point3DBuffer;
 import unsw.graphics.Shader;
+import unsw.graphics.StreamBuffer;
 
 /**
  * A line in 3D space.
@@ -56,20 +58,15 @@ public class Line3D {
      * @param gl
      */
     public void draw(GL3 gl, CoordFrame3D frame) {
-        Point3DBuffer buffer = new Point3DBuffer(3);
+        Point3DBuffer buffer = new Point3DBuffer(StreamBuffer.map(gl, 6));
         buffer.put(0, start);
         buffer.put(1, end);
-        
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, 2*3*Float.BYTES, buffer.getBuffer(), GL.GL_STATIC_DRAW);
-        
-        gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, 0);
+        int offset = StreamBuffer.unmap(gl);
+
+        GLState.bindDefaultVertexArray(gl);
+        gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, offset);
         Shader.setModelMatrix(gl, frame.getMatrix());
         gl.glDrawArrays(GL.GL_LINES, 0, 2);
-        
-        gl.glDeleteBuffers(1, names, 0);
     }
     
     /**
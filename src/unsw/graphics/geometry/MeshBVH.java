@@ -0,0 +1,687 @@
+package unsw.graphics.geometry;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Vector3;
+
+/**
+ * A bounding volume hierarchy over the triangles of a mesh, for finding where
+ * a ray hits the mesh and whether a sphere touches it.
+ *
+ * The hierarchy is a binary tree of axis aligned boxes. Each node is split
+ * where the surface area heuristic says rays will test the fewest triangles,
+ * choosing among a few evenly spaced planes on each axis. Large nodes are
+ * split on separate threads from the common fork/join pool.
+ *
+ * The tree is stored flat, in depth first order, so the first child of a node
+ * is the node after it. Each node has six floats of bounds and two ints: for
+ * a leaf, its first triangle and how many it has, and for any other node, its
+ * second child and the axis it was split on. The corners of the triangles are
+ * copied in the order the leaves use them.
+ *
+ * Queries take the frame the mesh is drawn in, and work for any frame that
+ * can be inverted, including ones with unequal scales.
+ */
+public class MeshBVH {
+
+    /**
+     * Where a ray hits a mesh.
+     */
+    public static class Hit {
+        private final float distance;
+        private final int triangle;
+        private final Point3D point;
+
+        private Hit(float distance, int triangle, Point3D point) {
+            this.distance = distance;
+            this.triangle = triangle;
+            this.point = point;
+        }
+
+        /**
+         * How many lengths of the ray's direction the hit is from its origin.
+         */
+        public float getDistance() {
+            return distance;
+        }
+
+        /**
+         * The index of the triangle hit, in the order of the mesh.
+         */
+        public int getTriangle() {
+            return triangle;
+        }
+
+        /**
+         * The point hit, in the coordinates the ray was given in.
+         */
+        public Point3D getPoint() {
+            return point;
+        }
+    }
+
+    // The number of planes tried on each axis, plus one
+    private static final int BINS = 16;
+
+    // The cost of testing a node's box, relative to testing a triangle
+    private static final float TRAVERSAL_COST = 1;
+
+    // The most triangles a leaf can have, even if splitting costs more
+    private static final int MAX_LEAF_TRIANGLES = 8;
+
+    // Nodes with more triangles than this have their children built on
+    // separate threads
+    private static final int PARALLEL_TRIANGLES = 4096;
+
+    private static final float[] EMPTY_BOX = { Float.POSITIVE_INFINITY,
+            Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY,
+            Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY };
+
+    /**
+     * The bounds of each node, as the smallest then the largest coordinates.
+     */
+    private final float[] bounds;
+
+    /**
+     * The two ints of each node. The second is the number of triangles of a
+     * leaf, or -1 - the axis the node was split on.
+     */
+    private final int[] nodes;
+
+    /**
+     * The corners of the triangles, nine floats each, in the order of the
+     * leaves.
+     */
+    private final float[] corners;
+
+    /**
+     * The index in the mesh of each triangle, in the order of the leaves.
+     */
+    private final int[] triangles;
+
+    /**
+     * The number of nodes on the longest path from the root to a leaf.
+     */
+    private final int depth;
+
+    /**
+     * Build the hierarchy for the triangles of a mesh.
+     *
+     * @param positions The position of each vertex, three floats each
+     * @param indices The indices of the mesh, three for each triangle, or
+     * null if each three vertices are a triangle
+     */
+    public MeshBVH(FloatBuffer positions, IntBuffer indices) {
+        int count = (indices != null ? indices.capacity() : positions.capacity() / 3) / 3;
+
+        float[] points = new float[count * 9];
+        IntStream.range(0, count).parallel().forEach(t -> {
+            for (int k = 0; k < 3; k++) {
+                int v = indices != null ? indices.get(t * 3 + k) : t * 3 + k;
+                for (int j = 0; j < 3; j++)
+                    points[t * 9 + k * 3 + j] = positions.get(v * 3 + j);
+            }
+        });
+
+        // A tree of n triangles has at most 2n - 1 nodes. Building gives
+        // each node's children fixed places in that space, so the threads
+        // never share anything, and then the tree is packed.
+        int capacity = Math.max(1, 2 * count - 1);
+        Builder builder = new Builder(points, count, capacity);
+        ForkJoinPool.commonPool().invoke(builder.new Build(0, count, 0, 1));
+
+        int used = 0;
+        for (int n = 0; n < capacity; n++)
+            if (builder.used[n])
+                used++;
+        bounds = new float[used * 6];
+        nodes = new int[used * 2];
+        depth = builder.depth.get();
+        pack(builder);
+
+        triangles = builder.order;
+        corners = new float[count * 9];
+        IntStream.range(0, count).parallel().forEach(
+                i -> System.arraycopy(points, triangles[i] * 9, corners, i * 9, 9));
+    }
+
+    /**
+     * Copy the built nodes into the flat arrays, in depth first order.
+     */
+    private void pack(Builder builder) {
+        // Pairs of a built node and the packed node that is its parent, if
+        // it is a second child
+        int[] stack = new int[2 * (depth + 1)];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = -1;
+        int next = 0;
+        while (top > 0) {
+            int parent = stack[--top];
+            int node = stack[--top];
+            int n = next++;
+            if (parent >= 0)
+                nodes[parent * 2] = n;
+            System.arraycopy(builder.bounds, node * 6, bounds, n * 6, 6);
+            nodes[n * 2] = builder.nodes[node * 2];
+            nodes[n * 2 + 1] = builder.nodes[node * 2 + 1];
+            if (nodes[n * 2 + 1] < 0) {
+                stack[top++] = builder.nodes[node * 2];
+                stack[top++] = n;
+                stack[top++] = node + 1;
+                stack[top++] = -1;
+            }
+        }
+    }
+
+    /**
+     * The state shared by the tasks building the tree.
+     */
+    private static class Builder {
+        // The box around each triangle, and its centre
+        private final float[] boxes;
+        private final float[] centroids;
+        private final int[] order;
+        private final float[] bounds;
+        private final int[] nodes;
+        private final boolean[] used;
+        private final AtomicInteger depth = new AtomicInteger();
+
+        private Builder(float[] points, int count, int capacity) {
+            boxes = new float[count * 6];
+            centroids = new float[count * 3];
+            IntStream.range(0, count).parallel().forEach(t -> {
+                for (int j = 0; j < 3; j++) {
+                    float low = Math.min(points[t * 9 + j],
+                            Math.min(points[t * 9 + 3 + j], points[t * 9 + 6 + j]));
+                    float high = Math.max(points[t * 9 + j],
+                            Math.max(points[t * 9 + 3 + j], points[t * 9 + 6 + j]));
+                    boxes[t * 6 + j] = low;
+                    boxes[t * 6 + 3 + j] = high;
+                    centroids[t * 3 + j] = (low + high) / 2;
+                }
+            });
+            order = new int[count];
+            for (int t = 0; t < count; t++)
+                order[t] = t;
+            bounds = new float[capacity * 6];
+            nodes = new int[capacity * 2];
+            used = new boolean[capacity];
+        }
+
+        /**
+         * Build the node for a range of the triangles, and the nodes below
+         * it. The first child goes in the next place, and the second child
+         * after the most places the first child's nodes could take.
+         */
+        private class Build extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final int start, end, node, level;
+
+            private Build(int start, int end, int node, int level) {
+                this.start = start;
+                this.end = end;
+                this.node = node;
+                this.level = level;
+            }
+
+            @Override
+            protected void compute() {
+                used[node] = true;
+                depth.accumulateAndGet(level, Math::max);
+
+                float[] box = emptyBox();
+                float[] centres = emptyBox();
+                for (int i = start; i < end; i++) {
+                    int t = order[i];
+                    union(box, boxes, t * 6);
+                    extend(centres, centroids, t * 3);
+                }
+                System.arraycopy(box, 0, bounds, node * 6, 6);
+
+                int count = end - start;
+                float area = area(box);
+                // Splitting must cost less than testing every triangle here,
+                // unless there are too many
+                float bestCost = count <= MAX_LEAF_TRIANGLES ? count * area
+                        : Float.POSITIVE_INFINITY;
+                int bestAxis = -1, bestSplit = 0;
+
+                int[] binCounts = new int[BINS];
+                float[] binBoxes = new float[BINS * 6];
+                float[] rightAreas = new float[BINS];
+                for (int axis = 0; axis < 3; axis++) {
+                    float low = centres[axis], extent = centres[axis + 3] - low;
+                    if (extent <= 0)
+                        continue;
+
+                    for (int b = 0; b < BINS; b++) {
+                        binCounts[b] = 0;
+                        System.arraycopy(EMPTY_BOX, 0, binBoxes, b * 6, 6);
+                    }
+                    for (int i = start; i < end; i++) {
+                        int t = order[i];
+                        int b = bin(centroids[t * 3 + axis], low, extent);
+                        binCounts[b]++;
+                        union(binBoxes, b * 6, boxes, t * 6);
+                    }
+
+                    // The area of the bins above each plane, then sweep up
+                    // through the bins below it
+                    float[] side = emptyBox();
+                    for (int b = BINS - 1; b > 0; b--) {
+                        union(side, binBoxes, b * 6);
+                        rightAreas[b] = area(side);
+                    }
+                    side = emptyBox();
+                    int below = 0;
+                    for (int b = 1; b < BINS; b++) {
+                        union(side, binBoxes, (b - 1) * 6);
+                        below += binCounts[b - 1];
+                        if (below == 0 || below == count)
+                            continue;
+                        float cost = TRAVERSAL_COST * area + area(side) * below
+                                + rightAreas[b] * (count - below);
+                        if (cost < bestCost) {
+                            bestCost = cost;
+                            bestAxis = axis;
+                            bestSplit = b;
+                        }
+                    }
+                }
+
+                int middle;
+                if (bestAxis >= 0) {
+                    float low = centres[bestAxis], extent = centres[bestAxis + 3] - low;
+                    middle = start;
+                    for (int i = start; i < end; i++) {
+                        int t = order[i];
+                        if (bin(centroids[t * 3 + bestAxis], low, extent) < bestSplit) {
+                            order[i] = order[middle];
+                            order[middle++] = t;
+                        }
+                    }
+                } else if (count > MAX_LEAF_TRIANGLES) {
+                    // Every centre is in the same place, so any split will do
+                    bestAxis = 0;
+                    middle = start + count / 2;
+                } else {
+                    nodes[node * 2] = start;
+                    nodes[node * 2 + 1] = count;
+                    return;
+                }
+
+                int second = node + 2 * (middle - start);
+                nodes[node * 2] = second;
+                nodes[node * 2 + 1] = -1 - bestAxis;
+                Build first = new Build(start, middle, node + 1, level + 1);
+                Build rest = new Build(middle, end, second, level + 1);
+                if (count > PARALLEL_TRIANGLES) {
+                    invokeAll(first, rest);
+                } else {
+                    first.compute();
+                    rest.compute();
+                }
+            }
+        }
+    }
+
+    private static int bin(float centre, float low, float extent) {
+        return Math.min(BINS - 1, (int) ((centre - low) * BINS / extent));
+    }
+
+    private static float[] emptyBox() {
+        return EMPTY_BOX.clone();
+    }
+
+    private static void extend(float[] box, float[] points, int point) {
+        for (int j = 0; j < 3; j++) {
+            box[j] = Math.min(box[j], points[point + j]);
+            box[3 + j] = Math.max(box[3 + j], points[point + j]);
+        }
+    }
+
+    private static void union(float[] box, float[] boxes, int other) {
+        union(box, 0, boxes, other);
+    }
+
+    private static void union(float[] boxes, int box, float[] others, int other) {
+        for (int j = 0; j < 3; j++) {
+            float low = others[other + j], high = others[other + 3 + j];
+            if (low < boxes[box + j])
+                boxes[box + j] = low;
+            if (high > boxes[box + 3 + j])
+                boxes[box + 3 + j] = high;
+        }
+    }
+
+    /**
+     * Half the surface area of a box, or 0 if it is empty.
+     */
+    private static float area(float[] box) {
+        float x = box[3] - box[0], y = box[4] - box[1], z = box[5] - box[2];
+        if (x < 0)
+            return 0;
+        return x * y + y * z + z * x;
+    }
+
+    /**
+     * Find where a ray first hits the mesh drawn in the given frame.
+     *
+     * @param origin The start of the ray, in the coordinates the frame is in
+     * @param direction The direction of the ray, in the same coordinates
+     * @param frame The frame the mesh is drawn in
+     * @return The nearest hit in front of the origin, or null if the ray
+     * misses the mesh
+     */
+    public Hit raycast(Point3D origin, Vector3 direction, CoordFrame3D frame) {
+        float[] m = frame.getMatrix().getValues();
+        float[] inv = invert(m);
+
+        // An affine map keeps the distances along the ray in proportion, so
+        // a distance in the mesh's coordinates is the same outside them
+        float ox = origin.getX(), oy = origin.getY(), oz = origin.getZ();
+        float dx = direction.getX(), dy = direction.getY(), dz = direction.getZ();
+        float[] ray = {
+                inv[0] * ox + inv[4] * oy + inv[8] * oz + inv[12],
+                inv[1] * ox + inv[5] * oy + inv[9] * oz + inv[13],
+                inv[2] * ox + inv[6] * oy + inv[10] * oz + inv[14],
+                inv[0] * dx + inv[4] * dy + inv[8] * dz,
+                inv[1] * dx + inv[5] * dy + inv[9] * dz,
+                inv[2] * dx + inv[6] * dy + inv[10] * dz };
+
+        float[] nearest = { Float.POSITIVE_INFINITY };
+        int triangle = raycast(ray, nearest);
+        if (triangle < 0)
+            return null;
+        float t = nearest[0];
+        return new Hit(t, triangles[triangle],
+                new Point3D(ox + dx * t, oy + dy * t, oz + dz * t));
+    }
+
+    /**
+     * Find the nearest triangle hit by a ray in the mesh's coordinates, nearer
+     * than the given distance.
+     *
+     * @param ray The origin then the direction
+     * @param nearest The distance, replaced by the distance to the hit
+     * @return The triangle's place in the order of the leaves, or -1 for none
+     */
+    private int raycast(float[] ray, float[] nearest) {
+        if (triangles.length == 0)
+            return -1;
+        float ox = ray[0], oy = ray[1], oz = ray[2];
+        float dx = ray[3], dy = ray[4], dz = ray[5];
+        float ix = 1 / dx, iy = 1 / dy, iz = 1 / dz;
+        float best = nearest[0];
+        int hit = -1;
+
+        int[] stack = new int[depth + 1];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int n = stack[--top];
+            if (!slabs(n * 6, ox, oy, oz, ix, iy, iz, best))
+                continue;
+
+            int count = nodes[n * 2 + 1];
+            if (count >= 0) {
+                int first = nodes[n * 2];
+                for (int i = first; i < first + count; i++) {
+                    float t = intersect(i * 9, ox, oy, oz, dx, dy, dz);
+                    if (t < best) {
+                        best = t;
+                        hit = i;
+                    }
+                }
+            } else {
+                // Go into the child nearer the origin first, so the other
+                // is more often skipped
+                int axis = -1 - count;
+                float d = axis == 0 ? dx : axis == 1 ? dy : dz;
+                if (d < 0) {
+                    stack[top++] = n + 1;
+                    stack[top++] = nodes[n * 2];
+                } else {
+                    stack[top++] = nodes[n * 2];
+                    stack[top++] = n + 1;
+                }
+            }
+        }
+        nearest[0] = best;
+        return hit;
+    }
+
+    /**
+     * Whether a ray enters a node's box before the given distance.
+     */
+    private boolean slabs(int box, float ox, float oy, float oz, float ix, float iy, float iz,
+            float best) {
+        float near = 0, far = best;
+        // Comparisons rather than Math.min and max, so the not a number from a
+        // ray in the plane of a face is ignored
+        float t0 = (bounds[box] - ox) * ix, t1 = (bounds[box + 3] - ox) * ix;
+        if (t0 > t1) { float t = t0; t0 = t1; t1 = t; }
+        if (t0 > near) near = t0;
+        if (t1 < far) far = t1;
+        t0 = (bounds[box + 1] - oy) * iy;
+        t1 = (bounds[box + 4] - oy) * iy;
+        if (t0 > t1) { float t = t0; t0 = t1; t1 = t; }
+        if (t0 > near) near = t0;
+        if (t1 < far) far = t1;
+        t0 = (bounds[box + 2] - oz) * iz;
+        t1 = (bounds[box + 5] - oz) * iz;
+        if (t0 > t1) { float t = t0; t0 = t1; t1 = t; }
+        if (t0 > near) near = t0;
+        if (t1 < far) far = t1;
+        return near <= far;
+    }
+
+    /**
+     * The distance along a ray to a triangle, by the method of Moller and
+     * Trumbore, or infinity if the ray misses it or is in its plane.
+     */
+    private float intersect(int c, float ox, float oy, float oz, float dx, float dy, float dz) {
+        float x0 = corners[c], y0 = corners[c + 1], z0 = corners[c + 2];
+        float ax = corners[c + 3] - x0, ay = corners[c + 4] - y0, az = corners[c + 5] - z0;
+        float bx = corners[c + 6] - x0, by = corners[c + 7] - y0, bz = corners[c + 8] - z0;
+
+        float px = dy * bz - dz * by, py = dz * bx - dx * bz, pz = dx * by - dy * bx;
+        float det = ax * px + ay * py + az * pz;
+        if (det == 0)
+            return Float.POSITIVE_INFINITY;
+        float inv = 1 / det;
+
+        float sx = ox - x0, sy = oy - y0, sz = oz - z0;
+        float u = (sx * px + sy * py + sz * pz) * inv;
+        if (u < 0 || u > 1)
+            return Float.POSITIVE_INFINITY;
+        float qx = sy * az - sz * ay, qy = sz * ax - sx * az, qz = sx * ay - sy * ax;
+        float v = (dx * qx + dy * qy + dz * qz) * inv;
+        if (v < 0 || u + v > 1)
+            return Float.POSITIVE_INFINITY;
+        float t = (bx * qx + by * qy + bz * qz) * inv;
+        return t >= 0 ? t : Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Whether a sphere touches any triangle of the mesh drawn in the given
+     * frame. Only the surface counts, so a sphere entirely inside a closed
+     * mesh does not touch it.
+     *
+     * @param centre The centre of the sphere, in the coordinates the frame is
+     * in
+     * @param radius The radius of the sphere, in the same coordinates
+     * @param frame The frame the mesh is drawn in
+     * @return
+     */
+    public boolean intersectsSphere(Point3D centre, float radius, CoordFrame3D frame) {
+        if (triangles.length == 0)
+            return false;
+        // A sphere is not a sphere in the mesh's coordinates if the frame
+        // scales unequally, so the boxes and triangles are moved out of them
+        // instead
+        float[] m = frame.getMatrix().getValues();
+        float cx = centre.getX(), cy = centre.getY(), cz = centre.getZ();
+        float r2 = radius * radius;
+        float[] corner = new float[9];
+
+        int[] stack = new int[depth + 1];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int n = stack[--top];
+            if (boxDistance(m, n * 6, cx, cy, cz) > r2)
+                continue;
+
+            int count = nodes[n * 2 + 1];
+            if (count >= 0) {
+                int first = nodes[n * 2];
+                for (int i = first; i < first + count; i++) {
+                    for (int k = 0; k < 9; k += 3) {
+                        float x = corners[i * 9 + k], y = corners[i * 9 + k + 1],
+                                z = corners[i * 9 + k + 2];
+                        corner[k] = m[0] * x + m[4] * y + m[8] * z + m[12];
+                        corner[k + 1] = m[1] * x + m[5] * y + m[9] * z + m[13];
+                        corner[k + 2] = m[2] * x + m[6] * y + m[10] * z + m[14];
+                    }
+                    if (triangleDistance(corner, cx, cy, cz) <= r2)
+                        return true;
+                }
+            } else {
+                stack[top++] = nodes[n * 2];
+                stack[top++] = n + 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The square of the distance from a point to the box around a node's box
+     * moved by the given matrix.
+     */
+    private float boxDistance(float[] m, int box, float px, float py, float pz) {
+        float hx = (bounds[box + 3] - bounds[box]) / 2;
+        float hy = (bounds[box + 4] - bounds[box + 1]) / 2;
+        float hz = (bounds[box + 5] - bounds[box + 2]) / 2;
+        float x = bounds[box] + hx, y = bounds[box + 1] + hy, z = bounds[box + 2] + hz;
+        float distance = 0;
+        for (int row = 0; row < 3; row++) {
+            float centre = m[row] * x + m[4 + row] * y + m[8 + row] * z + m[12 + row];
+            float extent = Math.abs(m[row]) * hx + Math.abs(m[4 + row]) * hy
+                    + Math.abs(m[8 + row]) * hz;
+            float p = row == 0 ? px : row == 1 ? py : pz;
+            float outside = Math.abs(p - centre) - extent;
+            if (outside > 0)
+                distance += outside * outside;
+        }
+        return distance;
+    }
+
+    /**
+     * The square of the distance from a point to a triangle, from the closest
+     * point on the triangle as found in Ericson, "Real-Time Collision
+     * Detection", section 5.1.5.
+     */
+    private static float triangleDistance(float[] c, float px, float py, float pz) {
+        float abx = c[3] - c[0], aby = c[4] - c[1], abz = c[5] - c[2];
+        float acx = c[6] - c[0], acy = c[7] - c[1], acz = c[8] - c[2];
+        float apx = px - c[0], apy = py - c[1], apz = pz - c[2];
+
+        float d1 = abx * apx + aby * apy + abz * apz;
+        float d2 = acx * apx + acy * apy + acz * apz;
+        if (d1 <= 0 && d2 <= 0)
+            return square(apx, apy, apz);
+
+        float bpx = px - c[3], bpy = py - c[4], bpz = pz - c[5];
+        float d3 = abx * bpx + aby * bpy + abz * bpz;
+        float d4 = acx * bpx + acy * bpy + acz * bpz;
+        if (d3 >= 0 && d4 <= d3)
+            return square(px - c[3], py - c[4], pz - c[5]);
+
+        float vc = d1 * d4 - d3 * d2;
+        if (vc <= 0 && d1 >= 0 && d3 <= 0) {
+            float v = d1 / (d1 - d3);
+            return square(apx - abx * v, apy - aby * v, apz - abz * v);
+        }
+
+        float cpx = px - c[6], cpy = py - c[7], cpz = pz - c[8];
+        float d5 = abx * cpx + aby * cpy + abz * cpz;
+        float d6 = acx * cpx + acy * cpy + acz * cpz;
+        if (d6 >= 0 && d5 <= d6)
+            return square(cpx, cpy, cpz);
+
+        float vb = d5 * d2 - d1 * d6;
+        if (vb <= 0 && d2 >= 0 && d6 <= 0) {
+            float w = d2 / (d2 - d6);
+            return square(apx - acx * w, apy - acy * w, apz - acz * w);
+        }
+
+        float va = d3 * d6 - d5 * d4;
+        if (va <= 0 && d4 - d3 >= 0 && d5 - d6 >= 0) {
+            float w = (d4 - d3) / ((d4 - d3) + (d5 - d6));
+            return square(bpx - (c[6] - c[3]) * w, bpy - (c[7] - c[4]) * w,
+                    bpz - (c[8] - c[5]) * w);
+        }
+
+        // Inside the triangle, so the distance is to its plane
+        float denom = 1 / (va + vb + vc);
+        float v = vb * denom, w = vc * denom;
+        return square(apx - abx * v - acx * w, apy - aby * v - acy * w,
+                apz - abz * v - acz * w);
+    }
+
+    private static float square(float x, float y, float z) {
+        return x * x + y * y + z * z;
+    }
+
+    /**
+     * Invert an affine matrix, in the column major order of Matrix4.
+     */
+    private static float[] invert(float[] m) {
+        // The inverse of the upper 3x3, from its cofactors
+        float c00 = m[5] * m[10] - m[9] * m[6];
+        float c01 = m[9] * m[2] - m[1] * m[10];
+        float c02 = m[1] * m[6] - m[5] * m[2];
+        float det = m[0] * c00 + m[4] * c01 + m[8] * c02;
+        if (det == 0)
+            throw new IllegalArgumentException("The frame cannot be inverted");
+        float s = 1 / det;
+
+        float[] inv = new float[16];
+        inv[0] = c00 * s;
+        inv[1] = c01 * s;
+        inv[2] = c02 * s;
+        inv[4] = (m[8] * m[6] - m[4] * m[10]) * s;
+        inv[5] = (m[0] * m[10] - m[8] * m[2]) * s;
+        inv[6] = (m[4] * m[2] - m[0] * m[6]) * s;
+        inv[8] = (m[4] * m[9] - m[8] * m[5]) * s;
+        inv[9] = (m[8] * m[1] - m[0] * m[9]) * s;
+        inv[10] = (m[0] * m[5] - m[4] * m[1]) * s;
+        for (int row = 0; row < 3; row++)
+            inv[12 + row] = -(inv[row] * m[12] + inv[4 + row] * m[13] + inv[8 + row] * m[14]);
+        inv[15] = 1;
+        return inv;
+    }
+
+    /**
+     * The number of nodes in the tree.
+     */
+    public int getNodeCount() {
+        return nodes.length / 2;
+    }
+
+    /**
+     * The number of nodes on the longest path from the root to a leaf.
+     */
+    public int getDepth() {
+        return depth;
+    }
+}
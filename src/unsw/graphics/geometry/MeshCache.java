@@ -0,0 +1,287 @@
+package unsw.graphics.geometry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import unsw.graphics.Point2DBuffer;
+import unsw.graphics.Point3DBuffer;
+
+/**
+ * A cache of the meshes loaded from PLY files, kept in binary files next to
+ * them.
+ *
+ * Each cache file holds the final vertices, normals, texture coordinates and
+ * indices of a mesh, so loading it skips parsing the PLY file and computing
+ * normals. The file is memory mapped and its arrays are used directly as the
+ * mesh's buffers, which are read only. A mesh loaded with and without
+ * generated normals or texture coordinates, or optimized and not, is cached
+ * in separate files.
+ *
+ * A cache file records the modification time, length and SHA-256 hash of the
+ * PLY file it was made from. It is used as is if the time and length still
+ * match. Otherwise the PLY file is hashed, and if the hash still matches, as
+ * it does after a fresh checkout, the recorded time is updated. If not, the
+ * PLY file is parsed again and the cache file replaced.
+ *
+ * Use TriangleMesh.setCache() to change or turn off the cache.
+ */
+public class MeshCache {
+
+    private static final int MAGIC = 0x554D5348;
+    private static final int VERSION = 1;
+
+    // Written in native order, so a file from a machine with the other byte
+    // order reads differently and is not used
+    private static final int BYTE_ORDER_MARK = 1;
+
+    private static final int HAS_NORMALS = 1;
+    private static final int HAS_TEX_COORDS = 2;
+    private static final int OPTIMIZED = 4;
+
+    // Byte offsets of each header field. The arrays follow the header, which
+    // is a whole number of floats long so they are aligned.
+    private static final int MODIFIED = 12;
+    private static final int LENGTH = 20;
+    private static final int HASH = 28;
+    private static final int HASH_LENGTH = 32;
+    private static final int FLAGS = 60;
+    private static final int VERTEX_COUNT = 64;
+    private static final int INDEX_COUNT = 68;
+    private static final int HEADER_SIZE = 72;
+
+    private final File directory;
+
+    /**
+     * Create a cache that keeps each cache file next to its PLY file.
+     */
+    public MeshCache() {
+        this(null);
+    }
+
+    /**
+     * Create a cache that keeps its files in the given directory, or next to
+     * each PLY file if it is null. The directory is created when the first
+     * file is saved.
+     *
+     * @param directory
+     */
+    public MeshCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Load a mesh from the cache.
+     *
+     * @param plyFile
+     * @param vertexNormals Whether the mesh has generated vertex normals
+     * @param texCoords Whether the mesh has generated texture coordinates
+     * @param optimized Whether the mesh was optimized for drawing
+     * @return The mesh, or null if it is not in the cache or the PLY file has
+     * changed
+     */
+    public TriangleMesh load(String plyFile, boolean vertexNormals, boolean texCoords,
+            boolean optimized) {
+        File source = new File(plyFile);
+        File file = file(source, vertexNormals, texCoords, optimized);
+        if (!file.isFile() || !source.isFile())
+            return null;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+            while (header.hasRemaining())
+                if (channel.read(header) < 0)
+                    return null;
+            header.flip();
+
+            int flags = flags(vertexNormals, texCoords, optimized);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                    || header.getInt(8) != BYTE_ORDER_MARK || header.getInt(FLAGS) != flags)
+                return null;
+
+            long modified = source.lastModified();
+            if (header.getLong(MODIFIED) != modified
+                    || header.getLong(LENGTH) != source.length()) {
+                byte[] hash = new byte[HASH_LENGTH];
+                header.position(HASH);
+                header.get(hash);
+                if (!Arrays.equals(hash, hash(source)))
+                    return null;
+                // The contents are the same, so only the time has changed
+                touch(file, modified);
+            }
+
+            int vertexCount = header.getInt(VERTEX_COUNT);
+            int indexCount = header.getInt(INDEX_COUNT);
+            long size = HEADER_SIZE + (long) vertexCount * stride(flags) * Float.BYTES
+                    + (long) indexCount * Integer.BYTES;
+            if (channel.size() != size)
+                return null;
+
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            data.order(ByteOrder.nativeOrder());
+            data.position(HEADER_SIZE);
+
+            Point3DBuffer vertices = new Point3DBuffer(floats(data, vertexCount * 3));
+            Point3DBuffer normals = vertexNormals
+                    ? new Point3DBuffer(floats(data, vertexCount * 3)) : null;
+            Point2DBuffer texCoordBuffer = texCoords
+                    ? new Point2DBuffer(floats(data, vertexCount * 2)) : null;
+            IntBuffer indices = ints(data, indexCount);
+            return new TriangleMesh(vertices, normals, texCoordBuffer, indices);
+        } catch (IOException e) {
+            System.err.println("Could not read cached mesh " + file + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Save the arrays of a mesh loaded from a PLY file.
+     *
+     * @param plyFile
+     * @param optimized Whether the mesh was optimized for drawing
+     * @param vertices
+     * @param normals The normals, or null if the mesh has none
+     * @param texCoords The texture coordinates, or null if the mesh has none
+     * @param indices
+     */
+    public void save(String plyFile, boolean optimized, Point3DBuffer vertices,
+            Point3DBuffer normals, Point2DBuffer texCoords, IntBuffer indices) {
+        File source = new File(plyFile);
+        File file = file(source, normals != null, texCoords != null, optimized);
+        int flags = flags(normals != null, texCoords != null, optimized);
+
+        try {
+            // Read the time first, so a change while hashing makes it stale
+            long modified = source.lastModified();
+            long length = source.length();
+            byte[] hash = hash(source);
+
+            long size = HEADER_SIZE + (long) vertices.capacity() * stride(flags) * Float.BYTES
+                    + (long) indices.capacity() * Integer.BYTES;
+            ByteBuffer data = ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder());
+            data.putInt(MAGIC).putInt(VERSION).putInt(BYTE_ORDER_MARK);
+            data.putLong(modified).putLong(length).put(hash);
+            data.putInt(flags).putInt(vertices.capacity()).putInt(indices.capacity());
+            data.position(HEADER_SIZE);
+            putFloats(data, vertices.getBuffer());
+            if (normals != null)
+                putFloats(data, normals.getBuffer());
+            if (texCoords != null)
+                putFloats(data, texCoords.getBuffer());
+            IntBuffer indexData = indices.duplicate();
+            indexData.rewind();
+            data.asIntBuffer().put(indexData);
+            data.rewind();
+
+            // Write to a temporary file first so a reader never sees half a mesh
+            File temp = new File(file.getPath() + ".tmp");
+            if (directory != null)
+                directory.mkdirs();
+            try (RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+                    FileChannel channel = raf.getChannel()) {
+                raf.setLength(0);
+                while (data.hasRemaining())
+                    channel.write(data);
+            } catch (IOException e) {
+                temp.delete();
+                throw e;
+            }
+            file.delete();
+            if (!temp.renameTo(file))
+                temp.delete();
+        } catch (IOException e) {
+            System.err.println("Could not cache mesh " + file + ": " + e);
+        }
+    }
+
+    /**
+     * The cache file for a mesh loaded from the given PLY file.
+     *
+     * @param source
+     * @param vertexNormals
+     * @param texCoords
+     * @param optimized
+     * @return
+     */
+    public File file(File source, boolean vertexNormals, boolean texCoords, boolean optimized) {
+        String name = source.getName() + (vertexNormals ? "-n" : "")
+                + (texCoords ? "-t" : "") + (optimized ? "-o" : "") + ".mesh";
+        return new File(directory != null ? directory : source.getAbsoluteFile().getParentFile(),
+                name);
+    }
+
+    /**
+     * Record a new modification time for the PLY file in a cache file. This
+     * only saves hashing it next time, so it does not matter if it fails.
+     */
+    private static void touch(File file, long modified) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                FileChannel channel = raf.getChannel()) {
+            ByteBuffer time = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.nativeOrder());
+            time.putLong(0, modified);
+            channel.write(time, MODIFIED);
+        } catch (IOException e) {
+            // Hash it again next time
+        }
+    }
+
+    private static int flags(boolean vertexNormals, boolean texCoords, boolean optimized) {
+        return (vertexNormals ? HAS_NORMALS : 0) | (texCoords ? HAS_TEX_COORDS : 0)
+                | (optimized ? OPTIMIZED : 0);
+    }
+
+    private static int stride(int flags) {
+        return 3 + ((flags & HAS_NORMALS) != 0 ? 3 : 0)
+                + ((flags & HAS_TEX_COORDS) != 0 ? 2 : 0);
+    }
+
+    /**
+     * Take the next count floats of data as a buffer of their own.
+     */
+    private static FloatBuffer floats(ByteBuffer data, int count) {
+        ByteBuffer slice = data.slice().order(ByteOrder.nativeOrder());
+        slice.limit(count * Float.BYTES);
+        data.position(data.position() + count * Float.BYTES);
+        return slice.asFloatBuffer();
+    }
+
+    private static IntBuffer ints(ByteBuffer data, int count) {
+        ByteBuffer slice = data.slice().order(ByteOrder.nativeOrder());
+        slice.limit(count * Integer.BYTES);
+        data.position(data.position() + count * Integer.BYTES);
+        return slice.asIntBuffer();
+    }
+
+    private static void putFloats(ByteBuffer data, Buffer buffer) {
+        FloatBuffer floats = ((FloatBuffer) buffer).duplicate();
+        floats.rewind();
+        data.asFloatBuffer().put(floats);
+        data.position(data.position() + floats.capacity() * Float.BYTES);
+    }
+
+    private static byte[] hash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        return digest.digest();
+    }
+}
@@ -0,0 +1,248 @@
+package unsw.graphics.geometry;
+
+import java.util.Arrays;
+
+/**
+ * Reorders the triangles and vertices of indexed meshes so the GPU does less
+ * work drawing them.
+ *
+ * GPUs keep the last few transformed vertices in a small cache, so a vertex
+ * shared by triangles drawn close together is only transformed once.
+ * optimizeVertexCache() orders triangles so that happens as often as
+ * possible, with the algorithm from Tom Forsyth's "Linear-Speed Vertex Cache
+ * Optimisation". optimizeVertexFetch() then orders the vertices by when they
+ * are first used, so they are read from memory in order.
+ *
+ * The quality of an order is measured by its average cache miss ratio
+ * (ACMR), the number of vertices transformed per triangle. It is at best a
+ * little over 0.5 for a large regular mesh and at worst 3.
+ */
+public class MeshOptimizer {
+
+    // The size of the cache modelled while choosing triangles
+    private static final int CACHE_SIZE = 32;
+
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+
+    /**
+     * Reorder the triangles of a mesh for the post-transform vertex cache.
+     * The vertices of each triangle keep their order, so it faces the same
+     * way.
+     *
+     * @param indices The indices of the mesh, three for each triangle
+     * @param vertexCount The number of vertices in the mesh
+     * @return The reordered indices
+     */
+    public static int[] optimizeVertexCache(int[] indices, int vertexCount) {
+        int triangleCount = indices.length / 3;
+
+        // The triangles that use each vertex, with those of vertex v at
+        // adjacency[firstAdjacent[v]] onwards
+        int[] remaining = new int[vertexCount];
+        for (int index : indices)
+            remaining[index]++;
+        int[] firstAdjacent = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++)
+            firstAdjacent[v + 1] = firstAdjacent[v] + remaining[v];
+        int[] adjacency = new int[indices.length];
+        int[] filled = Arrays.copyOf(firstAdjacent, vertexCount);
+        for (int i = 0; i < indices.length; i++)
+            adjacency[filled[indices[i]]++] = i / 3;
+
+        float[] vertexScore = new float[vertexCount];
+        for (int v = 0; v < vertexCount; v++)
+            vertexScore[v] = score(-1, remaining[v]);
+
+        float[] triangleScore = new float[triangleCount];
+        for (int t = 0; t < triangleCount; t++)
+            triangleScore[t] = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]]
+                    + vertexScore[indices[t * 3 + 2]];
+        boolean[] added = new boolean[triangleCount];
+
+        // The cache, most recently used first, with room for a triangle's
+        // vertices to be added before the oldest are dropped
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] newCache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+
+        int[] result = new int[triangleCount * 3];
+        int best = -1;
+        // Triangles before this have all been added
+        int scan = 0;
+        for (int n = 0; n < triangleCount; n++) {
+            if (best < 0) {
+                // Nothing in the cache is still needed, so start again from
+                // the first triangle not yet added. Searching for the best
+                // scoring one instead makes this quadratic.
+                while (added[scan])
+                    scan++;
+                best = scan;
+            }
+            added[best] = true;
+            System.arraycopy(indices, best * 3, result, n * 3, 3);
+
+            // Put the triangle's vertices at the front of the cache
+            int newCount = 0;
+            for (int i = 0; i < 3; i++) {
+                int v = indices[best * 3 + i];
+                if (i == 0 || v != newCache[0] && (i == 1 || v != newCache[1]))
+                    newCache[newCount++] = v;
+                remaining[v]--;
+                removeTriangle(adjacency, firstAdjacent[v], firstAdjacent[v] + remaining[v] + 1,
+                        best);
+            }
+            int triangleVertices = newCount;
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                boolean inTriangle = false;
+                for (int j = 0; j < triangleVertices; j++)
+                    inTriangle |= newCache[j] == v;
+                if (!inTriangle)
+                    newCache[newCount++] = v;
+            }
+            int[] swap = cache;
+            cache = newCache;
+            newCache = swap;
+            cacheCount = newCount;
+
+            // Rescore the vertices in the cache, and those that fell out,
+            // and find the best triangle that uses any of them
+            best = -1;
+            float bestScore = -1;
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                float score = score(i < CACHE_SIZE ? i : -1, remaining[v]);
+                float change = score - vertexScore[v];
+                vertexScore[v] = score;
+                for (int a = firstAdjacent[v]; a < firstAdjacent[v] + remaining[v]; a++) {
+                    int t = adjacency[a];
+                    triangleScore[t] += change;
+                }
+            }
+            for (int i = 0; i < Math.min(cacheCount, CACHE_SIZE); i++) {
+                int v = cache[i];
+                for (int a = firstAdjacent[v]; a < firstAdjacent[v] + remaining[v]; a++) {
+                    int t = adjacency[a];
+                    if (triangleScore[t] > bestScore) {
+                        best = t;
+                        bestScore = triangleScore[t];
+                    }
+                }
+            }
+            cacheCount = Math.min(cacheCount, CACHE_SIZE);
+        }
+        return result;
+    }
+
+    // The part of a vertex's score from its position in the cache
+    private static final float[] CACHE_SCORES = new float[CACHE_SIZE];
+
+    // The part of a vertex's score from the number of triangles left that
+    // use it, for the most common numbers
+    private static final float[] VALENCE_SCORES = new float[32];
+
+    static {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (i < 3) {
+                // The last triangle's vertices are penalised a little, so the
+                // next triangle does not just reuse the same edge
+                CACHE_SCORES[i] = LAST_TRIANGLE_SCORE;
+            } else {
+                float scaled = 1 - (i - 3) / (float) (CACHE_SIZE - 3);
+                CACHE_SCORES[i] = (float) Math.pow(scaled, CACHE_DECAY_POWER);
+            }
+        }
+        for (int i = 1; i < VALENCE_SCORES.length; i++)
+            VALENCE_SCORES[i] = valenceScore(i);
+    }
+
+    /**
+     * The score of a vertex, given its position in the cache (or -1 if it is
+     * not in it) and the number of triangles still to be drawn that use it.
+     */
+    private static float score(int cachePosition, int remaining) {
+        if (remaining == 0)
+            return -1;
+        float score = cachePosition >= 0 ? CACHE_SCORES[cachePosition] : 0;
+        return score + (remaining < VALENCE_SCORES.length ? VALENCE_SCORES[remaining]
+                : valenceScore(remaining));
+    }
+
+    /**
+     * Favour vertices with few triangles left, so they are finished off
+     * rather than left isolated.
+     */
+    private static float valenceScore(int remaining) {
+        return VALENCE_BOOST_SCALE * (float) Math.pow(remaining, -VALENCE_BOOST_POWER);
+    }
+
+    /**
+     * Remove a triangle from a vertex's range of the adjacency, moving the
+     * last triangle in the range into its place.
+     */
+    private static void removeTriangle(int[] adjacency, int start, int end, int triangle) {
+        for (int a = start; a < end; a++) {
+            if (adjacency[a] == triangle) {
+                adjacency[a] = adjacency[end - 1];
+                return;
+            }
+        }
+    }
+
+    /**
+     * Renumber the vertices of a mesh in the order they are first used by
+     * its triangles. Vertices that are not used go last, in their original
+     * order.
+     *
+     * @param indices The indices of the mesh, which are renumbered in place
+     * @param vertexCount The number of vertices in the mesh
+     * @return The new number of each vertex
+     */
+    public static int[] optimizeVertexFetch(int[] indices, int vertexCount) {
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+        int next = 0;
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i];
+            if (remap[v] < 0)
+                remap[v] = next++;
+            indices[i] = remap[v];
+        }
+        for (int v = 0; v < vertexCount; v++)
+            if (remap[v] < 0)
+                remap[v] = next++;
+        return remap;
+    }
+
+    /**
+     * The average cache miss ratio of the given indices, for a first in,
+     * first out cache of the given size.
+     *
+     * @param indices
+     * @param cacheSize
+     * @return The number of vertices transformed per triangle
+     */
+    public static double acmr(int[] indices, int cacheSize) {
+        if (indices.length == 0)
+            return 0;
+        int vertexCount = 0;
+        for (int index : indices)
+            vertexCount = Math.max(vertexCount, index + 1);
+
+        // The number of misses when each vertex was last put in the cache. It
+        // is still in it if there have been fewer than cacheSize misses since.
+        int[] timestamps = new int[vertexCount];
+        Arrays.fill(timestamps, Integer.MIN_VALUE / 2);
+        int misses = 0;
+        for (int index : indices) {
+            if (misses - timestamps[index] >= cacheSize) {
+                misses++;
+                timestamps[index] = misses;
+            }
+        }
+        return misses / (double) (indices.length / 3);
+    }
+}
@@ -0,0 +1,338 @@
+package unsw.graphics.geometry;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reduces the number of triangles in an indexed mesh by collapsing edges, with
+ * the quadric error metric from Garland and Heckbert's "Surface
+ * Simplification Using Quadric Error Metrics".
+ *
+ * Each vertex keeps the sum of the squared distances to the planes of the
+ * triangles around it, as a quadric. Collapsing an edge moves one of its
+ * vertices onto the other, and costs the distance of the kept vertex from the
+ * planes of both. The cheapest edges are collapsed first.
+ *
+ * Vertices are only ever merged into other vertices, never moved, so the
+ * simplified indices refer to the same vertices as the original ones and the
+ * normals and texture coordinates still apply. The edges of holes are kept
+ * in place by extra planes along them. Vertices that share their position
+ * with another vertex, such as at a crease in the normals, are never removed.
+ */
+public class MeshSimplifier {
+
+    // How much more moving off the edge of a hole costs than moving off a
+    // triangle
+    private static final double BOUNDARY_WEIGHT = 10;
+
+    // Collapses may not turn a triangle further than this, as the cosine of
+    // the angle between its normals before and after
+    private static final double MIN_NORMAL_COS = 0.25;
+
+    /**
+     * Simplify a mesh down to at most the given number of triangles, or as
+     * close to it as possible without folding triangles over.
+     *
+     * @param indices The indices of the mesh, three for each triangle
+     * @param positions The position of each vertex, three floats each
+     * @param targetTriangles
+     * @return The indices of the simplified mesh, into the same vertices
+     */
+    public static int[] simplify(int[] indices, FloatBuffer positions, int targetTriangles) {
+        int vertexCount = positions.capacity() / 3;
+        double[] quadrics = new double[vertexCount * 10];
+        boolean[] locked = sharedPositions(positions);
+        addTriangleQuadrics(indices, positions, quadrics);
+        addBoundaryQuadrics(indices, positions, quadrics);
+
+        int[] remap = new int[vertexCount];
+        boolean[] touched = new boolean[vertexCount];
+        int triangleCount = indices.length / 3;
+        while (triangleCount > targetTriangles) {
+            // Collapse the cheapest edges, removing up to half the triangles
+            // still to go, before rebuilding the mesh and trying again
+            int goal = (triangleCount - targetTriangles + 1) / 2;
+            long[] candidates = candidates(indices, positions, quadrics, locked);
+            int[] firstAdjacent = new int[vertexCount + 1];
+            int[] adjacency = adjacency(indices, vertexCount, firstAdjacent);
+
+            for (int v = 0; v < vertexCount; v++)
+                remap[v] = v;
+            Arrays.fill(touched, false);
+            int removed = 0;
+            for (int c = 0; c < candidates.length && removed < goal; c++) {
+                int edge = (int) candidates[c];
+                int i = edge / 2;
+                int from = indices[i];
+                int to = indices[i / 3 * 3 + (i + 1) % 3];
+                if (edge % 2 == 1) {
+                    int swap = from;
+                    from = to;
+                    to = swap;
+                }
+                if (touched[from] || touched[to])
+                    continue;
+                if (flips(indices, positions, adjacency, firstAdjacent, from, to))
+                    continue;
+
+                // The triangles around the removed vertex change, so none of
+                // their vertices can be collapsed again until the next pass
+                for (int a = firstAdjacent[from]; a < firstAdjacent[from + 1]; a++) {
+                    int t = adjacency[a];
+                    boolean shared = false;
+                    for (int j = 0; j < 3; j++) {
+                        touched[indices[t * 3 + j]] = true;
+                        shared |= indices[t * 3 + j] == to;
+                    }
+                    if (shared)
+                        removed++;
+                }
+                remap[from] = to;
+                for (int j = 0; j < 10; j++)
+                    quadrics[to * 10 + j] += quadrics[from * 10 + j];
+            }
+            if (removed == 0)
+                break;
+
+            indices = collapse(indices, remap);
+            triangleCount = indices.length / 3;
+        }
+        return indices;
+    }
+
+    /**
+     * Find the vertices that share their position with another vertex.
+     */
+    private static boolean[] sharedPositions(FloatBuffer positions) {
+        int vertexCount = positions.capacity() / 3;
+        boolean[] shared = new boolean[vertexCount];
+        Map<String, Integer> first = new HashMap<String, Integer>();
+        for (int v = 0; v < vertexCount; v++) {
+            Integer other = first.putIfAbsent(positions.get(v * 3) + " "
+                    + positions.get(v * 3 + 1) + " " + positions.get(v * 3 + 2), v);
+            if (other != null) {
+                shared[v] = true;
+                shared[other] = true;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Add the plane of each triangle to the quadrics of its vertices,
+     * weighted by its area.
+     */
+    private static void addTriangleQuadrics(int[] indices, FloatBuffer positions,
+            double[] quadrics) {
+        double[] normal = new double[3];
+        for (int t = 0; t < indices.length / 3; t++) {
+            int p0 = indices[t * 3], p1 = indices[t * 3 + 1], p2 = indices[t * 3 + 2];
+            double area = normal(positions, p0, p1, p2, normal) / 2;
+            if (area == 0)
+                continue;
+            for (int i = 0; i < 3; i++)
+                addPlane(quadrics, indices[t * 3 + i], positions, p0, normal, area);
+        }
+    }
+
+    /**
+     * Add a plane along each edge that only one triangle uses, at right
+     * angles to that triangle, to the quadrics of the edge's vertices.
+     */
+    private static void addBoundaryQuadrics(int[] indices, FloatBuffer positions,
+            double[] quadrics) {
+        // Each edge is keyed by its vertices in order, so the other side of
+        // the same edge has them the other way around
+        Set<Long> edges = new HashSet<Long>();
+        for (int i = 0; i < indices.length; i++)
+            edges.add(edge(indices[i], indices[i / 3 * 3 + (i + 1) % 3]));
+
+        double[] normal = new double[3];
+        double[] plane = new double[3];
+        for (int i = 0; i < indices.length; i++) {
+            int from = indices[i], to = indices[i / 3 * 3 + (i + 1) % 3];
+            if (edges.contains(edge(to, from)))
+                continue;
+            int t = i / 3;
+            if (normal(positions, indices[t * 3], indices[t * 3 + 1], indices[t * 3 + 2],
+                    normal) == 0)
+                continue;
+            double[] along = new double[3];
+            for (int j = 0; j < 3; j++)
+                along[j] = positions.get(to * 3 + j) - positions.get(from * 3 + j);
+            cross(along, normal, plane);
+            double length = Math.sqrt(dot(plane, plane));
+            if (length == 0)
+                continue;
+            for (int j = 0; j < 3; j++)
+                plane[j] /= length;
+            double weight = BOUNDARY_WEIGHT * dot(along, along);
+            addPlane(quadrics, from, positions, from, plane, weight);
+            addPlane(quadrics, to, positions, from, plane, weight);
+        }
+    }
+
+    private static long edge(int from, int to) {
+        return (long) from << 32 | to;
+    }
+
+    /**
+     * Every edge collapse, as its cost in the high bits and its edge in the
+     * low bits, sorted cheapest first. Edge i * 2 moves the vertex at indices
+     * i onto the next vertex of its triangle, and i * 2 + 1 the other way.
+     */
+    private static long[] candidates(int[] indices, FloatBuffer positions, double[] quadrics,
+            boolean[] locked) {
+        long[] candidates = new long[indices.length * 2];
+        int count = 0;
+        for (int i = 0; i < indices.length; i++) {
+            int a = indices[i], b = indices[i / 3 * 3 + (i + 1) % 3];
+            if (a == b)
+                continue;
+            if (!locked[a])
+                candidates[count++] = (long) Float.floatToIntBits(cost(quadrics, positions, a, b))
+                        << 32 | i * 2;
+            if (!locked[b])
+                candidates[count++] = (long) Float.floatToIntBits(cost(quadrics, positions, b, a))
+                        << 32 | i * 2 + 1;
+        }
+        // Costs are never negative, so their bits sort in the same order
+        candidates = Arrays.copyOf(candidates, count);
+        Arrays.sort(candidates);
+        return candidates;
+    }
+
+    /**
+     * The error of moving one vertex onto another, with the quadrics of both.
+     */
+    private static float cost(double[] quadrics, FloatBuffer positions, int from, int to) {
+        double x = positions.get(to * 3), y = positions.get(to * 3 + 1),
+                z = positions.get(to * 3 + 2);
+        double error = 0;
+        for (int q = from * 10, v = 0; v < 2; q = to * 10, v++) {
+            error += quadrics[q] * x * x + 2 * quadrics[q + 1] * x * y
+                    + 2 * quadrics[q + 2] * x * z + quadrics[q + 3] * y * y
+                    + 2 * quadrics[q + 4] * y * z + quadrics[q + 5] * z * z
+                    + 2 * (quadrics[q + 6] * x + quadrics[q + 7] * y + quadrics[q + 8] * z)
+                    + quadrics[q + 9];
+        }
+        // Rounding can leave a tiny negative error
+        return (float) Math.max(error, 0);
+    }
+
+    /**
+     * Whether moving a vertex onto another would turn any of the triangles
+     * around it too far, or over.
+     */
+    private static boolean flips(int[] indices, FloatBuffer positions, int[] adjacency,
+            int[] firstAdjacent, int from, int to) {
+        double[] before = new double[3];
+        double[] after = new double[3];
+        for (int a = firstAdjacent[from]; a < firstAdjacent[from + 1]; a++) {
+            int t = adjacency[a];
+            int p0 = indices[t * 3], p1 = indices[t * 3 + 1], p2 = indices[t * 3 + 2];
+            if (p0 == to || p1 == to || p2 == to)
+                continue;
+            if (normal(positions, p0, p1, p2, before) == 0)
+                continue;
+            if (normal(positions, p0 == from ? to : p0, p1 == from ? to : p1,
+                    p2 == from ? to : p2, after) == 0)
+                return true;
+            if (dot(before, after) < MIN_NORMAL_COS)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * The triangles that use each vertex, with those of vertex v from
+     * adjacency[firstAdjacent[v]] to adjacency[firstAdjacent[v + 1]].
+     */
+    private static int[] adjacency(int[] indices, int vertexCount, int[] firstAdjacent) {
+        for (int index : indices)
+            firstAdjacent[index + 1]++;
+        for (int v = 0; v < vertexCount; v++)
+            firstAdjacent[v + 1] += firstAdjacent[v];
+        int[] adjacency = new int[indices.length];
+        int[] filled = Arrays.copyOf(firstAdjacent, vertexCount);
+        for (int i = 0; i < indices.length; i++)
+            adjacency[filled[indices[i]]++] = i / 3;
+        return adjacency;
+    }
+
+    /**
+     * Apply the collapses to the indices, dropping the triangles that have
+     * lost an edge.
+     */
+    private static int[] collapse(int[] indices, int[] remap) {
+        int[] result = new int[indices.length];
+        int count = 0;
+        for (int t = 0; t < indices.length / 3; t++) {
+            int p0 = remap[indices[t * 3]], p1 = remap[indices[t * 3 + 1]],
+                    p2 = remap[indices[t * 3 + 2]];
+            if (p0 == p1 || p1 == p2 || p2 == p0)
+                continue;
+            result[count++] = p0;
+            result[count++] = p1;
+            result[count++] = p2;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Add the plane through the given vertex with the given unit normal to a
+     * vertex's quadric.
+     */
+    private static void addPlane(double[] quadrics, int v, FloatBuffer positions, int through,
+            double[] n, double weight) {
+        double d = -(n[0] * positions.get(through * 3) + n[1] * positions.get(through * 3 + 1)
+                + n[2] * positions.get(through * 3 + 2));
+        int q = v * 10;
+        quadrics[q] += weight * n[0] * n[0];
+        quadrics[q + 1] += weight * n[0] * n[1];
+        quadrics[q + 2] += weight * n[0] * n[2];
+        quadrics[q + 3] += weight * n[1] * n[1];
+        quadrics[q + 4] += weight * n[1] * n[2];
+        quadrics[q + 5] += weight * n[2] * n[2];
+        quadrics[q + 6] += weight * n[0] * d;
+        quadrics[q + 7] += weight * n[1] * d;
+        quadrics[q + 8] += weight * n[2] * d;
+        quadrics[q + 9] += weight * d * d;
+    }
+
+    /**
+     * Compute the unit normal of a triangle.
+     *
+     * @return Twice the area of the triangle
+     */
+    private static double normal(FloatBuffer positions, int p0, int p1, int p2, double[] n) {
+        double ax = positions.get(p1 * 3) - positions.get(p0 * 3);
+        double ay = positions.get(p1 * 3 + 1) - positions.get(p0 * 3 + 1);
+        double az = positions.get(p1 * 3 + 2) - positions.get(p0 * 3 + 2);
+        double bx = positions.get(p2 * 3) - positions.get(p0 * 3);
+        double by = positions.get(p2 * 3 + 1) - positions.get(p0 * 3 + 1);
+        double bz = positions.get(p2 * 3 + 2) - positions.get(p0 * 3 + 2);
+        n[0] = ay * bz - az * by;
+        n[1] = az * bx - ax * bz;
+        n[2] = ax * by - ay * bx;
+        double length = Math.sqrt(dot(n, n));
+        if (length > 0)
+            for (int i = 0; i < 3; i++)
+                n[i] /= length;
+        return length;
+    }
+
+    private static void cross(double[] a, double[] b, double[] result) {
+        result[0] = a[1] * b[2] - a[2] * b[1];
+        result[1] = a[2] * b[0] - a[0] * b[2];
+        result[2] = a[0] * b[1] - a[1] * b[0];
+    }
+
+    private static double dot(double[] a, double[] b) {
+        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+    }
+}
@@ -0,0 +1,717 @@
+package unsw.graphics.geometry;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import com.jogamp.opengl.util.GLBuffers;
+
+import unsw.graphics.Point2DBuffer;
+import unsw.graphics.Point3DBuffer;
+
+/**
+ * Reads the vertex positions and faces of a PLY file, in ASCII or in binary
+ * with either byte order.
+ *
+ * The file is memory mapped. The body of an ASCII file is split into chunks
+ * at line breaks, which are parsed on separate threads. Faces with more than
+ * three vertices are split into a fan of triangles, and texture coordinates
+ * can be generated from the positions, both as the jply NormalizingPlyReader
+ * does, so meshes are the same whichever is used.
+ */
+public class PlyParser {
+
+    // Lines of an ASCII file each thread should parse at least, so small
+    // files are not split up more than is worth it
+    private static final int MIN_CHUNK_LINES = 4096;
+
+    private static final int ASCII = 0;
+    private static final int BINARY_LITTLE_ENDIAN = 1;
+    private static final int BINARY_BIG_ENDIAN = 2;
+
+    // The exact powers of ten a double can hold
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    // The largest mantissa that can be held exactly by a double
+    private static final long MAX_EXACT = 1L << 53;
+
+    /**
+     * A property of an element, as declared in the header.
+     */
+    private static class Property {
+        String name;
+        // The type of a scalar, or of the items of a list
+        String type;
+        // The type of a list's length, or null for a scalar
+        String countType;
+    }
+
+    /**
+     * An element, as declared in the header.
+     */
+    private static class Element {
+        String name;
+        int count;
+        List<Property> properties = new ArrayList<Property>();
+    }
+
+    private final String file;
+    private final int threads;
+    private final ByteBuffer data;
+
+    private final List<Element> elements = new ArrayList<Element>();
+    private int format;
+
+    private int vertexCount;
+
+    // The x, y and z of each vertex as read, before they are narrowed to
+    // floats, as texture coordinates are generated from them
+    private double[] positions;
+
+    private IntBuffer indices;
+
+    /**
+     * Read the given PLY file, with as many threads as there are processors.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public PlyParser(String file) throws IOException {
+        this(file, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Read the given PLY file.
+     *
+     * @param file
+     * @param threads The most threads to read an ASCII file with
+     * @throws IOException
+     */
+    public PlyParser(String file, int threads) throws IOException {
+        this.file = file;
+        this.threads = threads;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int body = readHeader();
+
+        Element vertex = element("vertex");
+        if (vertex == null)
+            throw error("no vertex element");
+        vertexCount = vertex.count;
+        positions = new double[vertexCount * 3];
+
+        try {
+            if (format == ASCII)
+                readAscii(body);
+            else
+                readBinary(body);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * The number of indices, three for each triangle.
+     *
+     * @return
+     */
+    public int getIndexCount() {
+        return indices.capacity();
+    }
+
+    /**
+     * The position of each vertex.
+     *
+     * @return
+     */
+    public Point3DBuffer getVertices() {
+        Point3DBuffer vertices = new Point3DBuffer(vertexCount);
+        for (int i = 0; i < vertexCount; i++)
+            vertices.put(i, (float) positions[i * 3], (float) positions[i * 3 + 1],
+                    (float) positions[i * 3 + 2]);
+        return vertices;
+    }
+
+    /**
+     * Texture coordinates for each vertex equal to its x and y position
+     * relative to the smallest x and y of any vertex, and divided by the
+     * width and height of the model.
+     *
+     * @return
+     */
+    public Point2DBuffer getPlanarTexCoords() {
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < vertexCount; i++) {
+            minX = Math.min(minX, positions[i * 3]);
+            maxX = Math.max(maxX, positions[i * 3]);
+            minY = Math.min(minY, positions[i * 3 + 1]);
+            maxY = Math.max(maxY, positions[i * 3 + 1]);
+        }
+
+        Point2DBuffer texCoords = new Point2DBuffer(vertexCount);
+        for (int i = 0; i < vertexCount; i++) {
+            double u = (positions[i * 3] - minX) / (maxX - minX);
+            double v = (positions[i * 3 + 1] - minY) / (maxY - minY);
+            texCoords.put(i, (float) u, (float) v);
+        }
+        return texCoords;
+    }
+
+    /**
+     * Indices into the vertices, each three of which form a triangle.
+     *
+     * @return
+     */
+    public IntBuffer getIndices() {
+        return indices;
+    }
+
+    /**
+     * Read the header and return the offset of the body.
+     */
+    private int readHeader() throws IOException {
+        int pos = 0;
+        Element element = null;
+        boolean first = true;
+        while (true) {
+            int end = pos;
+            while (end < data.limit() && data.get(end) != '\n')
+                end++;
+            if (end == data.limit())
+                throw error("no end_header");
+            String line = ascii(pos, end).trim();
+            pos = end + 1;
+
+            if (first) {
+                if (!line.equals("ply"))
+                    throw error("not a PLY file");
+                first = false;
+                continue;
+            }
+
+            String[] words = line.split("\\s+");
+            switch (words[0]) {
+            case "format":
+                if (words.length < 2)
+                    throw error("bad format line");
+                if (words[1].equals("ascii"))
+                    format = ASCII;
+                else if (words[1].equals("binary_little_endian"))
+                    format = BINARY_LITTLE_ENDIAN;
+                else if (words[1].equals("binary_big_endian"))
+                    format = BINARY_BIG_ENDIAN;
+                else
+                    throw error("unknown format " + words[1]);
+                break;
+            case "element":
+                if (words.length != 3)
+                    throw error("bad element line");
+                element = new Element();
+                element.name = words[1];
+                element.count = Integer.parseInt(words[2]);
+                elements.add(element);
+                break;
+            case "property":
+                if (element == null)
+                    throw error("property before any element");
+                Property property = new Property();
+                if (words.length == 5 && words[1].equals("list")) {
+                    property.countType = words[2];
+                    property.type = words[3];
+                    property.name = words[4];
+                    size(property.countType);
+                } else if (words.length == 3) {
+                    property.type = words[1];
+                    property.name = words[2];
+                } else {
+                    throw error("bad property line");
+                }
+                size(property.type);
+                element.properties.add(property);
+                break;
+            case "end_header":
+                return pos;
+            default:
+                // Comments and anything else this does not use
+                break;
+            }
+        }
+    }
+
+    private Element element(String name) {
+        for (Element element : elements)
+            if (element.name.equals(name))
+                return element;
+        return null;
+    }
+
+    /**
+     * Whether a property holds the vertex indices of a face.
+     */
+    private static boolean isVertexIndices(Property property) {
+        return property.countType != null && (property.name.equals("vertex_indices")
+                || property.name.equals("vertex_index"));
+    }
+
+    /**
+     * The index of each vertex position property in a vertex, or -1 if it is
+     * not one.
+     */
+    private static int axis(Property property) {
+        if (property.countType != null)
+            return -1;
+        switch (property.name) {
+        case "x":
+            return 0;
+        case "y":
+            return 1;
+        case "z":
+            return 2;
+        default:
+            return -1;
+        }
+    }
+
+    private void readAscii(int body) throws IOException {
+        int end = data.limit();
+        int chunks = Math.max(1, Math.min(threads,
+                lineEstimate(body, end) / MIN_CHUNK_LINES));
+
+        // Split the body at the line break after each even share of it
+        int[] starts = new int[chunks + 1];
+        starts[0] = body;
+        starts[chunks] = end;
+        for (int c = 1; c < chunks; c++) {
+            int pos = Math.max(starts[c - 1], body + (int) ((long) (end - body) * c / chunks));
+            while (pos < end && data.get(pos - 1) != '\n')
+                pos++;
+            starts[c] = pos;
+        }
+
+        // Count the lines in each chunk to find the line each one starts on
+        int[] firstLine = new int[chunks + 1];
+        int[] lines = new int[chunks];
+        IntStream.range(0, chunks).parallel().forEach(c -> lines[c] = countLines(starts[c],
+                starts[c + 1]));
+        for (int c = 0; c < chunks; c++)
+            firstLine[c + 1] = firstLine[c] + lines[c];
+
+        // Each chunk writes its vertices in place, and keeps its triangles
+        // to be joined up in order afterwards
+        int[][] triangles = new int[chunks][];
+        int[] triangleCounts = new int[chunks];
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            AsciiChunk chunk = new AsciiChunk(starts[c], starts[c + 1]);
+            chunk.read(firstLine[c]);
+            triangles[c] = chunk.indices;
+            triangleCounts[c] = chunk.indexCount;
+        });
+
+        int total = 0;
+        for (int count : triangleCounts)
+            total += count;
+        indices = GLBuffers.newDirectIntBuffer(total);
+        for (int c = 0; c < chunks; c++)
+            indices.put(triangles[c], 0, triangleCounts[c]);
+        indices.rewind();
+
+        int expected = 0;
+        for (Element element : elements)
+            expected += element.count;
+        if (firstLine[chunks] < expected)
+            throw error("expected " + expected + " lines but found " + firstLine[chunks]);
+    }
+
+    private static int lineEstimate(int start, int end) {
+        // Lines of a mesh are rarely shorter than this
+        return (end - start) / 16;
+    }
+
+    private int countLines(int start, int end) {
+        int lines = 0;
+        for (int i = start; i < end; i++)
+            if (data.get(i) == '\n')
+                lines++;
+        // A last line without a line break
+        if (end > start && data.get(end - 1) != '\n')
+            lines++;
+        return lines;
+    }
+
+    /**
+     * Parses the lines of one chunk of an ASCII body.
+     */
+    private class AsciiChunk {
+        private int pos;
+        private final int end;
+
+        int[] indices = new int[1024];
+        int indexCount;
+
+        AsciiChunk(int start, int end) {
+            this.pos = start;
+            this.end = end;
+        }
+
+        void read(int line) {
+            // Find the element and index of the first line
+            int e = 0;
+            int index = line;
+            while (e < elements.size() && index >= elements.get(e).count) {
+                index -= elements.get(e).count;
+                e++;
+            }
+
+            while (pos < end && e < elements.size()) {
+                Element element = elements.get(e);
+                if (element.name.equals("vertex"))
+                    readVertex(element, index);
+                else if (element.name.equals("face"))
+                    readFace(element);
+                nextLine();
+
+                index++;
+                while (e < elements.size() && index >= elements.get(e).count) {
+                    index = 0;
+                    e++;
+                }
+            }
+        }
+
+        private void readVertex(Element element, int index) {
+            for (Property property : element.properties) {
+                int axis = axis(property);
+                if (axis >= 0) {
+                    positions[index * 3 + axis] = nextDouble();
+                } else if (property.countType != null) {
+                    int count = nextInt();
+                    for (int i = 0; i < count; i++)
+                        skipToken();
+                } else {
+                    skipToken();
+                }
+            }
+        }
+
+        private void readFace(Element element) {
+            for (Property property : element.properties) {
+                if (property.countType == null) {
+                    skipToken();
+                    continue;
+                }
+                int count = nextInt();
+                if (!isVertexIndices(property)) {
+                    for (int i = 0; i < count; i++)
+                        skipToken();
+                    continue;
+                }
+                if (count < 3)
+                    throw new UncheckedIOException(error("face with fewer than 3 vertices"));
+                int first = nextInt();
+                int previous = nextInt();
+                for (int i = 2; i < count; i++) {
+                    int next = nextInt();
+                    addTriangle(first, previous, next);
+                    previous = next;
+                }
+            }
+        }
+
+        private void addTriangle(int a, int b, int c) {
+            if (indexCount + 3 > indices.length)
+                indices = Arrays.copyOf(indices, indices.length * 2);
+            indices[indexCount++] = a;
+            indices[indexCount++] = b;
+            indices[indexCount++] = c;
+        }
+
+        private void nextLine() {
+            while (pos < end && data.get(pos) != '\n')
+                pos++;
+            pos++;
+        }
+
+        private int tokenStart() {
+            while (pos < end && isSpace(data.get(pos)))
+                pos++;
+            if (pos >= end || data.get(pos) == '\n')
+                throw new UncheckedIOException(error("line ended early"));
+            return pos;
+        }
+
+        private int tokenEnd(int start) {
+            int i = start;
+            while (i < end && !isSpace(data.get(i)) && data.get(i) != '\n')
+                i++;
+            return i;
+        }
+
+        private void skipToken() {
+            pos = tokenEnd(tokenStart());
+        }
+
+        private double nextDouble() {
+            int start = tokenStart();
+            pos = tokenEnd(start);
+            return parseDouble(start, pos);
+        }
+
+        private int nextInt() {
+            int start = tokenStart();
+            pos = tokenEnd(start);
+            return parseInt(start, pos);
+        }
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * Parse a decimal number. Numbers whose digits and power of ten can both
+     * be held exactly by a double are converted with a single, correctly
+     * rounded, multiplication or division. Anything else is passed to
+     * Double.parseDouble(), so the result is always the same as its.
+     */
+    private double parseDouble(int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (data.get(i) == '-' || data.get(i) == '+') {
+            negative = data.get(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int exponent = 0;
+        boolean digits = false;
+        boolean point = false;
+        for (; i < end; i++) {
+            byte b = data.get(i);
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa > MAX_EXACT)
+                    return slowDouble(start, end);
+                if (point)
+                    exponent--;
+                digits = true;
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (!digits)
+            return slowDouble(start, end);
+
+        if (i < end) {
+            byte b = data.get(i);
+            if (b != 'e' && b != 'E')
+                return slowDouble(start, end);
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (data.get(i) == '-' || data.get(i) == '+')) {
+                negativeExponent = data.get(i) == '-';
+                i++;
+            }
+            if (i == end)
+                return slowDouble(start, end);
+            int power = 0;
+            for (; i < end; i++) {
+                b = data.get(i);
+                if (b < '0' || b > '9' || power > 1000)
+                    return slowDouble(start, end);
+                power = power * 10 + (b - '0');
+            }
+            exponent += negativeExponent ? -power : power;
+        }
+
+        if (exponent < -22 || exponent > 22)
+            return slowDouble(start, end);
+        double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent]
+                : mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+    }
+
+    private double slowDouble(int start, int end) {
+        String token = ascii(start, end);
+        try {
+            return Double.parseDouble(token);
+        } catch (NumberFormatException e) {
+            throw new UncheckedIOException(error("bad number " + token));
+        }
+    }
+
+    private int parseInt(int start, int end) {
+        int i = start;
+        boolean negative = data.get(i) == '-';
+        if (negative || data.get(i) == '+')
+            i++;
+        long value = 0;
+        for (; i < end; i++) {
+            byte b = data.get(i);
+            if (b < '0' || b > '9' || value > Integer.MAX_VALUE)
+                return slowInt(start, end);
+            value = value * 10 + (b - '0');
+        }
+        if (i == start || (i == start + 1 && (negative || data.get(start) == '+')))
+            return slowInt(start, end);
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * Parse an integer written in some other way, such as 3.0.
+     */
+    private int slowInt(int start, int end) {
+        double value = slowDouble(start, end);
+        if (value != Math.rint(value) || Math.abs(value) > Integer.MAX_VALUE)
+            throw new UncheckedIOException(error("bad integer " + ascii(start, end)));
+        return (int) value;
+    }
+
+    private void readBinary(int body) throws IOException {
+        data.order(format == BINARY_LITTLE_ENDIAN ? ByteOrder.LITTLE_ENDIAN
+                : ByteOrder.BIG_ENDIAN);
+
+        List<int[]> faces = new ArrayList<int[]>();
+        int indexCount = 0;
+        int pos = body;
+        for (Element element : elements) {
+            boolean vertex = element.name.equals("vertex");
+            boolean face = element.name.equals("face");
+            for (int index = 0; index < element.count; index++) {
+                for (Property property : element.properties) {
+                    if (pos >= data.limit())
+                        throw error("file ended early");
+                    if (property.countType == null) {
+                        int axis = vertex ? axis(property) : -1;
+                        if (axis >= 0)
+                            positions[index * 3 + axis] = binaryDouble(property.type, pos);
+                        pos += size(property.type);
+                        continue;
+                    }
+
+                    int count = (int) binaryDouble(property.countType, pos);
+                    pos += size(property.countType);
+                    int size = size(property.type);
+                    if (face && isVertexIndices(property)) {
+                        if (count < 3)
+                            throw error("face with fewer than 3 vertices");
+                        int[] triangles = new int[(count - 2) * 3];
+                        int first = (int) binaryDouble(property.type, pos);
+                        int previous = (int) binaryDouble(property.type, pos + size);
+                        for (int i = 2; i < count; i++) {
+                            int next = (int) binaryDouble(property.type, pos + i * size);
+                            triangles[(i - 2) * 3] = first;
+                            triangles[(i - 2) * 3 + 1] = previous;
+                            triangles[(i - 2) * 3 + 2] = next;
+                            previous = next;
+                        }
+                        faces.add(triangles);
+                        indexCount += triangles.length;
+                    }
+                    pos += count * size;
+                }
+            }
+        }
+        if (pos > data.limit())
+            throw error("file ended early");
+
+        indices = GLBuffers.newDirectIntBuffer(indexCount);
+        for (int[] triangles : faces)
+            indices.put(triangles);
+        indices.rewind();
+    }
+
+    /**
+     * Read a binary value of the given type as a double.
+     */
+    private double binaryDouble(String type, int pos) {
+        switch (type) {
+        case "char":
+        case "int8":
+            return data.get(pos);
+        case "uchar":
+        case "uint8":
+            return data.get(pos) & 0xff;
+        case "short":
+        case "int16":
+            return data.getShort(pos);
+        case "ushort":
+        case "uint16":
+            return data.getShort(pos) & 0xffff;
+        case "int":
+        case "int32":
+            return data.getInt(pos);
+        case "uint":
+        case "uint32":
+            return data.getInt(pos) & 0xffffffffL;
+        case "float":
+        case "float32":
+            return data.getFloat(pos);
+        default:
+            return data.getDouble(pos);
+        }
+    }
+
+    /**
+     * The size in bytes of a binary value of the given type.
+     */
+    private int size(String type) throws IOException {
+        switch (type) {
+        case "char":
+        case "int8":
+        case "uchar":
+        case "uint8":
+            return 1;
+        case "short":
+        case "int16":
+        case "ushort":
+        case "uint16":
+            return 2;
+        case "int":
+        case "int32":
+        case "uint":
+        case "uint32":
+        case "float":
+        case "float32":
+            return 4;
+        case "double":
+        case "float64":
+            return 8;
+        default:
+            throw error("unknown type " + type);
+        }
+    }
+
+    private String ascii(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = data.get(start + i);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private IOException error(String message) {
+        return new IOException(file + ": " + message);
+    }
+}
@@ -4,8 +4,10 @@ import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
 import unsw.graphics.CoordFrame2D;
+import unsw.graphics.GLState;
 import unsw.graphics.Point2DBuffer;
 import unsw.graphics.Shader;
+import unsw.graphics.StreamBuffer;
 import unsw.graphics.Vector3;
 
 /**
@@ -39,21 +41,14 @@ public class Point2D {
      * @param frame
      */
     public void draw(GL3 gl, CoordFrame2D frame) {
-        Point2DBuffer buffer = new Point2DBuffer(1);
+        Point2DBuffer buffer = new Point2DBuffer(StreamBuffer.map(gl, 2));
         buffer.put(0, this);
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
+        int offset = StreamBuffer.unmap(gl);
 
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, 2 * Float.BYTES, buffer.getBuffer(),
-                GL.GL_STATIC_DRAW);
-
-        gl.glVertexAttribPointer(Shader.POSITION, 2, GL.GL_FLOAT, false, 0, 0);
+        GLState.bindDefaultVertexArray(gl);
+        gl.glVertexAttribPointer(Shader.POSITION, 2, GL.GL_FLOAT, false, 0, offset);
         Shader.setModelMatrix(gl, frame.getMatrix());
         gl.glDrawArrays(GL.GL_POINTS, 0, 1);
-
-        gl.glDeleteBuffers(1, names, 0);
     }
     
     /**
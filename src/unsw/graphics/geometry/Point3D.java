@@ -4,8 +4,10 @@ import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
 import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GLState;
 import unsw.graphics.Point3DBuffer;
 import unsw.graphics.Shader;
+import unsw.graphics.StreamBuffer;
 import unsw.graphics.Vector3;
 import unsw.graphics.Vector4;
 
@@ -42,21 +44,14 @@ public class Point3D {
      * @param frame
      */
     public void draw(GL3 gl, CoordFrame3D frame) {
-        Point3DBuffer buffer = new Point3DBuffer(1);
+        Point3DBuffer buffer = new Point3DBuffer(StreamBuffer.map(gl, 3));
         buffer.put(0, this);
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
+        int offset = StreamBuffer.unmap(gl);
 
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, 3 * Float.BYTES, buffer.getBuffer(),
-                GL.GL_STATIC_DRAW);
-
-        gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, 0);
+        GLState.bindDefaultVertexArray(gl);
+        gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, offset);
         Shader.setModelMatrix(gl, frame.getMatrix());
         gl.glDrawArrays(GL.GL_POINTS, 0, 1);
-
-        gl.glDeleteBuffers(1, names, 0);
     }
     
     /**
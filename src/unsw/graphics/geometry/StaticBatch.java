@@ -0,0 +1,396 @@
+package unsw.graphics.geometry;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jogamp.common.nio.PointerBuffer;
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.util.GLBuffers;
+
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GLState;
+import unsw.graphics.Point2DBuffer;
+import unsw.graphics.Point3DBuffer;
+import unsw.graphics.Shader;
+
+/**
+ * Many meshes that never move, drawn with the same shader and texture,
+ * merged into one vertex buffer and one index buffer so any number of them
+ * can be drawn with a single draw call.
+ *
+ * Each mesh added to the batch is a part. Its vertices are moved into the
+ * batch's frame when it is added and its normals are turned with them, the
+ * same way the shaders would with the model matrix. The parts' vertices are
+ * stored one part after another, and each part's indices refer to its own
+ * vertices, with the offset of its first vertex added by the draw call
+ * (glDrawElementsBaseVertex). So meshes with the same indices, such as the
+ * same tree in several places, only have them stored once.
+ *
+ * Parts are drawn by listing them, so each one can still be culled or have
+ * its level of detail chosen on its own. Every mesh must have the same
+ * attributes, normals and texture coordinates or not. The vertices are
+ * stored as floats, whichever format the meshes were initialised with.
+ *
+ * Every part has its own copy of its mesh's vertices, so a batch of the same
+ * mesh in many places takes as much memory as that many meshes: it saves
+ * draw calls, not memory. The vertices and indices are only kept in memory
+ * until init() copies them into buffers, so the batch must be initialised
+ * before use, and only once.
+ */
+public class StaticBatch {
+
+    /**
+     * Collects the meshes of a batch.
+     */
+    public static class Builder {
+        private final List<TriangleMesh> meshes = new ArrayList<TriangleMesh>();
+        private final List<CoordFrame3D> frames = new ArrayList<CoordFrame3D>();
+
+        /**
+         * Add a mesh, in the given frame.
+         *
+         * @param mesh
+         * @param frame The mesh's frame, relative to the batch's frame
+         * @return The index of the part
+         */
+        public int add(TriangleMesh mesh, CoordFrame3D frame) {
+            if (!meshes.isEmpty() && (hasNormals(mesh) != hasNormals(meshes.get(0))
+                    || hasTexCoords(mesh) != hasTexCoords(meshes.get(0))))
+                throw new IllegalArgumentException(
+                        "Every mesh in a batch must have the same attributes");
+            meshes.add(mesh);
+            frames.add(frame);
+            return meshes.size() - 1;
+        }
+
+        /**
+         * The number of parts added so far.
+         */
+        public int getPartCount() {
+            return meshes.size();
+        }
+
+        public StaticBatch build() {
+            return new StaticBatch(meshes, frames);
+        }
+    }
+
+    private final boolean normals;
+    private final boolean texCoords;
+
+    /**
+     * The vertices of every part, interleaved as in TriangleMesh, until they
+     * are uploaded.
+     */
+    private FloatBuffer vertices;
+
+    /**
+     * Each distinct set of indices of the parts, until they are uploaded.
+     */
+    private IntBuffer indices;
+
+    private final int vertexCount;
+    private final int indexCount;
+
+    // For each part, the first of its indices, how many there are, and the
+    // first of its vertices
+    private final int[] firstIndices;
+    private final int[] indexCounts;
+    private final int[] baseVertices;
+
+    private final Bounds[] bounds;
+
+    private int verticesName;
+    private int indicesName;
+    private int vertexArrayName;
+
+    // The parts to draw, and the arguments of glMultiDrawElementsBaseVertex,
+    // reused between draws
+    private final int[] listed;
+    private IntBuffer drawCounts;
+    private PointerBuffer drawOffsets;
+    private IntBuffer drawBaseVertices;
+
+    private StaticBatch(List<TriangleMesh> meshes, List<CoordFrame3D> frames) {
+        int parts = meshes.size();
+        normals = parts > 0 && hasNormals(meshes.get(0));
+        texCoords = parts > 0 && hasTexCoords(meshes.get(0));
+        firstIndices = new int[parts];
+        indexCounts = new int[parts];
+        baseVertices = new int[parts];
+        bounds = new Bounds[parts];
+        listed = new int[parts];
+
+        // Give each distinct set of indices its range. Meshes without indices
+        // all use one range counting up from 0, as long as the longest.
+        Map<IntBuffer, Integer> first = new HashMap<IntBuffer, Integer>();
+        int vertexCount = 0, indexCount = 0, sequence = 0;
+        for (int part = 0; part < parts; part++) {
+            TriangleMesh mesh = meshes.get(part);
+            IntBuffer meshIndices = mesh.getIndices();
+            int count = mesh.getTriangleCount() * 3;
+            if (meshIndices == null) {
+                firstIndices[part] = -1;
+                sequence = Math.max(sequence, count);
+            } else {
+                // Buffers are equal if their contents are
+                meshIndices.rewind();
+                if (!first.containsKey(meshIndices)) {
+                    first.put(meshIndices, indexCount);
+                    indexCount += count;
+                }
+                firstIndices[part] = first.get(meshIndices);
+            }
+            indexCounts[part] = count;
+            baseVertices[part] = vertexCount;
+            vertexCount += mesh.getVertices().capacity();
+        }
+
+        indices = GLBuffers.newDirectIntBuffer(indexCount + sequence);
+        for (Map.Entry<IntBuffer, Integer> e : first.entrySet()) {
+            IntBuffer meshIndices = e.getKey();
+            for (int i = 0; i < meshIndices.capacity(); i++)
+                indices.put(e.getValue() + i, meshIndices.get(i));
+        }
+        for (int i = 0; i < sequence; i++)
+            indices.put(indexCount + i, i);
+        for (int part = 0; part < parts; part++)
+            if (firstIndices[part] < 0)
+                firstIndices[part] = indexCount;
+
+        vertices = GLBuffers.newDirectFloatBuffer(vertexCount * stride());
+        for (int part = 0; part < parts; part++)
+            bounds[part] = putVertices(meshes.get(part), frames.get(part));
+        vertices.rewind();
+        this.vertexCount = vertexCount;
+        this.indexCount = indices.capacity();
+    }
+
+    private static boolean hasNormals(TriangleMesh mesh) {
+        return mesh.getNormals() != null;
+    }
+
+    private static boolean hasTexCoords(TriangleMesh mesh) {
+        return mesh.getTexCoords() != null;
+    }
+
+    /**
+     * Move a part's vertices into the batch's frame and add them to the
+     * vertex buffer.
+     *
+     * @return The bounds of the moved vertices
+     */
+    private Bounds putVertices(TriangleMesh mesh, CoordFrame3D frame) {
+        FloatBuffer positionData = (FloatBuffer) mesh.getVertices().getBuffer();
+        Point3DBuffer normalBuffer = mesh.getNormals();
+        Point2DBuffer texCoordBuffer = mesh.getTexCoords();
+        FloatBuffer normalData = normalBuffer == null ? null
+                : (FloatBuffer) normalBuffer.getBuffer();
+        FloatBuffer texCoordData = texCoordBuffer == null ? null
+                : (FloatBuffer) texCoordBuffer.getBuffer();
+
+        // Column-major, so m[12], m[13] and m[14] are the translation
+        float[] m = frame.getMatrix().getValues();
+        int count = mesh.getVertices().capacity();
+        FloatBuffer moved = GLBuffers.newDirectFloatBuffer(count * 3);
+        for (int i = 0; i < count; i++) {
+            float x = positionData.get(i * 3), y = positionData.get(i * 3 + 1),
+                    z = positionData.get(i * 3 + 2);
+            float px = m[0] * x + m[4] * y + m[8] * z + m[12];
+            float py = m[1] * x + m[5] * y + m[9] * z + m[13];
+            float pz = m[2] * x + m[6] * y + m[10] * z + m[14];
+            moved.put(px).put(py).put(pz);
+            vertices.put(px).put(py).put(pz);
+            if (normalData != null) {
+                x = normalData.get(i * 3);
+                y = normalData.get(i * 3 + 1);
+                z = normalData.get(i * 3 + 2);
+                vertices.put(m[0] * x + m[4] * y + m[8] * z)
+                        .put(m[1] * x + m[5] * y + m[9] * z)
+                        .put(m[2] * x + m[6] * y + m[10] * z);
+            }
+            if (texCoordData != null)
+                vertices.put(texCoordData.get(i * 2)).put(texCoordData.get(i * 2 + 1));
+        }
+        return new Bounds(moved);
+    }
+
+    /**
+     * The number of floats in each vertex of the vertex buffer.
+     */
+    private int stride() {
+        return 3 + (normals ? 3 : 0) + (texCoords ? 2 : 0);
+    }
+
+    public void init(GL3 gl) {
+        if (vertices == null)
+            throw new IllegalStateException("A batch can only be initialised once");
+        int[] names = new int[2];
+        gl.glGenBuffers(2, names, 0);
+        verticesName = names[0];
+        indicesName = names[1];
+        gl.glGenVertexArrays(1, names, 0);
+        vertexArrayName = names[0];
+
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, verticesName);
+        gl.glBufferData(GL.GL_ARRAY_BUFFER, vertices.capacity() * Float.BYTES, vertices,
+                GL.GL_STATIC_DRAW);
+
+        GLState.bindVertexArray(gl, vertexArrayName);
+        int strideBytes = stride() * Float.BYTES;
+        gl.glEnableVertexAttribArray(Shader.POSITION);
+        gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, strideBytes, 0);
+        long offset = 3 * Float.BYTES;
+        if (normals) {
+            gl.glEnableVertexAttribArray(Shader.NORMAL);
+            gl.glVertexAttribPointer(Shader.NORMAL, 3, GL.GL_FLOAT, false, strideBytes, offset);
+            offset += 3 * Float.BYTES;
+        }
+        if (texCoords) {
+            gl.glEnableVertexAttribArray(Shader.TEX_COORD);
+            gl.glVertexAttribPointer(Shader.TEX_COORD, 2, GL.GL_FLOAT, false, strideBytes,
+                    offset);
+        }
+
+        GLState.bindBuffer(gl, GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
+        gl.glBufferData(GL.GL_ELEMENT_ARRAY_BUFFER, indices.capacity() * Integer.BYTES,
+                indices, GL.GL_STATIC_DRAW);
+
+        GLState.bindDefaultVertexArray(gl);
+
+        // Only the buffers are drawn from now on
+        vertices = null;
+        indices = null;
+    }
+
+    /**
+     * The number of parts in the batch.
+     */
+    public int getPartCount() {
+        return bounds.length;
+    }
+
+    /**
+     * The bounding box and sphere of a part, in the batch's frame.
+     *
+     * @param part
+     */
+    public Bounds getBounds(int part) {
+        return bounds[part];
+    }
+
+    /**
+     * The number of triangles in a part.
+     *
+     * @param part
+     */
+    public int getTriangleCount(int part) {
+        return indexCounts[part] / 3;
+    }
+
+    /**
+     * The number of vertices stored for all the parts.
+     */
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * The number of indices stored for all the parts.
+     */
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    /**
+     * Whether a part might be in view of the camera set with
+     * ViewFrustum.setCamera(), with the batch in the given frame.
+     *
+     * @param frame
+     * @param part
+     */
+    public boolean isVisible(CoordFrame3D frame, int part) {
+        return ViewFrustum.isVisible(frame, bounds[part]);
+    }
+
+    /**
+     * Draw every part.
+     *
+     * @param gl
+     * @param frame
+     */
+    public void draw(GL3 gl, CoordFrame3D frame) {
+        for (int i = 0; i < listed.length; i++)
+            listed[i] = i;
+        draw(gl, frame, listed, listed.length);
+    }
+
+    /**
+     * Draw the parts that might be in view of the camera set with
+     * ViewFrustum.setCamera(), in one draw call.
+     *
+     * @param gl
+     * @param frame
+     * @return The number of parts drawn
+     */
+    public int drawIfVisible(GL3 gl, CoordFrame3D frame) {
+        int count = 0;
+        for (int i = 0; i < listed.length; i++) {
+            if (isVisible(frame, i))
+                listed[count++] = i;
+        }
+        draw(gl, frame, listed, count);
+        return count;
+    }
+
+    /**
+     * Draw the listed parts in one draw call. Nothing is bound if there are
+     * none.
+     *
+     * @param gl
+     * @param frame
+     * @param parts The indices of the parts
+     * @param count The number of parts listed
+     */
+    public void draw(GL3 gl, CoordFrame3D frame, int[] parts, int count) {
+        if (count == 0)
+            return;
+        GLState.bindVertexArray(gl, vertexArrayName);
+        Shader.setModelMatrix(gl, frame.getMatrix());
+        if (count == 1) {
+            int part = parts[0];
+            gl.glDrawElementsBaseVertex(GL.GL_TRIANGLES, indexCounts[part],
+                    GL.GL_UNSIGNED_INT, (long) firstIndices[part] * Integer.BYTES,
+                    baseVertices[part]);
+            return;
+        }
+
+        if (drawCounts == null || drawCounts.capacity() < count) {
+            int capacity = Math.max(count, bounds.length);
+            drawCounts = GLBuffers.newDirectIntBuffer(capacity);
+            drawOffsets = PointerBuffer.allocateDirect(capacity);
+            drawBaseVertices = GLBuffers.newDirectIntBuffer(capacity);
+        }
+        for (int i = 0; i < count; i++) {
+            int part = parts[i];
+            drawCounts.put(i, indexCounts[part]);
+            drawOffsets.put(i, (long) firstIndices[part] * Integer.BYTES);
+            drawBaseVertices.put(i, baseVertices[part]);
+        }
+        gl.glMultiDrawElementsBaseVertex(GL.GL_TRIANGLES, drawCounts, GL.GL_UNSIGNED_INT,
+                drawOffsets, count, drawBaseVertices);
+    }
+
+    public void destroy(GL3 gl) {
+        if (vertexArrayName == 0)
+            return;
+        GLState.deleteVertexArrays(gl, 1, new int[] { vertexArrayName }, 0);
+        GLState.deleteBuffers(gl, 2, new int[] { verticesName, indicesName }, 0);
+        vertexArrayName = verticesName = indicesName = 0;
+    }
+}
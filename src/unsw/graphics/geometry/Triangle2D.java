@@ -10,8 +10,10 @@ import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
 import unsw.graphics.CoordFrame2D;
+import unsw.graphics.GLState;
 import unsw.graphics.Point2DBuffer;
 import unsw.graphics.Shader;
+import unsw.graphics.StreamBuffer;
 
 /**
  * A triangle in 2D space
@@ -45,19 +47,15 @@ public class Triangle2D {
     }
 
     public void draw(GL3 gl, CoordFrame2D frame) {        
-        Point2DBuffer buffer = new Point2DBuffer(points);
+        Point2DBuffer buffer = new Point2DBuffer(StreamBuffer.map(gl, points.size() * 2));
+        for (int i = 0; i < points.size(); i++)
+            buffer.put(i, points.get(i));
+        int offset = StreamBuffer.unmap(gl);
 
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, points.size() * 2 * Float.BYTES,
-                buffer.getBuffer(), GL.GL_STATIC_DRAW);
-
-        gl.glVertexAttribPointer(Shader.POSITION, 2, GL.GL_FLOAT, false, 0, 0);
+        GLState.bindDefaultVertexArray(gl);
+        gl.glVertexAttribPointer(Shader.POSITION, 2, GL.GL_FLOAT, false, 0, offset);
         Shader.setModelMatrix(gl, frame.getMatrix());
         gl.glDrawArrays(GL3.GL_TRIANGLES, 0, points.size());
-
-        gl.glDeleteBuffers(1, names, 0);
     }
     
     public void draw(GL3 gl) {
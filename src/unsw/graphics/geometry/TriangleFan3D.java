@@ -10,8 +10,10 @@ import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
 import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GLState;
 import unsw.graphics.Point3DBuffer;
 import unsw.graphics.Shader;
+import unsw.graphics.StreamBuffer;
 
 /**
  * A triangle fan in 3D
@@ -54,19 +56,15 @@ public class TriangleFan3D {
      * @param gl
      */
     public void draw(GL3 gl, CoordFrame3D frame) {
-        Point3DBuffer buffer = new Point3DBuffer(points);
+        Point3DBuffer buffer = new Point3DBuffer(StreamBuffer.map(gl, points.size() * 3));
+        for (int i = 0; i < points.size(); i++)
+            buffer.put(i, points.get(i));
+        int offset = StreamBuffer.unmap(gl);
 
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, points.size() * 3 * Float.BYTES,
-                buffer.getBuffer(), GL.GL_STATIC_DRAW);
-
-        gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, 0);
+        GLState.bindDefaultVertexArray(gl);
+        gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, offset);
         Shader.setModelMatrix(gl, frame.getMatrix());
         gl.glDrawArrays(GL.GL_TRIANGLE_FAN, 0, points.size());
-
-        gl.glDeleteBuffers(1, names, 0);
     }
     
     /**
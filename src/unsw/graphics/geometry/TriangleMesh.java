@@ -4,24 +4,21 @@
 package unsw.graphics.geometry;
 
 import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.List;
 
 import org.apache.commons.lang3.ArrayUtils;
-import org.smurn.jply.Element;
-import org.smurn.jply.ElementReader;
-import org.smurn.jply.PlyReader;
-import org.smurn.jply.PlyReaderFile;
-import org.smurn.jply.util.NormalMode;
-import org.smurn.jply.util.NormalizingPlyReader;
-import org.smurn.jply.util.TesselationMode;
-import org.smurn.jply.util.TextureMode;
 
 import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 import com.jogamp.opengl.util.GLBuffers;
 
 import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GLState;
+import unsw.graphics.Matrix4;
 import unsw.graphics.Point2DBuffer;
 import unsw.graphics.Point3DBuffer;
 import unsw.graphics.Shader;
@@ -62,24 +59,71 @@ public class TriangleMesh {
     private IntBuffer indices;
 
     /**
-     * The name of the vertex buffer according to OpenGL
+     * The bounds of the vertices, computed when the mesh is created.
      */
-    private int verticesName;
-    
+    private Bounds bounds;
+
     /**
-     * The name of the normal buffer according to OpenGL
+     * The hierarchy of the triangles for ray and sphere queries, built the
+     * first time it is needed.
      */
-    private int normalsName;
-    
+    private MeshBVH bvh;
+
     /**
-     * The name of the normal buffer according to OpenGL
+     * The name of the vertex buffer according to OpenGL. The positions,
+     * normals and texture coordinates are interleaved in this one buffer.
      */
-    private int texCoordsName;
+    private int verticesName;
 
     /**
      * The name of the indices buffer according to OpenGL
      */
     private int indicesName;
+
+    /**
+     * The name of the vertex array according to OpenGL, which holds the
+     * attribute pointers and the indices buffer binding
+     */
+    private int vertexArrayName;
+
+    /**
+     * The matrix that turns quantized positions back into the positions of
+     * the mesh, or null if they are not quantized.
+     */
+    private Matrix4 decode;
+
+    /**
+     * The cache meshes loaded from PLY files are loaded from and saved to, or
+     * null for none.
+     */
+    private static MeshCache cache = new MeshCache();
+
+    /**
+     * Set the cache meshes loaded from PLY files are loaded from and saved
+     * to, or null to always parse the PLY file. By default each mesh is cached
+     * in a file next to its PLY file.
+     * 
+     * @param cache
+     */
+    public static void setCache(MeshCache cache) {
+        TriangleMesh.cache = cache;
+    }
+
+    /**
+     * Create a triangle mesh that uses the given buffers directly.
+     * @param vertices
+     * @param normals The normals, or null for none
+     * @param texCoords The texture coordinates, or null for none
+     * @param indices
+     */
+    TriangleMesh(Point3DBuffer vertices, Point3DBuffer normals, Point2DBuffer texCoords,
+            IntBuffer indices) {
+        this.vertices = vertices;
+        this.normals = normals;
+        this.texCoords = texCoords;
+        this.indices = indices;
+        bounds = new Bounds((FloatBuffer) this.vertices.getBuffer());
+    }
     
     /**
      * Create a triangle mesh with the given lists of vertices, normals, and 
@@ -112,6 +156,7 @@ public class TriangleMesh {
             normals = new Point3DBuffer(vertices.size());
             computeVertexNormals();
         }
+        bounds = new Bounds((FloatBuffer) this.vertices.getBuffer());
     }
     
     /**
@@ -128,6 +173,7 @@ public class TriangleMesh {
             normals = new Point3DBuffer(vertices.size());
             computeFaceNormals();
         }
+        bounds = new Bounds((FloatBuffer) this.vertices.getBuffer());
     }
     
     /**
@@ -166,6 +212,7 @@ public class TriangleMesh {
             computeVertexNormals();
         }
         this.texCoords = new Point2DBuffer(texCoords);
+        bounds = new Bounds((FloatBuffer) this.vertices.getBuffer());
     }
     
     /**
@@ -185,6 +232,7 @@ public class TriangleMesh {
             computeFaceNormals();
         }
         this.texCoords = new Point2DBuffer(texCoords);
+        bounds = new Bounds((FloatBuffer) this.vertices.getBuffer());
     }
 
     /**
@@ -213,36 +261,172 @@ public class TriangleMesh {
      */
     public TriangleMesh(String plyFile, boolean vertexNormals, boolean texCoords)
             throws IOException {
-        // Setup an initial reader
-        PlyReader rawReader = new PlyReaderFile(plyFile);
+        this(plyFile, vertexNormals, texCoords, false);
+    }
 
-        // Use a normalizing reader to get mesh only containing triangles
-        NormalizingPlyReader reader = new NormalizingPlyReader(rawReader,
-                TesselationMode.TRIANGLES, NormalMode.PASS_THROUGH,
-                texCoords ? TextureMode.XY : TextureMode.PASS_THROUGH);
+    /**
+     * Construct a triangle with the given PLY file, as above. If the fourth
+     * argument is true, the triangles are reordered so the GPU can reuse more
+     * of the vertices it has already transformed, and then the vertices are
+     * reordered to be read in order (see MeshOptimizer). This takes a while
+     * for large meshes, but the result is cached along with the rest of the
+     * mesh.
+     * 
+     * @param plyFile
+     * @param vertexNormals
+     * @param texCoords
+     * @param optimize
+     * @throws IOException
+     */
+    public TriangleMesh(String plyFile, boolean vertexNormals, boolean texCoords,
+            boolean optimize) throws IOException {
+        TriangleMesh cached = cache == null ? null
+                : cache.load(plyFile, vertexNormals, texCoords, optimize);
+        if (cached != null) {
+            vertices = cached.vertices;
+            normals = cached.normals;
+            this.texCoords = cached.texCoords;
+            indices = cached.indices;
+            bounds = cached.bounds;
+            return;
+        }
 
-        vertices = new Point3DBuffer(reader.getElementCount("vertex"));
-        indices = GLBuffers
-                .newDirectIntBuffer(reader.getElementCount("face") * 3);
+        PlyParser ply = new PlyParser(plyFile);
+        vertices = ply.getVertices();
+        indices = ply.getIndices();
         if (vertexNormals)
-            normals = new Point3DBuffer(reader.getElementCount("vertex"));
+            normals = new Point3DBuffer(ply.getVertexCount());
         
         if (texCoords)
-            this.texCoords = new Point2DBuffer(reader.getElementCount("vertex"));
-
-        ElementReader elReader = reader.nextElementReader();
-        while (elReader != null) {
-            if (elReader.getElementType().getName().equals("vertex")) {
-                readVertices(elReader);
-            } else if (elReader.getElementType().getName().equals("face")) {
-                readIndices(elReader);
-            }
-            elReader = reader.nextElementReader();
-        }
+            this.texCoords = ply.getPlanarTexCoords();
         
         //Compute the normals
         if (vertexNormals)
             computeVertexNormals();
+
+        if (optimize)
+            optimize();
+        bounds = new Bounds((FloatBuffer) vertices.getBuffer());
+
+        if (cache != null)
+            cache.save(plyFile, optimize, vertices, normals, this.texCoords, indices);
+    }
+
+    /**
+     * Reorder the triangles for the vertex cache and then the vertices in the
+     * order the triangles use them.
+     */
+    private void optimize() {
+        int[] order = new int[indices.capacity()];
+        indices.get(order).rewind();
+        order = MeshOptimizer.optimizeVertexCache(order, vertices.capacity());
+        int[] remap = MeshOptimizer.optimizeVertexFetch(order, vertices.capacity());
+        indices.put(order).rewind();
+
+        int count = vertices.capacity();
+        vertices = new Point3DBuffer(permute(vertices.getBuffer(), remap, 3, count));
+        if (normals != null)
+            normals = new Point3DBuffer(permute(normals.getBuffer(), remap, 3, count));
+        if (texCoords != null)
+            texCoords = new Point2DBuffer(permute(texCoords.getBuffer(), remap, 2, count));
+    }
+
+    /**
+     * Create a simpler version of this mesh, with at most the given number of
+     * triangles if that can be done without folding triangles over (see
+     * MeshSimplifier). The new mesh only has the vertices it uses, in the
+     * order they are drawn, and its triangles are optimized for the vertex
+     * cache. It must be initialised separately.
+     * 
+     * @param triangles
+     * @return The simplified mesh
+     */
+    public TriangleMesh simplify(int triangles) {
+        if (indices == null)
+            throw new IllegalStateException("Only indexed meshes can be simplified");
+        int[] original = new int[indices.capacity()];
+        indices.get(original).rewind();
+        int[] simplified = MeshSimplifier.simplify(original,
+                (FloatBuffer) vertices.getBuffer(), triangles);
+        simplified = MeshOptimizer.optimizeVertexCache(simplified, vertices.capacity());
+        int[] remap = MeshOptimizer.optimizeVertexFetch(simplified, vertices.capacity());
+
+        // The vertices that are no longer used are numbered last, so leave
+        // them out
+        int used = 0;
+        for (int index : simplified)
+            used = Math.max(used, index + 1);
+        return new TriangleMesh(
+                new Point3DBuffer(permute(vertices.getBuffer(), remap, 3, used)),
+                normals == null ? null
+                        : new Point3DBuffer(permute(normals.getBuffer(), remap, 3, used)),
+                texCoords == null ? null
+                        : new Point2DBuffer(permute(texCoords.getBuffer(), remap, 2, used)),
+                GLBuffers.newDirectIntBuffer(simplified));
+    }
+
+    /**
+     * The bounding box and sphere of this mesh, in model coordinates.
+     */
+    public Bounds getBounds() {
+        return bounds;
+    }
+
+    /**
+     * The bounding volume hierarchy of this mesh's triangles, for finding
+     * where rays hit it and whether spheres touch it. It is built the first
+     * time this is called, and the triangles are in the order of the mesh.
+     */
+    public synchronized MeshBVH getBVH() {
+        if (bvh == null)
+            bvh = new MeshBVH((FloatBuffer) vertices.getBuffer(), indices);
+        return bvh;
+    }
+
+    /**
+     * The number of triangles in this mesh.
+     */
+    public int getTriangleCount() {
+        return (indices != null ? indices.capacity() : vertices.capacity()) / 3;
+    }
+
+    Point3DBuffer getVertices() {
+        return vertices;
+    }
+
+    /**
+     * The normals, or null for none.
+     */
+    Point3DBuffer getNormals() {
+        return normals;
+    }
+
+    /**
+     * The texture coordinates, or null for none.
+     */
+    Point2DBuffer getTexCoords() {
+        return texCoords;
+    }
+
+    /**
+     * The indices, or null if every three vertices form a triangle.
+     */
+    IntBuffer getIndices() {
+        return indices;
+    }
+
+    /**
+     * Move each point in a buffer of points of the given size to its new
+     * index, keeping the given number of points.
+     */
+    private static FloatBuffer permute(Buffer buffer, int[] remap, int size, int count) {
+        FloatBuffer from = (FloatBuffer) buffer;
+        FloatBuffer to = GLBuffers.newDirectFloatBuffer(count * size);
+        for (int i = 0; i < remap.length; i++)
+            if (remap[i] < count)
+                for (int j = 0; j < size; j++)
+                    to.put(remap[i] * size + j, from.get(i * size + j));
+        return to;
     }
     
     /**
@@ -262,29 +446,12 @@ public class TriangleMesh {
     /**
      * Compute normals for the mesh. Note that they are not normalised normals. 
      * If a shader depends on the normals, it must normalise them internally.
+     * Large meshes are split between as many threads as there are processors
+     * (see VertexNormals).
      */
     private void computeVertexNormals() {
-        // Initialise the normals to the zero vector
-        for (int i = 0; i < normals.capacity(); i++) {
-            normals.put(i, 0, 0, 0);
-        }
-        
-        // Add the face normals of all surrounding faces.
-        for (int i = 0; i < indices.capacity() / 3; i++) {
-            int index1 = indices.get(i*3);
-            int index2 = indices.get(i*3 + 1);
-            int index3 = indices.get(i*3 + 2);
-            
-            Point3D p1 = vertices.get(index1);
-            Point3D p2 = vertices.get(index2);
-            Point3D p3 = vertices.get(index3);
-            
-            Vector3 normal = normal(p1, p2, p3);
-            
-            normals.put(index1, normals.get(index1).translate(normal));
-            normals.put(index2, normals.get(index2).translate(normal));
-            normals.put(index3, normals.get(index3).translate(normal));
-        }
+        VertexNormals.compute((FloatBuffer) vertices.getBuffer(), indices,
+                (FloatBuffer) normals.getBuffer(), Runtime.getRuntime().availableProcessors());
     }
 
     /**
@@ -301,94 +468,179 @@ public class TriangleMesh {
         return a.cross(b).normalize();
     }
 
-    private void readIndices(ElementReader elReader)
-            throws IOException {
-        int indicesIndex = 0;
-        Element triangle = elReader.readElement();
-        while (triangle != null) {
-
-            int[] vertIndices = triangle.getIntList("vertex_index");
-            for (int index : vertIndices) {
-                indices.put(indicesIndex, index);
-                indicesIndex++;
-            }
-            triangle = elReader.readElement();
-        }
-    }
-
-    private void readVertices(ElementReader elReader)
-            throws IOException {
-        int verticesIndex = 0;
-        Element vertex = elReader.readElement();
-        while (vertex != null) {
-            float x = (float) vertex.getDouble("x");
-            float y = (float) vertex.getDouble("y");
-            float z = (float) vertex.getDouble("z");
-            vertices.put(verticesIndex, x, y, z);
-            
-            if (texCoords != null) {
-                float s = (float) vertex.getDouble("u");
-                float t = (float) vertex.getDouble("v");
-                texCoords.put(verticesIndex, s, t);
-            }
-            verticesIndex++;
-            vertex = elReader.readElement();
-        }
+    public void init(GL3 gl) {
+        init(gl, false);
     }
 
-    public void init(GL3 gl) {
-        // Generate the names for the buffers.
-        int[] names = new int[4];
-        gl.glGenBuffers(4, names, 0);
+    /**
+     * Initialise the mesh, optionally storing its vertices in the quantized
+     * format, which takes half the memory of floats or less.
+     * 
+     * In the quantized format positions are 16 bit integers across the bounds
+     * of the mesh, and the model matrix is scaled to turn them back into the
+     * original positions. The scale is the same on every axis, so shaders
+     * can still transform normals by the model matrix. Normals are two 16 bit
+     * integers in the octahedral encoding, and need a shader that decodes
+     * them, such as vertex_phong_quantized.glsl. Texture coordinates are half
+     * floats, which OpenGL converts back to floats itself. See
+     * VertexQuantization.
+     * 
+     * Meshes drawn with per-instance positions should not be quantized, as
+     * the scaled model matrix would move the instances too.
+     * 
+     * @param gl
+     * @param quantized Whether to use the quantized format
+     */
+    public void init(GL3 gl, boolean quantized) {
+        // Generate the names for the buffers and the vertex array.
+        int[] names = new int[2];
+        gl.glGenBuffers(2, names, 0);
         verticesName = names[0];
         indicesName = names[1];
-        normalsName = names[2];
-        texCoordsName = names[3];
-
-        // Copy the data for the vertices
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, verticesName);
-        gl.glBufferData(GL.GL_ARRAY_BUFFER,
-                vertices.capacity() * 3 * Float.BYTES, vertices.getBuffer(),
-                GL.GL_STATIC_DRAW);
-        
-        if (normals != null) {
-            gl.glBindBuffer(GL.GL_ARRAY_BUFFER, normalsName);
-            gl.glBufferData(GL.GL_ARRAY_BUFFER,
-                    normals.capacity() * 3 * Float.BYTES, normals.getBuffer(),
-                    GL.GL_STATIC_DRAW);
-        }
-        
-        if (texCoords != null) {
-            gl.glBindBuffer(GL.GL_ARRAY_BUFFER, texCoordsName);
-            gl.glBufferData(GL.GL_ARRAY_BUFFER,
-                    texCoords.capacity() * 2 * Float.BYTES, texCoords.getBuffer(),
-                    GL.GL_STATIC_DRAW);
+        gl.glGenVertexArrays(1, names, 0);
+        vertexArrayName = names[0];
+
+        // Copy the data for the vertices, one whole vertex after another
+        Buffer data = quantized ? quantizedVertices() : interleavedVertices();
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, verticesName);
+        gl.glBufferData(GL.GL_ARRAY_BUFFER, data.capacity() * (quantized ? 1 : Float.BYTES),
+                data, GL.GL_STATIC_DRAW);
+
+        // Record where each attribute is in the vertex array, so drawing only
+        // has to bind it
+        GLState.bindVertexArray(gl, vertexArrayName);
+        if (quantized) {
+            int stride = quantizedStride();
+            // Each position is padded to 8 bytes, so every attribute starts
+            // on a multiple of 4 bytes
+            gl.glEnableVertexAttribArray(Shader.POSITION);
+            gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_UNSIGNED_SHORT, true, stride, 0);
+            long offset = 4 * Short.BYTES;
+            if (normals != null) {
+                gl.glEnableVertexAttribArray(Shader.NORMAL);
+                gl.glVertexAttribPointer(Shader.NORMAL, 2, GL.GL_SHORT, true, stride, offset);
+                offset += 2 * Short.BYTES;
+            }
+            if (texCoords != null) {
+                gl.glEnableVertexAttribArray(Shader.TEX_COORD);
+                gl.glVertexAttribPointer(Shader.TEX_COORD, 2, GL.GL_HALF_FLOAT, false, stride,
+                        offset);
+            }
+        } else {
+            int strideBytes = stride() * Float.BYTES;
+            gl.glEnableVertexAttribArray(Shader.POSITION);
+            gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, strideBytes, 0);
+            long offset = 3 * Float.BYTES;
+            if (normals != null) {
+                gl.glEnableVertexAttribArray(Shader.NORMAL);
+                gl.glVertexAttribPointer(Shader.NORMAL, 3, GL.GL_FLOAT, false, strideBytes,
+                        offset);
+                offset += 3 * Float.BYTES;
+            }
+            if (texCoords != null) {
+                gl.glEnableVertexAttribArray(Shader.TEX_COORD);
+                gl.glVertexAttribPointer(Shader.TEX_COORD, 2, GL.GL_FLOAT, false, strideBytes,
+                        offset);
+            }
         }
 
         if (indices != null) {
             // Copy the data for the indices
-            gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
+            GLState.bindBuffer(gl, GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
             gl.glBufferData(GL.GL_ELEMENT_ARRAY_BUFFER,
                     indices.capacity() * Integer.BYTES, indices, GL.GL_STATIC_DRAW);
         }
+
+        GLState.bindDefaultVertexArray(gl);
     }
 
-    public void draw(GL3 gl, CoordFrame3D frame) {
-        gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
+    /**
+     * Interleave the positions, normals and texture coordinates as floats.
+     */
+    private FloatBuffer interleavedVertices() {
+        decode = null;
+        FloatBuffer interleaved = GLBuffers.newDirectFloatBuffer(vertices.capacity() * stride());
+        FloatBuffer positionData = (FloatBuffer) vertices.getBuffer();
+        FloatBuffer normalData = normals == null ? null : (FloatBuffer) normals.getBuffer();
+        FloatBuffer texCoordData = texCoords == null ? null : (FloatBuffer) texCoords.getBuffer();
+        for (int i = 0; i < vertices.capacity(); i++) {
+            for (int j = 0; j < 3; j++)
+                interleaved.put(positionData.get(i * 3 + j));
+            if (normalData != null)
+                for (int j = 0; j < 3; j++)
+                    interleaved.put(normalData.get(i * 3 + j));
+            if (texCoordData != null)
+                for (int j = 0; j < 2; j++)
+                    interleaved.put(texCoordData.get(i * 2 + j));
+        }
+        interleaved.rewind();
+        return interleaved;
+    }
 
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, verticesName);
-        gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, 0);
-        if (normals != null) {
-            gl.glBindBuffer(GL.GL_ARRAY_BUFFER, normalsName);
-            gl.glVertexAttribPointer(Shader.NORMAL, 3, GL.GL_FLOAT, false, 0, 0);
+    /**
+     * Interleave the positions, normals and texture coordinates in the
+     * quantized format, and set the matrix that decodes the positions.
+     */
+    private ByteBuffer quantizedVertices() {
+        FloatBuffer positionData = (FloatBuffer) vertices.getBuffer();
+        float[] min = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE };
+        float extent = 0;
+        for (int j = 0; j < 3; j++) {
+            float max = -Float.MAX_VALUE;
+            for (int i = 0; i < vertices.capacity(); i++) {
+                min[j] = Math.min(min[j], positionData.get(i * 3 + j));
+                max = Math.max(max, positionData.get(i * 3 + j));
+            }
+            extent = Math.max(extent, max - min[j]);
         }
-        if (texCoords != null) {
-            gl.glBindBuffer(GL.GL_ARRAY_BUFFER, texCoordsName);
-            gl.glVertexAttribPointer(Shader.TEX_COORD, 2, GL.GL_FLOAT, false, 0, 0);
+        // A mesh that is a single point still needs a scale that can be
+        // undone
+        if (extent == 0)
+            extent = 1;
+        decode = Matrix4.translation(min[0], min[1], min[2])
+                .multiply(Matrix4.scale(extent, extent, extent));
+
+        ByteBuffer quantized = GLBuffers.newDirectByteBuffer(
+                vertices.capacity() * quantizedStride());
+        FloatBuffer normalData = normals == null ? null : (FloatBuffer) normals.getBuffer();
+        FloatBuffer texCoordData = texCoords == null ? null : (FloatBuffer) texCoords.getBuffer();
+        short[] octahedral = new short[2];
+        for (int i = 0; i < vertices.capacity(); i++) {
+            for (int j = 0; j < 3; j++)
+                quantized.putShort(VertexQuantization.toUnorm16(
+                        (positionData.get(i * 3 + j) - min[j]) / extent));
+            quantized.putShort((short) 0);
+            if (normalData != null) {
+                VertexQuantization.toOctahedral(normalData.get(i * 3),
+                        normalData.get(i * 3 + 1), normalData.get(i * 3 + 2), octahedral);
+                quantized.putShort(octahedral[0]);
+                quantized.putShort(octahedral[1]);
+            }
+            if (texCoordData != null)
+                for (int j = 0; j < 2; j++)
+                    quantized.putShort(VertexQuantization.toHalf(texCoordData.get(i * 2 + j)));
         }
-        Shader.setModelMatrix(gl, frame.getMatrix());
-        // uncomment this to view as lines
-//         gl.glPolygonMode(GL.GL_FRONT_AND_BACK, GL3.GL_LINE);
+        quantized.rewind();
+        return quantized;
+    }
+
+    /**
+     * The number of floats in each vertex of the vertex buffer.
+     */
+    private int stride() {
+        return 3 + (normals != null ? 3 : 0) + (texCoords != null ? 2 : 0);
+    }
+
+    /**
+     * The number of bytes in each vertex of the vertex buffer in the
+     * quantized format.
+     */
+    private int quantizedStride() {
+        return (4 + (normals != null ? 2 : 0) + (texCoords != null ? 2 : 0)) * Short.BYTES;
+    }
+
+    public void draw(GL3 gl, CoordFrame3D frame) {
+        bind(gl, frame);
         if (indices != null) {
             gl.glDrawElements(GL3.GL_TRIANGLES, indices.capacity(),
                     GL.GL_UNSIGNED_INT, 0);
@@ -397,8 +649,77 @@ public class TriangleMesh {
         }
     }
 
+    /**
+     * Draw the mesh, unless its bounds are outside the view of the camera set
+     * with ViewFrustum.setCamera(). Nothing is bound if it is not drawn.
+     * 
+     * @param gl
+     * @param frame
+     * @return Whether the mesh was drawn
+     */
+    public boolean drawIfVisible(GL3 gl, CoordFrame3D frame) {
+        if (!ViewFrustum.isVisible(frame, bounds))
+            return false;
+        draw(gl, frame);
+        return true;
+    }
+
+    /**
+     * Draw the given number of instances of this mesh with a single draw
+     * call. Any per-instance attributes must be set up by the caller, on this
+     * mesh's vertex array (see bindVertexArray()).
+     * 
+     * @param gl
+     * @param frame
+     * @param instances
+     */
+    public void drawInstanced(GL3 gl, CoordFrame3D frame, int instances) {
+        bind(gl, frame);
+        if (indices != null) {
+            gl.glDrawElementsInstanced(GL3.GL_TRIANGLES, indices.capacity(),
+                    GL.GL_UNSIGNED_INT, 0, instances);
+        } else {
+            gl.glDrawArraysInstanced(GL3.GL_TRIANGLES, 0, vertices.capacity(),
+                    instances);
+        }
+    }
+
+    /**
+     * Bind the vertex array of this mesh, so attributes can be added to it.
+     * It stays bound after drawing.
+     * 
+     * @param gl
+     */
+    public void bindVertexArray(GL3 gl) {
+        GLState.bindVertexArray(gl, vertexArrayName);
+    }
+
+    /**
+     * Bind the vertex array of this mesh and set the model matrix, ready for
+     * a draw call.
+     */
+    private void bind(GL3 gl, CoordFrame3D frame) {
+        GLState.bindVertexArray(gl, vertexArrayName);
+        if (decode != null)
+            Shader.setModelMatrix(gl, frame.getMatrix().multiply(decode));
+        else
+            Shader.setModelMatrix(gl, frame.getMatrix());
+        // uncomment this to view as lines
+//         gl.glPolygonMode(GL.GL_FRONT_AND_BACK, GL3.GL_LINE);
+    }
+
+    /**
+     * Delete the mesh's buffers and vertex array. Destroying it again does
+     * nothing, and it can be initialised again.
+     *
+     * @param gl
+     */
     public void destroy(GL3 gl) {
-        gl.glDeleteBuffers(4, new int[] { verticesName, indicesName, normalsName, texCoordsName }, 0);
+        if (vertexArrayName == 0)
+            return;
+        GLState.deleteVertexArrays(gl, 1, new int[] { vertexArrayName }, 0);
+        GLState.deleteBuffers(gl, 2, new int[] { verticesName, indicesName }, 0);
+        vertexArrayName = verticesName = indicesName = 0;
     }
 
     public void draw(GL3 gl) {
@@ -0,0 +1,116 @@
+package unsw.graphics.geometry;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the normals of the vertices of an indexed mesh, as the sum of the
+ * unit normals of the triangles around each vertex. The sums are not
+ * normalised.
+ *
+ * The buffers are read and written directly, without creating any objects
+ * for each triangle. Large meshes can be split into chunks of triangles
+ * summed on separate threads, each into its own normals, which are then
+ * added together.
+ */
+public class VertexNormals {
+
+    // Triangles each thread should sum at least, so small meshes are not
+    // split
+    private static final int MIN_CHUNK_TRIANGLES = 16384;
+
+    /**
+     * Compute the vertex normals on one thread.
+     *
+     * @param positions The position of each vertex, three floats each
+     * @param indices The indices of the mesh, three for each triangle
+     * @param normals The buffer the normals are written to, three floats for
+     * each vertex
+     */
+    public static void compute(FloatBuffer positions, IntBuffer indices, FloatBuffer normals) {
+        float[] sums = new float[normals.capacity()];
+        add(positions, indices, 0, indices.capacity() / 3, sums);
+        for (int i = 0; i < sums.length; i++)
+            normals.put(i, sums[i]);
+    }
+
+    /**
+     * Compute the vertex normals, splitting the triangles between up to the
+     * given number of threads from the common fork/join pool.
+     *
+     * @param positions The position of each vertex, three floats each
+     * @param indices The indices of the mesh, three for each triangle
+     * @param normals The buffer the normals are written to, three floats for
+     * each vertex
+     * @param threads
+     */
+    public static void compute(FloatBuffer positions, IntBuffer indices, FloatBuffer normals,
+            int threads) {
+        int triangles = indices.capacity() / 3;
+        int chunks = Math.min(threads, triangles / MIN_CHUNK_TRIANGLES);
+        if (chunks <= 1) {
+            compute(positions, indices, normals);
+            return;
+        }
+
+        float[][] sums = new float[chunks][normals.capacity()];
+        IntStream.range(0, chunks).parallel().forEach(c -> add(positions, indices,
+                (int) ((long) triangles * c / chunks),
+                (int) ((long) triangles * (c + 1) / chunks), sums[c]));
+
+        // Add the chunks together, each thread taking a range of vertices
+        int vertices = normals.capacity() / 3;
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            int end = (int) ((long) vertices * (c + 1) / chunks) * 3;
+            for (int i = (int) ((long) vertices * c / chunks) * 3; i < end; i++) {
+                float sum = 0;
+                for (float[] chunk : sums)
+                    sum += chunk[i];
+                normals.put(i, sum);
+            }
+        });
+    }
+
+    /**
+     * Add the unit normals of a range of triangles to the sums of their
+     * vertices.
+     */
+    private static void add(FloatBuffer positions, IntBuffer indices, int start, int end,
+            float[] sums) {
+        for (int t = start; t < end; t++) {
+            int p0 = indices.get(t * 3) * 3;
+            int p1 = indices.get(t * 3 + 1) * 3;
+            int p2 = indices.get(t * 3 + 2) * 3;
+
+            float x0 = positions.get(p0), y0 = positions.get(p0 + 1), z0 = positions.get(p0 + 2);
+            float ax = positions.get(p1) - x0;
+            float ay = positions.get(p1 + 1) - y0;
+            float az = positions.get(p1 + 2) - z0;
+            float bx = positions.get(p2) - x0;
+            float by = positions.get(p2 + 1) - y0;
+            float bz = positions.get(p2 + 2) - z0;
+
+            float nx = ay * bz - az * by;
+            float ny = az * bx - ax * bz;
+            float nz = ax * by - ay * bx;
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            // A triangle with no area has no normal to add
+            if (length == 0)
+                continue;
+            nx /= length;
+            ny /= length;
+            nz /= length;
+
+            sums[p0] += nx;
+            sums[p0 + 1] += ny;
+            sums[p0 + 2] += nz;
+            sums[p1] += nx;
+            sums[p1 + 1] += ny;
+            sums[p1 + 2] += nz;
+            sums[p2] += nx;
+            sums[p2 + 1] += ny;
+            sums[p2 + 2] += nz;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package unsw.graphics.geometry;
+
+import unsw.graphics.Vector3;
+
+/**
+ * Conversions between floats and the smaller types of the quantized vertex
+ * format (see TriangleMesh.init(GL3, boolean)).
+ *
+ * Positions are stored as 16 bit unsigned normalized integers across the
+ * bounds of the mesh. Normals are stored as two 16 bit signed normalized
+ * integers, by mapping the unit sphere onto an octahedron and unfolding it
+ * into a square, as described in Cigolle et al., "A Survey of Efficient
+ * Representations for Independent Unit Vectors". Texture coordinates are
+ * stored as half floats.
+ */
+public class VertexQuantization {
+
+    /**
+     * Quantize a value from 0 to 1 to a 16 bit unsigned normalized integer.
+     *
+     * @param value
+     * @return The integer, in the low 16 bits of a short
+     */
+    public static short toUnorm16(float value) {
+        return (short) Math.round(Math.max(0, Math.min(1, value)) * 65535);
+    }
+
+    public static float fromUnorm16(short value) {
+        return (value & 0xffff) / 65535f;
+    }
+
+    /**
+     * Quantize a value from -1 to 1 to a 16 bit signed normalized integer.
+     *
+     * @param value
+     * @return
+     */
+    public static short toSnorm16(float value) {
+        return (short) Math.round(Math.max(-1, Math.min(1, value)) * 32767);
+    }
+
+    public static float fromSnorm16(short value) {
+        return Math.max(value / 32767f, -1);
+    }
+
+    /**
+     * Encode a normal as a point on the unit square, from -1 to 1 on each
+     * axis, quantized as two 16 bit signed normalized integers.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param encoded The array the two integers are written to
+     */
+    public static void toOctahedral(float x, float y, float z, short[] encoded) {
+        // Project onto the octahedron |x| + |y| + |z| = 1
+        float length = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (length == 0) {
+            encoded[0] = 0;
+            encoded[1] = 0;
+            return;
+        }
+        float u = x / length, v = y / length;
+        if (z < 0) {
+            // Fold the lower half over the diagonals onto the corners
+            float foldedU = (1 - Math.abs(v)) * (u >= 0 ? 1 : -1);
+            v = (1 - Math.abs(u)) * (v >= 0 ? 1 : -1);
+            u = foldedU;
+        }
+        encoded[0] = toSnorm16(u);
+        encoded[1] = toSnorm16(v);
+    }
+
+    /**
+     * Decode a normal encoded with toOctahedral(). This is the same decoding
+     * the quantized vertex shaders do.
+     *
+     * @param u
+     * @param v
+     * @return The unit normal
+     */
+    public static Vector3 fromOctahedral(short u, short v) {
+        float x = fromSnorm16(u), y = fromSnorm16(v);
+        float z = 1 - Math.abs(x) - Math.abs(y);
+        if (z < 0) {
+            float unfoldedX = (1 - Math.abs(y)) * (x >= 0 ? 1 : -1);
+            y = (1 - Math.abs(x)) * (y >= 0 ? 1 : -1);
+            x = unfoldedX;
+        }
+        return new Vector3(x, y, z).normalize();
+    }
+
+    /**
+     * Convert a float to the nearest half float, rounding ties to even.
+     * Values too large for a half float become infinite.
+     *
+     * @param value
+     * @return The half float, in the bits of a short
+     */
+    public static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = bits >>> 16 & 0x8000;
+        int exponent = (bits >>> 23 & 0xff) - 127 + 15;
+        int mantissa = bits & 0x7fffff;
+
+        if (exponent >= 0x1f) {
+            // Too large, infinite or not a number
+            boolean nan = (bits & 0x7fffffff) > 0x7f800000;
+            return (short) (sign | 0x7c00 | (nan ? 0x200 : 0));
+        }
+        if (exponent <= 0) {
+            // Too small for a normal half float
+            if (exponent < -10)
+                return (short) sign;
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            int rest = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (rest > halfway || rest == halfway && (half & 1) == 1)
+                half++;
+            return (short) (sign | half);
+        }
+        int half = exponent << 10 | mantissa >> 13;
+        int rest = mantissa & 0x1fff;
+        // A carry out of the mantissa correctly moves on to the next exponent
+        if (rest > 0x1000 || rest == 0x1000 && (half & 1) == 1)
+            half++;
+        return (short) (sign | half);
+    }
+
+    /**
+     * Convert a half float to a float.
+     *
+     * @param half The half float, in the bits of a short
+     * @return
+     */
+    public static float fromHalf(short half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = half >>> 10 & 0x1f;
+        int mantissa = half & 0x3ff;
+        if (exponent == 0x1f)
+            return Float.intBitsToFloat(sign | 0x7f800000 | mantissa << 13);
+        if (exponent == 0) {
+            float value = mantissa / 16777216f;
+            return sign != 0 ? -value : value;
+        }
+        return Float.intBitsToFloat(sign | (exponent - 15 + 127) << 23 | mantissa << 13);
+    }
+}
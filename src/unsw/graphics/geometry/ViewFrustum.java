@@ -0,0 +1,137 @@
+package unsw.graphics.geometry;
+
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Matrix4;
+
+/**
+ * The camera meshes are drawn with, used to skip meshes that are outside its
+ * view and to work out how big meshes are on screen.
+ *
+ * The view and projection matrices must be set with setCamera() each frame
+ * before drawing with culling or levels of detail. Until they are set, every
+ * mesh is visible.
+ *
+ * A mesh is tested by transforming the six planes of the frustum into its
+ * model coordinates, and checking whether its bounding box is entirely
+ * behind any of them. Boxes near the corners of the frustum can pass when
+ * they are not quite in view, but a box that is in view never fails.
+ *
+ * Each test counts the mesh as drawn or culled, so the counts since
+ * resetCounts() give the statistics for a frame.
+ */
+public class ViewFrustum {
+
+    private static Matrix4 viewMatrix = Matrix4.identity();
+    private static Matrix4 projMatrix = Matrix4.identity();
+
+    /**
+     * The projection matrix times the view matrix, or null if no camera has
+     * been set.
+     */
+    private static float[] viewProj;
+
+    private static long drawn;
+    private static long culled;
+
+    /**
+     * Set the view and projection matrices meshes are drawn with.
+     *
+     * @param view
+     * @param proj
+     */
+    public static void setCamera(Matrix4 view, Matrix4 proj) {
+        viewMatrix = view;
+        projMatrix = proj;
+        viewProj = multiply(proj.getValues(), view.getValues());
+    }
+
+    /**
+     * Forget the camera, so every mesh is visible again.
+     */
+    public static void clearCamera() {
+        viewMatrix = Matrix4.identity();
+        projMatrix = Matrix4.identity();
+        viewProj = null;
+    }
+
+    public static Matrix4 getViewMatrix() {
+        return viewMatrix;
+    }
+
+    public static Matrix4 getProjMatrix() {
+        return projMatrix;
+    }
+
+    /**
+     * Whether any of the given bounds might be in view, in the given frame,
+     * counting them as drawn if so and culled if not.
+     *
+     * @param frame The model coordinate frame
+     * @param bounds The bounds in model coordinates
+     * @return
+     */
+    public static boolean isVisible(CoordFrame3D frame, Bounds bounds) {
+        if (viewProj == null) {
+            drawn++;
+            return true;
+        }
+        float[] m = multiply(viewProj, frame.getMatrix().getValues());
+        Point3D min = bounds.getMin();
+        Point3D max = bounds.getMax();
+
+        // Each plane is the last row of the matrix plus or minus one of the
+        // others, facing into the frustum (Gribb and Hartmann, "Fast
+        // Extraction of Viewing Frustum Planes from the World-View-Projection
+        // Matrix")
+        for (int row = 0; row < 3; row++) {
+            for (int sign = -1; sign <= 1; sign += 2) {
+                float a = m[3] + sign * m[row];
+                float b = m[7] + sign * m[4 + row];
+                float c = m[11] + sign * m[8 + row];
+                float d = m[15] + sign * m[12 + row];
+                // The corner of the box furthest in front of the plane
+                float x = a >= 0 ? max.getX() : min.getX();
+                float y = b >= 0 ? max.getY() : min.getY();
+                float z = c >= 0 ? max.getZ() : min.getZ();
+                if (a * x + b * y + c * z + d < 0) {
+                    culled++;
+                    return false;
+                }
+            }
+        }
+        drawn++;
+        return true;
+    }
+
+    /**
+     * The number of meshes found visible since the counts were last reset.
+     */
+    public static long getDrawnMeshes() {
+        return drawn;
+    }
+
+    /**
+     * The number of meshes found outside the view since the counts were
+     * last reset.
+     */
+    public static long getCulledMeshes() {
+        return culled;
+    }
+
+    public static void resetCounts() {
+        drawn = 0;
+        culled = 0;
+    }
+
+    /**
+     * Multiply two matrices in column-major order.
+     */
+    private static float[] multiply(float[] a, float[] b) {
+        float[] r = new float[16];
+        for (int col = 0; col < 4; col++)
+            for (int row = 0; row < 4; row++)
+                for (int k = 0; k < 4; k++)
+                    r[col * 4 + row] += a[k * 4 + row] * b[col * 4 + k];
+        return r;
+    }
+}
@@ -0,0 +1,79 @@
+package unsw.graphics.geometry.tests;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Matrix4;
+import unsw.graphics.geometry.LODGroup;
+import unsw.graphics.geometry.MeshCache;
+import unsw.graphics.geometry.TriangleMesh;
+import unsw.graphics.geometry.ViewFrustum;
+
+/**
+ * Tests that LOD groups choose simpler meshes as they get smaller on screen.
+ */
+public class LODGroupTest extends TestCase {
+
+    private static LODGroup cubes() throws IOException {
+        TriangleMesh.setCache(null);
+        TriangleMesh cube = new TriangleMesh("res/models/cube.ply");
+        TriangleMesh.setCache(new MeshCache());
+        return new LODGroup(new TriangleMesh[] { cube, cube, cube },
+                new float[] { 0.5f, 0.25f });
+    }
+
+    @Test
+    public void testSelect() throws IOException {
+        LODGroup group = cubes();
+        assertEquals(0, group.select(1, 0));
+        assertEquals(1, group.select(0.4f, 0));
+        assertEquals(2, group.select(0.1f, 0));
+        assertEquals(0, group.select(Float.POSITIVE_INFINITY, 2));
+    }
+
+    @Test
+    public void testHysteresis() throws IOException {
+        LODGroup.Instance instance = new LODGroup.Instance(cubes());
+        assertEquals(0, instance.select(0.6f));
+        // Just under the switching size is not enough to switch
+        assertEquals(0, instance.select(0.48f));
+        assertEquals(1, instance.select(0.4f));
+        // and neither is just over it to switch back
+        assertEquals(1, instance.select(0.52f));
+        assertEquals(0, instance.select(0.6f));
+    }
+
+    @Test
+    public void testSharedGroup() throws IOException {
+        LODGroup group = cubes();
+        LODGroup.Instance near = new LODGroup.Instance(group);
+        LODGroup.Instance far = new LODGroup.Instance(group);
+        assertEquals(2, far.select(0.1f));
+        // Each instance starts from its own level
+        assertEquals(0, near.select(0.48f));
+        assertEquals(1, far.select(0.48f));
+        assertEquals(0, near.getLevel());
+    }
+
+    @Test
+    public void testScreenSize() throws IOException {
+        LODGroup group = cubes();
+        // The cube's bounding sphere has a radius of sqrt(3), and with a
+        // 90 degree field of view a height of 1 at a distance of 1 fills half
+        // the screen
+        ViewFrustum.setCamera(Matrix4.translation(0, 0, -10),
+                Matrix4.perspective(90, 1, 1, 100));
+        float radius = (float) Math.sqrt(3);
+        assertEquals(radius / 10, group.screenSize(CoordFrame3D.identity()), 1e-4f);
+        assertEquals(radius * 2 / 10,
+                group.screenSize(CoordFrame3D.identity().scale(2, 1, 1)), 1e-4f);
+        assertEquals(radius / 5,
+                group.screenSize(CoordFrame3D.identity().translate(0, 0, 5)), 1e-4f);
+        assertEquals(Float.POSITIVE_INFINITY,
+                group.screenSize(CoordFrame3D.identity().translate(0, 0, 10)));
+        ViewFrustum.clearCamera();
+    }
+}
@@ -0,0 +1,202 @@
+package unsw.graphics.geometry.tests;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.util.GLBuffers;
+
+import junit.framework.TestCase;
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Vector3;
+import unsw.graphics.geometry.MeshBVH;
+import unsw.graphics.geometry.PlyParser;
+import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Tests that rays and spheres find the same triangles through the hierarchy
+ * as by testing every triangle.
+ */
+public class MeshBVHTest extends TestCase {
+
+    @Test
+    public void testRay() throws IOException {
+        // A cube from -1 to 1
+        MeshBVH bvh = new TriangleMesh("res/models/cube.ply").getBVH();
+        MeshBVH.Hit hit = bvh.raycast(new Point3D(0.2f, 0.3f, 5), new Vector3(0, 0, -1),
+                CoordFrame3D.identity());
+        assertEquals(4f, hit.getDistance(), 1e-6f);
+        assertEquals(1f, hit.getPoint().getZ(), 1e-6f);
+        assertNull(bvh.raycast(new Point3D(2, 0, 5), new Vector3(0, 0, -1),
+                CoordFrame3D.identity()));
+        // Pointing away
+        assertNull(bvh.raycast(new Point3D(0, 0, 5), new Vector3(0, 0, 1),
+                CoordFrame3D.identity()));
+
+        // Moved, turned and stretched, the near face is at x = 10 - 3
+        CoordFrame3D frame = CoordFrame3D.identity().translate(10, 0, 0).rotateY(90)
+                .scale(1, 1, 3);
+        hit = bvh.raycast(new Point3D(0, 0.5f, 0.5f), new Vector3(2, 0, 0), frame);
+        assertEquals(3.5f, hit.getDistance(), 1e-5f);
+        assertEquals(7f, hit.getPoint().getX(), 1e-5f);
+        assertEquals(0.5f, hit.getPoint().getY(), 1e-5f);
+    }
+
+    @Test
+    public void testSameAsEveryTriangle() throws IOException {
+        PlyParser ply = new PlyParser("res/models/bunny.ply");
+        FloatBuffer positions = (FloatBuffer) ply.getVertices().getBuffer();
+        IntBuffer indices = ply.getIndices();
+        MeshBVH bvh = new MeshBVH(positions, indices);
+        assertTrue(bvh.getNodeCount() < 2 * indices.capacity() / 3);
+
+        // Rays from around the bunny towards points near it
+        Random random = new Random(1);
+        CoordFrame3D frame = CoordFrame3D.identity().rotateX(30).scale(2, 1, 1);
+        int hits = 0;
+        for (int i = 0; i < 500; i++) {
+            Point3D origin = new Point3D(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f,
+                    random.nextFloat() - 0.5f);
+            Point3D target = new Point3D(random.nextFloat() * 0.2f - 0.1f,
+                    random.nextFloat() * 0.2f, random.nextFloat() * 0.2f - 0.1f);
+            Vector3 direction = frame.transform(target).minus(origin);
+
+            MeshBVH.Hit hit = bvh.raycast(origin, direction, frame);
+            float nearest = nearest(positions, indices, frame, origin, direction);
+            if (hit == null) {
+                assertEquals(Float.POSITIVE_INFINITY, nearest);
+            } else {
+                hits++;
+                assertEquals(nearest, hit.getDistance(), 1e-4f);
+            }
+        }
+        assertTrue(hits > 100);
+
+        // Spheres touch the bunny exactly when they are near some triangle
+        for (int i = 0; i < 200; i++) {
+            Point3D centre = frame.transform(new Point3D(random.nextFloat() * 0.3f - 0.15f,
+                    random.nextFloat() * 0.25f, random.nextFloat() * 0.3f - 0.15f));
+            float radius = random.nextFloat() * 0.02f;
+            float distance = distance(positions, indices, frame, centre);
+            // Leave out spheres too close to call
+            if (Math.abs(distance - radius) < 1e-4f)
+                continue;
+            assertEquals(distance <= radius, bvh.intersectsSphere(centre, radius, frame));
+        }
+    }
+
+    @Test
+    public void testSphere() throws IOException {
+        MeshBVH bvh = new TriangleMesh("res/models/cube.ply").getBVH();
+        CoordFrame3D identity = CoordFrame3D.identity();
+        assertTrue(bvh.intersectsSphere(new Point3D(0, 0, 1.5f), 0.6f, identity));
+        assertFalse(bvh.intersectsSphere(new Point3D(0, 0, 1.5f), 0.4f, identity));
+        // Past a corner
+        assertFalse(bvh.intersectsSphere(new Point3D(1.5f, 1.5f, 1.5f), 0.8f, identity));
+        assertTrue(bvh.intersectsSphere(new Point3D(1.5f, 1.5f, 1.5f), 0.9f, identity));
+        // Inside, away from the faces
+        assertFalse(bvh.intersectsSphere(new Point3D(0, 0, 0), 0.5f, identity));
+
+        // Stretched to reach the sphere
+        CoordFrame3D stretched = identity.scale(1, 1, 2);
+        assertTrue(bvh.intersectsSphere(new Point3D(0, 0, 2.3f), 0.4f, stretched));
+        assertFalse(bvh.intersectsSphere(new Point3D(1.5f, 0, 0), 0.4f, stretched));
+    }
+
+    @Test
+    public void testUnindexed() {
+        TriangleMesh triangle = new TriangleMesh(Arrays.asList(new Point3D(0, 0, 0),
+                new Point3D(1, 0, 0), new Point3D(0, 1, 0)), true);
+        MeshBVH.Hit hit = triangle.getBVH().raycast(new Point3D(0.25f, 0.25f, -1),
+                new Vector3(0, 0, 1), CoordFrame3D.identity());
+        assertEquals(0, hit.getTriangle());
+        assertEquals(1f, hit.getDistance());
+
+        MeshBVH empty = new MeshBVH(GLBuffers.newDirectFloatBuffer(0),
+                GLBuffers.newDirectIntBuffer(0));
+        assertNull(empty.raycast(new Point3D(0, 0, 0), new Vector3(1, 0, 0),
+                CoordFrame3D.identity()));
+        assertFalse(empty.intersectsSphere(new Point3D(0, 0, 0), 1, CoordFrame3D.identity()));
+    }
+
+    private static Point3D[] corners(FloatBuffer positions, IntBuffer indices,
+            CoordFrame3D frame, int triangle) {
+        Point3D[] corners = new Point3D[3];
+        for (int k = 0; k < 3; k++) {
+            int v = indices.get(triangle * 3 + k) * 3;
+            corners[k] = frame.transform(
+                    new Point3D(positions.get(v), positions.get(v + 1), positions.get(v + 2)));
+        }
+        return corners;
+    }
+
+    /**
+     * The distance to the nearest triangle along the ray, found by solving
+     * for the barycentric coordinates of each triangle.
+     */
+    private static float nearest(FloatBuffer positions, IntBuffer indices,
+            CoordFrame3D frame, Point3D origin, Vector3 direction) {
+        float best = Float.POSITIVE_INFINITY;
+        for (int t = 0; t < indices.capacity() / 3; t++) {
+            Point3D[] c = corners(positions, indices, frame, t);
+            Vector3 a = c[1].minus(c[0]), b = c[2].minus(c[0]);
+            Vector3 normal = a.cross(b);
+            float facing = normal.dotp(direction);
+            if (facing == 0)
+                continue;
+            float distance = normal.dotp(c[0].minus(origin)) / facing;
+            if (distance < 0 || distance >= best)
+                continue;
+            Point3D p = origin.translate(direction.scale(distance));
+            Vector3 toP = p.minus(c[0]);
+            float aa = a.dotp(a), ab = a.dotp(b), bb = b.dotp(b);
+            float pa = toP.dotp(a), pb = toP.dotp(b);
+            float det = aa * bb - ab * ab;
+            float u = (pa * bb - pb * ab) / det, v = (pb * aa - pa * ab) / det;
+            if (u >= 0 && v >= 0 && u + v <= 1)
+                best = distance;
+        }
+        return best;
+    }
+
+    /**
+     * The distance from a point to the nearest triangle, the least of the
+     * distances to each triangle's plane where the point is over the
+     * triangle, and to each edge.
+     */
+    private static float distance(FloatBuffer positions, IntBuffer indices,
+            CoordFrame3D frame, Point3D point) {
+        float best = Float.POSITIVE_INFINITY;
+        for (int t = 0; t < indices.capacity() / 3; t++) {
+            Point3D[] c = corners(positions, indices, frame, t);
+            Vector3 a = c[1].minus(c[0]), b = c[2].minus(c[0]);
+            Vector3 toP = point.minus(c[0]);
+            float aa = a.dotp(a), ab = a.dotp(b), bb = b.dotp(b);
+            float pa = toP.dotp(a), pb = toP.dotp(b);
+            float det = aa * bb - ab * ab;
+            if (det > 0) {
+                float u = (pa * bb - pb * ab) / det, v = (pb * aa - pa * ab) / det;
+                if (u >= 0 && v >= 0 && u + v <= 1) {
+                    Vector3 off = toP.plus(a.scale(-u)).plus(b.scale(-v));
+                    best = Math.min(best, (float) Math.sqrt(off.dotp(off)));
+                }
+            }
+            for (int k = 0; k < 3; k++)
+                best = Math.min(best, segmentDistance(point, c[k], c[(k + 1) % 3]));
+        }
+        return best;
+    }
+
+    private static float segmentDistance(Point3D p, Point3D from, Point3D to) {
+        Vector3 edge = to.minus(from), toP = p.minus(from);
+        float length = edge.dotp(edge);
+        float s = length == 0 ? 0 : Math.max(0, Math.min(1, toP.dotp(edge) / length));
+        Vector3 off = toP.plus(edge.scale(-s));
+        return (float) Math.sqrt(off.dotp(off));
+    }
+}
@@ -0,0 +1,69 @@
+package unsw.graphics.geometry.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.geometry.MeshCache;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Tests that cached meshes are only used while their PLY file is unchanged.
+ */
+public class MeshCacheTest extends TestCase {
+
+    private File directory;
+    private MeshCache cache;
+    private File model;
+
+    /**
+     * Copy a model into a new directory, and cache meshes in the same
+     * directory.
+     */
+    private void copyModel() throws IOException {
+        directory = Files.createTempDirectory("meshcachetest").toFile();
+        directory.deleteOnExit();
+        cache = new MeshCache(directory);
+        model = new File(directory, "cube.ply");
+        Files.copy(new File("res/models/cube.ply").toPath(), model.toPath());
+        model.deleteOnExit();
+        cache.file(model, true, true, false).deleteOnExit();
+        TriangleMesh.setCache(cache);
+    }
+
+    @Test
+    public void testLoadSaves() throws IOException {
+        copyModel();
+        assertNull(cache.load(model.getPath(), true, true, false));
+        new TriangleMesh(model.getPath(), true, true);
+        assertTrue(cache.file(model, true, true, false).isFile());
+        assertNotNull(cache.load(model.getPath(), true, true, false));
+        // Meshes without generated normals are cached separately
+        assertNull(cache.load(model.getPath(), false, false, false));
+        TriangleMesh.setCache(new MeshCache());
+    }
+
+    @Test
+    public void testChangedModel() throws IOException {
+        copyModel();
+        new TriangleMesh(model.getPath(), true, true);
+        Files.copy(new File("res/models/cube_normals.ply").toPath(), model.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        assertNull(cache.load(model.getPath(), true, true, false));
+        TriangleMesh.setCache(new MeshCache());
+    }
+
+    @Test
+    public void testTouchedModel() throws IOException {
+        copyModel();
+        new TriangleMesh(model.getPath(), true, true);
+        assertTrue(model.setLastModified(model.lastModified() - 60000));
+        // The contents are the same, so it is still used
+        assertNotNull(cache.load(model.getPath(), true, true, false));
+        TriangleMesh.setCache(new MeshCache());
+    }
+}
@@ -0,0 +1,69 @@
+package unsw.graphics.geometry.tests;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.geometry.MeshOptimizer;
+import unsw.graphics.geometry.PlyParser;
+
+/**
+ * Tests that optimizing a mesh keeps its triangles and makes it cheaper to
+ * draw.
+ */
+public class MeshOptimizerTest extends TestCase {
+
+    private static int[] indices(PlyParser ply) {
+        int[] indices = new int[ply.getIndexCount()];
+        ply.getIndices().get(indices).rewind();
+        return indices;
+    }
+
+    /**
+     * Count each triangle, keeping the order of its vertices.
+     */
+    private static Map<String, Integer> triangles(int[] indices) {
+        Map<String, Integer> triangles = new HashMap<String, Integer>();
+        for (int i = 0; i < indices.length; i += 3)
+            triangles.merge(indices[i] + " " + indices[i + 1] + " " + indices[i + 2], 1,
+                    Integer::sum);
+        return triangles;
+    }
+
+    @Test
+    public void testAcmr() {
+        // A strip of two triangles shares two vertices
+        assertEquals(2.0, MeshOptimizer.acmr(new int[] { 0, 1, 2, 2, 1, 3 }, 16), 1e-9);
+        // With a cache of size 3, the first vertex has fallen out by the end
+        assertEquals(3.0, MeshOptimizer.acmr(new int[] { 0, 1, 2, 3, 4, 0 }, 3), 1e-9);
+    }
+
+    @Test
+    public void testVertexCache() throws IOException {
+        PlyParser ply = new PlyParser("res/models/bunny_res3.ply");
+        int[] indices = indices(ply);
+        int[] optimized = MeshOptimizer.optimizeVertexCache(indices, ply.getVertexCount());
+
+        assertEquals(triangles(indices), triangles(optimized));
+        assertTrue(MeshOptimizer.acmr(optimized, 16) < 0.8);
+        assertTrue(MeshOptimizer.acmr(indices, 16) > 2);
+    }
+
+    @Test
+    public void testVertexFetch() {
+        int[] indices = { 3, 1, 4, 1, 4, 0 };
+        int[] remap = MeshOptimizer.optimizeVertexFetch(indices, 6);
+        assertEquals(0, indices[0]);
+        assertEquals(1, indices[1]);
+        assertEquals(2, indices[2]);
+        assertEquals(1, indices[3]);
+        assertEquals(2, indices[4]);
+        assertEquals(3, indices[5]);
+        // The unused vertices go last
+        assertEquals(4, remap[2]);
+        assertEquals(5, remap[5]);
+    }
+}
@@ -0,0 +1,83 @@
+package unsw.graphics.geometry.tests;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.geometry.MeshCache;
+import unsw.graphics.geometry.MeshSimplifier;
+import unsw.graphics.geometry.PlyParser;
+import unsw.graphics.geometry.TriangleMesh;
+
+/**
+ * Tests that simplifying a mesh removes triangles without changing its shape
+ * much.
+ */
+public class MeshSimplifierTest extends TestCase {
+
+    @Test
+    public void testSimplify() throws IOException {
+        PlyParser ply = new PlyParser("res/models/bunny_res3.ply");
+        int[] indices = new int[ply.getIndexCount()];
+        ply.getIndices().get(indices).rewind();
+        FloatBuffer positions = (FloatBuffer) ply.getVertices().getBuffer();
+
+        int[] simplified = MeshSimplifier.simplify(indices, positions, 1000);
+        assertTrue(simplified.length / 3 <= 1000);
+        assertTrue(simplified.length / 3 > 900);
+        for (int t = 0; t < simplified.length; t += 3) {
+            assertTrue(simplified[t] != simplified[t + 1]);
+            assertTrue(simplified[t + 1] != simplified[t + 2]);
+            assertTrue(simplified[t + 2] != simplified[t]);
+        }
+
+        // Vertices are only merged, so the bounds of the mesh can only shrink,
+        // and not by much
+        float[] before = bounds(indices, positions);
+        float[] after = bounds(simplified, positions);
+        for (int i = 0; i < 3; i++) {
+            float size = before[i + 3] - before[i];
+            assertTrue(after[i] >= before[i]);
+            assertTrue(after[i + 3] <= before[i + 3]);
+            assertEquals(before[i], after[i], size * 0.05f);
+            assertEquals(before[i + 3], after[i + 3], size * 0.05f);
+        }
+    }
+
+    /**
+     * The minimum and then maximum coordinates of the vertices used.
+     */
+    private static float[] bounds(int[] indices, FloatBuffer positions) {
+        float[] bounds = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+                -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+        for (int index : indices) {
+            for (int i = 0; i < 3; i++) {
+                bounds[i] = Math.min(bounds[i], positions.get(index * 3 + i));
+                bounds[i + 3] = Math.max(bounds[i + 3], positions.get(index * 3 + i));
+            }
+        }
+        return bounds;
+    }
+
+    @Test
+    public void testSeamsKept() throws IOException {
+        // Every corner of this cube is split between its faces, so nothing can
+        // be removed
+        TriangleMesh.setCache(null);
+        TriangleMesh cube = new TriangleMesh("res/models/cube_normals.ply", false, false);
+        assertEquals(12, cube.simplify(2).getTriangleCount());
+        TriangleMesh.setCache(new MeshCache());
+    }
+
+    @Test
+    public void testMeshSimplify() throws IOException {
+        TriangleMesh.setCache(null);
+        TriangleMesh bunny = new TriangleMesh("res/models/bunny_res4.ply", true, true);
+        TriangleMesh simplified = bunny.simplify(200);
+        assertTrue(simplified.getTriangleCount() <= 200);
+        assertTrue(simplified.getTriangleCount() > 150);
+        TriangleMesh.setCache(new MeshCache());
+    }
+}
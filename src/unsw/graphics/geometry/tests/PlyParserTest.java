@@ -0,0 +1,165 @@
+package unsw.graphics.geometry.tests;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.smurn.jply.Element;
+import org.smurn.jply.ElementReader;
+import org.smurn.jply.PlyReaderFile;
+import org.smurn.jply.util.NormalMode;
+import org.smurn.jply.util.NormalizingPlyReader;
+import org.smurn.jply.util.TesselationMode;
+import org.smurn.jply.util.TextureMode;
+
+import junit.framework.TestCase;
+import unsw.graphics.geometry.PlyParser;
+
+/**
+ * Tests that the PLY parser reads the same meshes as jply.
+ */
+public class PlyParserTest extends TestCase {
+
+    /**
+     * Read a mesh with jply, as TriangleMesh used to. Returns the positions,
+     * texture coordinates and indices.
+     */
+    private static Object[] readWithJply(String file) throws IOException {
+        NormalizingPlyReader reader = new NormalizingPlyReader(new PlyReaderFile(file),
+                TesselationMode.TRIANGLES, NormalMode.PASS_THROUGH, TextureMode.XY);
+        float[] positions = new float[reader.getElementCount("vertex") * 3];
+        float[] texCoords = new float[reader.getElementCount("vertex") * 2];
+        int[] indices = new int[reader.getElementCount("face") * 3];
+
+        ElementReader elReader = reader.nextElementReader();
+        while (elReader != null) {
+            String name = elReader.getElementType().getName();
+            int i = 0;
+            Element element = elReader.readElement();
+            while (element != null) {
+                if (name.equals("vertex")) {
+                    positions[i * 3] = (float) element.getDouble("x");
+                    positions[i * 3 + 1] = (float) element.getDouble("y");
+                    positions[i * 3 + 2] = (float) element.getDouble("z");
+                    texCoords[i * 2] = (float) element.getDouble("u");
+                    texCoords[i * 2 + 1] = (float) element.getDouble("v");
+                } else if (name.equals("face")) {
+                    int[] triangle = element.getIntList("vertex_index");
+                    System.arraycopy(triangle, 0, indices, i * 3, 3);
+                }
+                i++;
+                element = elReader.readElement();
+            }
+            elReader = reader.nextElementReader();
+        }
+        reader.close();
+        return new Object[] { positions, texCoords, indices };
+    }
+
+    private static void assertSameAsJply(String file, int threads) throws IOException {
+        Object[] expected = readWithJply(file);
+        PlyParser ply = new PlyParser(file, threads);
+
+        float[] positions = (float[]) expected[0];
+        FloatBuffer vertices = (FloatBuffer) ply.getVertices().getBuffer();
+        assertEquals(positions.length, vertices.capacity());
+        for (int i = 0; i < positions.length; i++)
+            assertEquals(file + " position " + i, positions[i], vertices.get(i), 0f);
+
+        float[] texCoords = (float[]) expected[1];
+        FloatBuffer planar = (FloatBuffer) ply.getPlanarTexCoords().getBuffer();
+        for (int i = 0; i < texCoords.length; i++)
+            assertEquals(file + " texture coordinate " + i, texCoords[i], planar.get(i), 0f);
+
+        int[] indices = (int[]) expected[2];
+        IntBuffer parsed = ply.getIndices();
+        assertEquals(indices.length, parsed.capacity());
+        for (int i = 0; i < indices.length; i++)
+            assertEquals(file + " index " + i, indices[i], parsed.get(i));
+    }
+
+    /**
+     * Write a copy of an ASCII mesh of positions and faces in binary.
+     */
+    private static File toBinary(String file, ByteOrder order) throws IOException {
+        List<String> lines = Files.readAllLines(new File(file).toPath(),
+                StandardCharsets.US_ASCII);
+        int vertices = 0, faces = 0, body = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            String[] words = lines.get(i).trim().split("\\s+");
+            if (words[0].equals("element") && words[1].equals("vertex"))
+                vertices = Integer.parseInt(words[2]);
+            if (words[0].equals("element") && words[1].equals("face"))
+                faces = Integer.parseInt(words[2]);
+            if (words[0].equals("end_header")) {
+                body = i + 1;
+                break;
+            }
+        }
+
+        List<byte[]> data = new ArrayList<byte[]>();
+        for (int i = 0; i < vertices; i++) {
+            String[] words = lines.get(body + i).trim().split("\\s+");
+            ByteBuffer vertex = ByteBuffer.allocate(12).order(order);
+            for (int j = 0; j < 3; j++)
+                vertex.putFloat(Float.parseFloat(words[j]));
+            data.add(vertex.array());
+        }
+        for (int i = 0; i < faces; i++) {
+            String[] words = lines.get(body + vertices + i).trim().split("\\s+");
+            int count = Integer.parseInt(words[0]);
+            ByteBuffer face = ByteBuffer.allocate(1 + count * 4).order(order);
+            face.put((byte) count);
+            for (int j = 1; j <= count; j++)
+                face.putInt(Integer.parseInt(words[j]));
+            data.add(face.array());
+        }
+
+        File binary = File.createTempFile("plyparsertest", ".ply");
+        binary.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(binary))) {
+            String format = order == ByteOrder.LITTLE_ENDIAN ? "binary_little_endian"
+                    : "binary_big_endian";
+            out.write(("ply\nformat " + format + " 1.0\nelement vertex " + vertices
+                    + "\nproperty float x\nproperty float y\nproperty float z\n"
+                    + "element face " + faces + "\nproperty list uchar int vertex_indices\n"
+                    + "end_header\n").getBytes(StandardCharsets.US_ASCII));
+            for (byte[] bytes : data)
+                out.write(bytes);
+        }
+        return binary;
+    }
+
+    @Test
+    public void testModels() throws IOException {
+        for (File model : new File("res/models").listFiles()) {
+            if (model.getName().endsWith(".ply"))
+                assertSameAsJply(model.getPath(), 1);
+        }
+    }
+
+    @Test
+    public void testChunks() throws IOException {
+        // Splits the body into chunks that do not line up with the elements
+        for (int threads = 2; threads <= 7; threads++)
+            assertSameAsJply("res/models/bunny.ply", threads);
+    }
+
+    @Test
+    public void testBinary() throws IOException {
+        for (String model : new String[] { "res/models/cube.ply", "res/models/apple.ply" }) {
+            assertSameAsJply(toBinary(model, ByteOrder.LITTLE_ENDIAN).getPath(), 1);
+            assertSameAsJply(toBinary(model, ByteOrder.BIG_ENDIAN).getPath(), 1);
+        }
+    }
+}
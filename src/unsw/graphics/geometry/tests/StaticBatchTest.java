@@ -0,0 +1,107 @@
+package unsw.graphics.geometry.tests;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Matrix4;
+import unsw.graphics.geometry.Bounds;
+import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.StaticBatch;
+import unsw.graphics.geometry.TriangleMesh;
+import unsw.graphics.geometry.ViewFrustum;
+
+/**
+ * Tests that meshes are moved into the batch's frame, that meshes with the
+ * same indices share them, and that parts are culled on their own.
+ */
+public class StaticBatchTest extends TestCase {
+
+    @Test
+    public void testPartsAreMoved() throws IOException {
+        TriangleMesh cube = new TriangleMesh("res/models/cube.ply", true, false);
+        StaticBatch.Builder builder = new StaticBatch.Builder();
+        int first = builder.add(cube, CoordFrame3D.identity());
+        int second = builder.add(cube, CoordFrame3D.identity().translate(10, 0, 0)
+                .scale(2, 2, 2));
+        StaticBatch batch = builder.build();
+
+        assertEquals(2, batch.getPartCount());
+        assertEquals(cube.getTriangleCount(), batch.getTriangleCount(second));
+        Bounds bounds = batch.getBounds(first);
+        assertEquals(-1f, bounds.getMin().getX(), 1e-6f);
+        assertEquals(1f, bounds.getMax().getX(), 1e-6f);
+        bounds = batch.getBounds(second);
+        assertEquals(8f, bounds.getMin().getX(), 1e-5f);
+        assertEquals(12f, bounds.getMax().getX(), 1e-5f);
+        assertEquals(-2f, bounds.getMin().getY(), 1e-5f);
+    }
+
+    @Test
+    public void testSharedIndices() throws IOException {
+        TriangleMesh cube = new TriangleMesh("res/models/cube.ply", true, false);
+        // A separate copy has equal indices
+        TriangleMesh copy = new TriangleMesh("res/models/cube.ply", true, false);
+        StaticBatch.Builder builder = new StaticBatch.Builder();
+        builder.add(cube, CoordFrame3D.identity());
+        builder.add(copy, CoordFrame3D.identity().translate(3, 0, 0));
+        builder.add(cube, CoordFrame3D.identity().translate(6, 0, 0));
+        StaticBatch batch = builder.build();
+        assertEquals(cube.getTriangleCount() * 3, batch.getIndexCount());
+        // But each part has its own vertices
+        StaticBatch.Builder one = new StaticBatch.Builder();
+        one.add(cube, CoordFrame3D.identity());
+        assertEquals(3 * one.build().getVertexCount(), batch.getVertexCount());
+
+        // Meshes without indices share one range counting up
+        TriangleMesh small = new TriangleMesh(Arrays.asList(new Point3D(0, 0, 0),
+                new Point3D(1, 0, 0), new Point3D(0, 1, 0)), true);
+        TriangleMesh large = new TriangleMesh(Arrays.asList(new Point3D(0, 0, 0),
+                new Point3D(1, 0, 0), new Point3D(0, 1, 0), new Point3D(0, 0, 1),
+                new Point3D(1, 0, 1), new Point3D(0, 1, 1)), true);
+        builder = new StaticBatch.Builder();
+        builder.add(small, CoordFrame3D.identity());
+        builder.add(large, CoordFrame3D.identity());
+        batch = builder.build();
+        assertEquals(6, batch.getIndexCount());
+        assertEquals(9, batch.getVertexCount());
+    }
+
+    @Test
+    public void testMismatchedAttributes() throws IOException {
+        StaticBatch.Builder builder = new StaticBatch.Builder();
+        builder.add(new TriangleMesh("res/models/cube.ply", true, false),
+                CoordFrame3D.identity());
+        try {
+            builder.add(new TriangleMesh("res/models/cube.ply", false, false),
+                    CoordFrame3D.identity());
+            fail("Meshes with different attributes were batched");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testVisibility() throws IOException {
+        TriangleMesh cube = new TriangleMesh("res/models/cube.ply", true, false);
+        StaticBatch.Builder builder = new StaticBatch.Builder();
+        int ahead = builder.add(cube, CoordFrame3D.identity().translate(0, 0, -10));
+        int behind = builder.add(cube, CoordFrame3D.identity().translate(0, 0, 10));
+        StaticBatch batch = builder.build();
+
+        ViewFrustum.setCamera(Matrix4.identity(), Matrix4.perspective(60, 1, 0.1f, 100));
+        try {
+            assertTrue(batch.isVisible(CoordFrame3D.identity(), ahead));
+            assertFalse(batch.isVisible(CoordFrame3D.identity(), behind));
+            // Turning the batch around turns the parts with it
+            CoordFrame3D turned = CoordFrame3D.identity().rotateY(180);
+            assertFalse(batch.isVisible(turned, ahead));
+            assertTrue(batch.isVisible(turned, behind));
+        } finally {
+            ViewFrustum.clearCamera();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package unsw.graphics.geometry.tests;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.util.GLBuffers;
+
+import junit.framework.TestCase;
+import unsw.graphics.Vector3;
+import unsw.graphics.geometry.PlyParser;
+import unsw.graphics.geometry.VertexNormals;
+
+/**
+ * Tests that vertex normals are the sums of the triangle normals, however
+ * many threads compute them.
+ */
+public class VertexNormalsTest extends TestCase {
+
+    /**
+     * Sum the normals with vectors, as TriangleMesh used to.
+     */
+    private static float[] withVectors(FloatBuffer positions, IntBuffer indices) {
+        float[] normals = new float[positions.capacity()];
+        for (int t = 0; t < indices.capacity() / 3; t++) {
+            int[] v = { indices.get(t * 3), indices.get(t * 3 + 1), indices.get(t * 3 + 2) };
+            Vector3 a = new Vector3(positions.get(v[1] * 3) - positions.get(v[0] * 3),
+                    positions.get(v[1] * 3 + 1) - positions.get(v[0] * 3 + 1),
+                    positions.get(v[1] * 3 + 2) - positions.get(v[0] * 3 + 2));
+            Vector3 b = new Vector3(positions.get(v[2] * 3) - positions.get(v[0] * 3),
+                    positions.get(v[2] * 3 + 1) - positions.get(v[0] * 3 + 1),
+                    positions.get(v[2] * 3 + 2) - positions.get(v[0] * 3 + 2));
+            Vector3 n = a.cross(b).normalize();
+            for (int i : v) {
+                normals[i * 3] += n.getX();
+                normals[i * 3 + 1] += n.getY();
+                normals[i * 3 + 2] += n.getZ();
+            }
+        }
+        return normals;
+    }
+
+    @Test
+    public void testSameAsVectors() throws IOException {
+        PlyParser ply = new PlyParser("res/models/bunny_res2.ply");
+        FloatBuffer positions = (FloatBuffer) ply.getVertices().getBuffer();
+        FloatBuffer normals = GLBuffers.newDirectFloatBuffer(positions.capacity());
+        VertexNormals.compute(positions, ply.getIndices(), normals);
+
+        float[] expected = withVectors(positions, ply.getIndices());
+        for (int i = 0; i < expected.length; i++)
+            assertEquals("normal " + i, expected[i], normals.get(i), 1e-5f);
+    }
+
+    @Test
+    public void testThreads() throws IOException {
+        PlyParser ply = new PlyParser("res/models/bunny.ply");
+        FloatBuffer positions = (FloatBuffer) ply.getVertices().getBuffer();
+        FloatBuffer expected = GLBuffers.newDirectFloatBuffer(positions.capacity());
+        VertexNormals.compute(positions, ply.getIndices(), expected);
+
+        // The bunny is split into at most 4 chunks, and the sums are only
+        // added in a different order
+        for (int threads = 2; threads <= 5; threads++) {
+            FloatBuffer normals = GLBuffers.newDirectFloatBuffer(positions.capacity());
+            VertexNormals.compute(positions, ply.getIndices(), normals, threads);
+            for (int i = 0; i < expected.capacity(); i++)
+                assertEquals(threads + " threads, normal " + i, expected.get(i), normals.get(i),
+                        1e-5f);
+        }
+    }
+
+    @Test
+    public void testDegenerate() {
+        // The second triangle has no area, so adds nothing
+        FloatBuffer positions = GLBuffers.newDirectFloatBuffer(
+                new float[] { 0, 0, 0, 1, 0, 0, 0, 1, 0, 2, 0, 0 });
+        IntBuffer indices = GLBuffers.newDirectIntBuffer(new int[] { 0, 1, 2, 0, 1, 3 });
+        FloatBuffer normals = GLBuffers.newDirectFloatBuffer(12);
+        VertexNormals.compute(positions, indices, normals);
+        for (int v = 0; v < 3; v++)
+            assertEquals(1f, normals.get(v * 3 + 2));
+        assertEquals(0f, normals.get(11));
+    }
+}
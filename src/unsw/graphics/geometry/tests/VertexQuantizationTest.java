@@ -0,0 +1,72 @@
+package unsw.graphics.geometry.tests;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.Vector3;
+import unsw.graphics.geometry.VertexQuantization;
+
+/**
+ * Tests that quantized vertex data decodes to close to what was encoded.
+ */
+public class VertexQuantizationTest extends TestCase {
+
+    @Test
+    public void testUnorm16() {
+        assertEquals(0f, VertexQuantization.fromUnorm16(VertexQuantization.toUnorm16(0)));
+        assertEquals(1f, VertexQuantization.fromUnorm16(VertexQuantization.toUnorm16(1)));
+        assertEquals(0.3f, VertexQuantization.fromUnorm16(VertexQuantization.toUnorm16(0.3f)),
+                0.5f / 65535);
+    }
+
+    @Test
+    public void testHalf() {
+        // Values a half float holds exactly
+        for (float value : new float[] { 0, 1, -2, 0.5f, 0.25f, 1024, 65504, 1 / 16384f,
+                1 / 16777216f })
+            assertEquals(value, VertexQuantization.fromHalf(VertexQuantization.toHalf(value)));
+        // Halfway between 1 and the next half float rounds to even
+        assertEquals(1f, VertexQuantization.fromHalf(VertexQuantization.toHalf(1 + 1 / 2048f)));
+        assertEquals(Float.POSITIVE_INFINITY,
+                VertexQuantization.fromHalf(VertexQuantization.toHalf(1e6f)));
+        assertTrue(Float.isNaN(VertexQuantization.fromHalf(VertexQuantization.toHalf(Float.NaN))));
+
+        // Elsewhere the error is at most half a step, 1/2048 of the value
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            float value = random.nextFloat() * 4 - 2;
+            float decoded = VertexQuantization.fromHalf(VertexQuantization.toHalf(value));
+            assertEquals(value, decoded, Math.max(Math.abs(value) / 2048, 1 / 33554432f));
+        }
+    }
+
+    @Test
+    public void testOctahedral() {
+        Random random = new Random(1);
+        short[] encoded = new short[2];
+        for (int i = 0; i < 10000; i++) {
+            Vector3 normal = new Vector3((float) random.nextGaussian(),
+                    (float) random.nextGaussian(), (float) random.nextGaussian()).normalize();
+            // Scaling does not matter
+            VertexQuantization.toOctahedral(normal.getX() * 3, normal.getY() * 3,
+                    normal.getZ() * 3, encoded);
+            Vector3 decoded = VertexQuantization.fromOctahedral(encoded[0], encoded[1]);
+            // Within 0.01 degrees, measured by the cross product, as the dot
+            // product of floats this close together is just 1
+            Vector3 cross = normal.cross(decoded);
+            assertTrue(Math.sqrt(cross.dotp(cross)) < Math.sin(Math.toRadians(0.01)));
+            assertTrue(normal.dotp(decoded) > 0);
+        }
+        // Along the axes, including the corners of the unfolded square
+        for (float[] axis : new float[][] { { 0, 0, 1 }, { 0, 0, -1 }, { 1, 0, 0 },
+                { 0, -1, 0 } }) {
+            VertexQuantization.toOctahedral(axis[0], axis[1], axis[2], encoded);
+            Vector3 decoded = VertexQuantization.fromOctahedral(encoded[0], encoded[1]);
+            assertEquals(axis[0], decoded.getX(), 1e-6f);
+            assertEquals(axis[1], decoded.getY(), 1e-6f);
+            assertEquals(axis[2], decoded.getZ(), 1e-6f);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package unsw.graphics.geometry.tests;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.util.GLBuffers;
+
+import junit.framework.TestCase;
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.Matrix4;
+import unsw.graphics.geometry.Bounds;
+import unsw.graphics.geometry.ViewFrustum;
+
+/**
+ * Tests that bounds are culled exactly when they are outside the view.
+ */
+public class ViewFrustumTest extends TestCase {
+
+    // A cube from -1 to 1
+    private static final Bounds CUBE = new Bounds(GLBuffers.newDirectFloatBuffer(
+            new float[] { -1, -1, -1, 1, 1, 1, 0, 0, 0 }));
+
+    private static boolean visible(float x, float y, float z) {
+        return ViewFrustum.isVisible(CoordFrame3D.identity().translate(x, y, z), CUBE);
+    }
+
+    @Test
+    public void testBounds() {
+        Bounds bounds = new Bounds(GLBuffers.newDirectFloatBuffer(
+                new float[] { 0, 0, 0, 2, 1, 0, 1, 4, -2 }));
+        assertEquals(0f, bounds.getMin().getX());
+        assertEquals(0f, bounds.getMin().getY());
+        assertEquals(-2f, bounds.getMin().getZ());
+        assertEquals(2f, bounds.getMax().getX());
+        assertEquals(4f, bounds.getMax().getY());
+        assertEquals(0f, bounds.getMax().getZ());
+        assertEquals(1f, bounds.getCentre().getX());
+        assertEquals(2f, bounds.getCentre().getY());
+        assertEquals(-1f, bounds.getCentre().getZ());
+        // The furthest point from the centre is the origin
+        assertEquals((float) Math.sqrt(6), bounds.getRadius(), 1e-6f);
+    }
+
+    @Test
+    public void testCulling() {
+        // Looking down -z from the origin, 90 degrees each way, out to 100
+        ViewFrustum.setCamera(Matrix4.identity(), Matrix4.perspective(90, 1, 1, 100));
+        ViewFrustum.resetCounts();
+        assertTrue(visible(0, 0, -10));
+        // Behind the camera and past the far plane
+        assertFalse(visible(0, 0, 10));
+        assertFalse(visible(0, 0, -102));
+        // Off to each side, and just touching the edge of the view
+        assertFalse(visible(-20, 0, -10));
+        assertFalse(visible(0, 20, -10));
+        assertTrue(visible(10.9f, 0, -10));
+        // Scaled up so it reaches into the view
+        assertTrue(ViewFrustum.isVisible(
+                CoordFrame3D.identity().translate(-20, 0, -10).scale(15, 1, 1), CUBE));
+        assertEquals(3, ViewFrustum.getDrawnMeshes());
+        assertEquals(4, ViewFrustum.getCulledMeshes());
+
+        // The view matrix moves the camera
+        ViewFrustum.setCamera(Matrix4.translation(0, 0, -20),
+                Matrix4.perspective(90, 1, 1, 100));
+        assertTrue(visible(0, 0, 10));
+        ViewFrustum.clearCamera();
+    }
+
+    @Test
+    public void testNoCamera() {
+        ViewFrustum.clearCamera();
+        assertTrue(visible(0, 0, 1000));
+    }
+}
@@ -0,0 +1,90 @@
+package unsw.graphics.world;
+
+/**
+ * A lookup table mapping distance travelled along a curve to the curve's
+ * parameter.
+ *
+ * The curve is sampled at increasing parameter values and the cumulative chord
+ * length is stored alongside each parameter. A distance is converted back into
+ * a parameter with a binary search followed by a linear interpolation between
+ * the two neighbouring samples, so each lookup is O(log n).
+ *
+ * This class is immutable.
+ */
+class ArcLengthTable {
+
+    /**
+     * The curve parameter of each sample, in increasing order.
+     */
+    private final float[] params;
+
+    /**
+     * The distance along the curve of each sample, in increasing order. The
+     * first entry is always 0 and the last entry is the length of the curve.
+     */
+    private final float[] distances;
+
+    /**
+     * Create a table from matching arrays of parameters and cumulative
+     * distances.
+     *
+     * @param params
+     * @param distances
+     */
+    ArcLengthTable(float[] params, float[] distances) {
+        if (params.length != distances.length || params.length < 2)
+            throw new IllegalArgumentException("Arc length table needs at least 2 matching samples");
+        this.params = params;
+        this.distances = distances;
+    }
+
+    /**
+     * The total length of the curve.
+     *
+     * @return
+     */
+    public float length() {
+        return distances[distances.length - 1];
+    }
+
+    /**
+     * The number of samples in the table.
+     *
+     * @return
+     */
+    public int size() {
+        return params.length;
+    }
+
+    /**
+     * Get the curve parameter at the given distance along the curve. Distances
+     * outside of [0, length()] are clamped to the ends of the curve.
+     *
+     * @param distance
+     * @return
+     */
+    public float parameter(float distance) {
+        if (distance <= 0)
+            return params[0];
+        if (distance >= length())
+            return params[params.length - 1];
+
+        // Find the last sample whose distance is <= the given distance
+        int lo = 0;
+        int hi = distances.length - 1;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (distances[mid] <= distance)
+                lo = mid;
+            else
+                hi = mid;
+        }
+
+        float span = distances[hi] - distances[lo];
+        if (span == 0)
+            return params[lo];
+
+        float alpha = (distance - distances[lo]) / span;
+        return params[lo] + alpha * (params[hi] - params[lo]);
+    }
+}
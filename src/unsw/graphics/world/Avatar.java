@@ -1,7 +1,10 @@
 package unsw.graphics.world;
 
 import com.jogamp.opengl.GL3;
+import unsw.graphics.AssetLoader;
 import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GLState;
+import unsw.graphics.geometry.LODGroup;
 import unsw.graphics.geometry.Point3D;
 import unsw.graphics.geometry.TriangleMesh;
 
@@ -11,8 +14,17 @@ public class Avatar {
 
     private static final float MODEL_SCALE_FACTOR = 4.5f;
     private static final float MODEL_ROTATION = 180f;
-
-    private TriangleMesh avatar;
+    // The bunny at each level of detail, and the screen sizes it switches
+    // between them at
+    private static final String[] LOD_MODELS = { "res/models/bunny.ply",
+            "res/models/bunny_res2.ply", "res/models/bunny_res3.ply",
+            "res/models/bunny_res4.ply" };
+    private static final float[] LOD_SCREEN_SIZES = { 0.5f, 0.25f, 0.125f };
+    // The placeholder is a box about the size of the avatar
+    private static final float PLACEHOLDER_SIZE = 0.35f;
+
+    private LODGroup.Instance avatar;
+    private TriangleMesh placeholder;
     private Point3D position;
     private float rotateY = 0;
 
@@ -26,15 +38,34 @@ public class Avatar {
      */
     public void init(GL3 gl) {
         try {
-            // Initialise tree model
-            avatar = new TriangleMesh("res/models/bunny.ply", true, true);
-            avatar.init(gl);
+            LODGroup model = loadModel();
+            model.init(gl);
+            avatar = new LODGroup.Instance(model);
 
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Start generating the avatar in the background, drawing the placeholder
+     * until it is ready
+     * @param loader
+     * @param placeholder - A cube from -1 to 1
+     */
+    public void init(AssetLoader loader, TriangleMesh placeholder) {
+        this.placeholder = placeholder;
+        loader.load(Avatar::loadModel, (gl, model) -> {
+            model.init(gl);
+            avatar = new LODGroup.Instance(model);
+            return model;
+        });
+    }
+
+    private static LODGroup loadModel() throws IOException {
+        return new LODGroup(LOD_MODELS, LOD_SCREEN_SIZES, true, true, true);
+    }
+
     /**
      *
      * @param gl
@@ -49,14 +80,19 @@ public class Avatar {
 
 
         // Enable polygon offset to avoid Z-Fighting of Avatar and Terrain
-        gl.glEnable(GL3.GL_POLYGON_OFFSET_FILL);
-        gl.glPolygonOffset(-1,-1);
+        GLState.enable(gl, GL3.GL_POLYGON_OFFSET_FILL);
+        GLState.polygonOffset(gl, -1,-1);
 
         // Draw the avatar's meshes
-        avatar.draw(gl, avatarFrame);
+        if (avatar != null)
+            avatar.drawIfVisible(gl, avatarFrame);
+        else if (placeholder != null)
+            placeholder.drawIfVisible(gl, frame.translate(position)
+                    .translate(0, PLACEHOLDER_SIZE, 0)
+                    .scale(PLACEHOLDER_SIZE, PLACEHOLDER_SIZE, PLACEHOLDER_SIZE));
 
         // Disable polygon offset
-        gl.glDisable(GL3.GL_POLYGON_OFFSET_FILL);
+        GLState.disable(gl, GL3.GL_POLYGON_OFFSET_FILL);
 
     }
 
@@ -73,7 +109,8 @@ public class Avatar {
      * @param gl
      */
     public void destroy(GL3 gl) {
-        avatar.destroy(gl);
+        if (avatar != null)
+            avatar.getGroup().destroy(gl);
     }
 
     /**
@@ -0,0 +1,432 @@
+package unsw.graphics.world;
+
+import java.awt.Color;
+
+/**
+ * Describes where, how often and how particles are created for one effect in
+ * a ParticleSystem.
+ *
+ * Particles are spawned inside a shape (a box or a sphere around the
+ * emitter's position) at a steady rate, in bursts, or when a particle of
+ * another emitter hits the ground. Each particle starts with the emitter's
+ * velocity plus a random spread, is pulled by the emitter's gravity, slowed
+ * by its drag and dies after its lifetime.
+ *
+ * An emitter can follow the viewer, so that its position is relative to the
+ * camera, and can wrap its particles around inside its box. Together these
+ * make a volume of weather around the camera with the same density wherever
+ * the camera is, however big the terrain.
+ *
+ * Settings can be changed from any thread and take effect from the next
+ * simulation step. When the particle budget is exhausted, emitters with a
+ * higher priority spawn first, and of those with the same priority the ones
+ * closer to the camera do.
+ */
+public class Emitter {
+
+    /**
+     * The shape particles are spawned in.
+     */
+    public enum Shape {
+        /**
+         * A box with the given half extents.
+         */
+        BOX,
+
+        /**
+         * A sphere, with the x extent as its radius.
+         */
+        SPHERE
+    }
+
+    private volatile Shape shape = Shape.BOX;
+    private volatile float x, y, z;
+    private volatile float extentX, extentY, extentZ;
+    private volatile boolean followViewer;
+    private volatile boolean wrap;
+    private volatile int maxParticles = Integer.MAX_VALUE;
+
+    private volatile float rate;
+    private volatile float lifetime = 1;
+    private volatile float velocityX, velocityY, velocityZ;
+    private volatile float spread;
+    private volatile float gravityX, gravityY, gravityZ;
+    private volatile float drag;
+
+    private volatile boolean collides;
+    private volatile Emitter impact;
+    private volatile int impactCount;
+
+    private volatile int priority;
+    private volatile boolean enabled = true;
+
+    private volatile String texture = "res/textures/rain.jpg";
+    private volatile String textureExtension = "jpg";
+    private volatile Color color = Color.WHITE;
+    private volatile float width = 0.05f;
+    private volatile float height = 0.05f;
+
+    // Particles asked for by burst() and not yet spawned
+    private int pendingBurst;
+
+    // Metrics, written by the simulation
+    private volatile int liveCount;
+    private volatile long droppedSpawns;
+
+    // Simulation state, only touched by the thread running the simulation
+    int id = -1;
+    float centreX, centreY, centreZ;
+    float accumulator;
+    int live;
+    long dropped;
+    int want;
+    int impactRequests;
+    int quota;
+    float distance;
+
+    /**
+     * Spawn particles inside the given shape centred on the emitter's
+     * position.
+     *
+     * @param shape
+     * @param extentX Half the width of a box, or the radius of a sphere
+     * @param extentY
+     * @param extentZ
+     */
+    public void setShape(Shape shape, float extentX, float extentY, float extentZ) {
+        this.shape = shape;
+        this.extentX = extentX;
+        this.extentY = extentY;
+        this.extentZ = extentZ;
+    }
+
+    public void setPosition(float x, float y, float z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    /**
+     * Make the position relative to the viewer, so the emitter moves with the
+     * camera.
+     *
+     * @param followViewer
+     */
+    public void setFollowViewer(boolean followViewer) {
+        this.followViewer = followViewer;
+    }
+
+    /**
+     * Keep particles inside the emitter's box. Particles leaving through a
+     * side come back in through the opposite side. While the emitter is
+     * enabled, particles that fall out of the bottom, hit the ground or run
+     * out of life start again at the top instead of dying. Only boxes wrap.
+     *
+     * @param wrap
+     */
+    public void setWrap(boolean wrap) {
+        this.wrap = wrap;
+    }
+
+    /**
+     * Set the most particles this emitter has alive at once. The steady rate
+     * stops spawning once it is reached.
+     *
+     * @param maxParticles
+     */
+    public void setMaxParticles(int maxParticles) {
+        this.maxParticles = maxParticles;
+    }
+
+    /**
+     * Set the number of particles spawned per second.
+     *
+     * @param rate
+     */
+    public void setRate(float rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * Set how many seconds each particle lives for, unless it hits the
+     * ground first.
+     *
+     * @param lifetime
+     */
+    public void setLifetime(float lifetime) {
+        if (lifetime <= 0)
+            throw new IllegalArgumentException("Lifetime must be positive");
+        this.lifetime = lifetime;
+    }
+
+    /**
+     * Set the initial velocity of each particle, in units per second. A random
+     * velocity of up to spread in each direction is added to it.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param spread
+     */
+    public void setVelocity(float x, float y, float z, float spread) {
+        this.velocityX = x;
+        this.velocityY = y;
+        this.velocityZ = z;
+        this.spread = spread;
+    }
+
+    /**
+     * Set the constant acceleration on each particle, in units per second
+     * squared.
+     *
+     * @param x
+     * @param y
+     * @param z
+     */
+    public void setGravity(float x, float y, float z) {
+        this.gravityX = x;
+        this.gravityY = y;
+        this.gravityZ = z;
+    }
+
+    /**
+     * Set the fraction of its velocity a particle loses each second.
+     *
+     * @param drag
+     */
+    public void setDrag(float drag) {
+        this.drag = drag;
+    }
+
+    /**
+     * Kill particles when they reach the terrain.
+     *
+     * @param collides
+     */
+    public void setCollides(boolean collides) {
+        this.collides = collides;
+    }
+
+    /**
+     * Spawn particles from another emitter where each of this emitter's
+     * particles hits the ground. The other emitter must be added to the same
+     * particle system.
+     *
+     * @param impact The emitter to spawn from, or null for none
+     * @param count The number of particles per impact
+     */
+    public void setImpact(Emitter impact, int count) {
+        this.impact = impact;
+        this.impactCount = count;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Turn steady emission on or off. Particles already alive are not
+     * affected.
+     *
+     * @param enabled
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Set the texture each particle is drawn with.
+     *
+     * @param texture The texture file
+     * @param extension The image format of the file
+     */
+    public void setTexture(String texture, String extension) {
+        this.texture = texture;
+        this.textureExtension = extension;
+    }
+
+    public void setColor(Color color) {
+        this.color = color;
+    }
+
+    /**
+     * Set the size of the quad each particle is drawn as.
+     *
+     * @param width
+     * @param height
+     */
+    public void setSize(float width, float height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Spawn the given number of particles at the next simulation step, in
+     * addition to the steady rate. Particles that do not fit in the budget are
+     * dropped rather than delayed.
+     *
+     * @param count
+     */
+    public synchronized void burst(int count) {
+        pendingBurst += count;
+    }
+
+    /**
+     * Take the particles asked for by burst() since the last call.
+     *
+     * @return
+     */
+    synchronized int takeBurst() {
+        int count = pendingBurst;
+        pendingBurst = 0;
+        return count;
+    }
+
+    /**
+     * The number of this emitter's particles alive after the last simulation
+     * step.
+     *
+     * @return
+     */
+    public int getLiveCount() {
+        return liveCount;
+    }
+
+    /**
+     * The number of particles this emitter could not spawn, since it was
+     * created, because of the particle budget.
+     *
+     * @return
+     */
+    public long getDroppedSpawns() {
+        return droppedSpawns;
+    }
+
+    /**
+     * Publish this emitter's metrics at the end of a simulation step.
+     */
+    void publish() {
+        liveCount = live;
+        droppedSpawns = dropped;
+    }
+
+    public Shape getShape() {
+        return shape;
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public float getZ() {
+        return z;
+    }
+
+    public float getExtentX() {
+        return extentX;
+    }
+
+    public float getExtentY() {
+        return extentY;
+    }
+
+    public float getExtentZ() {
+        return extentZ;
+    }
+
+    public boolean followsViewer() {
+        return followViewer;
+    }
+
+    public boolean wraps() {
+        return wrap;
+    }
+
+    public int getMaxParticles() {
+        return maxParticles;
+    }
+
+    public float getRate() {
+        return rate;
+    }
+
+    public float getLifetime() {
+        return lifetime;
+    }
+
+    public float getVelocityX() {
+        return velocityX;
+    }
+
+    public float getVelocityY() {
+        return velocityY;
+    }
+
+    public float getVelocityZ() {
+        return velocityZ;
+    }
+
+    public float getSpread() {
+        return spread;
+    }
+
+    public float getGravityX() {
+        return gravityX;
+    }
+
+    public float getGravityY() {
+        return gravityY;
+    }
+
+    public float getGravityZ() {
+        return gravityZ;
+    }
+
+    public float getDrag() {
+        return drag;
+    }
+
+    public boolean collides() {
+        return collides;
+    }
+
+    public Emitter getImpact() {
+        return impact;
+    }
+
+    public int getImpactCount() {
+        return impactCount;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getTexture() {
+        return texture;
+    }
+
+    public String getTextureExtension() {
+        return textureExtension;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+}
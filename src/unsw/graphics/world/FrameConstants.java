@@ -0,0 +1,207 @@
+package unsw.graphics.world;
+
+import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.jogamp.opengl.GL2ES3;
+import com.jogamp.opengl.GL3;
+
+import unsw.graphics.GLState;
+import unsw.graphics.Matrix4;
+import unsw.graphics.Shader;
+import unsw.graphics.geometry.Point3D;
+
+/**
+ * The camera, sun, ambient light and torch for a frame, shared by every
+ * shader in the world through a uniform buffer.
+ *
+ * Shaders declare the "FrameConstants" uniform block below, which Shader
+ * binds to the Shader.FRAME_CONSTANTS binding point when it is linked. The
+ * values are set on this object as they change and written to the buffer
+ * once per frame with upload(), so switching programs does not mean setting
+ * them again.
+ *
+ * <pre>
+ * layout (std140) uniform FrameConstants {
+ *     mat4 view_matrix;
+ *     mat4 proj_matrix;
+ *     vec3 lightPos;
+ *     float cutoff;
+ *     vec3 lightIntensity;
+ *     float attenuationExp;
+ *     vec3 ambientIntensity;
+ *     int torchEnabled;
+ *     vec3 cameraPos;
+ *     float constant;
+ *     vec3 torchLightDirection;
+ *     float linear;
+ *     vec3 torchDiffuseCoeff;
+ *     float quadratic;
+ *     vec3 torchSpecularCoeff;
+ * };
+ * </pre>
+ *
+ * The constants must be initialised before use.
+ */
+public class FrameConstants {
+
+    // Byte offsets of each member under the std140 layout rules. Each vec3
+    // starts a new 16 byte slot and a scalar fills the rest of it.
+    private static final int VIEW_MATRIX = 0;
+    private static final int PROJ_MATRIX = 64;
+    private static final int LIGHT_POS = 128;
+    private static final int CUTOFF = 140;
+    private static final int LIGHT_INTENSITY = 144;
+    private static final int ATTENUATION_EXP = 156;
+    private static final int AMBIENT_INTENSITY = 160;
+    private static final int TORCH_ENABLED = 172;
+    private static final int CAMERA_POS = 176;
+    private static final int CONSTANT = 188;
+    private static final int TORCH_LIGHT_DIRECTION = 192;
+    private static final int LINEAR = 204;
+    private static final int TORCH_DIFFUSE_COEFF = 208;
+    private static final int QUADRATIC = 220;
+    private static final int TORCH_SPECULAR_COEFF = 224;
+
+    /**
+     * The size of the block in bytes.
+     */
+    public static final int SIZE = 240;
+
+    private final ByteBuffer data = ByteBuffer.allocateDirect(SIZE)
+            .order(ByteOrder.nativeOrder());
+
+    private int name;
+
+    public FrameConstants() {
+        setViewMatrix(Matrix4.identity());
+        setProjMatrix(Matrix4.identity());
+    }
+
+    /**
+     * Create the uniform buffer and bind it to the Shader.FRAME_CONSTANTS
+     * binding point.
+     *
+     * @param gl
+     */
+    public void init(GL3 gl) {
+        int[] names = new int[1];
+        gl.glGenBuffers(1, names, 0);
+        name = names[0];
+        GLState.bindBuffer(gl, GL2ES3.GL_UNIFORM_BUFFER, name);
+        gl.glBufferData(GL2ES3.GL_UNIFORM_BUFFER, SIZE, data, GL3.GL_STREAM_DRAW);
+        gl.glBindBufferBase(GL2ES3.GL_UNIFORM_BUFFER, Shader.FRAME_CONSTANTS, name);
+    }
+
+    /**
+     * Write the constants to the uniform buffer. Call this once per frame,
+     * after setting the constants and before drawing.
+     *
+     * @param gl
+     */
+    public void upload(GL3 gl) {
+        // Give the buffer new storage so a frame still being drawn from the
+        // old contents does not stall the write
+        GLState.bindBuffer(gl, GL2ES3.GL_UNIFORM_BUFFER, name);
+        gl.glBufferData(GL2ES3.GL_UNIFORM_BUFFER, SIZE, data, GL3.GL_STREAM_DRAW);
+    }
+
+    public void destroy(GL3 gl) {
+        GLState.deleteBuffers(gl, 1, new int[] { name }, 0);
+    }
+
+    public void setViewMatrix(Matrix4 mat) {
+        putMatrix(VIEW_MATRIX, mat);
+    }
+
+    public void setProjMatrix(Matrix4 mat) {
+        putMatrix(PROJ_MATRIX, mat);
+    }
+
+    /**
+     * Set the sun.
+     *
+     * @param position The direction to the sun, in world coordinates
+     * @param intensity
+     */
+    public void setLight(Point3D position, Color intensity) {
+        putPoint(LIGHT_POS, position);
+        putColor(LIGHT_INTENSITY, intensity);
+    }
+
+    public void setAmbientIntensity(Color intensity) {
+        putColor(AMBIENT_INTENSITY, intensity);
+    }
+
+    public void setTorchEnabled(boolean enabled) {
+        data.putInt(TORCH_ENABLED, enabled ? 1 : 0);
+    }
+
+    /**
+     * Set where the torch is and where it points.
+     *
+     * @param position The camera position
+     * @param direction The direction of the torch, in camera coordinates
+     */
+    public void setTorch(Point3D position, Point3D direction) {
+        putPoint(CAMERA_POS, position);
+        putPoint(TORCH_LIGHT_DIRECTION, direction);
+    }
+
+    /**
+     * Set the torch's beam.
+     *
+     * @param cutoff The angle between the torch direction and the edge of the
+     * beam, in degrees
+     * @param attenuationExp How quickly the specular highlight falls off away
+     * from the centre of the beam
+     */
+    public void setTorchBeam(float cutoff, float attenuationExp) {
+        data.putFloat(CUTOFF, cutoff);
+        data.putFloat(ATTENUATION_EXP, attenuationExp);
+    }
+
+    /**
+     * Set how the torch's light falls off with distance, as 1 / (constant +
+     * linear * d + quadratic * d^2).
+     *
+     * @param constant
+     * @param linear
+     * @param quadratic
+     */
+    public void setTorchAttenuation(float constant, float linear, float quadratic) {
+        data.putFloat(CONSTANT, constant);
+        data.putFloat(LINEAR, linear);
+        data.putFloat(QUADRATIC, quadratic);
+    }
+
+    /**
+     * Set the material coefficients used for torch light.
+     *
+     * @param diffuse
+     * @param specular
+     */
+    public void setTorchCoeffs(Color diffuse, Color specular) {
+        putColor(TORCH_DIFFUSE_COEFF, diffuse);
+        putColor(TORCH_SPECULAR_COEFF, specular);
+    }
+
+    private void putMatrix(int offset, Matrix4 mat) {
+        float[] values = mat.getValues();
+        for (int i = 0; i < 16; i++)
+            data.putFloat(offset + i * Float.BYTES, values[i]);
+    }
+
+    private void putPoint(int offset, Point3D point) {
+        data.putFloat(offset, point.getX());
+        data.putFloat(offset + 4, point.getY());
+        data.putFloat(offset + 8, point.getZ());
+    }
+
+    private void putColor(int offset, Color color) {
+        data.putFloat(offset, color.getRed() / 255f);
+        data.putFloat(offset + 4, color.getGreen() / 255f);
+        data.putFloat(offset + 8, color.getBlue() / 255f);
+    }
+}
@@ -0,0 +1,250 @@
+package unsw.graphics.world;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.util.GLBuffers;
+
+import unsw.graphics.*;
+import unsw.graphics.geometry.Point2D;
+import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.TriangleMesh;
+
+import java.awt.*;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A rain particle system simulated entirely on the GPU, falling in a box
+ * around the viewer like the CPU rain from ParticleEffects.rain().
+ *
+ * The particles live in two buffers of interleaved position, velocity and
+ * life. Each frame a vertex shader reads every particle from one buffer and
+ * writes its next state into the other with transform feedback, then the
+ * buffers swap roles. The new buffer is drawn directly as the instance data
+ * of the rain quads, so the CPU only issues the update and draw calls and
+ * never touches the particles after they are first uploaded.
+ *
+ * Each update advances the particles by the time since the last one, so the
+ * rain falls at the same speed whatever the frame rate. Particles that leave
+ * the sides of the box as it follows the viewer come back in the opposite
+ * side.
+ *
+ * Only OpenGL 3 features are used.
+ */
+public class GPUParticleSystem {
+
+    // Life lost per second, from 1 at spawn
+    private static final float LIFE_DECAY = 1 / 8f;
+
+    // The longest time a single update advances, so a long pause does not
+    // throw every particle out of the box
+    private static final float MAX_ELAPSED = 5 * ParticleSystem.STEP;
+
+    // Size of each rain streak
+    private static final float PARTICLE_WIDTH = 0.01f;
+    private static final float PARTICLE_HEIGHT = 0.15f;
+
+    // Floats per particle: position (3), velocity (3), life (1)
+    private static final int STRIDE = 7;
+
+    private final int count;
+
+    private final float radius;
+    private final float height;
+    private float viewerX, viewerY, viewerZ;
+
+    // When the particles were last updated, in System.nanoTime()
+    private long lastUpdate;
+
+    // The two particle buffers. source holds the current state.
+    private int source;
+    private int destination;
+
+    private int step;
+
+    private TriangleMesh model;
+    private Texture texture;
+    private Shader updateShader;
+    private Shader renderShader;
+
+    /**
+     * Create a particle system with the given number of particles, falling in
+     * a box around the viewer.
+     *
+     * @param radius Half the width and depth of the box
+     * @param height
+     * @param count
+     */
+    public GPUParticleSystem(float radius, float height, int count) {
+        this.radius = radius;
+        this.height = height;
+        this.count = count;
+    }
+
+    /**
+     * Set where the viewer is, in the frame the particles are drawn in. Set
+     * it before init() so the particles start around the viewer.
+     *
+     * @param x
+     * @param y
+     * @param z
+     */
+    public void setViewer(float x, float y, float z) {
+        viewerX = x;
+        viewerY = y;
+        viewerZ = z;
+    }
+
+    private Point3D boxMin() {
+        return new Point3D(viewerX - radius, viewerY - ParticleEffects.BELOW_VIEWER,
+                viewerZ - radius);
+    }
+
+    public void init(GL3 gl) {
+        // A unit quad, stretched and turned to face the camera by the shader
+        model = new TriangleMesh(
+                Arrays.asList(new Point3D(-0.5f, 0, 0), new Point3D(0.5f, 0, 0),
+                        new Point3D(0.5f, 1, 0), new Point3D(-0.5f, 1, 0)),
+                Arrays.asList(0, 1, 2, 0, 2, 3), false,
+                Arrays.asList(new Point2D(0, 0), new Point2D(1, 0),
+                        new Point2D(1, 1), new Point2D(0, 1)));
+        model.init(gl);
+
+        texture = new Texture(gl, "res/textures/rain.jpg", "jpg", false);
+
+        updateShader = new Shader(gl, "shaders/vertex_particle_update.glsl", null,
+                new String[] { "outPosition", "outVelocity", "outLife" });
+        renderShader = new Shader(gl, "shaders/vertex_particle.glsl",
+                "shaders/fragment_tex_3d.glsl");
+
+        // Spread the particles through the box to begin with
+        FloatBuffer particles = GLBuffers.newDirectFloatBuffer(count * STRIDE);
+        Random rand = new Random();
+        Point3D min = boxMin();
+        for (int i = 0; i < count; i++) {
+            particles.put(min.getX() + rand.nextFloat() * 2 * radius);
+            particles.put(min.getY() + rand.nextFloat() * height);
+            particles.put(min.getZ() + rand.nextFloat() * 2 * radius);
+            particles.put(0).put(-ParticleEffects.RAIN_SPEED).put(0);
+            particles.put(rand.nextFloat());
+        }
+        particles.rewind();
+
+        int[] names = new int[2];
+        gl.glGenBuffers(2, names, 0);
+        source = names[0];
+        destination = names[1];
+        for (int name : names) {
+            GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, name);
+            gl.glBufferData(GL.GL_ARRAY_BUFFER, count * STRIDE * (long) Float.BYTES,
+                    particles, GL3.GL_DYNAMIC_COPY);
+        }
+        lastUpdate = System.nanoTime();
+    }
+
+    /**
+     * Advance the particles by the time since they were last advanced, on
+     * the GPU, then draw them with the view
+     * and projection from the frame constants. The caller's shader must be
+     * used again afterwards.
+     *
+     * @param gl
+     * @param frame
+     */
+    public void draw(GL3 gl, CoordFrame3D frame) {
+        update(gl);
+
+        renderShader.use(gl);
+        Shader.setPenColor(gl, Color.WHITE);
+        Shader.setFloat(gl, "particleWidth", PARTICLE_WIDTH);
+        Shader.setFloat(gl, "particleHeight", PARTICLE_HEIGHT);
+
+        Shader.setInt(gl, "tex", 0);
+        GLState.activeTexture(gl, GL.GL_TEXTURE0);
+        GLState.bindTexture(gl, GL.GL_TEXTURE_2D, texture.getId());
+
+        // Read the instance positions straight out of the particle buffer,
+        // through the model's vertex array
+        model.bindVertexArray(gl);
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, source);
+        gl.glEnableVertexAttribArray(Shader.INSTANCE_POSITION);
+        gl.glVertexAttribPointer(Shader.INSTANCE_POSITION, 3, GL.GL_FLOAT, false,
+                STRIDE * Float.BYTES, 0);
+        gl.glVertexAttribDivisor(Shader.INSTANCE_POSITION, 1);
+
+        GLState.enable(gl, GL.GL_BLEND);
+        GLState.blendFunc(gl, GL.GL_SRC_ALPHA, GL.GL_ONE);
+        GLState.disable(gl, GL.GL_DEPTH_TEST);
+
+        model.drawInstanced(gl, frame, count);
+
+        GLState.enable(gl, GL.GL_DEPTH_TEST);
+        GLState.disable(gl, GL.GL_BLEND);
+
+        gl.glVertexAttribDivisor(Shader.INSTANCE_POSITION, 0);
+        gl.glDisableVertexAttribArray(Shader.INSTANCE_POSITION);
+    }
+
+    /**
+     * Run the update shader over the source buffer, capturing the result in
+     * the destination buffer, then swap the two.
+     */
+    private void update(GL3 gl) {
+        long now = System.nanoTime();
+        float elapsed = Math.min(MAX_ELAPSED, (now - lastUpdate) / 1e9f);
+        lastUpdate = now;
+
+        updateShader.use(gl);
+        Shader.setFloat(gl, "elapsed", elapsed);
+        Shader.setFloat(gl, "gravity", ParticleEffects.RAIN_GRAVITY);
+        Shader.setFloat(gl, "lifeDecay", LIFE_DECAY);
+        Shader.setFloat(gl, "initialSpeed", ParticleEffects.RAIN_SPEED);
+        Shader.setPoint3D(gl, "spawnMin", boxMin());
+        Shader.setPoint3D(gl, "spawnSize", new Point3D(2 * radius, height, 2 * radius));
+        Shader.setInt(gl, "seed", step++);
+
+        GLState.bindDefaultVertexArray(gl);
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, source);
+        gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false,
+                STRIDE * Float.BYTES, 0);
+        gl.glEnableVertexAttribArray(Shader.VELOCITY);
+        gl.glVertexAttribPointer(Shader.VELOCITY, 3, GL.GL_FLOAT, false,
+                STRIDE * Float.BYTES, 3 * Float.BYTES);
+        gl.glEnableVertexAttribArray(Shader.LIFE);
+        gl.glVertexAttribPointer(Shader.LIFE, 1, GL.GL_FLOAT, false,
+                STRIDE * Float.BYTES, 6 * Float.BYTES);
+
+        gl.glBindBufferBase(GL3.GL_TRANSFORM_FEEDBACK_BUFFER, 0, destination);
+        GLState.enable(gl, GL3.GL_RASTERIZER_DISCARD);
+        gl.glBeginTransformFeedback(GL.GL_POINTS);
+        gl.glDrawArrays(GL.GL_POINTS, 0, count);
+        gl.glEndTransformFeedback();
+        GLState.disable(gl, GL3.GL_RASTERIZER_DISCARD);
+        gl.glBindBufferBase(GL3.GL_TRANSFORM_FEEDBACK_BUFFER, 0, 0);
+
+        gl.glDisableVertexAttribArray(Shader.VELOCITY);
+        gl.glDisableVertexAttribArray(Shader.LIFE);
+
+        int swap = source;
+        source = destination;
+        destination = swap;
+    }
+
+    /**
+     * The number of particles.
+     *
+     * @return
+     */
+    public int size() {
+        return count;
+    }
+
+    public void destroy(GL3 gl) {
+        model.destroy(gl);
+        texture.destroy(gl);
+        updateShader.destroy(gl);
+        renderShader.destroy(gl);
+        GLState.deleteBuffers(gl, 2, new int[] { source, destination }, 0);
+    }
+}
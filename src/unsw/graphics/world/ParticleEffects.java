@@ -0,0 +1,137 @@
+package unsw.graphics.world;
+
+import java.awt.Color;
+
+/**
+ * Emitters for the particle effects used in the world.
+ *
+ * Each method returns a new emitter that still has to be added to a
+ * ParticleSystem. Emitters that spawn particles where others land, such as
+ * splashes, must be added to the same system.
+ */
+public class ParticleEffects {
+
+    // Shared with GPUParticleSystem, so rain falls the same either way
+    static final float RAIN_SPEED = 7.06f;
+    static final float RAIN_GRAVITY = -2.88f;
+
+    private static final float SNOW_SPEED = 0.6f;
+
+    // Weather volumes reach this far below the viewer, and fill up in about
+    // this many seconds
+    static final float BELOW_VIEWER = 3f;
+    private static final float FILL_TIME = 1f;
+
+    /**
+     * Rain falling in a box around the viewer, which keeps the same number of
+     * drops in the air wherever the viewer goes.
+     *
+     * @param drops The number of drops in the box
+     * @param radius Half the width and depth of the box
+     * @param height The height of the box
+     * @return
+     */
+    public static Emitter rain(int drops, float radius, float height) {
+        Emitter rain = new Emitter();
+        aroundViewer(rain, drops, radius, height);
+        rain.setVelocity(0, -RAIN_SPEED, 0, 0);
+        rain.setGravity(0, RAIN_GRAVITY, 0);
+        rain.setLifetime(8f);
+        rain.setCollides(true);
+        rain.setSize(0.01f, 0.15f);
+        rain.setPriority(1);
+        return rain;
+    }
+
+    /**
+     * Droplets thrown up where rain hits the ground. These only spawn as the
+     * impact of another emitter, and give way to everything else.
+     *
+     * @return
+     */
+    public static Emitter splash() {
+        Emitter splash = new Emitter();
+        splash.setVelocity(0, 0.4f, 0, 0.4f);
+        splash.setGravity(0, RAIN_GRAVITY, 0);
+        splash.setLifetime(0.5f);
+        splash.setCollides(true);
+        splash.setSize(0.01f, 0.03f);
+        splash.setPriority(0);
+        return splash;
+    }
+
+    /**
+     * Snow drifting down in a box around the viewer, which keeps the same
+     * number of flakes in the air wherever the viewer goes.
+     *
+     * @param flakes The number of flakes in the box
+     * @param radius Half the width and depth of the box
+     * @param height The height of the box
+     * @return
+     */
+    public static Emitter snow(int flakes, float radius, float height) {
+        Emitter snow = new Emitter();
+        aroundViewer(snow, flakes, radius, height);
+        snow.setVelocity(0, -SNOW_SPEED, 0, 0.3f);
+        snow.setGravity(0.05f, 0, 0.02f);
+        snow.setDrag(0.2f);
+        snow.setLifetime(30f);
+        snow.setCollides(true);
+        snow.setSize(0.04f, 0.04f);
+        snow.setPriority(1);
+        return snow;
+    }
+
+    /**
+     * A puff of smoke rising slowly from a point. Use burst() to make a puff,
+     * or set a rate for a steady plume.
+     *
+     * @return
+     */
+    public static Emitter smoke() {
+        Emitter smoke = new Emitter();
+        smoke.setShape(Emitter.Shape.SPHERE, 0.1f, 0.1f, 0.1f);
+        smoke.setVelocity(0, 0.3f, 0, 0.15f);
+        smoke.setGravity(0, 0.1f, 0);
+        smoke.setDrag(0.8f);
+        smoke.setLifetime(3f);
+        smoke.setTexture("res/textures/rock.bmp", "bmp");
+        smoke.setColor(new Color(0.5f, 0.5f, 0.5f, 0.3f));
+        smoke.setSize(0.3f, 0.3f);
+        smoke.setPriority(2);
+        return smoke;
+    }
+
+    /**
+     * Shot fired from a point. Aim it with setVelocity() and fire it with
+     * burst().
+     *
+     * @return
+     */
+    public static Emitter cannon() {
+        Emitter cannon = new Emitter();
+        cannon.setShape(Emitter.Shape.SPHERE, 0.05f, 0.05f, 0.05f);
+        cannon.setGravity(0, -9.8f, 0);
+        cannon.setLifetime(5f);
+        cannon.setCollides(true);
+        cannon.setTexture("res/textures/rock.bmp", "bmp");
+        cannon.setColor(Color.DARK_GRAY);
+        cannon.setSize(0.05f, 0.05f);
+        cannon.setPriority(3);
+        return cannon;
+    }
+
+    /**
+     * Spawn the given number of particles in a box that follows the viewer,
+     * reaching a little below the viewer and mostly above, and wrap them
+     * around inside it.
+     */
+    private static void aroundViewer(Emitter emitter, int count, float radius, float height) {
+        emitter.setShape(Emitter.Shape.BOX, radius, height / 2, radius);
+        emitter.setPosition(0, height / 2 - BELOW_VIEWER, 0);
+        emitter.setFollowViewer(true);
+        emitter.setWrap(true);
+        emitter.setMaxParticles(count);
+        emitter.setRate(count / FILL_TIME);
+    }
+}
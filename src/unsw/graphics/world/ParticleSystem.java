@@ -1,131 +1,855 @@
-package unsw.graphics.world;
-
-import com.jogamp.opengl.GL;
-import com.jogamp.opengl.GL2;
-import com.jogamp.opengl.GL3;
-import unsw.graphics.*;
-import unsw.graphics.geometry.TriangleMesh;
-
-import java.awt.*;
-import java.io.IOException;
-import java.util.Random;
-
-public class ParticleSystem {
-
-    private static final int MAX_PARTICLES = 200; // max number of particles
-    private Particle[] particles = new Particle[MAX_PARTICLES];
-
-    // Pull forces in each direction
-    private static float gravityY = -0.0008f; // gravity
-
-    // Initial speed for all the particles
-    private static float speedYGlobal = 0.1f;
-
-    private TriangleMesh model;
-    private Texture texture;
-
-    private int terrainWidth;
-    private int terrainDepth;
-
-    public ParticleSystem(int width, int depth) {
-        this.terrainWidth = width;
-        this.terrainDepth = depth;
-    }
-
-    public void init(GL3 gl) {
-        try {
-            // Initialise rain  model
-            model = new TriangleMesh("res/models/rain.ply");
-            model.init(gl);
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        // load texture once
-        texture = new Texture(gl, "res/textures/rain.jpg", "jpg", false);
-
-        // Initialize the particles
-        for (int i = 0; i < MAX_PARTICLES; i++) {
-            particles[i] = new Particle();
-        }
-    }
-
-    public void draw(GL3 gl, CoordFrame3D frame) {
-        gl.glEnable(GL.GL_BLEND);
-        gl.glBlendColor(1.0f,1.0f,1.0f,0.5f);
-        gl.glBlendFunc(GL.GL_SRC_ALPHA, GL.GL_ONE);
-        gl.glDisable(GL.GL_DEPTH_TEST);
-
-        // Update the particles
-        for (int i = 0; i < MAX_PARTICLES; i++) {
-            // Move the particle
-            particles[i].y -= Math.abs(particles[i].speedY);
-
-            // Apply the gravity force on y-axis
-            particles[i].speedY += gravityY;
-
-            // Slowly kill it
-            particles[i].life -= 0.002;
-
-            if (particles[i].y <= 0) {
-                particles[i].life = -1.0f;
-            }
-
-            particles[i].draw(gl, frame);
-
-            // Revive particle -- loop
-            if (particles[i].life < 0.0) {
-                particles[i] = new Particle();
-            }
-        }
-        gl.glEnable(GL.GL_DEPTH_TEST);
-        gl.glDisable(GL.GL_BLEND);
-    }
-
-    public void destroy(GL3 gl) {
-        model.destroy(gl);
-        texture.destroy(gl);
-    }
-
-    // Particle (inner class)
-    class Particle {
-        private static final float MODEL_SCALE = 0.0005f;
-        private static final float MODEL_ROTATION = -90f;
-        private static final float SPEED = 0.025f;
-
-        float life; // how alive it is
-        float x, y, z; // position
-        float speedY; // speed in the y direction
-
-        private Random rand = new Random();
-
-        // Constructor
-        public Particle() {
-            // position the rain
-            // -1 as it can produce values > 9 thus rain will fall outside terrain
-            x = (rand.nextFloat() * 10 % (terrainWidth - 1));
-            y = (rand.nextFloat() * 10 % 10);
-            z = (rand.nextFloat() * 10 % (terrainDepth - 1));
-            float angle = (float) Math.toRadians(45);
-
-            speedY = SPEED * (float) Math.sin(angle) + speedYGlobal;
-
-            // Initially it's fully alive
-            life = 1.0f;
-        }
-
-        public void draw(GL3 gl, CoordFrame3D frame) {
-            Shader.setPenColor(gl, Color.WHITE);
-
-            Shader.setInt(gl, "tex", 0);
-            gl.glActiveTexture(GL.GL_TEXTURE0);
-            gl.glBindTexture(GL.GL_TEXTURE_2D, texture.getId());
-
-            CoordFrame3D particleFrame = frame.translate(x, y, z).rotateX(MODEL_ROTATION)
-                    .scale(MODEL_SCALE, MODEL_SCALE, MODEL_SCALE);
-
-            model.draw(gl, particleFrame);
-        }
-    }
-}
+package unsw.graphics.world;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.util.GLBuffers;
+
+import unsw.graphics.*;
+import unsw.graphics.geometry.Point2D;
+import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.TriangleMesh;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A particle system shared by any number of emitters.
+ *
+ * Particles live in a fixed pool stored as one primitive array per attribute,
+ * so updating them allocates nothing. Every emitter spawns into the same pool,
+ * and each particle remembers which emitter it came from. The number of live
+ * particles is capped by a budget. When the emitters ask for more than the
+ * budget allows, it is shared out by emitter priority and then by distance to
+ * the viewer. Emitters over their share have particles culled and their new
+ * spawns dropped.
+ *
+ * The simulation advances in fixed steps of STEP seconds on its own thread,
+ * independent of the frame rate. After each step the particle positions are
+ * published as a snapshot. When drawing, the positions are interpolated
+ * between the last two snapshots and copied into an instance buffer grouped by
+ * emitter. Each emitter's particles are then drawn as camera facing quads with
+ * one instanced draw call.
+ */
+public class ParticleSystem {
+
+    public static final int MAX_PARTICLES = 1000000; // max number of particles
+
+    public static final int MAX_EMITTERS = 64;
+
+    /**
+     * The length of each simulation step in seconds.
+     */
+    public static final float STEP = 1 / 60f;
+
+    private static final long STEP_NANOS = (long) (STEP * 1e9);
+
+    // If the simulation falls this many steps behind it skips ahead instead
+    private static final int MAX_STEPS_BEHIND = 5;
+
+    private final int capacity;
+    private volatile int budget;
+
+    // Particle state, one entry per slot in the pool
+    private final float[] x, y, z;       // position
+    private final float[] vx, vy, vz;    // velocity
+    private final float[] ax, ay, az;    // acceleration
+    private final float[] drag;          // fraction of velocity lost per second
+    private final float[] life;          // how alive it is
+    private final float[] decay;         // life lost per second
+    private final short[] owner;         // the emitter's id, or -1 if the slot is free
+
+    // Scratch space for the terrain height under each particle
+    private final float[] ground;
+
+    // Free slots, used as a stack. The lowest slots are handed out first, so
+    // the loops over every particle can stop at the highest slot ever used.
+    private final int[] free;
+    private int freeCount;
+    private int used;
+
+    // Where particles with an impact emitter hit the ground this step, and
+    // the emitters they came from
+    private final float[] impactX, impactY, impactZ;
+    private final short[] impactParents;
+    private int impactCount;
+
+    private int liveTotal;
+
+    // Every emitter added so far, indexed by id. The array is replaced, never
+    // changed, when an emitter is added.
+    private volatile Emitter[] emitters = new Emitter[0];
+    private final Object emittersLock = new Object();
+
+    // Per emitter state for the current step, indexed by id
+    private final int[] order = new int[MAX_EMITTERS];
+    private final boolean[] collides = new boolean[MAX_EMITTERS];
+    private final Emitter[] impactEmitters = new Emitter[MAX_EMITTERS];
+    private final int[] impactCounts = new int[MAX_EMITTERS];
+    private final int[] over = new int[MAX_EMITTERS];
+
+    // The boxes of the emitters that wrap, and whether their particles start
+    // again at the top when they die
+    private final boolean[] wraps = new boolean[MAX_EMITTERS];
+    private final boolean[] recycles = new boolean[MAX_EMITTERS];
+    private final float[] minX = new float[MAX_EMITTERS];
+    private final float[] minY = new float[MAX_EMITTERS];
+    private final float[] minZ = new float[MAX_EMITTERS];
+    private final float[] sizeX = new float[MAX_EMITTERS];
+    private final float[] sizeY = new float[MAX_EMITTERS];
+    private final float[] sizeZ = new float[MAX_EMITTERS];
+
+    private volatile float viewerX, viewerY, viewerZ;
+
+    // Metrics
+    private long dropped;
+    private volatile int liveCount;
+    private volatile long droppedSpawns;
+    private volatile long updateNanos;
+
+    private final Random rand = new Random();
+
+    private final Terrain terrain;
+
+    /**
+     * Particle positions at the end of a simulation step.
+     */
+    private static class Snapshot {
+        final float[] positions;
+        final short[] owners;
+        final boolean[] respawned; // whether the slot was spawned into in this step
+        final int[] counts = new int[MAX_EMITTERS]; // live particles of each emitter
+        int emitterCount;
+        int used;                  // slots past this have never been used
+        long time;                 // when the step ended, in System.nanoTime()
+
+        Snapshot(int count) {
+            positions = new float[count * 3];
+            owners = new short[count];
+            respawned = new boolean[count];
+            Arrays.fill(owners, (short) -1);
+        }
+    }
+
+    // The two most recent snapshots, and a third being written by the
+    // simulation. All three are swapped while holding snapshotLock.
+    private Snapshot previous, current, spare;
+    private final Object snapshotLock = new Object();
+
+    private long simulatedTime;
+    private Thread simulation;
+    private volatile boolean running;
+
+    // The interpolated positions, and where each emitter's particles are in
+    // them
+    private FloatBuffer instancePositions;
+    private int instancePositionsName;
+    private int instanceCount;
+    private int drawEmitterCount;
+    private final int[] drawFirst = new int[MAX_EMITTERS];
+    private final int[] drawCount = new int[MAX_EMITTERS];
+    private final int[] drawCursor = new int[MAX_EMITTERS];
+
+    private TriangleMesh model;
+    private Map<String, Texture> textures = new HashMap<String, Texture>();
+    private Shader shader;
+
+    /**
+     * Create a particle system over the given terrain with room for the given
+     * number of particles. The budget starts out as the whole pool.
+     *
+     * @param terrain
+     * @param capacity At most MAX_PARTICLES
+     */
+    public ParticleSystem(Terrain terrain, int capacity) {
+        if (capacity < 0 || capacity > MAX_PARTICLES)
+            throw new IllegalArgumentException("Particle count " + capacity
+                    + " is not between 0 and " + MAX_PARTICLES);
+        this.terrain = terrain;
+        this.capacity = capacity;
+        this.budget = capacity;
+
+        x = new float[capacity];
+        y = new float[capacity];
+        z = new float[capacity];
+        vx = new float[capacity];
+        vy = new float[capacity];
+        vz = new float[capacity];
+        ax = new float[capacity];
+        ay = new float[capacity];
+        az = new float[capacity];
+        drag = new float[capacity];
+        life = new float[capacity];
+        decay = new float[capacity];
+        owner = new short[capacity];
+        ground = new float[capacity];
+        free = new int[capacity];
+        impactX = new float[capacity];
+        impactY = new float[capacity];
+        impactZ = new float[capacity];
+        impactParents = new short[capacity];
+
+        // Every slot starts out free, handed out from the front
+        Arrays.fill(owner, (short) -1);
+        for (int i = 0; i < capacity; i++)
+            free[i] = capacity - 1 - i;
+        freeCount = capacity;
+
+        instancePositions = GLBuffers.newDirectFloatBuffer(capacity * 3);
+
+        previous = new Snapshot(capacity);
+        current = new Snapshot(capacity);
+        spare = new Snapshot(capacity);
+        simulatedTime = System.nanoTime();
+        step(0);
+        step(0);
+    }
+
+    public void init(GL3 gl) {
+        // A unit quad, stretched and turned to face the camera by the shader
+        model = new TriangleMesh(
+                Arrays.asList(new Point3D(-0.5f, 0, 0), new Point3D(0.5f, 0, 0),
+                        new Point3D(0.5f, 1, 0), new Point3D(-0.5f, 1, 0)),
+                Arrays.asList(0, 1, 2, 0, 2, 3), false,
+                Arrays.asList(new Point2D(0, 0), new Point2D(1, 0),
+                        new Point2D(1, 1), new Point2D(0, 1)));
+        model.init(gl);
+
+        shader = new Shader(gl, "shaders/vertex_particle.glsl",
+                "shaders/fragment_tex_3d.glsl");
+
+        int[] names = new int[1];
+        gl.glGenBuffers(1, names, 0);
+        instancePositionsName = names[0];
+
+        // Load the textures of the emitters we already have up front
+        for (Emitter emitter : emitters)
+            texture(gl, emitter);
+    }
+
+    /**
+     * Add an emitter. Its particles are spawned from the next step.
+     *
+     * @param emitter
+     */
+    public void addEmitter(Emitter emitter) {
+        synchronized (emittersLock) {
+            if (emitter.id >= 0)
+                throw new IllegalArgumentException("Emitter has already been added");
+            if (emitters.length == MAX_EMITTERS)
+                throw new IllegalStateException("Too many emitters");
+            Emitter[] added = Arrays.copyOf(emitters, emitters.length + 1);
+            emitter.id = emitters.length;
+            added[emitter.id] = emitter;
+            emitters = added;
+        }
+    }
+
+    /**
+     * Set the maximum number of particles alive at once. It is clamped to the
+     * size of the pool.
+     *
+     * @param budget
+     */
+    public void setBudget(int budget) {
+        this.budget = Math.max(0, Math.min(capacity, budget));
+    }
+
+    /**
+     * Set where the camera is, in terrain coordinates. Emitters closer to it
+     * get their share of the budget first.
+     *
+     * @param x
+     * @param y
+     * @param z
+     */
+    public void setViewer(float x, float y, float z) {
+        viewerX = x;
+        viewerY = y;
+        viewerZ = z;
+    }
+
+    /**
+     * Start simulating on a separate thread, in real time.
+     */
+    public synchronized void start() {
+        if (simulation != null)
+            return;
+        running = true;
+        simulation = new Thread(this::simulate, "Particle simulation");
+        simulation.setDaemon(true);
+        simulation.start();
+    }
+
+    /**
+     * Stop the simulation thread, leaving the particles where they are.
+     */
+    public synchronized void stop() {
+        if (simulation == null)
+            return;
+        running = false;
+        LockSupport.unpark(simulation);
+        try {
+            simulation.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        simulation = null;
+    }
+
+    /**
+     * The body of the simulation thread. Runs as many fixed steps as needed
+     * to catch up with the clock, then sleeps until the next step is due.
+     */
+    private void simulate() {
+        simulatedTime = System.nanoTime();
+        while (running) {
+            long now = System.nanoTime();
+            int steps = 0;
+            while (simulatedTime + STEP_NANOS <= now && steps < MAX_STEPS_BEHIND) {
+                step(STEP);
+                steps++;
+            }
+            // Too far behind to catch up, so drop the missed time
+            if (steps == MAX_STEPS_BEHIND)
+                simulatedTime = now;
+
+            LockSupport.parkNanos(simulatedTime + STEP_NANOS - System.nanoTime());
+        }
+    }
+
+    /**
+     * Move every particle forward by the given number of seconds, kill the
+     * ones that have died, hit the terrain or are over their emitter's share
+     * of the budget, spawn new ones, and publish their positions.
+     *
+     * This is normally called by the simulation thread, but can be called
+     * directly when the thread is not running.
+     *
+     * @param seconds
+     */
+    public void step(float seconds) {
+        long start = System.nanoTime();
+        Emitter[] emitters = this.emitters;
+        boolean[] respawned = spare.respawned;
+
+        // The loop over every particle is kept free of calls and branches so
+        // it can be vectorised
+        for (int i = 0; i < used; i++) {
+            // Apply the forces
+            vx[i] += ax[i] * seconds;
+            vy[i] += ay[i] * seconds;
+            vz[i] += az[i] * seconds;
+            float slow = 1 - drag[i] * seconds;
+            vx[i] *= slow;
+            vy[i] *= slow;
+            vz[i] *= slow;
+
+            // Move the particle
+            x[i] += vx[i] * seconds;
+            y[i] += vy[i] * seconds;
+            z[i] += vz[i] * seconds;
+
+            // Slowly kill it
+            life[i] -= decay[i] * seconds;
+        }
+
+        // Look up the height of the terrain under every particle at once
+        terrain.altitudes(x, z, ground, used);
+
+        Arrays.fill(respawned, false);
+        rank(emitters, seconds);
+        kill(emitters, respawned);
+        if (share(emitters))
+            cull(emitters);
+
+        // Spawn where particles landed, then from each emitter in order of
+        // importance
+        for (int k = 0; k < impactCount; k++) {
+            int parent = impactParents[k];
+            spawn(impactEmitters[parent], impactCounts[parent], true,
+                    impactX[k], impactY[k], impactZ[k], respawned);
+        }
+        for (int k = 0; k < emitters.length; k++) {
+            Emitter emitter = emitters[order[k]];
+            spawn(emitter, emitter.want, false, 0, 0, 0, respawned);
+        }
+
+        // Publish
+        float[] positions = spare.positions;
+        for (int i = 0; i < used; i++) {
+            positions[i * 3] = x[i];
+            positions[i * 3 + 1] = y[i];
+            positions[i * 3 + 2] = z[i];
+        }
+        System.arraycopy(owner, 0, spare.owners, 0, used);
+        for (Emitter emitter : emitters) {
+            spare.counts[emitter.id] = emitter.live;
+            emitter.publish();
+        }
+        spare.emitterCount = emitters.length;
+        spare.used = used;
+
+        simulatedTime += (long) (seconds * 1e9);
+        synchronized (snapshotLock) {
+            spare.time = simulatedTime;
+            Snapshot oldest = previous;
+            previous = current;
+            current = spare;
+            spare = oldest;
+        }
+
+        liveCount = liveTotal;
+        droppedSpawns = dropped;
+        updateNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Work out how many particles each emitter wants to spawn this step, and
+     * rank the emitters by priority, then by distance to the viewer.
+     */
+    private void rank(Emitter[] emitters, float seconds) {
+        float viewerX = this.viewerX;
+        float viewerY = this.viewerY;
+        float viewerZ = this.viewerZ;
+
+        for (Emitter emitter : emitters) {
+            int want = emitter.takeBurst();
+            if (emitter.isEnabled()) {
+                emitter.accumulator += emitter.getRate() * seconds;
+                int steady = (int) emitter.accumulator;
+                emitter.accumulator -= steady;
+                want += steady;
+            }
+            emitter.want = Math.max(0, Math.min(want, emitter.getMaxParticles() - emitter.live));
+            emitter.impactRequests = 0;
+
+            emitter.centreX = emitter.getX();
+            emitter.centreY = emitter.getY();
+            emitter.centreZ = emitter.getZ();
+            if (emitter.followsViewer()) {
+                emitter.centreX += viewerX;
+                emitter.centreY += viewerY;
+                emitter.centreZ += viewerZ;
+            }
+            emitter.distance = distance(emitter, viewerX, viewerY, viewerZ);
+
+            int id = emitter.id;
+            wraps[id] = emitter.wraps() && emitter.getShape() == Emitter.Shape.BOX;
+            recycles[id] = wraps[id] && emitter.isEnabled();
+            minX[id] = emitter.centreX - emitter.getExtentX();
+            minY[id] = emitter.centreY - emitter.getExtentY();
+            minZ[id] = emitter.centreZ - emitter.getExtentZ();
+            sizeX[id] = 2 * emitter.getExtentX();
+            sizeY[id] = 2 * emitter.getExtentY();
+            sizeZ[id] = 2 * emitter.getExtentZ();
+
+            collides[id] = emitter.collides();
+            Emitter impact = emitter.getImpact();
+            impactEmitters[id] = impact != null && impact.id >= 0 ? impact : null;
+            impactCounts[id] = emitter.getImpactCount();
+        }
+
+        // Emitters spawned by impacts are as far away as what triggers them
+        for (Emitter emitter : emitters) {
+            Emitter impact = impactEmitters[emitter.id];
+            if (impact != null)
+                impact.distance = Float.POSITIVE_INFINITY;
+        }
+        for (Emitter emitter : emitters) {
+            Emitter impact = impactEmitters[emitter.id];
+            if (impact != null)
+                impact.distance = Math.min(impact.distance, emitter.distance);
+        }
+
+        // Insertion sort, as there are only a few emitters
+        for (int k = 0; k < emitters.length; k++) {
+            int j = k;
+            while (j > 0 && moreImportant(emitters[k], emitters[order[j - 1]])) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = k;
+        }
+    }
+
+    /**
+     * Share the budget between the emitters in order of importance. Each
+     * takes what it needs to keep its live particles and spawn the new ones,
+     * until the budget runs out.
+     *
+     * @return Whether any emitter has more live particles than its share
+     */
+    private boolean share(Emitter[] emitters) {
+        int remaining = budget;
+        boolean anyOver = false;
+        for (int k = 0; k < emitters.length; k++) {
+            Emitter emitter = emitters[order[k]];
+            int demand = emitter.live + emitter.want + emitter.impactRequests;
+            emitter.quota = Math.min(demand, remaining);
+            remaining -= emitter.quota;
+            over[emitter.id] = Math.max(0, emitter.live - emitter.quota);
+            anyOver |= over[emitter.id] > 0;
+        }
+        return anyOver;
+    }
+
+    private static boolean moreImportant(Emitter a, Emitter b) {
+        if (a.getPriority() != b.getPriority())
+            return a.getPriority() > b.getPriority();
+        return a.distance < b.distance;
+    }
+
+    /**
+     * The distance from the viewer to the nearest point of the emitter's
+     * shape.
+     */
+    private static float distance(Emitter emitter, float x, float y, float z) {
+        float dx = Math.abs(x - emitter.centreX);
+        float dy = Math.abs(y - emitter.centreY);
+        float dz = Math.abs(z - emitter.centreZ);
+        if (emitter.getShape() == Emitter.Shape.SPHERE) {
+            float d = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+            return Math.max(0, d - emitter.getExtentX());
+        }
+        dx = Math.max(0, dx - emitter.getExtentX());
+        dy = Math.max(0, dy - emitter.getExtentY());
+        dz = Math.max(0, dz - emitter.getExtentZ());
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Kill the particles that have run out of life or hit the ground, and
+     * count the impacts each emitter is asked to spawn. Particles of emitters
+     * that wrap are kept inside their box, and start again at the top instead
+     * of dying. Only the particles that die or wrap do any real work.
+     */
+    private void kill(Emitter[] emitters, boolean[] respawned) {
+        impactCount = 0;
+        for (int i = 0; i < used; i++) {
+            int id = owner[i];
+            if (id < 0)
+                continue;
+            boolean hit = collides[id] && y[i] <= ground[i];
+            boolean dead = hit || life[i] < 0;
+            if (wraps[id])
+                dead |= wrap(i, id, respawned);
+            if (!dead)
+                continue;
+
+            Emitter impact = impactEmitters[id];
+            if (hit && impact != null) {
+                impactX[impactCount] = x[i];
+                impactY[impactCount] = ground[i];
+                impactZ[impactCount] = z[i];
+                impactParents[impactCount] = (short) id;
+                impactCount++;
+                impact.impactRequests += impactCounts[id];
+            }
+
+            if (recycles[id]) {
+                // Start again at the top of the box
+                Emitter emitter = emitters[id];
+                reset(i, emitter, emitter.centreX, emitter.centreY, emitter.centreZ);
+                y[i] = minY[id] + sizeY[id];
+                respawned[i] = true;
+            } else {
+                emitters[id].live--;
+                liveTotal--;
+                owner[i] = -1;
+                free[freeCount++] = i;
+            }
+        }
+    }
+
+    /**
+     * Move a particle that has left its emitter's box through a side or the
+     * top back in through the opposite side.
+     *
+     * @return Whether the particle has fallen out of the bottom of the box
+     */
+    private boolean wrap(int i, int id, boolean[] respawned) {
+        float offsetX = x[i] - minX[id];
+        float offsetY = y[i] - minY[id];
+        float offsetZ = z[i] - minZ[id];
+        if (offsetX < 0 || offsetX >= sizeX[id]) {
+            x[i] -= sizeX[id] * (float) Math.floor(offsetX / sizeX[id]);
+            respawned[i] = true;
+        }
+        if (offsetZ < 0 || offsetZ >= sizeZ[id]) {
+            z[i] -= sizeZ[id] * (float) Math.floor(offsetZ / sizeZ[id]);
+            respawned[i] = true;
+        }
+        if (offsetY >= sizeY[id]) {
+            y[i] -= sizeY[id] * (float) Math.floor(offsetY / sizeY[id]);
+            respawned[i] = true;
+        }
+        return offsetY < 0;
+    }
+
+    /**
+     * Kill particles of the emitters that have more than their share of the
+     * budget.
+     */
+    private void cull(Emitter[] emitters) {
+        for (int i = 0; i < used; i++) {
+            int id = owner[i];
+            if (id >= 0 && over[id] > 0) {
+                over[id]--;
+                emitters[id].live--;
+                liveTotal--;
+                owner[i] = -1;
+                free[freeCount++] = i;
+            }
+        }
+    }
+
+    /**
+     * Spawn up to the given number of particles from an emitter, as far as
+     * its share of the budget allows, and count the rest as dropped.
+     *
+     * @param emitter
+     * @param count
+     * @param atPoint Whether to spawn around the given point instead of the
+     *                emitter's position
+     * @param px
+     * @param py
+     * @param pz
+     * @param respawned
+     */
+    private void spawn(Emitter emitter, int count, boolean atPoint,
+            float px, float py, float pz, boolean[] respawned) {
+        if (count <= 0)
+            return;
+
+        int allowed = Math.min(count, emitter.quota - emitter.live);
+        allowed = Math.min(allowed, budget - liveTotal);
+        allowed = Math.max(0, Math.min(allowed, freeCount));
+        emitter.dropped += count - allowed;
+        dropped += count - allowed;
+        if (allowed == 0)
+            return;
+
+        float cx = atPoint ? px : emitter.centreX;
+        float cy = atPoint ? py : emitter.centreY;
+        float cz = atPoint ? pz : emitter.centreZ;
+        short id = (short) emitter.id;
+        for (int n = 0; n < allowed; n++) {
+            int i = free[--freeCount];
+            used = Math.max(used, i + 1);
+            reset(i, emitter, cx, cy, cz);
+            owner[i] = id;
+            respawned[i] = true;
+        }
+        emitter.live += allowed;
+        liveTotal += allowed;
+    }
+
+    /**
+     * Start the particle in the given slot afresh from an emitter, somewhere
+     * in the emitter's shape centred on the given point.
+     */
+    private void reset(int i, Emitter emitter, float cx, float cy, float cz) {
+        boolean sphere = emitter.getShape() == Emitter.Shape.SPHERE;
+        float ex = emitter.getExtentX();
+        float ey = sphere ? ex : emitter.getExtentY();
+        float ez = sphere ? ex : emitter.getExtentZ();
+
+        // A random point in the unit cube, or in the unit sphere
+        float sx, sy, sz;
+        do {
+            sx = rand.nextFloat() * 2 - 1;
+            sy = rand.nextFloat() * 2 - 1;
+            sz = rand.nextFloat() * 2 - 1;
+        } while (sphere && sx * sx + sy * sy + sz * sz > 1);
+        x[i] = cx + sx * ex;
+        y[i] = cy + sy * ey;
+        z[i] = cz + sz * ez;
+
+        float spread = emitter.getSpread();
+        vx[i] = emitter.getVelocityX() + (rand.nextFloat() * 2 - 1) * spread;
+        vy[i] = emitter.getVelocityY() + (rand.nextFloat() * 2 - 1) * spread;
+        vz[i] = emitter.getVelocityZ() + (rand.nextFloat() * 2 - 1) * spread;
+        ax[i] = emitter.getGravityX();
+        ay[i] = emitter.getGravityY();
+        az[i] = emitter.getGravityZ();
+        drag[i] = emitter.getDrag();
+
+        // Initially it's fully alive
+        life[i] = 1.0f;
+        decay[i] = 1 / emitter.getLifetime();
+    }
+
+    /**
+     * Write the particle positions at the given time into the instance
+     * buffer, grouped by emitter. Rendering runs one step behind the
+     * simulation, so the positions are interpolated between the two latest
+     * snapshots.
+     *
+     * @param time In System.nanoTime()
+     */
+    public void interpolate(long time) {
+        FloatBuffer out = instancePositions;
+        synchronized (snapshotLock) {
+            float alpha = (time - current.time) / (float) STEP_NANOS;
+            alpha = Math.max(0, Math.min(1, alpha));
+
+            // Find where each emitter's particles go
+            int total = 0;
+            drawEmitterCount = current.emitterCount;
+            for (int e = 0; e < drawEmitterCount; e++) {
+                drawFirst[e] = total;
+                drawCount[e] = current.counts[e];
+                drawCursor[e] = total;
+                total += current.counts[e];
+            }
+            instanceCount = total;
+
+            float[] from = previous.positions;
+            float[] to = current.positions;
+            short[] owners = current.owners;
+            boolean[] respawned = current.respawned;
+            for (int i = 0; i < current.used; i++) {
+                int e = owners[i];
+                if (e < 0)
+                    continue;
+                int j = i * 3;
+                int k = drawCursor[e]++ * 3;
+                if (respawned[i]) {
+                    // Don't smear particles across the sky when they respawn
+                    out.put(k, to[j]);
+                    out.put(k + 1, to[j + 1]);
+                    out.put(k + 2, to[j + 2]);
+                } else {
+                    out.put(k, from[j] + (to[j] - from[j]) * alpha);
+                    out.put(k + 1, from[j + 1] + (to[j + 1] - from[j + 1]) * alpha);
+                    out.put(k + 2, from[j + 2] + (to[j + 2] - from[j + 2]) * alpha);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draw the particles at their positions interpolated for the current time
+     * with the particle shader, one instanced draw call per emitter. The view
+     * and projection are taken from the frame constants. The caller's shader
+     * must be used again afterwards.
+     *
+     * @param gl
+     * @param frame
+     */
+    public void draw(GL3 gl, CoordFrame3D frame) {
+        interpolate(System.nanoTime());
+        if (instanceCount == 0)
+            return;
+
+        shader.use(gl);
+        Shader.setInt(gl, "tex", 0);
+        GLState.activeTexture(gl, GL.GL_TEXTURE0);
+
+        // Stream this frame's positions into the instance buffer
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, instancePositionsName);
+        gl.glBufferData(GL.GL_ARRAY_BUFFER, instanceCount * 3L * Float.BYTES,
+                instancePositions, GL3.GL_STREAM_DRAW);
+
+        // The instance attribute is added to the model's vertex array for
+        // the draws below, and taken off again afterwards
+        model.bindVertexArray(gl);
+        gl.glEnableVertexAttribArray(Shader.INSTANCE_POSITION);
+        gl.glVertexAttribDivisor(Shader.INSTANCE_POSITION, 1);
+
+        GLState.enable(gl, GL.GL_BLEND);
+        gl.glBlendColor(1.0f,1.0f,1.0f,0.5f);
+        GLState.blendFunc(gl, GL.GL_SRC_ALPHA, GL.GL_ONE);
+        GLState.disable(gl, GL.GL_DEPTH_TEST);
+
+        Emitter[] emitters = this.emitters;
+        for (int e = 0; e < drawEmitterCount; e++) {
+            if (drawCount[e] == 0)
+                continue;
+            Emitter emitter = emitters[e];
+            GLState.bindTexture(gl, GL.GL_TEXTURE_2D, texture(gl, emitter).getId());
+            Shader.setPenColor(gl, emitter.getColor());
+            Shader.setFloat(gl, "particleWidth", emitter.getWidth());
+            Shader.setFloat(gl, "particleHeight", emitter.getHeight());
+
+            // Each emitter's particles start at a different offset
+            GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, instancePositionsName);
+            gl.glVertexAttribPointer(Shader.INSTANCE_POSITION, 3, GL.GL_FLOAT, false, 0,
+                    drawFirst[e] * 3L * Float.BYTES);
+            model.drawInstanced(gl, frame, drawCount[e]);
+        }
+
+        GLState.enable(gl, GL.GL_DEPTH_TEST);
+        GLState.disable(gl, GL.GL_BLEND);
+
+        gl.glVertexAttribDivisor(Shader.INSTANCE_POSITION, 0);
+        gl.glDisableVertexAttribArray(Shader.INSTANCE_POSITION);
+    }
+
+    /**
+     * Get the texture for an emitter, loading it the first time it is used.
+     */
+    private Texture texture(GL3 gl, Emitter emitter) {
+        Texture texture = textures.get(emitter.getTexture());
+        if (texture == null) {
+            texture = new Texture(gl, emitter.getTexture(), emitter.getTextureExtension(), false);
+            textures.put(emitter.getTexture(), texture);
+        }
+        return texture;
+    }
+
+    public void destroy(GL3 gl) {
+        stop();
+        model.destroy(gl);
+        for (Texture texture : textures.values())
+            texture.destroy(gl);
+        textures.clear();
+        shader.destroy(gl);
+        GLState.deleteBuffers(gl, 1, new int[] { instancePositionsName }, 0);
+    }
+
+    /**
+     * The number of particles the pool has room for.
+     *
+     * @return
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    public int getBudget() {
+        return budget;
+    }
+
+    /**
+     * The number of particles alive after the last step.
+     *
+     * @return
+     */
+    public int getLiveCount() {
+        return liveCount;
+    }
+
+    /**
+     * The number of particles that could not be spawned because of the
+     * budget, since the system was created.
+     *
+     * @return
+     */
+    public long getDroppedSpawns() {
+        return droppedSpawns;
+    }
+
+    /**
+     * How long the last step took, in nanoseconds.
+     *
+     * @return
+     */
+    public long getUpdateNanos() {
+        return updateNanos;
+    }
+}
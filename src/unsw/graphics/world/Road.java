@@ -1,15 +1,11 @@
 package unsw.graphics.world;
 
-import java.lang.reflect.Array;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import com.jogamp.opengl.GL3;
 import unsw.graphics.*;
 import unsw.graphics.geometry.Point2D;
 import unsw.graphics.geometry.Point3D;
-import unsw.graphics.geometry.TriangleMesh;
 
 /**
  * COMMENT: Comment Road 
@@ -18,12 +14,13 @@ import unsw.graphics.geometry.TriangleMesh;
  */
 public class Road {
 
-    private static final float SEGMENTS = 100f; // Sampling rate of the curve
+    private static final int SEGMENTS = 100; // Number of evenly spaced slices along the road
+    private static final int ARC_LENGTH_SAMPLES = 64; // Arc length samples per bezier segment
     private static final Vector3 ROAD_NORMAL = new Vector3(0,1,0);
     private List<Point2D> points;
     private float width;
-    private TriangleMesh road;
     private Terrain terrain;
+    private ArcLengthTable arcLength;
     
     /**
      * Create a new road with the specified spine 
@@ -35,6 +32,7 @@ public class Road {
         this.width = width;
         this.points = spine;
         this.terrain = terrain;
+        this.arcLength = buildArcLengthTable();
     }
 
     /**
@@ -73,7 +71,7 @@ public class Road {
      * @return
      */
     public Point2D point(float t) {
-        int i = (int)Math.floor(t);
+        int i = segment(t);
         t = t - i;
         
         i *= 3;
@@ -90,6 +88,18 @@ public class Road {
         return new Point2D(x, y);
     }
 
+    /**
+     * Get the index of the segment containing parameter t. The end of the
+     * spine (t == size()) belongs to the last segment.
+     *
+     * @param t
+     * @return
+     */
+    private int segment(float t) {
+        int i = (int)Math.floor(t);
+        return Math.max(0, Math.min(i, size() - 1));
+    }
+
     /**
      * Calculate the Bezier coefficients
      *
@@ -126,7 +136,7 @@ public class Road {
      * @return
      */
     public Point2D tangent(float t) {
-        int i = (int)Math.floor(t);
+        int i = segment(t);
         t = t - i;
 
         i *= 3;
@@ -168,35 +178,137 @@ public class Road {
         throw new IllegalArgumentException("" + i);
     }
 
-    public void init(GL3 gl){
-        List<Point3D> vertices = new ArrayList<>();
-        List<Vector3> normals = new ArrayList<>();
-        List<Integer> indices = new ArrayList<>();
-        List<Point2D> texCoords = new ArrayList<Point2D>();
+    /**
+     * The length of the road's spine.
+     *
+     * @return
+     */
+    public float length() {
+        return arcLength.length();
+    }
+
+    /**
+     * Get the point on the spine at the given distance from its start.
+     * Distances outside of [0, length()] are clamped to the ends of the road.
+     *
+     * @param distance
+     * @return
+     */
+    public Point2D pointAtDistance(float distance) {
+        return point(arcLength.parameter(distance));
+    }
+
+    /**
+     * Get the unit tangent of the spine at the given distance from its start.
+     * Distances outside of [0, length()] are clamped to the ends of the road.
+     *
+     * @param distance
+     * @return
+     */
+    public Point2D tangentAtDistance(float distance) {
+        Point2D tangent = tangent(arcLength.parameter(distance));
+        float length = (float) Math.sqrt(tangent.getX() * tangent.getX() + tangent.getY() * tangent.getY());
+        if (length == 0)
+            return tangent;
+        return new Point2D(tangent.getX() / length, tangent.getY() / length);
+    }
+
+    /**
+     * Sample the spine at evenly spaced parameters, accumulating the chord
+     * length between consecutive samples.
+     *
+     * @return
+     */
+    private ArcLengthTable buildArcLengthTable() {
+        int samples = size() * ARC_LENGTH_SAMPLES + 1;
+        float[] params = new float[samples];
+        float[] distances = new float[samples];
+
+        Point2D previous = point(0);
+        for (int n = 1; n < samples; n++) {
+            float t = size() * (float) n / (samples - 1);
+            Point2D current = point(t);
+            float dx = current.getX() - previous.getX();
+            float dy = current.getY() - previous.getY();
+            params[n] = t;
+            distances[n] = distances[n - 1] + (float) Math.sqrt(dx * dx + dy * dy);
+            previous = current;
+        }
+        return new ArcLengthTable(params, distances);
+    }
 
+    /**
+     * Flatten the spine into a polyline of evenly spaced points. These are
+     * the same points that tessellate() places down the middle of the road.
+     *
+     * @return The points as x,z pairs
+     */
+    public float[] polyline() {
+        float[] polyline = new float[(SEGMENTS + 1) * 2];
+        float ds = length() / SEGMENTS;
+        for (int segment = 0; segment <= SEGMENTS; segment++) {
+            Point2D p = pointAtDistance(segment * ds);
+            polyline[segment * 2] = p.getX();
+            polyline[segment * 2 + 1] = p.getY();
+        }
+        return polyline;
+    }
+
+    /**
+     * The number of vertices generated by tessellate()
+     *
+     * @return
+     */
+    public int vertexCount() {
+        return (SEGMENTS + 1) * 2;
+    }
+
+    /**
+     * The number of indices generated by tessellate()
+     *
+     * @return
+     */
+    public int indexCount() {
+        return SEGMENTS * 6;
+    }
+
+    /**
+     * Tessellate the road into triangles, appending the result to the given
+     * lists. Indices refer to positions in the vertex list, so several roads
+     * may be tessellated into the same lists to share one buffer.
+     *
+     * @param vertices
+     * @param normals
+     * @param indices
+     * @param texCoords
+     */
+    public void tessellate(List<Point3D> vertices, List<Vector3> normals,
+            List<Integer> indices, List<Point2D> texCoords) {
         float roadAltitude = terrain.altitude(points.get(0).getX(), points.get(0).getY());
 
-//        1) Sample points along the spine using different values of t
-//        2) For each t:
+//        1) Sample points at evenly spaced distances along the spine
+//        2) For each distance:
 //              - generate the current point on the spine
 //              - generate a frenet transformation matrix
 //              - multiply each point on the cross section by the matrix.
 //              - join these points to the next set of points using quads/triangles.
 
-        float dt = (points.size()/3f)/SEGMENTS;
+        float ds = length() / SEGMENTS;
+
+        for (int segment = 0; segment <= SEGMENTS; segment++) {
+            float distance = segment * ds;
 
-        for(float t = 0f; t <= this.size(); t += dt){
             // Spine is the set of control points for our bezier curve (ROAD)
             // Calculate point on Road
-            Point2D p1 = point(t);
+            Point2D p1 = pointAtDistance(distance);
 
             // i = (k3, 0, -k1) <- Note: k3, k1 means z, x components respectively of vector k (defined below)
             // k = normalise(tangent to curve at t)
             // j = k x i
             // phi = origin i.e. current point = p1
 
-            Point2D tangent = tangent(t);
-            Vector3 k = new Vector3(tangent.getX(),0, tangent.getY()).normalize();
+            Point2D tangent = tangentAtDistance(distance);
+            Vector3 k = new Vector3(tangent.getX(),0, tangent.getY());
             Vector3 i = new Vector3(k.getZ(),0, -k.getX());
             Vector3 j = k.cross(i);
             Vector3 phi = new Vector3(p1.getX(), roadAltitude, p1.getY());
@@ -216,13 +328,15 @@ public class Road {
             // Add these points to vertices
             vertices.add(left);
             vertices.add(right);
+            normals.addAll(Arrays.asList(ROAD_NORMAL, ROAD_NORMAL));
 
-            // Add these points to texture coordinates
-            texCoords.add(new Point2D(left.getX(), left.getZ()));
-            texCoords.add(new Point2D(right.getX(), right.getZ()));
+            // Texture runs across the width of the road and repeats along its
+            // length once per width travelled, so it is never stretched
+            texCoords.add(new Point2D(0, distance / width));
+            texCoords.add(new Point2D(1, distance / width));
 
-            // Only create triangles after the second point (i.e. when t != 0)
-            if (t != 0f){
+            // Only create triangles after the second slice
+            if (segment > 0){
                 int index0 = vertices.size() - 4;
                 int index1 = vertices.size() - 3;
                 int index2 = vertices.size() - 2;
@@ -241,44 +355,9 @@ public class Road {
                 // index1 ---------- index3
 
                 indices.addAll(Arrays.asList(index2, index3, index1));
-                normals.addAll(Arrays.asList(ROAD_NORMAL, ROAD_NORMAL, ROAD_NORMAL));
-
                 indices.addAll(Arrays.asList(index0, index2, index1));
-                normals.addAll(Arrays.asList(ROAD_NORMAL, ROAD_NORMAL, ROAD_NORMAL));
             }
         }
-
-        road = new TriangleMesh(vertices, normals, indices, texCoords);
-
-        // Initialise road
-        road.init(gl);
-    }
-
-    /**
-     * Draw road
-     * @param gl
-     * @param frame
-     */
-    public void draw(GL3 gl, CoordFrame3D frame){
-        CoordFrame3D roadFrame = frame;
-
-        // Enable polygon offset to avoid Z-Fighting of Road and Terrain
-        gl.glEnable(GL3.GL_POLYGON_OFFSET_FILL);
-        gl.glPolygonOffset(-1,-1);
-
-        road.draw(gl, roadFrame);
-
-        // Disable polygon offset
-        gl.glDisable(GL3.GL_POLYGON_OFFSET_FILL);
-
-    }
-
-    /**
-     * Destroy road
-     * @param gl
-     */
-    public void destroy(GL3 gl) {
-        road.destroy(gl);
     }
 
 
@@ -0,0 +1,297 @@
+package unsw.graphics.world;
+
+import java.util.List;
+
+import unsw.graphics.geometry.Point2D;
+
+/**
+ * A spatial index for finding the nearest road to a point.
+ *
+ * The flattened polylines of all roads are split into line segments, which
+ * are stored in a uniform grid over the x-z plane. A query searches outwards
+ * from the cell containing the point, ring by ring, and stops as soon as no
+ * unvisited cell can hold a closer segment.
+ *
+ * The index is immutable once built, so it can be queried from any number of
+ * threads at once without locking.
+ */
+public class RoadIndex {
+
+    /**
+     * The grid aims for this many segments per cell on average.
+     */
+    private static final int SEGMENTS_PER_CELL = 4;
+
+    /**
+     * The grid never has more than this many cells along an axis.
+     */
+    private static final int MAX_CELLS_PER_AXIS = 512;
+
+    // Segment end points and owning road, one entry per segment
+    private final float[] x0, z0, x1, z1;
+    private final int[] road;
+
+    // The grid bounds and dimensions
+    private final float minX, minZ;
+    private final float cellSize;
+    private final int columns, rows;
+
+    // The segments in cell c are cellSegments[cellStart[c] .. cellStart[c+1])
+    private final int[] cellStart;
+    private final int[] cellSegments;
+
+    /**
+     * The result of a nearest road query.
+     *
+     * This class is immutable.
+     */
+    public static class Nearest {
+        private final Point2D point;
+        private final float distance;
+        private final int road;
+
+        private Nearest(Point2D point, float distance, int road) {
+            this.point = point;
+            this.distance = distance;
+            this.road = road;
+        }
+
+        /**
+         * The closest point on the spine of the nearest road.
+         * @return
+         */
+        public Point2D getPoint() {
+            return point;
+        }
+
+        /**
+         * The distance from the query point to the spine of the nearest road.
+         * @return
+         */
+        public float getDistance() {
+            return distance;
+        }
+
+        /**
+         * The index of the nearest road in the list the index was built from.
+         * @return
+         */
+        public int getRoad() {
+            return road;
+        }
+    }
+
+    /**
+     * Build an index over the given roads.
+     *
+     * @param roads
+     */
+    public RoadIndex(List<Road> roads) {
+        float[][] polylines = new float[roads.size()][];
+        int segments = 0;
+        for (int r = 0; r < roads.size(); r++) {
+            polylines[r] = roads.get(r).polyline();
+            segments += polylines[r].length / 2 - 1;
+        }
+
+        x0 = new float[segments];
+        z0 = new float[segments];
+        x1 = new float[segments];
+        z1 = new float[segments];
+        road = new int[segments];
+
+        float minX = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        int s = 0;
+        for (int r = 0; r < polylines.length; r++) {
+            float[] line = polylines[r];
+            for (int i = 0; i + 3 < line.length; i += 2) {
+                x0[s] = line[i];
+                z0[s] = line[i + 1];
+                x1[s] = line[i + 2];
+                z1[s] = line[i + 3];
+                road[s] = r;
+                minX = Math.min(minX, Math.min(x0[s], x1[s]));
+                minZ = Math.min(minZ, Math.min(z0[s], z1[s]));
+                maxX = Math.max(maxX, Math.max(x0[s], x1[s]));
+                maxZ = Math.max(maxZ, Math.max(z0[s], z1[s]));
+                s++;
+            }
+        }
+
+        if (segments == 0) {
+            minX = minZ = 0;
+            maxX = maxZ = 1;
+        }
+
+        // Choose square cells so that each holds a few segments on average
+        float spanX = Math.max(maxX - minX, 1e-3f);
+        float spanZ = Math.max(maxZ - minZ, 1e-3f);
+        int targetCells = Math.max(1, segments / SEGMENTS_PER_CELL);
+        float size = (float) Math.sqrt(spanX * spanZ / targetCells);
+        size = Math.max(size, Math.max(spanX, spanZ) / MAX_CELLS_PER_AXIS);
+
+        this.minX = minX;
+        this.minZ = minZ;
+        this.cellSize = size;
+        this.columns = Math.max(1, (int) Math.ceil(spanX / size));
+        this.rows = Math.max(1, (int) Math.ceil(spanZ / size));
+
+        // Count the segments overlapping each cell, then fill the cells
+        cellStart = new int[columns * rows + 1];
+        for (int i = 0; i < segments; i++) {
+            int cx0 = column(Math.min(x0[i], x1[i])), cx1 = column(Math.max(x0[i], x1[i]));
+            int cz0 = row(Math.min(z0[i], z1[i])), cz1 = row(Math.max(z0[i], z1[i]));
+            for (int cz = cz0; cz <= cz1; cz++)
+                for (int cx = cx0; cx <= cx1; cx++)
+                    cellStart[cz * columns + cx + 1]++;
+        }
+        for (int c = 0; c < columns * rows; c++)
+            cellStart[c + 1] += cellStart[c];
+
+        cellSegments = new int[cellStart[columns * rows]];
+        int[] fill = new int[columns * rows];
+        for (int i = 0; i < segments; i++) {
+            int cx0 = column(Math.min(x0[i], x1[i])), cx1 = column(Math.max(x0[i], x1[i]));
+            int cz0 = row(Math.min(z0[i], z1[i])), cz1 = row(Math.max(z0[i], z1[i]));
+            for (int cz = cz0; cz <= cz1; cz++) {
+                for (int cx = cx0; cx <= cx1; cx++) {
+                    int c = cz * columns + cx;
+                    cellSegments[cellStart[c] + fill[c]++] = i;
+                }
+            }
+        }
+    }
+
+    private int column(float x) {
+        return Math.max(0, Math.min(columns - 1, (int) ((x - minX) / cellSize)));
+    }
+
+    private int row(float z) {
+        return Math.max(0, Math.min(rows - 1, (int) ((z - minZ) / cellSize)));
+    }
+
+    /**
+     * The number of segments in the index.
+     *
+     * @return
+     */
+    public int size() {
+        return road.length;
+    }
+
+    /**
+     * Find the closest point on any road's spine to the given point.
+     *
+     * @param x
+     * @param z
+     * @return The nearest road, or null if there are no roads.
+     */
+    public Nearest nearest(float x, float z) {
+        int best = nearestSegment(x, z);
+        if (best < 0)
+            return null;
+
+        float t = project(best, x, z);
+        float px = x0[best] + t * (x1[best] - x0[best]);
+        float pz = z0[best] + t * (z1[best] - z0[best]);
+        float dx = x - px, dz = z - pz;
+        return new Nearest(new Point2D(px, pz), (float) Math.sqrt(dx * dx + dz * dz), road[best]);
+    }
+
+    /**
+     * The distance from the given point to the spine of the nearest road.
+     *
+     * @param x
+     * @param z
+     * @return The distance, or infinity if there are no roads.
+     */
+    public float distance(float x, float z) {
+        int best = nearestSegment(x, z);
+        if (best < 0)
+            return Float.POSITIVE_INFINITY;
+        return (float) Math.sqrt(distanceSquared(best, x, z));
+    }
+
+    /**
+     * The index of the road nearest to the given point.
+     *
+     * @param x
+     * @param z
+     * @return The road, or -1 if there are no roads.
+     */
+    public int nearestRoad(float x, float z) {
+        int best = nearestSegment(x, z);
+        return best < 0 ? -1 : road[best];
+    }
+
+    /**
+     * Find the segment closest to the given point by searching rings of cells
+     * around it.
+     */
+    private int nearestSegment(float x, float z) {
+        if (road.length == 0)
+            return -1;
+
+        int cx = column(x);
+        int cz = row(z);
+
+        // How far the point lies outside the grid, which every cell is at
+        // least this far away from
+        float outsideX = Math.max(0, Math.max(minX - x, x - (minX + columns * cellSize)));
+        float outsideZ = Math.max(0, Math.max(minZ - z, z - (minZ + rows * cellSize)));
+        float outside = Math.max(outsideX, outsideZ);
+
+        int best = -1;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        int maxRing = Math.max(columns, rows);
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Every cell in this ring or beyond is at least this far away
+            float bound = Math.max(outside, (ring - 1) * cellSize);
+            if (bound > 0 && bound * bound > bestDistance)
+                break;
+
+            for (int rz = cz - ring; rz <= cz + ring; rz++) {
+                if (rz < 0 || rz >= rows)
+                    continue;
+                boolean edgeRow = rz == cz - ring || rz == cz + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int rx = cx - ring; rx <= cx + ring; rx += Math.max(step, 1)) {
+                    if (rx < 0 || rx >= columns)
+                        continue;
+                    int c = rz * columns + rx;
+                    for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                        int segment = cellSegments[k];
+                        float d = distanceSquared(segment, x, z);
+                        if (d < bestDistance) {
+                            bestDistance = d;
+                            best = segment;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The parameter in [0, 1] of the point on the given segment closest to
+     * (x, z).
+     */
+    private float project(int segment, float x, float z) {
+        float dx = x1[segment] - x0[segment];
+        float dz = z1[segment] - z0[segment];
+        float lengthSquared = dx * dx + dz * dz;
+        if (lengthSquared == 0)
+            return 0;
+        float t = ((x - x0[segment]) * dx + (z - z0[segment]) * dz) / lengthSquared;
+        return Math.max(0, Math.min(1, t));
+    }
+
+    private float distanceSquared(int segment, float x, float z) {
+        float t = project(segment, x, z);
+        float px = x0[segment] + t * (x1[segment] - x0[segment]);
+        float pz = z0[segment] + t * (z1[segment] - z0[segment]);
+        return (x - px) * (x - px) + (z - pz) * (z - pz);
+    }
+}
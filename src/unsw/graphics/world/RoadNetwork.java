@@ -0,0 +1,292 @@
+package unsw.graphics.world;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.util.GLBuffers;
+
+import unsw.graphics.CoordFrame3D;
+import unsw.graphics.GLState;
+import unsw.graphics.Point2DBuffer;
+import unsw.graphics.Point3DBuffer;
+import unsw.graphics.Shader;
+import unsw.graphics.Vector3;
+import unsw.graphics.geometry.Point2D;
+import unsw.graphics.geometry.Point3D;
+
+/**
+ * All the roads of a terrain merged into one set of buffers.
+ *
+ * Every road is tessellated into the same vertex and index buffers so the
+ * whole network can be drawn with a single draw call. The range of vertices
+ * and indices belonging to each road is remembered, so a single road can be
+ * drawn on its own or re-tessellated in place after it has been edited.
+ *
+ * The network must be initialised before use.
+ */
+public class RoadNetwork {
+
+    private List<Road> roads;
+
+    /**
+     * The first vertex of each road in the vertex buffers.
+     */
+    private int[] firstVertex;
+
+    /**
+     * The first index of each road in the index buffer.
+     */
+    private int[] firstIndex;
+
+    private Point3DBuffer vertices;
+    private Point3DBuffer normals;
+    private Point2DBuffer texCoords;
+    private IntBuffer indices;
+
+    private int verticesName;
+    private int normalsName;
+    private int texCoordsName;
+    private int indicesName;
+
+    /**
+     * Create a network of the given roads.
+     *
+     * @param roads
+     */
+    public RoadNetwork(List<Road> roads) {
+        this.roads = roads;
+    }
+
+    /**
+     * Tessellate every road and copy the result to graphics memory.
+     *
+     * @param gl
+     */
+    public void init(GL3 gl) {
+        List<Point3D> vertexList = new ArrayList<Point3D>();
+        List<Vector3> normalList = new ArrayList<Vector3>();
+        List<Integer> indexList = new ArrayList<Integer>();
+        List<Point2D> texCoordList = new ArrayList<Point2D>();
+
+        firstVertex = new int[roads.size()];
+        firstIndex = new int[roads.size()];
+        for (int i = 0; i < roads.size(); i++) {
+            firstVertex[i] = vertexList.size();
+            firstIndex[i] = indexList.size();
+            roads.get(i).tessellate(vertexList, normalList, indexList, texCoordList);
+        }
+
+        vertices = new Point3DBuffer(vertexList);
+        normals = new Point3DBuffer(vertexList.size());
+        for (int i = 0; i < normalList.size(); i++)
+            normals.put(i, normalList.get(i).asPoint3D());
+        texCoords = new Point2DBuffer(texCoordList);
+        indices = GLBuffers.newDirectIntBuffer(indexList.size());
+        for (int i = 0; i < indexList.size(); i++)
+            indices.put(i, indexList.get(i));
+
+        int[] names = new int[4];
+        gl.glGenBuffers(4, names, 0);
+        verticesName = names[0];
+        normalsName = names[1];
+        texCoordsName = names[2];
+        indicesName = names[3];
+
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, verticesName);
+        gl.glBufferData(GL.GL_ARRAY_BUFFER, vertices.capacity() * 3 * Float.BYTES,
+                vertices.getBuffer(), GL.GL_STATIC_DRAW);
+
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, normalsName);
+        gl.glBufferData(GL.GL_ARRAY_BUFFER, normals.capacity() * 3 * Float.BYTES,
+                normals.getBuffer(), GL.GL_STATIC_DRAW);
+
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, texCoordsName);
+        gl.glBufferData(GL.GL_ARRAY_BUFFER, texCoords.capacity() * 2 * Float.BYTES,
+                texCoords.getBuffer(), GL.GL_STATIC_DRAW);
+
+        // The indices buffer binding belongs to the bound vertex array
+        GLState.bindDefaultVertexArray(gl);
+        GLState.bindBuffer(gl, GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
+        gl.glBufferData(GL.GL_ELEMENT_ARRAY_BUFFER, indices.capacity() * Integer.BYTES,
+                indices, GL.GL_STATIC_DRAW);
+    }
+
+    /**
+     * Re-tessellate the road at the given index after it has been edited and
+     * copy its new geometry over its old range in graphics memory.
+     *
+     * @param gl
+     * @param road
+     */
+    public void updateRoad(GL3 gl, int road) {
+        List<Point3D> vertexList = new ArrayList<Point3D>();
+        List<Vector3> normalList = new ArrayList<Vector3>();
+        List<Integer> indexList = new ArrayList<Integer>();
+        List<Point2D> texCoordList = new ArrayList<Point2D>();
+        roads.get(road).tessellate(vertexList, normalList, indexList, texCoordList);
+
+        if (vertexList.size() != vertexCount(road) || indexList.size() != indexCount(road))
+            throw new IllegalStateException("Road " + road + " no longer fits its range");
+
+        int base = firstVertex[road];
+        for (int i = 0; i < vertexList.size(); i++) {
+            vertices.put(base + i, vertexList.get(i));
+            normals.put(base + i, normalList.get(i).asPoint3D());
+            texCoords.put(base + i, texCoordList.get(i));
+        }
+        for (int i = 0; i < indexList.size(); i++)
+            indices.put(firstIndex[road] + i, base + indexList.get(i));
+
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, verticesName);
+        gl.glBufferSubData(GL.GL_ARRAY_BUFFER, base * 3L * Float.BYTES,
+                vertexList.size() * 3L * Float.BYTES, slice(vertices.getBuffer(), base * 3));
+
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, normalsName);
+        gl.glBufferSubData(GL.GL_ARRAY_BUFFER, base * 3L * Float.BYTES,
+                vertexList.size() * 3L * Float.BYTES, slice(normals.getBuffer(), base * 3));
+
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, texCoordsName);
+        gl.glBufferSubData(GL.GL_ARRAY_BUFFER, base * 2L * Float.BYTES,
+                vertexList.size() * 2L * Float.BYTES, slice(texCoords.getBuffer(), base * 2));
+
+        GLState.bindDefaultVertexArray(gl);
+        GLState.bindBuffer(gl, GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
+        gl.glBufferSubData(GL.GL_ELEMENT_ARRAY_BUFFER, firstIndex[road] * (long) Integer.BYTES,
+                indexList.size() * (long) Integer.BYTES, slice(indices, firstIndex[road]));
+    }
+
+    /**
+     * Draw every road with a single draw call.
+     *
+     * @param gl
+     * @param frame
+     */
+    public void draw(GL3 gl, CoordFrame3D frame) {
+        if (indices.capacity() == 0)
+            return;
+        drawRange(gl, frame, 0, indices.capacity());
+    }
+
+    /**
+     * Draw only the road at the given index.
+     *
+     * @param gl
+     * @param frame
+     * @param road
+     */
+    public void drawRoad(GL3 gl, CoordFrame3D frame, int road) {
+        drawRange(gl, frame, firstIndex[road], indexCount(road));
+    }
+
+    private void drawRange(GL3 gl, CoordFrame3D frame, int first, int count) {
+        GLState.bindDefaultVertexArray(gl);
+        GLState.bindBuffer(gl, GL.GL_ELEMENT_ARRAY_BUFFER, indicesName);
+
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, verticesName);
+        gl.glVertexAttribPointer(Shader.POSITION, 3, GL.GL_FLOAT, false, 0, 0);
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, normalsName);
+        gl.glVertexAttribPointer(Shader.NORMAL, 3, GL.GL_FLOAT, false, 0, 0);
+        GLState.bindBuffer(gl, GL.GL_ARRAY_BUFFER, texCoordsName);
+        gl.glVertexAttribPointer(Shader.TEX_COORD, 2, GL.GL_FLOAT, false, 0, 0);
+
+        Shader.setModelMatrix(gl, frame.getMatrix());
+
+        // Enable polygon offset to avoid Z-Fighting of Road and Terrain
+        GLState.enable(gl, GL3.GL_POLYGON_OFFSET_FILL);
+        GLState.polygonOffset(gl, -1,-1);
+
+        gl.glDrawElements(GL3.GL_TRIANGLES, count, GL.GL_UNSIGNED_INT,
+                (long) first * Integer.BYTES);
+
+        // Disable polygon offset
+        GLState.disable(gl, GL3.GL_POLYGON_OFFSET_FILL);
+    }
+
+    /**
+     * The first vertex of the given road in the shared vertex buffers.
+     *
+     * @param road
+     * @return
+     */
+    public int firstVertex(int road) {
+        return firstVertex[road];
+    }
+
+    /**
+     * The number of vertices belonging to the given road.
+     *
+     * @param road
+     * @return
+     */
+    public int vertexCount(int road) {
+        int end = road + 1 < firstVertex.length ? firstVertex[road + 1] : vertices.capacity();
+        return end - firstVertex[road];
+    }
+
+    /**
+     * The first index of the given road in the shared index buffer.
+     *
+     * @param road
+     * @return
+     */
+    public int firstIndex(int road) {
+        return firstIndex[road];
+    }
+
+    /**
+     * The number of indices belonging to the given road.
+     *
+     * @param road
+     * @return
+     */
+    public int indexCount(int road) {
+        int end = road + 1 < firstIndex.length ? firstIndex[road + 1] : indices.capacity();
+        return end - firstIndex[road];
+    }
+
+    /**
+     * Get the road at the given index.
+     *
+     * @param road
+     * @return
+     */
+    public Road getRoad(int road) {
+        return roads.get(road);
+    }
+
+    /**
+     * The number of roads in the network.
+     *
+     * @return
+     */
+    public int size() {
+        return roads.size();
+    }
+
+    public void destroy(GL3 gl) {
+        GLState.deleteBuffers(gl, 4, new int[] { verticesName, normalsName, texCoordsName, indicesName }, 0);
+    }
+
+    /**
+     * A view of the given buffer starting at the given element.
+     */
+    private static FloatBuffer slice(Buffer buffer, int offset) {
+        FloatBuffer view = ((FloatBuffer) buffer).duplicate();
+        view.position(offset);
+        return view.slice();
+    }
+
+    /**
+     * A view of the given buffer starting at the given element.
+     */
+    private static IntBuffer slice(IntBuffer buffer, int offset) {
+        IntBuffer view = buffer.duplicate();
+        view.position(offset);
+        return view.slice();
+    }
+}
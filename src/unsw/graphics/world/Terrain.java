@@ -6,10 +6,12 @@ import java.util.Arrays;
 import java.util.List;
 
 import com.jogamp.opengl.GL3;
+import unsw.graphics.AssetLoader;
 import unsw.graphics.CoordFrame3D;
 import unsw.graphics.Vector3;
 import unsw.graphics.geometry.Point2D;
 import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.StaticBatch;
 import unsw.graphics.geometry.TriangleMesh;
 
 
@@ -22,11 +24,20 @@ public class Terrain {
 
     private int width;
     private int depth;
-    private float[][] altitudes;
+    // Grid altitudes, row by row in x, so (x, z) is at x * depth + z
+    private float[] altitudes;
     private List<Tree> trees;
     private List<Road> roads;
     private Vector3 sunlight;
     private TriangleMesh terrainMesh;
+    private RoadNetwork roadNetwork;
+    private RoadIndex roadIndex;
+    private TriangleMesh placeholder;
+    // Every tree, merged once they are all loaded, and the parts to draw
+    private StaticBatch treeBatch;
+    private int[] treeParts;
+    // The half thickness of the slab drawn while the terrain is loading
+    private static final float PLACEHOLDER_THICKNESS = 0.01f;
 
     /**
      * Create a new terrain
@@ -37,7 +48,7 @@ public class Terrain {
     public Terrain(int width, int depth, Vector3 sunlight) {
         this.width = width;
         this.depth = depth;
-        altitudes = new float[width][depth];
+        altitudes = new float[width * depth];
         trees = new ArrayList<Tree>();
         roads = new ArrayList<Road>();
         this.sunlight = sunlight;
@@ -76,7 +87,7 @@ public class Terrain {
      * @return
      */
     public double getGridAltitude(int x, int z) {
-        return altitudes[x][z];
+        return altitudes[x * depth + z];
     }
 
     /**
@@ -87,7 +98,7 @@ public class Terrain {
      * @return
      */
     public void setGridAltitude(int x, int z, float h) {
-        altitudes[x][z] = h;
+        altitudes[x * depth + z] = h;
     }
 
     /**
@@ -144,6 +155,55 @@ public class Terrain {
         return altitude;
     }
 
+    /**
+     * Get the altitudes at many arbitrary points at once. This gives the same
+     * results as altitude(), but allocates nothing, and points outside of the
+     * terrain are clamped to its edge.
+     * 
+     * @param xs The x coordinates of the points
+     * @param zs The z coordinates of the points
+     * @param out The altitude of each point is written here
+     * @param count The number of points
+     */
+    public void altitudes(float[] xs, float[] zs, float[] out, int count) {
+        float[] heights = altitudes;
+        int depth = this.depth;
+        float maxX = width - 1;
+        float maxZ = depth - 1;
+        // Step to the next grid point in x and in z, or 0 on the last edge
+        int lastX = width - 1;
+        int lastZ = depth - 1;
+
+        // Both triangles of the grid square are evaluated and one is picked
+        // arithmetically, so there is no hard to predict branch
+        for (int i = 0; i < count; i++) {
+            // Math.min and max on floats are slow as they handle NaN and -0
+            float x = xs[i];
+            float z = zs[i];
+            x = x < 0 ? 0 : x > maxX ? maxX : x;
+            z = z < 0 ? 0 : z > maxZ ? maxZ : z;
+            int lowerX = (int) x;
+            int lowerZ = (int) z;
+            float fx = x - lowerX;
+            float fz = z - lowerZ;
+            int stepX = lowerX < lastX ? depth : 0;
+            int stepZ = lowerZ < lastZ ? 1 : 0;
+
+            int i00 = lowerX * depth + lowerZ;
+            float h00 = heights[i00];
+            float h10 = heights[i00 + stepX];
+            float h01 = heights[i00 + stepZ];
+            float h11 = heights[i00 + stepX + stepZ];
+
+            // Each grid square is split along the diagonal from (x+1, z) to
+            // (x, z+1)
+            float lower = h00 + (h10 - h00) * fx + (h01 - h00) * fz;
+            float upper = h11 + (h01 - h11) * (1 - fx) + (h10 - h11) * (1 - fz);
+            float pick = (int) (fx + fz); // 0 in the lower triangle, else 1
+            out[i] = lower + (upper - lower) * pick;
+        }
+    }
+
     /**
      * Add a tree at the specified (x,z) point. 
      * The tree's y coordinate is calculated from the altitude of the terrain at that point.
@@ -159,14 +219,29 @@ public class Terrain {
 
 
     /**
-     * Add a road. 
+     * Add a road. This takes the same lock as getRoadIndex(), so the index
+     * is never built from a list that is being changed.
      * 
      * @param x
      * @param z
      */
-    public void addRoad(float width, List<Point2D> spine) {
+    public synchronized void addRoad(float width, List<Point2D> spine) {
         Road road = new Road(width, spine, this);
-        roads.add(road);        
+        roads.add(road);
+        roadIndex = null;
+    }
+
+    /**
+     * Get an index for finding the nearest road to a point. It is built the
+     * first time it is asked for after a road is added, and can then be
+     * queried from any thread.
+     *
+     * @return RoadIndex
+     */
+    public synchronized RoadIndex getRoadIndex() {
+        if (roadIndex == null)
+            roadIndex = new RoadIndex(roads);
+        return roadIndex;
     }
 
     /**
@@ -238,6 +313,47 @@ public class Terrain {
      * @param gl
      */
     public void makeTerrain(GL3 gl) {
+        terrainMesh = buildMesh();
+
+        // Initialise terrain
+        terrainMesh.init(gl);
+
+        // Initialise trees
+        for (Tree tree : trees)
+            tree.init(gl);
+        batchTrees(gl);
+
+        // Initialise all roads in one shared set of buffers
+        roadNetwork = new RoadNetwork(roads);
+        roadNetwork.init(gl);
+    }
+
+    /**
+     * Start generating the terrain, trees and roads in the background. A flat
+     * placeholder is drawn for the terrain and for each tree until they are
+     * ready, and the roads appear once they are ready.
+     * @param loader
+     * @param placeholder - A cube from -1 to 1
+     */
+    public void makeTerrain(AssetLoader loader, TriangleMesh placeholder) {
+        this.placeholder = placeholder;
+        loader.load(this::buildMesh, (gl, mesh) -> {
+            mesh.init(gl);
+            return terrainMesh = mesh;
+        });
+        for (Tree tree : trees)
+            tree.init(loader, placeholder);
+        loader.load(() -> new RoadNetwork(roads), (gl, network) -> {
+            network.init(gl);
+            return roadNetwork = network;
+        });
+    }
+
+    /**
+     * Build the triangle mesh of the terrain, without initialising it
+     * @return TriangleMesh
+     */
+    private TriangleMesh buildMesh() {
         List<Point3D> points = new ArrayList<>();
         List<Integer> indices = new ArrayList<>();
         List<Point2D> texCoords = new ArrayList<Point2D>();
@@ -285,18 +401,7 @@ public class Terrain {
             }
         }
         
-        terrainMesh = new TriangleMesh(points, indices, true, texCoords);
-
-        // Initialise terrain
-        terrainMesh.init(gl);
-
-        // Initialise trees
-        for (Tree tree : trees)
-            tree.init(gl);
-
-        // Initialise roads
-        for (Road road : roads)
-            road.init(gl);
+        return new TriangleMesh(points, indices, true, texCoords);
     }
 
     /**
@@ -305,7 +410,13 @@ public class Terrain {
      * @param frame
      */
     public void drawTerrain(GL3 gl, CoordFrame3D frame) {
-        terrainMesh.draw(gl, frame);
+        if (terrainMesh != null) {
+            terrainMesh.draw(gl, frame);
+        } else if (placeholder != null) {
+            float halfWidth = (width - 1) / 2f, halfDepth = (depth - 1) / 2f;
+            placeholder.draw(gl, frame.translate(halfWidth, 0, halfDepth)
+                    .scale(halfWidth, PLACEHOLDER_THICKNESS, halfDepth));
+        }
     }
 
     /**
@@ -314,8 +425,59 @@ public class Terrain {
      * @param frame
      */
     public void drawTrees(GL3 gl, CoordFrame3D frame) {
-        for (Tree tree: trees)
-            tree.draw(gl, frame);
+        if (treeBatch == null && allTreesLoaded())
+            batchTrees(gl);
+        if (treeBatch == null) {
+            for (Tree tree: trees)
+                tree.draw(gl, frame);
+            return;
+        }
+
+        // One draw call for every tree in view, each at its level of detail
+        int count = 0;
+        for (Tree tree : trees) {
+            int part = tree.batchPart(frame);
+            if (part >= 0)
+                treeParts[count++] = part;
+        }
+        treeBatch.draw(gl, frame, treeParts, count);
+    }
+
+    private boolean allTreesLoaded() {
+        if (trees.isEmpty())
+            return false;
+        for (Tree tree : trees)
+            if (!tree.isLoaded())
+                return false;
+        return true;
+    }
+
+    /**
+     * Merge every tree into one batch, if they are all loaded
+     * @param gl
+     */
+    private void batchTrees(GL3 gl) {
+        if (!allTreesLoaded())
+            return;
+        StaticBatch.Builder builder = new StaticBatch.Builder();
+        for (Tree tree : trees)
+            tree.addTo(builder);
+        treeBatch = builder.build();
+        treeBatch.init(gl);
+        treeParts = new int[trees.size()];
+    }
+
+    /**
+     * Whether a sphere touches any tree
+     * @param centre - The centre of the sphere, in Terrain's frame
+     * @param radius - The radius of the sphere
+     * @return
+     */
+    public boolean treeCollides(Point3D centre, float radius) {
+        for (Tree tree : trees)
+            if (tree.collides(centre, radius))
+                return true;
+        return false;
     }
 
     /**
@@ -324,8 +486,16 @@ public class Terrain {
      * @param frame
      */
     public void drawRoads(GL3 gl, CoordFrame3D frame) {
-        for (Road road: roads)
-            road.draw(gl, frame);
+        if (roadNetwork != null)
+            roadNetwork.draw(gl, frame);
+    }
+
+    /**
+     * Get the merged buffers holding all roads
+     * @return RoadNetwork, or null while it is loading
+     */
+    public RoadNetwork getRoadNetwork() {
+        return roadNetwork;
     }
 
 
@@ -334,7 +504,8 @@ public class Terrain {
      * @param gl
      */
     public void destroyTerrain(GL3 gl) {
-        terrainMesh.destroy(gl);
+        if (terrainMesh != null)
+            terrainMesh.destroy(gl);
     }
 
     /**
@@ -342,17 +513,19 @@ public class Terrain {
      * @param gl
      */
     public void destroyTrees(GL3 gl) {
-        for (Tree tree: trees)
-            tree.destroy(gl);
+        if (treeBatch != null)
+            treeBatch.destroy(gl);
+        treeBatch = null;
+        Tree.destroyModel(gl);
     }
 
     /**
-     * Destroy all Tree objects
+     * Destroy all Road objects
      * @param gl
      */
     public void destroyRoads(GL3 gl) {
-        for (Road road: roads)
-            road.destroy(gl);
+        if (roadNetwork != null)
+            roadNetwork.destroy(gl);
     }
 
     /**
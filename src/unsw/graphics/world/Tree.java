@@ -1,9 +1,13 @@
 package unsw.graphics.world;
 
 import com.jogamp.opengl.GL3;
+import unsw.graphics.AssetLoader;
 import unsw.graphics.CoordFrame3D;
+import unsw.graphics.geometry.LODGroup;
 import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.StaticBatch;
 import unsw.graphics.geometry.TriangleMesh;
+import unsw.graphics.geometry.ViewFrustum;
 
 import java.io.IOException;
 
@@ -14,11 +18,22 @@ import java.io.IOException;
  */
 public class Tree {
 
-    private TriangleMesh tree;
+    // The meshes and BVHs every tree is drawn with, made once and shared
+    private static LODGroup model;
+    private static boolean loading;
+    // The level of detail this tree was last drawn at
+    private LODGroup.Instance tree;
     private static final float MODEL_SCALE_FACTOR = 0.2f;
     private static final float MODEL_ALTITUDE_OFFSET = 0.9f;
     private static final float MODEL_Z_OFFSET = 0.125f;
+    // The screen sizes the tree switches to simpler meshes at
+    private static final float[] LOD_SCREEN_SIZES = { 0.3f, 0.15f, 0.075f };
+    // The placeholder is a box about the size of the tree
+    private static final float PLACEHOLDER_WIDTH = 0.5f;
     private Point3D position;
+    private TriangleMesh placeholder;
+    // The parts of the batch holding each level of detail, once batched
+    private int[] batchParts;
 
     /**
      * Create a new Tree
@@ -33,33 +48,120 @@ public class Tree {
     }
 
     /**
-     * Generate tree
+     * Generate tree, or share the model with the trees already generated
      * @param gl
      */
     public void init(GL3 gl) {
         try {
-            // Initialise tree model
-            tree = new TriangleMesh("res/models/tree.ply", true, true);
-            tree.init(gl);
+            if (model == null) {
+                model = loadModel();
+                model.init(gl);
+            }
+            tree = new LODGroup.Instance(model);
 
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Start generating the tree in the background, drawing the placeholder
+     * until it is ready. The model is only generated once, for the first
+     * tree, and the rest wait for it.
+     * @param loader
+     * @param placeholder - A cube from -1 to 1
+     */
+    public void init(AssetLoader loader, TriangleMesh placeholder) {
+        this.placeholder = placeholder;
+        tree = null;
+        if (model != null || loading)
+            return;
+        loading = true;
+        loader.load(Tree::loadModel, (gl, loaded) -> {
+            loaded.init(gl);
+            loading = false;
+            return model = loaded;
+        });
+    }
+
+    /**
+     * Load tree model, and simpler versions of it for when it is far away
+     */
+    private static LODGroup loadModel() throws IOException {
+        return new LODGroup(new TriangleMesh("res/models/tree.ply", true, true, true),
+                LOD_SCREEN_SIZES);
+    }
+
     /**
      *
      * @param gl
      * @param frame
      */
     public void draw(GL3 gl, CoordFrame3D frame) {
-        // Create new tree's frame, extending from Terrain's frame
-        CoordFrame3D treeFrame = frame
+        // Draw the tree's meshes
+        if (isLoaded())
+            tree.drawIfVisible(gl, modelFrame(frame));
+        else if (placeholder != null)
+            placeholder.drawIfVisible(gl, frame.translate(position)
+                    .scale(PLACEHOLDER_WIDTH, MODEL_ALTITUDE_OFFSET, PLACEHOLDER_WIDTH));
+    }
+
+    /**
+     * Whether the tree's model has been generated
+     * @return
+     */
+    public boolean isLoaded() {
+        if (tree == null && model != null)
+            tree = new LODGroup.Instance(model);
+        return tree != null;
+    }
+
+    /**
+     * Add each level of detail of the tree to a batch, in Terrain's frame,
+     * so it can be drawn with other trees in one call. The tree must be
+     * loaded.
+     * @param batch
+     */
+    public void addTo(StaticBatch.Builder batch) {
+        LODGroup group = tree.getGroup();
+        batchParts = new int[group.getLevelCount()];
+        for (int level = 0; level < batchParts.length; level++)
+            batchParts[level] = batch.add(group.getMesh(level),
+                    modelFrame(CoordFrame3D.identity()));
+    }
+
+    /**
+     * Choose the part of the batch to draw the tree with, the level of detail
+     * for its size on screen, as draw() would
+     * @param frame - Terrain's frame
+     * @return The part, or -1 if the tree is out of view
+     */
+    public int batchPart(CoordFrame3D frame) {
+        CoordFrame3D model = modelFrame(frame);
+        if (!ViewFrustum.isVisible(model, tree.getGroup().getBounds()))
+            return -1;
+        return batchParts[tree.select(tree.getGroup().screenSize(model))];
+    }
+
+    /**
+     * Whether a sphere touches the surface of the most detailed tree mesh.
+     * Nothing touches a tree that is still loading.
+     * @param centre - The centre of the sphere, in Terrain's frame
+     * @param radius - The radius of the sphere
+     * @return
+     */
+    public boolean collides(Point3D centre, float radius) {
+        return isLoaded() && tree.getGroup().getMesh(0).getBVH().intersectsSphere(centre, radius,
+                modelFrame(CoordFrame3D.identity()));
+    }
+
+    /**
+     * Create new tree's frame, extending from Terrain's frame
+     */
+    private CoordFrame3D modelFrame(CoordFrame3D frame) {
+        return frame
                 .translate(position)
                 .scale(MODEL_SCALE_FACTOR, MODEL_SCALE_FACTOR, MODEL_SCALE_FACTOR);
-
-        // Draw the tree's meshes
-        tree.draw(gl, treeFrame);
     }
 
     /**
@@ -71,11 +173,15 @@ public class Tree {
     }
 
     /**
-     * Destroy tree object
+     * Destroy the model shared by every tree. Trees initialised after this
+     * generate it again.
      * @param gl
      */
-    public void destroy(GL3 gl) {
-        tree.destroy(gl);
+    public static void destroyModel(GL3 gl) {
+        if (model != null)
+            model.destroy(gl);
+        model = null;
+        loading = false;
     }
 
 }
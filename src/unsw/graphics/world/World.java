@@ -3,15 +3,20 @@ package unsw.graphics.world;
 import java.awt.*;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
 
 import com.jogamp.newt.event.KeyEvent;
 import com.jogamp.newt.event.KeyListener;
 import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.util.GLBuffers;
 
 import unsw.graphics.*;
 import unsw.graphics.geometry.Point2D;
 import unsw.graphics.geometry.Point3D;
+import unsw.graphics.geometry.TriangleMesh;
+import unsw.graphics.geometry.ViewFrustum;
 import unsw.graphics.scene.MathUtil;
 
 
@@ -31,6 +36,7 @@ public class World extends Application3D implements KeyListener {
 
     private final float ROTATION_SCALE = 2f;
     private final float TRANSLATION_SCALE = 0.2f;
+    private final float AVATAR_RADIUS = 0.3f; // how close the avatar can get to a tree
 
     private final float CAMERA_UP = 0.75f;
     private final float CAMERA_BACK = 5f;
@@ -47,6 +53,17 @@ public class World extends Application3D implements KeyListener {
     private final float G_SCALE = 200;
     private final float B_SCALE = 250;
 
+    private final int RAIN_DENSITY = 200; // raindrops per unit of ground area
+    private final int SNOW_DENSITY = 50; // snowflakes per unit of ground area
+
+    // Rain and snow fall in a box this wide and high around the camera
+    private final float WEATHER_RADIUS = 10f;
+    private final float WEATHER_HEIGHT = 10f;
+    private final int SPLASH_DROPLETS = 3; // droplets per raindrop hitting the ground
+    private final int CANNON_SHOT = 200; // particles per cannon shot
+    private final float CANNON_SPEED = 8f;
+    private final long UPLOAD_BUDGET = 2000000; // nanoseconds of asset uploads per frame
+
     private float cameraX = 0;
     private float cameraY = MINIMUM_ALTITUDE;
     private float cameraZ = 0;
@@ -59,10 +76,15 @@ public class World extends Application3D implements KeyListener {
     private float lineOfSightX = 1;
     private float lineOfSightZ = 0;
 
-    private Texture terrainTexture;
-    private Texture treeTexture;
-    private Texture avatarTexture;
-    private Texture roadTexture;
+    // Textures and models are loaded in the background, with placeholders
+    // drawn until they are ready
+    private AssetLoader loader;
+    private AssetLoader.Asset<Texture> terrainTexture;
+    private AssetLoader.Asset<Texture> treeTexture;
+    private AssetLoader.Asset<Texture> avatarTexture;
+    private AssetLoader.Asset<Texture> roadTexture;
+    private Texture placeholderTexture;
+    private TriangleMesh placeholder;
 
     private boolean avatarView; //False == Third person view
     private boolean nightTime;
@@ -73,7 +95,22 @@ public class World extends Application3D implements KeyListener {
     private Color diffuseCoeff = new Color(0.8f, 0.8f, 0.8f);
     private Color specularCoeff = new Color(0.2f, 0.2f, 0.2f);
 
-    private ParticleSystem rain;
+    private Shader shader;
+    private FrameConstants frameConstants = new FrameConstants();
+    private Matrix4 projMatrix = Matrix4.identity();
+
+    private ParticleSystem particles;
+    private Emitter rain;
+    private Emitter snow;
+    private Emitter cannon;
+    private Emitter smoke;
+    private boolean isSnowing;
+    // Created the first time rain is simulated on the GPU
+    private GPUParticleSystem gpuRain;
+    private boolean gpuParticles = false;
+    private int raindrops;
+    // Print how much the next frame culled and drew once it is done
+    private boolean printCounts;
     private Point3D initialSunPosition;
     private Point3D sunPosition;
     private float sunRadius;
@@ -88,7 +125,26 @@ public class World extends Application3D implements KeyListener {
         this.avatarView = false;
         this.nightTime = false;
         this.isRaining = false;
-        this.rain = new ParticleSystem(terrain.getWidth(), terrain.getDepth());
+        float weatherArea = 4 * WEATHER_RADIUS * WEATHER_RADIUS;
+        this.raindrops = (int) (weatherArea * RAIN_DENSITY);
+        int snowflakes = (int) (weatherArea * SNOW_DENSITY);
+
+        // Room for rain and its splashes, shared with the other effects
+        this.particles = new ParticleSystem(terrain,
+                Math.min(ParticleSystem.MAX_PARTICLES, raindrops * 2 + snowflakes));
+        this.rain = ParticleEffects.rain(raindrops, WEATHER_RADIUS, WEATHER_HEIGHT);
+        this.rain.setEnabled(false);
+        Emitter splash = ParticleEffects.splash();
+        this.rain.setImpact(splash, SPLASH_DROPLETS);
+        this.snow = ParticleEffects.snow(snowflakes, WEATHER_RADIUS, WEATHER_HEIGHT);
+        this.snow.setEnabled(false);
+        this.cannon = ParticleEffects.cannon();
+        this.smoke = ParticleEffects.smoke();
+        particles.addEmitter(rain);
+        particles.addEmitter(splash);
+        particles.addEmitter(snow);
+        particles.addEmitter(cannon);
+        particles.addEmitter(smoke);
 
         cameraY += (float) terrain.getGridAltitude(0, 0);
     }
@@ -107,11 +163,32 @@ public class World extends Application3D implements KeyListener {
 
     @Override
     public void init(GL3 gl) {
+        // Load linked shaders from disk rather than compiling them each launch
+        Shader.setCache(ShaderCache.inTempDirectory());
         super.init(gl);
         getWindow().addKeyListener(this);
-        terrain.makeTerrain(gl);
-        avatar.init(gl);
-        rain.init(gl);
+
+        // Start loading the textures and models, with a grey cube to draw
+        // in their place until they are ready
+        loader = new AssetLoader();
+        byte grey = (byte) 160;
+        placeholderTexture = new Texture(gl,
+                GLBuffers.newDirectByteBuffer(new byte[] { grey, grey, grey, (byte) 255 }), 1, false);
+        try {
+            placeholder = new TriangleMesh("res/models/cube.ply", true, false);
+            placeholder.init(gl);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        terrain.makeTerrain(loader, placeholder);
+        avatar.init(loader, placeholder);
+        terrainTexture = loader.loadTexture("res/textures/grass.jpg", true);
+        treeTexture = loader.loadTexture("res/textures/tree.bmp", true);
+        avatarTexture = loader.loadTexture("res/textures/bunny.jpg", true);
+        roadTexture = loader.loadTexture("res/textures/road.jpg", true);
+
+        particles.init(gl);
+        particles.start();
 
         sunPosition = terrain.getSunlight().asPoint3D();
         initialSunPosition = terrain.getSunlight().asPoint3D();
@@ -121,28 +198,30 @@ public class World extends Application3D implements KeyListener {
         double z = sunPosition.getZ();
         sunRadius = (float) Math.sqrt(x*x + y*y + z*z);
 
-        // Initialise textures
-        terrainTexture = new Texture(gl, "res/textures/grass.jpg", "jpg", true);
-        treeTexture = new Texture(gl, "res/textures/tree.bmp", "bmp", true);
-        avatarTexture = new Texture(gl, "res/textures/bunny.jpg", "jpg", true);
-        roadTexture = new Texture(gl, "res/textures/road.jpg", "jpg", true);
-
         // Initialise shader
-        Shader shader = new Shader(gl, "shaders/vertex_tex_phong_world.glsl",
+        shader = new Shader(gl, "shaders/vertex_tex_phong_world.glsl",
                 "shaders/fragment_tex_phong_world.glsl");
         shader.use(gl);
 
+        // Light, torch and camera shared by every shader
+        frameConstants.init(gl);
+        frameConstants.setTorch(new Point3D(0, 0, 0), new Point3D(0, 0, -1));
+        frameConstants.setTorchCoeffs(new Color(0.8f, 0.8f, 0.8f), new Color(0.5f, 0.5f, 0.5f));
+        frameConstants.setTorchBeam(12.5f, 128f);
+        frameConstants.setTorchAttenuation(1f, 0.008f, 0.005f);
+
     }
 
 	@Override
 	public void display(GL3 gl) {
+		GLState.resetCounts();
 		super.display(gl);
 
-        // Set wrap mode for texture in S direction
-        gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_S, GL.GL_REPEAT);
+        // Upload what has loaded since the last frame, a little at a time
+        loader.upload(gl, UPLOAD_BUDGET);
 
-        // Set wrap mode for texture in T direction
-        gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_T, GL3.GL_REPEAT);
+        // Textures repeat in both directions, which is OpenGL's default, so
+        // the wrap modes are not set
 
         // Set the lighting properties
         if (dayNightMode) {
@@ -163,9 +242,12 @@ public class World extends Application3D implements KeyListener {
             }
         }
 
-        Shader.setPoint3D(gl, "lightPos", sunPosition);
-        Shader.setColor(gl, "lightIntensity", Color.white);
-        Shader.setColor(gl, "ambientIntensity", ambientIntesity);
+        // Set the lighting for every shader
+        frameConstants.setLight(sunPosition, Color.white);
+        frameConstants.setAmbientIntensity(ambientIntesity);
+        frameConstants.setTorchEnabled(nightTime);
+        if (nightTime)
+            frameConstants.setTorch(new Point3D(cameraX, cameraY, cameraZ), new Point3D(0, 0, -1));
 
         // Set the material properties
         Shader.setColor(gl, "ambientCoeff", Color.WHITE);
@@ -173,20 +255,9 @@ public class World extends Application3D implements KeyListener {
         Shader.setColor(gl, "specularCoeff", specularCoeff);
         Shader.setFloat(gl, "phongExp", 16f);
 
-        if (nightTime) {
-            Shader.setInt(gl, "torchEnabled", 1);
-            Shader.setPoint3D(gl, "torchLightDirection", new Point3D(0, 0, -1));
-            Shader.setColor(gl, "torchDiffuseCoeff", new Color(0.8f, 0.8f, 0.8f));
-            Shader.setColor(gl, "torchSpecularCoeff", new Color(0.5f, 0.5f, 0.5f));
-            Shader.setPoint3D(gl, "cameraPos", new Point3D(cameraX, cameraY, cameraZ));
-            Shader.setFloat(gl, "cutoff", 12.5f);
-            Shader.setFloat(gl, "attenuationExp", 128f);
-            Shader.setFloat(gl, "constant", 1f);
-            Shader.setFloat(gl, "linear", 0.008f);
-            Shader.setFloat(gl, "quadratic", 0.005f);
-        } else {
-            Shader.setInt(gl, "torchEnabled", 0);
-        }
+        // Every texture is drawn untinted from unit 0
+        Shader.setPenColor(gl, Color.WHITE);
+        Shader.setInt(gl, "tex", 0);
 
         // Camera
         CoordFrame3D view;
@@ -197,7 +268,10 @@ public class World extends Application3D implements KeyListener {
                     .rotateY(cameraRotationY).translate(-cameraX, -cameraY, -cameraZ);
         }
 
-        Shader.setViewMatrix(gl, view.getMatrix());
+        frameConstants.setViewMatrix(view.getMatrix());
+        frameConstants.upload(gl);
+        ViewFrustum.setCamera(view.getMatrix(), projMatrix);
+        ViewFrustum.resetCounts();
 
         // Terrain coordinate frame
         CoordFrame3D frame = CoordFrame3D.identity().translate(terrainTranslation).rotateY(terrainRotationY)
@@ -219,8 +293,26 @@ public class World extends Application3D implements KeyListener {
         useTexture(gl, roadTexture);
         terrain.drawRoads(gl, frame);
 
-        if (isRaining) {
-            rain.draw(gl, frame);
+        Point3D cameraPosition = getCameraPositionInTerrain();
+        particles.setViewer(cameraPosition.getX(), cameraPosition.getY(), cameraPosition.getZ());
+        particles.draw(gl, frame);
+        if (gpuParticles && gpuRain == null) {
+            // The same rain as on the CPU, in the same box around the viewer
+            gpuRain = new GPUParticleSystem(WEATHER_RADIUS, WEATHER_HEIGHT, raindrops);
+            gpuRain.setViewer(cameraPosition.getX(), cameraPosition.getY(), cameraPosition.getZ());
+            gpuRain.init(gl);
+        }
+        if (isRaining && gpuParticles) {
+            gpuRain.setViewer(cameraPosition.getX(), cameraPosition.getY(), cameraPosition.getZ());
+            gpuRain.draw(gl, frame);
+        }
+        shader.use(gl);
+
+        if (printCounts) {
+            printCounts = false;
+            System.out.println("Meshes drawn: " + ViewFrustum.getDrawnMeshes() + ", culled: "
+                    + ViewFrustum.getCulledMeshes() + ", state changes made: "
+                    + GLState.getIssuedCalls() + ", avoided: " + GLState.getAvoidedCalls());
         }
 	}
 
@@ -270,50 +362,54 @@ public class World extends Application3D implements KeyListener {
     @Override
 	public void destroy(GL3 gl) {
 		super.destroy(gl);
-		rain.destroy(gl);
+		loader.shutdown();
+		particles.destroy(gl);
+		if (gpuRain != null)
+			gpuRain.destroy(gl);
 		avatar.destroy(gl);
 		terrain.destroyRoads(gl);
         terrain.destroyTrees(gl);
         terrain.destroyTerrain(gl);
-		terrainTexture.destroy(gl);
-		treeTexture.destroy(gl);
-		roadTexture.destroy(gl);
+		for (AssetLoader.Asset<Texture> texture : Arrays.asList(terrainTexture, treeTexture,
+		        avatarTexture, roadTexture))
+		    if (texture.isReady())
+		        texture.get().destroy(gl);
+		placeholderTexture.destroy(gl);
+		if (placeholder != null)
+		    placeholder.destroy(gl);
+		shader.destroy(gl);
+		frameConstants.destroy(gl);
 	}
 
     /**
      * Change which texture to use for rendering from now onwards
      * @param gl
-     * @param texture - New texture to use
+     * @param texture - New texture to use, or the placeholder while it is loading
      */
-    private void useTexture(GL3 gl, Texture texture) {
-        Shader.setPenColor(gl, Color.WHITE);
-        Shader.setInt(gl, "tex", 0);
-        gl.glActiveTexture(GL.GL_TEXTURE0);
-        gl.glBindTexture(GL.GL_TEXTURE_2D, texture.getId());
+    private void useTexture(GL3 gl, AssetLoader.Asset<Texture> texture) {
+        GLState.activeTexture(gl, GL.GL_TEXTURE0);
+        GLState.bindTexture(gl, GL.GL_TEXTURE_2D, texture.getOr(placeholderTexture).getId());
     }
 
 	@Override
 	public void reshape(GL3 gl, int width, int height) {
         super.reshape(gl, width, height);
-        Shader.setProjMatrix(gl, Matrix4.perspective(60, width/(float)height, 0.01f, 100));
+        projMatrix = Matrix4.perspective(60, width/(float)height, 0.01f, 100);
+        frameConstants.setProjMatrix(projMatrix);
 	}
 
     @Override
     public void keyPressed(KeyEvent keyEvent) {
         switch (keyEvent.getKeyCode()) {
             case KeyEvent.VK_UP:
-                // move camera's position up
-                cameraX += lineOfSightX * TRANSLATION_SCALE;
-                cameraZ += lineOfSightZ * TRANSLATION_SCALE;
-                updateCameraAltitude();
+                // move camera's position up, unless the avatar would walk into a tree
+                move(TRANSLATION_SCALE);
                 // set avatar's position to camera's position
                 avatar.updatePosition(cameraX, cameraY - MINIMUM_ALTITUDE, cameraZ);
                 break;
             case KeyEvent.VK_DOWN:
-                // move camera's position down
-                cameraX -= lineOfSightX * TRANSLATION_SCALE;
-                cameraZ -= lineOfSightZ * TRANSLATION_SCALE;
-                updateCameraAltitude();
+                // move camera's position down, unless the avatar would walk into a tree
+                move(-TRANSLATION_SCALE);
                 // set avatar's position to camera's position
                 avatar.updatePosition(cameraX, cameraY - MINIMUM_ALTITUDE, cameraZ);
                 break;
@@ -346,6 +442,7 @@ public class World extends Application3D implements KeyListener {
                 break;
             case KeyEvent.VK_R:
                 isRaining = !isRaining;
+                rain.setEnabled(isRaining && !gpuParticles);
                 if (!nightTime) {
                     if (isRaining) {
                         diffuseCoeff = new Color(0.7f, 0.7f, 0.7f);
@@ -354,6 +451,21 @@ public class World extends Application3D implements KeyListener {
                     }
                 }
                 break;
+            case KeyEvent.VK_G:
+                // Switch between simulating rain on the CPU and the GPU
+                gpuParticles = !gpuParticles;
+                rain.setEnabled(isRaining && !gpuParticles);
+                break;
+            case KeyEvent.VK_S:
+                isSnowing = !isSnowing;
+                snow.setEnabled(isSnowing);
+                break;
+            case KeyEvent.VK_C:
+                fireCannon();
+                break;
+            case KeyEvent.VK_F:
+                printCounts = true;
+                break;
             case KeyEvent.VK_SPACE:
                 dayNightMode = !dayNightMode;
 
@@ -367,6 +479,53 @@ public class World extends Application3D implements KeyListener {
 
     }
 
+    /**
+     * Fire a cannon shot, with a puff of smoke, from the avatar along the
+     * line of sight
+     */
+    private void fireCannon() {
+        Point3D muzzle = getCameraPositionInTerrain();
+        Vector3 aim = getTerrainInverseModelMatrix()
+                .multiply(new Vector3(lineOfSightX, 0, lineOfSightZ).extend()).trim().normalize();
+
+        cannon.setPosition(muzzle.getX(), muzzle.getY(), muzzle.getZ());
+        cannon.setVelocity(aim.getX() * CANNON_SPEED, CANNON_SPEED / 2,
+                aim.getZ() * CANNON_SPEED, 0.5f);
+        cannon.burst(CANNON_SHOT);
+
+        smoke.setPosition(muzzle.getX(), muzzle.getY(), muzzle.getZ());
+        smoke.burst(CANNON_SHOT / 4);
+    }
+
+    /**
+     * Move the camera along the line of sight, and back again if the avatar
+     * then walks into a tree. An avatar already touching a tree can move away.
+     * @param distance - How far to move, negative to move backwards
+     */
+    private void move(float distance) {
+        float oldX = cameraX, oldY = cameraY, oldZ = cameraZ;
+        boolean touching = avatarTouchesTree();
+        cameraX += lineOfSightX * distance;
+        cameraZ += lineOfSightZ * distance;
+        updateCameraAltitude();
+        if (!touching && avatarTouchesTree()) {
+            cameraX = oldX;
+            cameraY = oldY;
+            cameraZ = oldZ;
+        }
+    }
+
+    /**
+     * Whether the avatar, standing on the ground below the camera, touches a tree
+     * @return
+     */
+    private boolean avatarTouchesTree() {
+        Point3D camera = getCameraPositionInTerrain();
+        Point3D centre = new Point3D(camera.getX(),
+                camera.getY() - (MINIMUM_ALTITUDE - AVATAR_RADIUS) / terrainScale, camera.getZ());
+        return terrain.treeCollides(centre, AVATAR_RADIUS / terrainScale);
+    }
+
     /**
      * Update camera's altitude (Y value) to follow terrain when moving up/down hills
      */
@@ -0,0 +1,136 @@
+package unsw.graphics.world.tests;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.Vector3;
+import unsw.graphics.world.Emitter;
+import unsw.graphics.world.ParticleEffects;
+import unsw.graphics.world.ParticleSystem;
+import unsw.graphics.world.Terrain;
+
+/**
+ * Tests that emitters share the particle budget as promised.
+ */
+public class ParticleSystemTest extends TestCase {
+
+    private static Terrain flatTerrain() {
+        return new Terrain(10, 10, new Vector3(1, 1, 1));
+    }
+
+    private static Emitter floating(float x, int priority) {
+        Emitter emitter = new Emitter();
+        emitter.setPosition(x, 5, 5);
+        emitter.setLifetime(100);
+        emitter.setPriority(priority);
+        return emitter;
+    }
+
+    @Test
+    public void testBurstWithinBudget() {
+        ParticleSystem particles = new ParticleSystem(flatTerrain(), 100);
+        Emitter emitter = floating(5, 0);
+        particles.addEmitter(emitter);
+
+        emitter.burst(30);
+        particles.step(ParticleSystem.STEP);
+        assertEquals(30, emitter.getLiveCount());
+        assertEquals(30, particles.getLiveCount());
+        assertEquals(0, particles.getDroppedSpawns());
+
+        emitter.burst(100);
+        particles.step(ParticleSystem.STEP);
+        assertEquals(100, particles.getLiveCount());
+        assertEquals(30, emitter.getDroppedSpawns());
+    }
+
+    @Test
+    public void testPriorityTakesBudget() {
+        ParticleSystem particles = new ParticleSystem(flatTerrain(), 100);
+        particles.setBudget(50);
+        Emitter low = floating(5, 0);
+        Emitter high = floating(5, 1);
+        particles.addEmitter(low);
+        particles.addEmitter(high);
+
+        low.burst(50);
+        particles.step(ParticleSystem.STEP);
+        assertEquals(50, low.getLiveCount());
+
+        // The higher priority emitter gets its share straight away, and the
+        // lower one is culled to make room
+        high.burst(20);
+        particles.step(ParticleSystem.STEP);
+        assertEquals(20, high.getLiveCount());
+        assertEquals(30, low.getLiveCount());
+        assertEquals(50, particles.getLiveCount());
+    }
+
+    @Test
+    public void testNearerEmitterFirst() {
+        ParticleSystem particles = new ParticleSystem(flatTerrain(), 100);
+        particles.setBudget(10);
+        particles.setViewer(0, 5, 5);
+        Emitter far = floating(9, 0);
+        Emitter near = floating(1, 0);
+        particles.addEmitter(far);
+        particles.addEmitter(near);
+
+        far.burst(10);
+        near.burst(10);
+        particles.step(ParticleSystem.STEP);
+        assertEquals(10, near.getLiveCount());
+        assertEquals(0, far.getLiveCount());
+        assertEquals(10, far.getDroppedSpawns());
+    }
+
+    @Test
+    public void testImpactSpawns() {
+        ParticleSystem particles = new ParticleSystem(flatTerrain(), 100);
+        Emitter drops = floating(5, 0);
+        drops.setPosition(5, 0.01f, 5);
+        drops.setVelocity(0, -1, 0, 0);
+        drops.setCollides(true);
+        Emitter splash = floating(5, 0);
+        splash.setVelocity(0, 1, 0, 0);
+        drops.setImpact(splash, 3);
+        particles.addEmitter(drops);
+        particles.addEmitter(splash);
+
+        drops.burst(5);
+        particles.step(ParticleSystem.STEP);
+        assertEquals(5, drops.getLiveCount());
+
+        // Every drop reaches the ground in the next step
+        particles.step(ParticleSystem.STEP);
+        assertEquals(0, drops.getLiveCount());
+        assertEquals(15, splash.getLiveCount());
+    }
+
+    @Test
+    public void testWeatherFollowsViewer() {
+        Terrain terrain = new Terrain(200, 200, new Vector3(1, 1, 1));
+        ParticleSystem particles = new ParticleSystem(terrain, 2000);
+        Emitter rain = ParticleEffects.rain(1000, 5, 10);
+        particles.addEmitter(rain);
+        particles.setViewer(10, 2, 10);
+
+        // Fills up, then keeps the same number of drops as they land and
+        // start again at the top, wherever the viewer goes
+        for (int i = 0; i < 120; i++)
+            particles.step(ParticleSystem.STEP);
+        assertEquals(1000, rain.getLiveCount());
+        for (int i = 0; i < 120; i++) {
+            particles.setViewer(10 + i, 2, 10 + i / 2f);
+            particles.step(ParticleSystem.STEP);
+            assertEquals(1000, rain.getLiveCount());
+        }
+        assertEquals(0, rain.getDroppedSpawns());
+
+        // Once it stops, the drops run out
+        rain.setEnabled(false);
+        for (int i = 0; i < 120; i++)
+            particles.step(ParticleSystem.STEP);
+        assertEquals(0, rain.getLiveCount());
+    }
+}
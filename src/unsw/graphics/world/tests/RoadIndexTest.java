@@ -0,0 +1,88 @@
+package unsw.graphics.world.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.Vector3;
+import unsw.graphics.geometry.Point2D;
+import unsw.graphics.world.Road;
+import unsw.graphics.world.RoadIndex;
+import unsw.graphics.world.Terrain;
+
+/**
+ * Tests that the road index agrees with a brute force search.
+ */
+public class RoadIndexTest extends TestCase {
+
+    private static final float EPSILON = 0.001f;
+
+    private static List<Road> randomRoads(Terrain terrain, int count, Random rand) {
+        List<Road> roads = new ArrayList<Road>();
+        for (int r = 0; r < count; r++) {
+            List<Point2D> spine = new ArrayList<Point2D>();
+            for (int i = 0; i < 4; i++)
+                spine.add(new Point2D(rand.nextFloat() * 20, rand.nextFloat() * 20));
+            roads.add(new Road(1, spine, terrain));
+        }
+        return roads;
+    }
+
+    private static float bruteForce(List<Road> roads, float x, float z) {
+        float best = Float.POSITIVE_INFINITY;
+        for (Road road : roads) {
+            float[] line = road.polyline();
+            for (int i = 0; i + 3 < line.length; i += 2) {
+                float dx = line[i + 2] - line[i], dz = line[i + 3] - line[i + 1];
+                float t = ((x - line[i]) * dx + (z - line[i + 1]) * dz) / (dx * dx + dz * dz);
+                t = Math.max(0, Math.min(1, t));
+                float px = line[i] + t * dx - x, pz = line[i + 1] + t * dz - z;
+                best = Math.min(best, (float) Math.sqrt(px * px + pz * pz));
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void testStraightRoad() {
+        Terrain terrain = new Terrain(10, 10, new Vector3(0, 1, 0));
+        Road road = new Road(1, Arrays.asList(new Point2D(0, 0), new Point2D(1, 0),
+                new Point2D(2, 0), new Point2D(3, 0)), terrain);
+        RoadIndex index = new RoadIndex(Arrays.asList(road));
+
+        RoadIndex.Nearest nearest = index.nearest(1.5f, 2);
+        assertEquals(0, nearest.getRoad());
+        assertEquals(2, nearest.getDistance(), EPSILON);
+        assertEquals(1.5f, nearest.getPoint().getX(), EPSILON);
+        assertEquals(0, nearest.getPoint().getY(), EPSILON);
+
+        // Past the end of the road the nearest point is the end point
+        assertEquals(5, index.distance(7, 3), EPSILON);
+    }
+
+    @Test
+    public void testMatchesBruteForce() {
+        Random rand = new Random(1);
+        Terrain terrain = new Terrain(20, 20, new Vector3(0, 1, 0));
+        List<Road> roads = randomRoads(terrain, 30, rand);
+        RoadIndex index = new RoadIndex(roads);
+
+        // Include points well outside the roads' bounds
+        for (int i = 0; i < 500; i++) {
+            float x = rand.nextFloat() * 40 - 10;
+            float z = rand.nextFloat() * 40 - 10;
+            assertEquals(bruteForce(roads, x, z), index.distance(x, z), EPSILON);
+        }
+    }
+
+    @Test
+    public void testNoRoads() {
+        RoadIndex index = new RoadIndex(new ArrayList<Road>());
+        assertNull(index.nearest(0, 0));
+        assertEquals(-1, index.nearestRoad(0, 0));
+    }
+}
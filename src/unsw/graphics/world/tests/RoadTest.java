@@ -0,0 +1,91 @@
+package unsw.graphics.world.tests;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.Vector3;
+import unsw.graphics.geometry.Point2D;
+import unsw.graphics.world.Road;
+import unsw.graphics.world.Terrain;
+
+/**
+ * Tests for the arc length parameterisation of roads.
+ */
+public class RoadTest extends TestCase {
+
+    private static final float EPSILON = 0.001f;
+
+    private static Road road(Point2D... spine) {
+        Terrain terrain = new Terrain(10, 10, new Vector3(0, 1, 0));
+        List<Point2D> points = Arrays.asList(spine);
+        return new Road(1, points, terrain);
+    }
+
+    @Test
+    public void testStraightLength() {
+        // Control points spaced evenly along a line give a straight road
+        Road road = road(new Point2D(0, 0), new Point2D(1, 0),
+                new Point2D(2, 0), new Point2D(3, 0));
+
+        assertEquals(3, road.length(), EPSILON);
+    }
+
+    @Test
+    public void testPointAtDistance() {
+        // Unevenly spaced control points make t and distance disagree
+        Road road = road(new Point2D(0, 0), new Point2D(0.1f, 0),
+                new Point2D(0.2f, 0), new Point2D(4, 0));
+
+        for (float d = 0; d <= road.length(); d += 0.5f) {
+            Point2D p = road.pointAtDistance(d);
+            assertEquals(d, p.getX(), 0.01f);
+            assertEquals(0, p.getY(), EPSILON);
+        }
+    }
+
+    @Test
+    public void testDistanceIsClamped() {
+        Road road = road(new Point2D(0, 0), new Point2D(1, 0),
+                new Point2D(2, 0), new Point2D(3, 0));
+
+        Point2D start = road.pointAtDistance(-1);
+        Point2D end = road.pointAtDistance(road.length() + 1);
+
+        assertEquals(0, start.getX(), EPSILON);
+        assertEquals(3, end.getX(), EPSILON);
+    }
+
+    @Test
+    public void testTangentIsUnitLength() {
+        Road road = road(new Point2D(0, 0), new Point2D(2, 0),
+                new Point2D(2, 2), new Point2D(0, 2),
+                new Point2D(-2, 2), new Point2D(-2, 4), new Point2D(0, 4));
+
+        for (float d = 0; d <= road.length(); d += 0.25f) {
+            Point2D t = road.tangentAtDistance(d);
+            float length = (float) Math.sqrt(t.getX() * t.getX() + t.getY() * t.getY());
+            assertEquals(1, length, EPSILON);
+        }
+    }
+
+    @Test
+    public void testEvenSpacing() {
+        Road road = road(new Point2D(0, 0), new Point2D(2, 0),
+                new Point2D(2, 2), new Point2D(0, 2));
+
+        // Consecutive samples a fixed distance apart should be separated by
+        // roughly that distance in space
+        float step = road.length() / 50;
+        Point2D previous = road.pointAtDistance(0);
+        for (int i = 1; i <= 50; i++) {
+            Point2D current = road.pointAtDistance(i * step);
+            float dx = current.getX() - previous.getX();
+            float dy = current.getY() - previous.getY();
+            assertEquals(step, (float) Math.sqrt(dx * dx + dy * dy), 0.01f);
+            previous = current;
+        }
+    }
+}
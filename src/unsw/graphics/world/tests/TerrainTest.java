@@ -0,0 +1,61 @@
+package unsw.graphics.world.tests;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.Vector3;
+import unsw.graphics.world.Terrain;
+
+/**
+ * Tests that batched altitude lookups agree with single ones.
+ */
+public class TerrainTest extends TestCase {
+
+    private static final float EPSILON = 0.0001f;
+
+    private static Terrain randomTerrain(int width, int depth, Random rand) {
+        Terrain terrain = new Terrain(width, depth, new Vector3(1, 1, 1));
+        for (int x = 0; x < width; x++)
+            for (int z = 0; z < depth; z++)
+                terrain.setGridAltitude(x, z, rand.nextFloat() * 5);
+        return terrain;
+    }
+
+    @Test
+    public void testAltitudesMatchAltitude() {
+        Random rand = new Random(3);
+        Terrain terrain = randomTerrain(7, 5, rand);
+
+        int count = 1000;
+        float[] xs = new float[count];
+        float[] zs = new float[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = rand.nextFloat() * 5.99f;
+            zs[i] = rand.nextFloat() * 3.99f;
+        }
+        // Grid points and points on a diagonal
+        xs[0] = 2; zs[0] = 3;
+        xs[1] = 2.25f; zs[1] = 1.75f;
+
+        float[] out = new float[count];
+        terrain.altitudes(xs, zs, out, count);
+        for (int i = 0; i < count; i++)
+            assertEquals(terrain.altitude(xs[i], zs[i]), out[i], EPSILON);
+    }
+
+    @Test
+    public void testAltitudesClampToEdge() {
+        Terrain terrain = randomTerrain(4, 4, new Random(5));
+
+        float[] xs = { -1, 10, 1.5f };
+        float[] zs = { -1, 1, 10 };
+        float[] out = new float[3];
+        terrain.altitudes(xs, zs, out, 3);
+
+        assertEquals(terrain.getGridAltitude(0, 0), out[0], EPSILON);
+        assertEquals(terrain.altitude(2.999f, 1), out[1], 0.01f);
+        assertEquals(terrain.altitude(1.5f, 2.999f), out[2], 0.01f);
+    }
+}